@@ -16,8 +16,12 @@
 package io.fabric8.api;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * The Zookeeper based data store
@@ -34,6 +38,12 @@ public interface DataStore {
     //
 
     void fireChangeNotifications();
+
+    /**
+     * Notify the configuration callbacks of the given changes.
+     * @see ProfileChangeListener
+     */
+    void fireChangeNotifications(ProfileChangeEvent event);
     
     void trackConfiguration(Runnable callback);
     void untrackConfiguration(Runnable callback);
@@ -105,6 +115,41 @@ public interface DataStore {
 
     void setContainerAttribute(String containerId, ContainerAttribute attribute, String value);
 
+    /**
+     * Runs the given task with the container reads of the calling thread going to the registry, instead of the
+     * locally cached view of it which may lag behind. Use it when a decision depends on the latest registry state.
+     */
+    <T> T readThrough(Callable<T> task);
+
+    /**
+     * Gets a number that grows with every change of the container registry, the container configuration
+     * or the profiles, so that a result computed from them can be reused for as long as it stays the same.
+     */
+    long getGeneration();
+
+    //
+    // Asynchronous reads
+    //
+    // The reads that have to go to ZooKeeper are issued in the background, so that many of them can be in flight
+    // at once. A read-through requested by the calling thread applies to the reads it issues.
+    //
+
+    ListenableFuture<String> getContainerVersionAsync(String containerId);
+
+    ListenableFuture<List<String>> getContainerProfilesAsync(String containerId);
+
+    /**
+     * Asynchronous variant of {@link #getContainerAttribute(String, ContainerAttribute, String, boolean, boolean)}.
+     * The future fails with a {@link FabricException} where the synchronous variant throws it.
+     */
+    ListenableFuture<String> getContainerAttributeAsync(String containerId, ContainerAttribute attribute, String def, boolean mandatory, boolean substituted);
+
+    /**
+     * Reads the given attributes of the given containers at once. The attributes that are not set are left out
+     * of the result, as are the containers that don't exist.
+     */
+    ListenableFuture<Map<String, Map<ContainerAttribute, String>>> getContainerAttributesAsync(Collection<String> containerIds, Collection<ContainerAttribute> attributes, boolean substituted);
+
     //
     // Default version
     //
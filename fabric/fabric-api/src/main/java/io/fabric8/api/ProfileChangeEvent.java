@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.api;
+
+import io.fabric8.api.gravia.IllegalStateAssertion;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Describes what has changed in the data store: some profiles of some versions, whole versions,
+ * or anything at all when the change cannot be narrowed down.
+ */
+public final class ProfileChangeEvent {
+
+    private static final ProfileChangeEvent ALL = new ProfileChangeEvent(true, Collections.<String>emptySet(), Collections.<String, Set<String>>emptyMap());
+
+    private final boolean fullChange;
+    private final Set<String> changedVersions;
+    private final Map<String, Set<String>> changedProfiles;
+
+    private ProfileChangeEvent(boolean fullChange, Set<String> changedVersions, Map<String, Set<String>> changedProfiles) {
+        this.fullChange = fullChange;
+        this.changedVersions = changedVersions;
+        this.changedProfiles = changedProfiles;
+    }
+
+    /**
+     * An event for changes that cannot be narrowed down, which affects everything
+     */
+    public static ProfileChangeEvent all() {
+        return ALL;
+    }
+
+    /**
+     * An event for a version that has been created, deleted or changed as a whole
+     */
+    public static ProfileChangeEvent versionChanged(String versionId) {
+        IllegalStateAssertion.assertNotNull(versionId, "versionId");
+        return new ProfileChangeEvent(false, Collections.singleton(versionId), Collections.<String, Set<String>>emptyMap());
+    }
+
+    /**
+     * An event for profiles of a version that have been created, updated or deleted
+     */
+    public static ProfileChangeEvent profilesChanged(String versionId, Collection<String> profileIds) {
+        IllegalStateAssertion.assertNotNull(versionId, "versionId");
+        IllegalStateAssertion.assertNotNull(profileIds, "profileIds");
+        Map<String, Set<String>> profiles = Collections.singletonMap(versionId, Collections.unmodifiableSet(new HashSet<>(profileIds)));
+        return new ProfileChangeEvent(false, Collections.<String>emptySet(), profiles);
+    }
+
+    /**
+     * Returns an event for the changes of this event and of the given one
+     */
+    public ProfileChangeEvent merge(ProfileChangeEvent other) {
+        if (other == null || other == this) {
+            return this;
+        }
+        if (fullChange || other.fullChange) {
+            return ALL;
+        }
+        Set<String> versions = new HashSet<>(changedVersions);
+        versions.addAll(other.changedVersions);
+        Map<String, Set<String>> profiles = new HashMap<>();
+        addProfiles(profiles, changedProfiles);
+        addProfiles(profiles, other.changedProfiles);
+        return new ProfileChangeEvent(false, Collections.unmodifiableSet(versions), Collections.unmodifiableMap(profiles));
+    }
+
+    /**
+     * True if anything may have changed
+     */
+    public boolean isFullChange() {
+        return fullChange;
+    }
+
+    /**
+     * Get the versions that have been created, deleted or changed as a whole.
+     */
+    public Set<String> getChangedVersions() {
+        return changedVersions;
+    }
+
+    /**
+     * Get the profiles of the given version that have been created, updated or deleted.
+     */
+    public Set<String> getChangedProfiles(String versionId) {
+        Set<String> profileIds = changedProfiles.get(versionId);
+        return profileIds != null ? profileIds : Collections.<String>emptySet();
+    }
+
+    /**
+     * True if any of the given profiles of the given version may have changed
+     */
+    public boolean isAffected(String versionId, Collection<String> profileIds) {
+        if (fullChange || changedVersions.contains(versionId)) {
+            return true;
+        }
+        Set<String> changed = changedProfiles.get(versionId);
+        if (changed != null) {
+            for (String profileId : profileIds) {
+                if (changed.contains(profileId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void addProfiles(Map<String, Set<String>> target, Map<String, Set<String>> source) {
+        for (Map.Entry<String, Set<String>> entry : source.entrySet()) {
+            Set<String> profileIds = target.get(entry.getKey());
+            if (profileIds == null) {
+                profileIds = new HashSet<>();
+                target.put(entry.getKey(), profileIds);
+            }
+            profileIds.addAll(entry.getValue());
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (fullChange) {
+            return "ProfileChangeEvent[all]";
+        }
+        return "ProfileChangeEvent[versions=" + changedVersions + ",profiles=" + changedProfiles + "]";
+    }
+}
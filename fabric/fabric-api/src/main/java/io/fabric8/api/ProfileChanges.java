@@ -0,0 +1,166 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.api;
+
+import io.fabric8.api.gravia.IllegalStateAssertion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A batch of profile and version changes, which are applied together by
+ * {@link ProfileService#updateProfiles(ProfileChanges)} with one commit per version,
+ * one push and one change notification.
+ * <p/>
+ * The changes of a version are applied in the order they have been staged.
+ */
+public final class ProfileChanges {
+
+    public enum Type {
+        CREATE, UPDATE, DELETE, VERSION_ATTRIBUTES
+    }
+
+    public static final class Change {
+
+        private final Type type;
+        private final String versionId;
+        private final String profileId;
+        private final Profile profile;
+        private final boolean force;
+        private final Map<String, String> attributes;
+
+        private Change(Type type, String versionId, String profileId, Profile profile, boolean force, Map<String, String> attributes) {
+            this.type = type;
+            this.versionId = versionId;
+            this.profileId = profileId;
+            this.profile = profile;
+            this.force = force;
+            this.attributes = attributes;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getVersionId() {
+            return versionId;
+        }
+
+        /**
+         * The changed profile, null for version attribute changes
+         */
+        public String getProfileId() {
+            return profileId;
+        }
+
+        /**
+         * The new profile, null for deletes and version attribute changes
+         */
+        public Profile getProfile() {
+            return profile;
+        }
+
+        public boolean isForce() {
+            return force;
+        }
+
+        /**
+         * The new version attributes, null for profile changes
+         */
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + versionId + (profileId != null ? "/" + profileId : "");
+        }
+    }
+
+    private final Map<String, List<Change>> changes = new LinkedHashMap<>();
+
+    public ProfileChanges createProfile(Profile profile) {
+        IllegalStateAssertion.assertNotNull(profile, "profile");
+        return addChange(new Change(Type.CREATE, profile.getVersion(), profile.getId(), profile, false, null));
+    }
+
+    public ProfileChanges updateProfile(Profile profile) {
+        return updateProfile(profile, false);
+    }
+
+    /**
+     * @param force update the profile even if it equals the current one, which doesn't take into account resources contents
+     */
+    public ProfileChanges updateProfile(Profile profile, boolean force) {
+        IllegalStateAssertion.assertNotNull(profile, "profile");
+        return addChange(new Change(Type.UPDATE, profile.getVersion(), profile.getId(), profile, force, null));
+    }
+
+    public ProfileChanges deleteProfile(String versionId, String profileId) {
+        IllegalStateAssertion.assertNotNull(profileId, "profileId");
+        return addChange(new Change(Type.DELETE, versionId, profileId, null, false, null));
+    }
+
+    public ProfileChanges setVersionAttributes(String versionId, Map<String, String> attributes) {
+        IllegalStateAssertion.assertNotNull(attributes, "attributes");
+        Map<String, String> copy = Collections.unmodifiableMap(new HashMap<>(attributes));
+        return addChange(new Change(Type.VERSION_ATTRIBUTES, versionId, null, null, false, copy));
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Get the versions that have changes, in the order they have been first changed.
+     */
+    public Set<String> getVersionIds() {
+        return Collections.unmodifiableSet(changes.keySet());
+    }
+
+    /**
+     * Get the changes of the given version, in the order they have been staged.
+     */
+    public List<Change> getChanges(String versionId) {
+        List<Change> result = changes.get(versionId);
+        return result != null ? Collections.unmodifiableList(result) : Collections.<Change>emptyList();
+    }
+
+    private ProfileChanges addChange(Change change) {
+        IllegalStateAssertion.assertNotNull(change.getVersionId(), "versionId");
+        List<Change> list = changes.get(change.getVersionId());
+        if (list == null) {
+            list = new ArrayList<>();
+            changes.put(change.getVersionId(), list);
+        }
+        list.add(change);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        List<Change> all = new ArrayList<>();
+        for (List<Change> list : changes.values()) {
+            all.addAll(list);
+        }
+        return "ProfileChanges" + all;
+    }
+}
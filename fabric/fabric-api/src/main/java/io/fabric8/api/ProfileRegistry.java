@@ -179,6 +179,16 @@ public interface ProfileRegistry {
      */
     void deleteProfile(GitContext context, String versionId, String profileId);
 
+    /**
+     * Apply the given profile and version changes in the data store with one commit per version.
+     */
+    void updateProfiles(ProfileChanges changes);
+
+    /**
+     * Apply the given profile and version changes in the data store with one commit per version in the provided Git context.
+     */
+    void updateProfiles(GitContext context, ProfileChanges changes);
+
     //
     // Import/Export 
     // [TODO] Consider utility methods for import/export that go through ProfileService 
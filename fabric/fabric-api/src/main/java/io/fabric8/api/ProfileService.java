@@ -29,4 +29,9 @@ public interface ProfileService extends ProfileManager {
     PermitKey<ProfileService> PERMIT = new PermitKey<ProfileService>(ProfileService.class);
     
     void deleteProfile(FabricService fabricService, String versionId, String profileId, boolean force);
+
+    /**
+     * Apply the given profile and version changes together, with a single push and change notification.
+     */
+    void updateProfiles(ProfileChanges changes);
 }
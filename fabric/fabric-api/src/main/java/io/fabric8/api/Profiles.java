@@ -348,6 +348,44 @@ public final class Profiles {
         return answer;
     }
 
+    /**
+     * Returns the given profile and the profiles it inherits from, each parent before its children.
+     * The default profile of the version always comes first.
+     */
+    public static List<Profile> getInheritedProfiles(Version version, Profile profile) {
+        List<Profile> profiles = new ArrayList<>();
+        fillParentProfiles(version, profile, profiles, new HashSet<String>());
+        // always prepend "default" as first profile
+        if(profiles.size() > 0){
+            if(!"default".equals(profiles.get(0).getId())){
+                profiles.add(0, version.getProfile("default"));
+            }
+        }
+        return profiles;
+    }
+
+    private static void fillParentProfiles(Version version, Profile profile, List<Profile> profiles, Set<String> visited) {
+        if (visited.add(profile.getId())) {
+            List<Profile> circularRelationship = new ArrayList<>();
+            for (String parentId : profile.getParentIds()) {
+                Profile parent = version.getRequiredProfile(parentId);
+                if ( !isCircularRelationship(profile, parent)){
+                    fillParentProfiles(version, parent, profiles, visited);
+                } else {
+                    circularRelationship.add(parent);
+                }
+            }
+            profiles.add(profile);
+            for(Profile p: circularRelationship){
+                fillParentProfiles(version, p, profiles, visited);
+            }
+        }
+    }
+
+    private static boolean isCircularRelationship(Profile a, Profile b){
+        return a.getParentIds().contains(b.getId()) && b.getParentIds().contains(a.getId());
+    }
+
     /**
      * Converts a profile ID into a path for the folder in a file system, git or on the web
      *
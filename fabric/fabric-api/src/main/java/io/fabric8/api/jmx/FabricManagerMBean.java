@@ -100,6 +100,18 @@ public interface FabricManagerMBean {
 
     List<Map<String, Object>> containers(List<String> fields, List<String> profileFields);
 
+    /**
+     * Gets the generation of the fabric data, which grows whenever the containers, their configuration
+     * or the profiles change.
+     */
+    long getGeneration();
+
+    /**
+     * Like {@link #containers(List, List)} for clients that poll: the result holds the current "generation",
+     * and the "containers" only if the data changed since the given generation.
+     */
+    Map<String, Object> containersIfChanged(List<String> fields, List<String> profileFields, long generation);
+
     String containerMetadataType(String id);
 
     String containerCreateOptionsType(String id);
@@ -202,6 +214,12 @@ public interface FabricManagerMBean {
     
     void setConfigurationFile(String versionId, String profileId, String fileName, String data);
 
+    /**
+     * Sets the given Base64 encoded configuration files of the profiles, which are all updated in one commit.
+     * The lists are of the same size, and the same profile may be listed several times.
+     */
+    void setConfigurationFiles(String versionId, List<String> profileIds, List<String> fileNames, List<String> data);
+
     /**
      * Returns the profile properties for the given PID
      */
@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProfileChangeEventTest {
+
+    @Test
+    public void testProfilesChanged() {
+        ProfileChangeEvent event = ProfileChangeEvent.profilesChanged("1.0", Arrays.asList("a", "b"));
+        Assert.assertFalse(event.isFullChange());
+        Assert.assertTrue(event.isAffected("1.0", Arrays.asList("default", "b")));
+        Assert.assertFalse(event.isAffected("1.0", Arrays.asList("default", "c")));
+        Assert.assertFalse(event.isAffected("1.1", Arrays.asList("a")));
+    }
+
+    @Test
+    public void testMerge() {
+        ProfileChangeEvent event = ProfileChangeEvent.profilesChanged("1.0", Arrays.asList("a"))
+                .merge(ProfileChangeEvent.profilesChanged("1.0", Arrays.asList("b")))
+                .merge(ProfileChangeEvent.versionChanged("1.1"));
+        Assert.assertEquals(2, event.getChangedProfiles("1.0").size());
+        Assert.assertTrue(event.isAffected("1.0", Arrays.asList("b")));
+        Assert.assertTrue(event.isAffected("1.1", Collections.<String>emptyList()));
+        Assert.assertFalse(event.isAffected("1.2", Arrays.asList("a")));
+
+        ProfileChangeEvent all = event.merge(ProfileChangeEvent.all());
+        Assert.assertTrue(all.isFullChange());
+        Assert.assertTrue(all.isAffected("1.2", Arrays.asList("a")));
+    }
+}
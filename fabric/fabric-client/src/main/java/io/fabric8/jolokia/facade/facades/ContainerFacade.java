@@ -16,12 +16,14 @@
 package io.fabric8.jolokia.facade.facades;
 
 import io.fabric8.api.*;
+import io.fabric8.jolokia.facade.utils.FieldCache;
 import io.fabric8.jolokia.facade.utils.Helpers;
 
 import org.jolokia.client.J4pClient;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -30,9 +32,24 @@ import java.util.Properties;
  */
 public class ContainerFacade implements Container, HasId {
 
+    /**
+     * The fields read together on a cache miss, and by the container listing of {@link FabricServiceFacade}.
+     */
+    static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "type", "parentId", "alive", "aliveAndOK", "ensembleServer", "root", "managed", "versionId", "profileIds",
+            "sshUrl", "jmxUrl", "httpUrl", "jolokiaUrl", "debugPort", "location", "geoLocation", "resolver", "ip",
+            "localHostname", "publicIp", "publicHostname", "minimumPort", "maximumPort", "provisionResult",
+            "provisionException", "provisionStatus", "provisioningComplete", "provisioningPending"));
+
 	private final FabricService fabricService;
     private J4pClient j4p;
     private String id;
+    private final FieldCache fields = new FieldCache(FIELDS) {
+        @Override
+        protected Map<String, Object> fetch(List<String> fields) {
+            return Helpers.exec(j4p, "getContainer(java.lang.String, java.util.List)", id, fields);
+        }
+    };
 
     public ContainerFacade(FabricService fabricService, J4pClient j4p, String id) {
     	this.fabricService = fabricService;
@@ -40,6 +57,14 @@ public class ContainerFacade implements Container, HasId {
         this.id = id;
     }
 
+    /**
+     * Creates the facade of a container whose {@link #FIELDS} were read already.
+     */
+    ContainerFacade(FabricService fabricService, J4pClient j4p, String id, Map<String, Object> values) {
+        this(fabricService, j4p, id);
+        fields.put(FIELDS, values);
+    }
+
 
     public J4pClient getJ4p() {
         return j4p;
@@ -47,11 +72,20 @@ public class ContainerFacade implements Container, HasId {
 
     public void setJ4p(J4pClient j4p) {
         this.j4p = j4p;
+        fields.invalidate();
     }
 
 
     private <T extends Object> T getFieldValue(String field) {
-        return Helpers.getFieldValue(j4p, "getContainer(java.lang.String, java.util.List)", id, field);
+        return fields.get(field);
+    }
+
+    private void exec(String operation, Object... args) {
+        try {
+            Helpers.exec(j4p, operation, args);
+        } finally {
+            fields.invalidate();
+        }
     }
 
     @Override
@@ -146,7 +180,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setVersionId(String versionId) {
-        Helpers.exec(j4p, "applyVersionToContainers(java.lang.String, java.util.List)", versionId, Helpers.toList(id));
+        exec("applyVersionToContainers(java.lang.String, java.util.List)", versionId, Helpers.toList(id));
     }
 
     @Override
@@ -158,7 +192,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setVersion(Version version) {
-        Helpers.exec(j4p, "applyVersionToContainers(java.lang.String, java.util.List)", version.getId(), Helpers.toList(id));
+        exec("applyVersionToContainers(java.lang.String, java.util.List)", version.getId(), Helpers.toList(id));
     }
 
     @Override
@@ -186,19 +220,19 @@ public class ContainerFacade implements Container, HasId {
     @Override
     public void setProfiles(Profile[] profiles) {
         List<String> ids = Helpers.extractIds(profiles);
-        Helpers.exec(j4p, "applyProfilesToContainers(java.lang.String, java.util.List, java.util.List)", getVersion().getId(), ids, Helpers.toList(id) );
+        exec("applyProfilesToContainers(java.lang.String, java.util.List, java.util.List)", getVersion().getId(), ids, Helpers.toList(id) );
     }
 
     @Override
     public void addProfiles(Profile... profiles) {
         List<String> ids = Helpers.extractIds(profiles);
-        Helpers.exec(j4p, "addProfilesToContainer(java.lang.String, java.util.List)", id, ids);
+        exec("addProfilesToContainer(java.lang.String, java.util.List)", id, ids);
     }
 
     @Override
     public void removeProfiles(String... profileIds) {
         List<String> ids = Arrays.asList(profileIds);
-        Helpers.exec(j4p, "removeProfilesFromContainer(java.lang.String, java.util.List)", id, ids);
+        exec("removeProfilesFromContainer(java.lang.String, java.util.List)", id, ids);
     }
 
     @Override
@@ -213,7 +247,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setLocation(String s) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "location", s);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "location", s);
     }
 
     @Override
@@ -223,7 +257,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setGeoLocation(String s) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "geoLocation", s);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "geoLocation", s);
     }
 
     @Override
@@ -233,7 +267,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setResolver(String s) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "resolver", s);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "resolver", s);
     }
 
     @Override
@@ -248,7 +282,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setLocalIp(String s) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "localIp", s);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "localIp", s);
     }
 
     @Override
@@ -258,7 +292,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setLocalHostname(String s) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "localHostname", s);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "localHostname", s);
     }
 
     @Override
@@ -273,7 +307,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setPublicIp(String s) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "publicIp", s);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "publicIp", s);
     }
 
     @Override
@@ -283,7 +317,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setPublicHostname(String s) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "publicHostname", s);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "publicHostname", s);
     }
 
     @Override
@@ -293,7 +327,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setManualIp(String s) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "manualIp", s);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "manualIp", s);
     }
 
     @Override
@@ -303,7 +337,7 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setMinimumPort(int i) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "minimumPort", i);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "minimumPort", i);
     }
 
     @Override
@@ -313,12 +347,13 @@ public class ContainerFacade implements Container, HasId {
 
     @Override
     public void setMaximumPort(int i) {
-        Helpers.exec(j4p, "setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "maximumPort", i);
+        exec("setContainerProperty(java.lang.String, java.lang.String, java.lang.Object)", id, "maximumPort", i);
     }
 
     @Override
     public void start() {
         Helpers.doContainerAction(j4p, "start", id);
+        fields.invalidate();
     }
 
     @Override
@@ -329,6 +364,7 @@ public class ContainerFacade implements Container, HasId {
     @Override
     public void stop() {
         Helpers.doContainerAction(j4p, "stop", id);
+        fields.invalidate();
     }
 
     @Override
@@ -339,6 +375,7 @@ public class ContainerFacade implements Container, HasId {
     @Override
     public void destroy() {
         Helpers.doContainerAction(j4p, "destroy", id);
+        fields.invalidate();
     }
 
     @Override
@@ -61,6 +61,22 @@ public class FabricServiceFacade implements FabricService {
     @Override
     public Container[] getContainers() {
         List<Container> containers = new ArrayList<Container>();
+        // read the fields of all the containers at once, rather than with a request per container and getter
+        List<Object> fields = new ArrayList<Object>(ContainerFacade.FIELDS);
+        fields.add("id");
+        try {
+            J4pExecRequest request = Helpers.createExecRequest("containers(java.util.List)", fields);
+            J4pExecResponse response = getJolokiaClient().execute(request);
+            List<Map<String, Object>> values = response.getValue();
+
+            for (Map<String, Object> value : values) {
+                containers.add(new ContainerFacade(this, getJolokiaClient(), (String)value.get("id"), value));
+            }
+            return containers.toArray(new Container[containers.size()]);
+        } catch (Exception e) {
+            // the remote side may not support all the fields, fall back to the ids
+            containers.clear();
+        }
         try {
             J4pExecRequest request = Helpers.createExecRequest("containers(java.util.List)", toList("id"));
             J4pExecResponse response = getJolokiaClient().execute(request);
@@ -18,9 +18,11 @@ package io.fabric8.jolokia.facade.facades;
 import io.fabric8.api.HasId;
 import io.fabric8.api.Profile;
 import io.fabric8.api.Profiles;
+import io.fabric8.jolokia.facade.utils.FieldCache;
 import io.fabric8.jolokia.facade.utils.Helpers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -38,9 +40,23 @@ import org.jolokia.client.request.J4pExecResponse;
  */
 public class ProfileFacade implements Profile, HasId {
 
+    /**
+     * The fields read together on a cache miss, and by the profile listing of {@link VersionFacade}.
+     */
+    static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(
+            "parents", "libraries", "endorsedLibraries", "extensionLibraries", "bundles", "fabs", "features",
+            "repositories", "overrides", "optionals", "tags", "overlay", "abstract", "locked", "hidden",
+            "iconURL", "iconRelativePath"));
+
     J4pClient j4p;
     String id;
     String versionId;
+    private final FieldCache fields = new FieldCache(FIELDS) {
+        @Override
+        protected Map<String, Object> fetch(List<String> fields) {
+            return getFieldValues(j4p, "getProfile(java.lang.String, java.lang.String, java.util.List)", versionId, id, fields);
+        }
+    };
 
     public ProfileFacade(J4pClient j4p, String versionId, String id) {
         this.j4p = j4p;
@@ -48,6 +64,14 @@ public class ProfileFacade implements Profile, HasId {
         this.id = id;
     }
 
+    /**
+     * Creates the facade of a profile whose {@link #FIELDS} were read already.
+     */
+    ProfileFacade(J4pClient j4p, String versionId, String id, Map<String, Object> values) {
+        this(j4p, versionId, id);
+        fields.put(FIELDS, values);
+    }
+
     @Override
     public String getId() {
         return id;
@@ -192,6 +216,7 @@ public class ProfileFacade implements Profile, HasId {
 
     public Profile setOptionals(List<String> strings) {
         Helpers.exec(j4p, "setProfileOptionals(java.lang.String, java.lang.String, java.util.List)", versionId, id, strings);
+        fields.invalidate();
         return null;
     }
 
@@ -201,6 +226,7 @@ public class ProfileFacade implements Profile, HasId {
             parentIds.add(profile.getId());
         }
         Helpers.exec(j4p, "changeProfileParents(java.lang.String, java.lang.String, java.util.List)", versionId, id, parentIds);
+        fields.invalidate();
         return null;
     }
 
@@ -222,26 +248,31 @@ public class ProfileFacade implements Profile, HasId {
 
     public Profile setBundles(List<String> strings) {
         Helpers.exec(j4p, "setProfileBundles(java.lang.String, java.lang.String, java.util.List)", versionId, id, strings);
+        fields.invalidate();
         return null;
     }
 
     public Profile setFabs(List<String> strings) {
         Helpers.exec(j4p, "setProfileFabs(java.lang.String, java.lang.String, java.util.List)", versionId, id, strings);
+        fields.invalidate();
         return null;
     }
 
     public Profile setFeatures(List<String> strings) {
         Helpers.exec(j4p, "setProfileFeatures(java.lang.String, java.lang.String, java.util.List)", versionId, id, strings);
+        fields.invalidate();
         return null;
     }
 
     public Profile setRepositories(List<String> strings) {
         Helpers.exec(j4p, "setProfileRepositories(java.lang.String, java.lang.String, java.util.List)", versionId, id, strings);
+        fields.invalidate();
         return null;
     }
 
     public Profile setOverrides(List<String> strings) {
         Helpers.exec(j4p, "setProfileOverrides(java.lang.String, java.lang.String, java.util.List)", versionId, id, strings);
+        fields.invalidate();
         return null;
     }
 
@@ -258,24 +289,20 @@ public class ProfileFacade implements Profile, HasId {
         throw new UnsupportedOperationException();
     }
 
-	@SuppressWarnings("unchecked")
-	private static <T extends Object> T getFieldValue(J4pClient j4p, String operation, String versionId, String id, String field) {
-        T rc = null;
+	private static Map<String, Object> getFieldValues(J4pClient j4p, String operation, String versionId, String id, List<String> fields) {
         try {
-            J4pExecRequest request = Helpers.createExecRequest(operation, versionId, id, Helpers.toList(field));
+            J4pExecRequest request = Helpers.createExecRequest(operation, versionId, id, fields);
             J4pExecResponse response = j4p.execute(request);
-            Map<String, Object> value = response.getValue();
-            rc = (T)value.get(field);
+            return response.getValue();
         } catch (MalformedObjectNameException e) {
             throw new RuntimeException("Failed to get container field", e);
         } catch (J4pException e) {
             throw new RuntimeException("Failed to get container field", e);
         }
-        return rc;
     }
 
     private <T extends Object> T getFieldValue(String field) {
-        return getFieldValue(j4p, "getProfile(java.lang.String, java.lang.String, java.util.List)", versionId, id, field);
+        return fields.get(field);
     }
 
     @Override
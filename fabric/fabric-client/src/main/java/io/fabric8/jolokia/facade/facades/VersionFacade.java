@@ -19,9 +19,11 @@ import io.fabric8.api.HasId;
 import io.fabric8.api.Profile;
 import io.fabric8.api.Version;
 import io.fabric8.api.VersionSequence;
+import io.fabric8.jolokia.facade.utils.FieldCache;
 import io.fabric8.jolokia.facade.utils.Helpers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -33,9 +35,17 @@ import org.json.simple.JSONArray;
  */
 public class VersionFacade implements Version, HasId {
 
+    private static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList("attributes", "profiles"));
+
     J4pClient j4p;
     String id;
     String revision;
+    private final FieldCache fields = new FieldCache(FIELDS) {
+        @Override
+        protected Map<String, Object> fetch(List<String> fields) {
+            return Helpers.exec(j4p, "getVersion(java.lang.String, java.util.List)", id, fields);
+        }
+    };
 
     public VersionFacade(J4pClient j4p, String id, String revision) {
         this.j4p = j4p;
@@ -67,6 +77,20 @@ public class VersionFacade implements Version, HasId {
     public List<Profile> getProfiles() {
         List<Profile> rc = new ArrayList<Profile>();
 
+        // read the fields of all the profiles at once, rather than with a request per profile and getter
+        List<Object> profileFields = new ArrayList<Object>(ProfileFacade.FIELDS);
+        profileFields.add("id");
+        try {
+            List<Map<String, Object>> values = Helpers.exec(j4p, "getProfiles(java.lang.String, java.util.List)", id, profileFields);
+            for (Map<String, Object> value : values) {
+                rc.add(new ProfileFacade(j4p, id, (String) value.get("id"), value));
+            }
+            return rc;
+        } catch (RuntimeException e) {
+            // the remote side may not support all the fields, fall back to the ids
+            rc.clear();
+        }
+
         JSONArray array = getFieldValue("profiles");
         if (array == null || array.size() == 0) {
             return Collections.emptyList();
@@ -99,6 +123,6 @@ public class VersionFacade implements Version, HasId {
     }
 
     private <T extends Object> T getFieldValue(String field) {
-        return Helpers.getFieldValue(j4p, "getVersion(java.lang.String, java.util.List)", id, field);
+        return fields.get(field);
     }
 }
@@ -0,0 +1,109 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.jolokia.facade.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the fields of a remote object read through Jolokia, for a limited time.
+ * <p/>
+ * A miss on one of the batched fields reads all of them in a single request, so that the other getters
+ * of a facade don't each cost a round trip. The other fields are read on their own.
+ */
+public abstract class FieldCache {
+
+    public static final long DEFAULT_TTL = 5000L;
+
+    private final List<String> batch;
+    private final long ttl;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    // the time until which the fields are read on their own, after reading the batch failed while reading
+    // the field alone didn't, for instance because the remote side doesn't know one of the batched fields
+    private volatile long batchRetry;
+
+    protected FieldCache(List<String> batch) {
+        this(batch, DEFAULT_TTL);
+    }
+
+    protected FieldCache(List<String> batch, long ttl) {
+        this.batch = batch;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Reads the given fields of the remote object.
+     */
+    protected abstract Map<String, Object> fetch(List<String> fields);
+
+    @SuppressWarnings("unchecked")
+    public <T extends Object> T get(String field) {
+        synchronized (this) {
+            Entry entry = entries.get(field);
+            if (entry != null && entry.expiry > System.currentTimeMillis()) {
+                return (T) entry.value;
+            }
+        }
+        boolean batchFailed = false;
+        if (batch.contains(field) && batchRetry <= System.currentTimeMillis()) {
+            try {
+                Map<String, Object> values = fetch(batch);
+                put(batch, values);
+                return (T) values.get(field);
+            } catch (RuntimeException e) {
+                batchFailed = true;
+            }
+        }
+        List<String> fields = Collections.singletonList(field);
+        Map<String, Object> values = fetch(fields);
+        put(fields, values);
+        if (batchFailed) {
+            // the field alone could be read, so the batch is to blame: try it again once the values expire
+            batchRetry = System.currentTimeMillis() + ttl;
+        }
+        return (T) values.get(field);
+    }
+
+    /**
+     * Caches the values of the given fields, read by the caller. The fields missing from the values are cached as null.
+     */
+    public synchronized void put(List<String> fields, Map<String, Object> values) {
+        long expiry = System.currentTimeMillis() + ttl;
+        for (String field : fields) {
+            entries.put(field, new Entry(values.get(field), expiry));
+        }
+    }
+
+    /**
+     * Forgets the cached values, after a change of the remote object.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final long expiry;
+
+        private Entry(Object value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.jolokia.facade.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FieldCacheTest {
+
+    private final List<List<String>> requests = new ArrayList<List<String>>();
+    private boolean batchSupported = true;
+    private boolean available = true;
+
+    private final FieldCache cache = cache(FieldCache.DEFAULT_TTL);
+
+    @Test
+    public void testBatchedFieldsAreReadTogether() {
+        Assert.assertEquals("alive-value", cache.get("alive"));
+        Assert.assertEquals("type-value", cache.get("type"));
+        Assert.assertEquals(1, requests.size());
+
+        Assert.assertEquals("jmxDomains-value", cache.get("jmxDomains"));
+        Assert.assertEquals(Arrays.asList("jmxDomains"), requests.get(1));
+
+        cache.invalidate();
+        cache.get("type");
+        Assert.assertEquals(3, requests.size());
+    }
+
+    @Test
+    public void testFallbackToSingleFields() {
+        batchSupported = false;
+        Assert.assertEquals("alive-value", cache.get("alive"));
+        Assert.assertEquals("type-value", cache.get("type"));
+        // the batch is only tried once
+        Assert.assertEquals(3, requests.size());
+    }
+
+    @Test
+    public void testBatchIsRetriedAfterTtl() {
+        FieldCache cache = cache(0L);
+        batchSupported = false;
+        Assert.assertEquals("alive-value", cache.get("alive"));
+        Assert.assertEquals(2, requests.size());
+
+        batchSupported = true;
+        Assert.assertEquals("type-value", cache.get("type"));
+        Assert.assertEquals(Arrays.asList("alive", "type"), requests.get(2));
+    }
+
+    @Test
+    public void testBatchIsKeptWhenTheFieldAloneFails() {
+        available = false;
+        try {
+            cache.get("alive");
+            Assert.fail("RuntimeException expected");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        Assert.assertEquals(2, requests.size());
+
+        available = true;
+        Assert.assertEquals("alive-value", cache.get("alive"));
+        Assert.assertEquals(Arrays.asList("alive", "type"), requests.get(2));
+    }
+
+    private FieldCache cache(long ttl) {
+        return new FieldCache(Arrays.asList("alive", "type"), ttl) {
+            @Override
+            protected Map<String, Object> fetch(List<String> fields) {
+                requests.add(fields);
+                if (!available) {
+                    throw new RuntimeException("Connection refused");
+                }
+                if (fields.size() > 1 && !batchSupported) {
+                    throw new RuntimeException("Failed to call getContainer(java.lang.String, java.util.List)");
+                }
+                Map<String, Object> values = new HashMap<String, Object>();
+                for (String field : fields) {
+                    values.put(field, field + "-value");
+                }
+                return values;
+            }
+        };
+    }
+}
@@ -19,6 +19,7 @@ import io.fabric8.api.Constants;
 import io.fabric8.api.FabricService;
 import io.fabric8.api.Profile;
 import io.fabric8.api.ProfileBuilder;
+import io.fabric8.api.ProfileChanges;
 import io.fabric8.api.ProfileRegistry;
 import io.fabric8.api.ProfileService;
 import io.fabric8.api.Version;
@@ -26,6 +27,7 @@ import io.fabric8.utils.FabricValidations;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.Enumeration;
@@ -128,7 +130,7 @@ public class ProfileEditAction extends AbstractAction {
     @Option(name = "--delimiter", description = "Specifies the delimiter to use for appends and removals.")
     private String delimiter = ",";
 
-    @Argument(index = 0, name = "profile", description = "The target profile to edit", required = true, multiValued = false)
+    @Argument(index = 0, name = "profile", description = "The target profile to edit. To apply the same edit to several profiles at once, separate them with commas.", required = true, multiValued = false)
     private String profileName;
 
     @Argument(index = 1, name = "version", description = "The version of the profile to edit. Defaults to the current default version.", required = false, multiValued = false)
@@ -150,8 +152,11 @@ public class ProfileEditAction extends AbstractAction {
 
     @Override
     protected Object doExecute() throws Exception {
+        String[] profileNames = profileName.split(DELIMITER);
         try {
-            FabricValidations.validateProfileName(profileName);
+            for (String name : profileNames) {
+                FabricValidations.validateProfileName(name);
+            }
         } catch (IllegalArgumentException e) {
             // we do not want exception in the server log, so print the error message to the console
             System.out.println(e.getMessage());
@@ -162,17 +167,46 @@ public class ProfileEditAction extends AbstractAction {
         }
         
         Version version = versionId != null ? profileService.getRequiredVersion(versionId) : fabricService.getRequiredDefaultVersion();
-        Profile profile = version.getProfile(profileName);
-        if (profile != null) {
-            editProfile(profile);
-        } else {
-            System.out.println("Profile " + profileName + " does not exists!");
+        List<Profile> profiles = new ArrayList<Profile>();
+        for (String name : profileNames) {
+            Profile profile = version.getProfile(name);
+            if (profile == null) {
+                System.out.println("Profile " + name + " does not exists!");
+                return null;
+            }
+            profiles.add(profile);
+        }
+
+        // the profiles are all updated in one commit
+        ProfileChanges changes = new ProfileChanges();
+        boolean editInLine = true;
+        for (Profile profile : profiles) {
+            editInLine &= editProfile(profile, changes);
+        }
+        profileService.updateProfiles(changes);
+
+        if (!editInLine) {
+            if (profiles.size() > 1) {
+                System.out.println("Only one profile can be opened in the editor!");
+                return null;
+            }
+            resource = resource != null ? resource : "io.fabric8.agent.properties";
+                //If a single pid has been selected, but not a key value has been specified or import has been selected,
+                //then open the resource in the editor.
+                if (pidProperties != null && pidProperties.length == 1) {
+                    resource = pidProperties[0] + ".properties";
+                }
+                openInEditor(profiles.get(0), resource);
         }
         
         return null;
     }
 
-    private void editProfile(Profile profile) throws Exception {
+    /**
+     * Stages the edit of the given profile.
+     * @return                      True if the edit can take place in line.
+     */
+    private boolean editProfile(Profile profile, ProfileChanges changes) throws Exception {
         boolean editInLine = false;
 
         ProfileBuilder builder = ProfileBuilder.Factory.createFrom(profile);
@@ -232,18 +266,8 @@ public class ProfileEditAction extends AbstractAction {
             builder.deleteFileConfiguration(resource);
         }
 
-        profileService.updateProfile(builder.getProfile());
-
-
-        if (!editInLine) {
-            resource = resource != null ? resource : "io.fabric8.agent.properties";
-                //If a single pid has been selected, but not a key value has been specified or import has been selected,
-                //then open the resource in the editor.
-                if (pidProperties != null && pidProperties.length == 1) {
-                    resource = pidProperties[0] + ".properties";
-                }
-                openInEditor(profile, resource);
-        }
+        changes.updateProfile(builder.getProfile());
+        return editInLine;
     }
 
     /**
@@ -19,6 +19,8 @@ import io.fabric8.api.Constants;
 import io.fabric8.api.Container;
 import io.fabric8.api.FabricService;
 import io.fabric8.api.Profile;
+import io.fabric8.api.ProfileChangeEvent;
+import io.fabric8.api.ProfileChangeListener;
 import io.fabric8.api.Profiles;
 import io.fabric8.api.jcip.ThreadSafe;
 import io.fabric8.api.scr.AbstractComponent;
@@ -29,28 +31,39 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.fabric8.utils.NamedThreadFactory;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ConfigurationListener;
 import org.osgi.service.url.URLStreamHandlerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @ThreadSafe
-@Component(name = "io.fabric8.configadmin.bridge", label = "Fabric8 Config Admin Bridge", metatype = false)
-public final class FabricConfigAdminBridge extends AbstractComponent implements Runnable {
+@Component(name = "io.fabric8.configadmin.bridge", label = "Fabric8 Config Admin Bridge", immediate = true, metatype = false)
+@Service(ConfigurationListener.class)
+public final class FabricConfigAdminBridge extends AbstractComponent implements Runnable, ProfileChangeListener, ConfigurationListener {
 
     public static final String FABRIC_ZOOKEEPER_PID = "fabric.zookeeper.pid";
     public static final String FELIX_FILE_INSTALL_FILE_NAME = "felix.fileinstall.filename";
@@ -74,6 +87,14 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("fabric-configadmin"));
 
+    // the version and the profiles the configurations have last been updated from, null if unknown
+    private volatile String updatedVersion;
+    private volatile Set<String> updatedProfiles;
+    // set while an update is waiting to run, the triggers in the meantime are covered by it
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+    // the configurations last applied by fabric pid, an entry is dropped when its configuration is changed in config admin
+    private final ConcurrentMap<String, AppliedConfiguration> appliedConfigurations = new ConcurrentHashMap<String, AppliedConfiguration>();
+
     @Activate
     void activate() {
         fabricService.get().trackConfiguration(this);
@@ -99,11 +120,37 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
         submitUpdateJob();
     }
 
+    @Override
+    public void profilesChanged(ProfileChangeEvent event) {
+        String versionId = updatedVersion;
+        Set<String> profileIds = updatedProfiles;
+        if (versionId != null && profileIds != null && !event.isAffected(versionId, profileIds)) {
+            LOGGER.debug("Skipping configurations update, none of the profiles of the container is changed by {}", event);
+            return;
+        }
+        submitUpdateJob();
+    }
+
+    @Override
+    public void configurationEvent(ConfigurationEvent event) {
+        // the configuration is compared again on the next update, whether it has been changed by this bridge or not
+        for (Iterator<AppliedConfiguration> iterator = appliedConfigurations.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().servicePid.equals(event.getPid())) {
+                iterator.remove();
+            }
+        }
+    }
+
     private void submitUpdateJob() {
+        if (!updatePending.compareAndSet(false, true)) {
+            LOGGER.debug("Skipping configurations update, an update is already pending");
+            return;
+        }
         try {
             executor.submit(new Runnable() {
                 @Override
                 public void run() {
+                    updatePending.set(false);
                     if (isValid()) {
                         try {
                             updateInternal();
@@ -118,6 +165,7 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
                 }
             });
         } catch (RejectedExecutionException e) {
+            updatePending.set(false);
             if (!executor.isShutdown()) {
                 throw e;
             } else {
@@ -132,6 +180,8 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
      * @throws Exception
      */
     private synchronized void updateInternal() throws Exception {
+        updatedVersion = null;
+        updatedProfiles = null;
         try {
 
             Container currentContainer = fabricService.get().getCurrentContainer();
@@ -147,10 +197,22 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
                 return;
             }
 
+            String versionId = currentContainer.getVersionId();
+            Set<String> profileIds = getInheritedProfileIds(currentContainer, overlayProfile);
             Profile effectiveProfile = Profiles.getEffectiveProfile(fabricService.get(), overlayProfile);
 
             Map<String, Map<String, String>> configurations = effectiveProfile.getConfigurations();
-            List<Configuration> zkConfigs = asList(configAdmin.get().listConfigurations("(" + FABRIC_ZOOKEEPER_PID + "=*)"));
+            // Index the managed configurations by fabric pid, duplicates are deleted along with the configurations no longer in the profile
+            Map<String, Configuration> zkConfigs = new HashMap<String, Configuration>();
+            List<Configuration> obsoleteConfigs = new ArrayList<Configuration>();
+            for (Configuration config : asList(configAdmin.get().listConfigurations("(" + FABRIC_ZOOKEEPER_PID + "=*)"))) {
+                String zkPid = String.valueOf(config.getProperties().get(FABRIC_ZOOKEEPER_PID));
+                if (zkConfigs.containsKey(zkPid)) {
+                    obsoleteConfigs.add(config);
+                } else {
+                    zkConfigs.put(zkPid, config);
+                }
+            }
 
             // FABRIC-803: the agent may use the configuration provided by features definition if not managed
             //   by fabric.  However, in order for this to work, we need to make sure managed configurations
@@ -178,7 +240,11 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
                     }
                 }
             }
-            for (Configuration config : zkConfigs) {
+            for (Map.Entry<String, Configuration> entry : zkConfigs.entrySet()) {
+                appliedConfigurations.remove(entry.getKey());
+                obsoleteConfigs.add(entry.getValue());
+            }
+            for (Configuration config : obsoleteConfigs) {
                 LOGGER.info("Deleting configuration {}", config.getPid());
                 fabricService.get().getPortService().unregisterPort(fabricService.get().getCurrentContainer(), config.getPid());
                 if (!isValid()) {
@@ -192,29 +258,51 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
             Hashtable<String, String> props = new Hashtable<>();
             props.put("lastUpdate", Long.toString(new Date().getTime()));
             fcab.update(props);
+            updatedVersion = versionId;
+            updatedProfiles = profileIds;
         } catch (IllegalStateException e){
             handleException(e);
         }
     }
 
+    /**
+     * Get the profiles the overlay profile of the container is made of, as built by the profile service
+     */
+    private Set<String> getInheritedProfileIds(Container container, Profile overlayProfile) {
+        Set<String> result = new HashSet<>();
+        for (Profile profile : Profiles.getInheritedProfiles(container.getVersion(), overlayProfile)) {
+            if (profile != null && profile != overlayProfile) {
+                result.add(profile.getId());
+            }
+        }
+        return result;
+    }
+
     /**
      * Update CM configuration if there's a change. First check if {@link FabricConfigAdminBridge} is still valid,
      * as we don't want to update configs that may lead to invocation of SCR components that are no longer valid
      * (like {@link io.fabric8.service.ProfileUrlHandler} or {@link FabricService})
-     * @param configs
+     * The configuration is left alone if it is the same as last applied, and hasn't been changed in config admin since.
+     * @param configs the managed configurations by fabric pid, that haven't been updated yet
      * @param pid
      * @param c
      * @return
      * @throws Exception
      */
-    private boolean updateConfig(List<Configuration> configs, String pid, Hashtable<String, Object> c) throws Exception {
+    private boolean updateConfig(Map<String, Configuration> configs, String pid, Hashtable<String, Object> c) throws Exception {
         if (!isValid()) {
             return false;
         }
+        Configuration existing = configs.remove(pid);
+        AppliedConfiguration applied = appliedConfigurations.get(pid);
+        if (existing != null && applied != null && applied.servicePid.equals(existing.getPid()) && applied.properties.equals(c)) {
+            LOGGER.debug("Ignoring configuration {} (unchanged since last update)", existing.getPid());
+            return true;
+        }
+        Map<String, Object> profileProperties = new HashMap<String, Object>(c);
         String p[] = parsePid(pid);
         //Get the configuration by fabric zookeeper pid, pid and factory pid.
-        Configuration config = getConfiguration(configAdmin.get(), pid, p[0], p[1]);
-        configs.remove(config);
+        Configuration config = existing != null ? existing : getConfiguration(configAdmin.get(), p[0], p[1]);
         Dictionary<String, Object> props = config.getProperties();
         Hashtable<String, Object> old = props != null ? new Hashtable<String, Object>() : null;
         Object felix_file_install_name = null;
@@ -230,6 +318,8 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
             // stash a property to avoid false positive updates related to RBAC config files, restores it at the end of the method
             felix_file_install_name = old.remove(FELIX_FILE_INSTALL_FILE_NAME);
         }
+        // recorded before the update, so that any later change in config admin, the one of this update included, drops it
+        appliedConfigurations.put(pid, new AppliedConfiguration(config.getPid(), profileProperties));
         if (!c.equals(old)) {
             LOGGER.info("Updating configuration {}", config.getPid());
             c.put(FABRIC_ZOOKEEPER_PID, pid);
@@ -257,7 +347,12 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
             if (felix_file_install_name != null && !c.containsKey(FELIX_FILE_INSTALL_FILE_NAME)) {
                 c.put(FELIX_FILE_INSTALL_FILE_NAME, felix_file_install_name);
             }
-            config.update(c);
+            try {
+                config.update(c);
+            } catch (Exception e) {
+                appliedConfigurations.remove(pid);
+                throw e;
+            }
         } else {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Ignoring configuration {} (no changes)", config.getPid());
@@ -293,19 +388,14 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
         }
     }
 
-    private Configuration getConfiguration(ConfigurationAdmin configAdmin, String zooKeeperPid, String pid, String factoryPid) throws Exception {
-        String filter = "(" + FABRIC_ZOOKEEPER_PID + "=" + zooKeeperPid + ")";
-        Configuration[] oldConfiguration = configAdmin.listConfigurations(filter);
-        if (oldConfiguration != null && oldConfiguration.length > 0) {
-            return oldConfiguration[0];
+    /**
+     * Get the configuration for a fabric pid that isn't managed yet.
+     */
+    private Configuration getConfiguration(ConfigurationAdmin configAdmin, String pid, String factoryPid) throws Exception {
+        if (factoryPid != null) {
+            return configAdmin.createFactoryConfiguration(pid, null);
         } else {
-            Configuration newConfiguration;
-            if (factoryPid != null) {
-                newConfiguration = configAdmin.createFactoryConfiguration(pid, null);
-            } else {
-                newConfiguration = configAdmin.getConfiguration(pid, null);
-            }
-            return newConfiguration;
+            return configAdmin.getConfiguration(pid, null);
         }
     }
 
@@ -318,6 +408,20 @@ public final class FabricConfigAdminBridge extends AbstractComponent implements
         }
     }
 
+    /**
+     * The profile properties last applied to a configuration.
+     */
+    private static final class AppliedConfiguration {
+
+        private final String servicePid;
+        private final Map<String, Object> properties;
+
+        private AppliedConfiguration(String servicePid, Map<String, Object> properties) {
+            this.servicePid = servicePid;
+            this.properties = properties;
+        }
+    }
+
     void bindConfigAdmin(ConfigurationAdmin service) {
         this.configAdmin.bind(service);
     }
@@ -34,6 +34,7 @@ import io.fabric8.api.FabricRequirements;
 import io.fabric8.api.Ids;
 import io.fabric8.api.Profile;
 import io.fabric8.api.ProfileBuilder;
+import io.fabric8.api.ProfileChanges;
 import io.fabric8.api.ProfileRegistry;
 import io.fabric8.api.ProfileService;
 import io.fabric8.api.Profiles;
@@ -78,6 +79,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildrenSafe;
@@ -91,6 +93,8 @@ public final class FabricManager implements FabricManagerMBean {
 
     private final ProfileService profileService;
     private final FabricServiceImpl fabricService;
+    // consoles poll the container listings, so they are shared until the fabric data changes
+    private final GenerationCache<List<Map<String, Object>>> containerListings = new GenerationCache<List<Map<String, Object>>>(64);
     private ObjectName objectName;
 
     public FabricManager(FabricServiceImpl fabricService) {
@@ -473,29 +477,78 @@ public final class FabricManager implements FabricManagerMBean {
     }
 
     @Override
-    public List<Map<String, Object>> containers(List<String> fields) {
-        List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
-        for (Container c : fabricService.getContainers()) {
-            answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
-        }
-        return answer;
+    public List<Map<String, Object>> containers(final List<String> fields) {
+        return containerListings.get(listingKey("containers", fields), getGeneration(), new Callable<List<Map<String, Object>>>() {
+            @Override
+            public List<Map<String, Object>> call() {
+                List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
+                for (Container c : fabricService.getContainers()) {
+                    answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
+                }
+                return Collections.unmodifiableList(answer);
+            }
+        });
     }
 
     @Override
     public List<Map<String, Object>> containers(List<String> fields, List<String> profileFields) {
-        List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
-        for (Container c : fabricService.getContainers()) {
-            Map<String, Object> map = BeanUtils.convertContainerToMap(fabricService, c, fields);
-            List<Map<String, Object>> profiles = new ArrayList<Map<String, Object>>();
-            for (Profile p : c.getProfiles()) {
-                profiles.add(BeanUtils.convertProfileToMap(fabricService, p, profileFields));
+        return containers(fields, profileFields, getGeneration());
+    }
+
+    private List<Map<String, Object>> containers(final List<String> fields, final List<String> profileFields, long generation) {
+        return containerListings.get(listingKey("containers", fields, profileFields), generation, new Callable<List<Map<String, Object>>>() {
+            @Override
+            public List<Map<String, Object>> call() {
+                List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
+                // most containers share their profiles, convert each of them once
+                Map<String, Map<String, Object>> convertedProfiles = new HashMap<String, Map<String, Object>>();
+                for (Container c : fabricService.getContainers()) {
+                    Map<String, Object> map = BeanUtils.convertContainerToMap(fabricService, c, fields);
+                    List<Map<String, Object>> profiles = new ArrayList<Map<String, Object>>();
+                    for (Profile p : c.getProfiles()) {
+                        String key = p.getVersion() + "/" + p.getId();
+                        Map<String, Object> profile = convertedProfiles.get(key);
+                        if (profile == null) {
+                            profile = BeanUtils.convertProfileToMap(fabricService, p, profileFields);
+                            convertedProfiles.put(key, profile);
+                        }
+                        profiles.add(profile);
+                    }
+                    map.put("profiles", profiles);
+                    answer.add(map);
+                }
+                return Collections.unmodifiableList(answer);
             }
-            map.put("profiles", profiles);
-            answer.add(map);
+        });
+    }
+
+    @Override
+    public long getGeneration() {
+        return fabricService.adapt(DataStore.class).getGeneration();
+    }
+
+    @Override
+    public Map<String, Object> containersIfChanged(List<String> fields, List<String> profileFields, long generation) {
+        long current = getGeneration();
+        Map<String, Object> answer = new HashMap<String, Object>();
+        answer.put("generation", current);
+        if (current != generation) {
+            answer.put("containers", containers(fields, profileFields, current));
         }
         return answer;
     }
 
+    /**
+     * Gets the key of a container listing, copying the field lists so that the caller can't change it.
+     */
+    private static List<Object> listingKey(Object... parts) {
+        List<Object> key = new ArrayList<Object>(parts.length);
+        for (Object part : parts) {
+            key.add(part instanceof List ? new ArrayList<Object>((List<?>) part) : part);
+        }
+        return key;
+    }
+
     private CreateContainerMetadata<?> getContainerMetaData(String id) {
         Container container = fabricService.getContainer(id);
         return container.getMetadata();
@@ -715,7 +768,17 @@ public final class FabricManager implements FabricManagerMBean {
     }
 
     @Override
-    public List<Map<String, Object>> containersForProfile(String versionId, String profileId, List<String> fields, boolean checkParents) {
+    public List<Map<String, Object>> containersForProfile(final String versionId, final String profileId, final List<String> fields, final boolean checkParents) {
+        List<Object> key = listingKey("containersForProfile", versionId, profileId, fields, checkParents);
+        return containerListings.get(key, getGeneration(), new Callable<List<Map<String, Object>>>() {
+            @Override
+            public List<Map<String, Object>> call() {
+                return Collections.unmodifiableList(doContainersForProfile(versionId, profileId, fields, checkParents));
+            }
+        });
+    }
+
+    private List<Map<String, Object>> doContainersForProfile(String versionId, String profileId, List<String> fields, boolean checkParents) {
         Version version = profileService.getVersion(versionId);
         Profile profile = version != null ? version.getRequiredProfile(profileId) : null;
         Set<Map<String, Object>> answer = new LinkedHashSet<Map<String, Object>>();
@@ -770,17 +833,22 @@ public final class FabricManager implements FabricManagerMBean {
     }
 
     @Override
-    public List<Map<String, Object>> containersForVersion(String versionId, List<String> fields) {
-        Version version = profileService.getVersion(versionId);
-        List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
-        if (version != null) {
-            for (Container c : fabricService.getContainers()) {
-                if (c.getVersion().equals(version)) {
-                    answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
+    public List<Map<String, Object>> containersForVersion(final String versionId, final List<String> fields) {
+        return containerListings.get(listingKey("containersForVersion", versionId, fields), getGeneration(), new Callable<List<Map<String, Object>>>() {
+            @Override
+            public List<Map<String, Object>> call() {
+                Version version = profileService.getVersion(versionId);
+                List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
+                if (version != null) {
+                    for (Container c : fabricService.getContainers()) {
+                        if (c.getVersion().equals(version)) {
+                            answer.add(BeanUtils.convertContainerToMap(fabricService, c, fields));
+                        }
+                    }
                 }
+                return Collections.unmodifiableList(answer);
             }
-        }
-        return answer;
+        });
     }
 
     @Override
@@ -1138,10 +1206,7 @@ public final class FabricManager implements FabricManagerMBean {
 
     @Override
     public void deleteConfigurationFile(String versionId, String profileId, String fileName) {
-        Profile profile = profileService.getRequiredProfile(versionId, profileId);
-        ProfileBuilder builder = ProfileBuilder.Factory.createFrom(profile);
-        builder.deleteFileConfiguration(fileName);
-        profileService.updateProfile(builder.getProfile());
+        deleteConfigurationFiles(versionId, Collections.singletonList(profileId), Collections.singletonList(fileName));
     }
 
     @Override
@@ -1149,23 +1214,53 @@ public final class FabricManager implements FabricManagerMBean {
         if (profileIds.size() != fileNames.size()) {
             throw new FabricException("Lists of profile IDs and filenames should be the same size");
         }
+        // the same profile may be listed several times, so its files are all deleted in one update
+        Map<String, ProfileBuilder> builders = new LinkedHashMap<>();
         for (int i = 0; i < profileIds.size(); i++) {
             String profileId = profileIds.get(i);
-            String fileName = fileNames.get(i);
-            Profile profile = profileService.getRequiredProfile(versionId, profileId);
-            ProfileBuilder builder = ProfileBuilder.Factory.createFrom(profile);
-            builder.deleteFileConfiguration(fileName);
-            profileService.updateProfile(builder.getProfile());
+            ProfileBuilder builder = builders.get(profileId);
+            if (builder == null) {
+                Profile profile = profileService.getRequiredProfile(versionId, profileId);
+                builder = ProfileBuilder.Factory.createFrom(profile);
+                builders.put(profileId, builder);
+            }
+            builder.deleteFileConfiguration(fileNames.get(i));
+        }
+        ProfileChanges changes = new ProfileChanges();
+        for (ProfileBuilder builder : builders.values()) {
+            changes.updateProfile(builder.getProfile());
         }
+        profileService.updateProfiles(changes);
     }
 
     @Override
     public void setConfigurationFile(String versionId, String profileId, String fileName, String data) {
-        Profile profile = profileService.getRequiredProfile(versionId, profileId);
-        ProfileBuilder builder = ProfileBuilder.Factory.createFrom(profile);
-        builder.addFileConfiguration(fileName, Base64.decodeBase64(data));
-        // ENTESB-2315: profile equality doesn't consider change of resources contents
-        profileService.updateProfile(builder.getProfile(), true);
+        setConfigurationFiles(versionId, Collections.singletonList(profileId), Collections.singletonList(fileName), Collections.singletonList(data));
+    }
+
+    @Override
+    public void setConfigurationFiles(String versionId, List<String> profileIds, List<String> fileNames, List<String> data) {
+        if (profileIds.size() != fileNames.size() || profileIds.size() != data.size()) {
+            throw new FabricException("Lists of profile IDs, filenames and data should be the same size");
+        }
+        // the same profile may be listed several times, so its files are all set in one update
+        Map<String, ProfileBuilder> builders = new LinkedHashMap<>();
+        for (int i = 0; i < profileIds.size(); i++) {
+            String profileId = profileIds.get(i);
+            ProfileBuilder builder = builders.get(profileId);
+            if (builder == null) {
+                Profile profile = profileService.getRequiredProfile(versionId, profileId);
+                builder = ProfileBuilder.Factory.createFrom(profile);
+                builders.put(profileId, builder);
+            }
+            builder.addFileConfiguration(fileNames.get(i), Base64.decodeBase64(data.get(i)));
+        }
+        ProfileChanges changes = new ProfileChanges();
+        for (ProfileBuilder builder : builders.values()) {
+            // ENTESB-2315: profile equality doesn't consider change of resources contents
+            changes.updateProfile(builder.getProfile(), true);
+        }
+        profileService.updateProfiles(changes);
     }
 
     @Override
@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.core.jmx;
+
+import io.fabric8.api.FabricException;
+import io.fabric8.api.jcip.ThreadSafe;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the results of queries for as long as the data store generation they were computed at stays current.
+ * <p/>
+ * Concurrent identical queries share the computation of the first one, instead of each computing the result.
+ */
+@ThreadSafe
+final class GenerationCache<V> {
+
+    private final ConcurrentMap<List<?>, Entry<V>> entries;
+
+    GenerationCache(int maximumSize) {
+        entries = CacheBuilder.newBuilder().maximumSize(maximumSize).<List<?>, Entry<V>>build().asMap();
+    }
+
+    /**
+     * Gets the result of the query with the given key at the given generation, computing it if needed.
+     * The key is made of the name of the query and its arguments.
+     */
+    V get(List<?> key, long generation, Callable<V> query) {
+        Entry<V> entry = entries.get(key);
+        // a result computed at a later generation is as good
+        while (entry == null || entry.generation < generation) {
+            Entry<V> candidate = new Entry<V>(generation, new FutureTask<V>(query));
+            boolean added = entry == null ? entries.putIfAbsent(key, candidate) == null : entries.replace(key, entry, candidate);
+            if (added) {
+                candidate.task.run();
+                entry = candidate;
+            } else {
+                entry = entries.get(key);
+            }
+        }
+        try {
+            return entry.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw FabricException.launderThrowable(e);
+        } catch (ExecutionException e) {
+            // don't keep failures, the next query tries again
+            entries.remove(key, entry);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw FabricException.launderThrowable(cause);
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final long generation;
+        private final FutureTask<V> task;
+
+        private Entry(long generation, FutureTask<V> task) {
+            this.generation = generation;
+            this.task = task;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.WeakHashMap;
 
 import io.fabric8.api.Constants;
 import io.fabric8.api.FabricException;
@@ -39,6 +40,10 @@ import io.fabric8.utils.DataStoreUtils;
  */
 final class ProfileImpl implements Profile {
 
+    // the parsed properties files by content, so that the profiles made of the same byte arrays (like an unchanged
+    // profile in several versions) share them. Keyed by identity, as arrays don't override equals and hashCode
+    private static final Map<byte[], Map<String, String>> PARSED_CONFIGURATIONS = new WeakHashMap<>();
+
     private final String versionId;
     private final String profileId;
     private final Map<String, String> attributes = new HashMap<>();
@@ -65,7 +70,7 @@ final class ProfileImpl implements Profile {
             fileConfigurations.put(fileKey, bytes);
             if (fileKey.endsWith(Profile.PROPERTIES_SUFFIX)) {
                 String pid = fileKey.substring(0, fileKey.indexOf(Profile.PROPERTIES_SUFFIX));
-                configurations.put(pid, Collections.unmodifiableMap(DataStoreUtils.toMap(bytes)));
+                configurations.put(pid, parseConfiguration(bytes));
             }
         }
         
@@ -82,6 +87,23 @@ final class ProfileImpl implements Profile {
         }
     }
 
+    private static Map<String, String> parseConfiguration(byte[] bytes) {
+        if (bytes == null) {
+            return Collections.unmodifiableMap(DataStoreUtils.toMap(bytes));
+        }
+        Map<String, String> answer;
+        synchronized (PARSED_CONFIGURATIONS) {
+            answer = PARSED_CONFIGURATIONS.get(bytes);
+        }
+        if (answer == null) {
+            answer = Collections.unmodifiableMap(DataStoreUtils.toMap(bytes));
+            synchronized (PARSED_CONFIGURATIONS) {
+                PARSED_CONFIGURATIONS.put(bytes, answer);
+            }
+        }
+        return answer;
+    }
+
     public String getId() {
         return profileId;
     }
@@ -16,12 +16,16 @@
 package io.fabric8.internal;
 
 import io.fabric8.api.Container;
+import io.fabric8.api.DataStore;
 import io.fabric8.api.FabricException;
 import io.fabric8.api.FabricRequirements;
 import io.fabric8.api.FabricService;
 import io.fabric8.api.OptionsProvider;
 import io.fabric8.api.Profile;
 import io.fabric8.api.ProfileBuilder;
+import io.fabric8.api.ProfileChangeEvent;
+import io.fabric8.api.ProfileChangeListener;
+import io.fabric8.api.ProfileChanges;
 import io.fabric8.api.ProfileRegistry;
 import io.fabric8.api.ProfileService;
 import io.fabric8.api.Profiles;
@@ -36,9 +40,15 @@ import io.fabric8.utils.DataStoreUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import io.fabric8.utils.FabricValidations;
 import org.apache.felix.scr.annotations.Activate;
@@ -48,7 +58,6 @@ import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.References;
 import org.apache.felix.scr.annotations.Service;
-import org.apache.felix.utils.properties.Properties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +72,10 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     private final ValidatingReference<ProfileRegistry> profileRegistry = new ValidatingReference<>();
     @Reference(referenceInterface = RuntimeProperties.class)
     private final ValidatingReference<RuntimeProperties> runtimeProperties = new ValidatingReference<>();
+    @Reference(referenceInterface = DataStore.class)
+    private final ValidatingReference<DataStore> dataStore = new ValidatingReference<>();
+
+    private final OverlayCache overlayCache = new OverlayCache();
 
     static class OverlayAudit {
         Map<String, Profile> overlayProfiles = new HashMap<String, Profile>();
@@ -72,6 +85,7 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     @VisibleForExternal
     public void activate() throws Exception {
         getOverlayAudit();
+        dataStore.get().trackConfiguration(overlayCache);
         activateComponent(PERMIT, this);
     }
 
@@ -89,6 +103,8 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     @Deactivate
     void deactivate() {
         deactivateComponent(PERMIT);
+        dataStore.get().untrackConfiguration(overlayCache);
+        overlayCache.run();
     }
 
     @Override
@@ -153,6 +169,13 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
         return getRequiredProfile(profile.getVersion(), profileId);
     }
 
+    @Override
+    public void updateProfiles(ProfileChanges changes) {
+        assertValid();
+        LOGGER.info("updateProfiles: {}", changes);
+        profileRegistry.get().updateProfiles(changes);
+    }
+
     @Override
     public boolean hasProfile(String versionId, String profileId) {
         assertValid();
@@ -182,22 +205,27 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     public Profile getOverlayProfile(Profile profile) {
         assertValid();
         Profile overlayProfile;
-        synchronized (this) {
-            if (profile.isOverlay()) {
-                LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
-                overlayProfile = profile;
-            } else {
-                String profileId = profile.getId();
-                String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
-                if (environment == null) {
-                    // lets default to the environment from the current active
-                    // set of profiles (e.g. docker or openshift)
-                    environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
-                }
-                Version version = getRequiredVersion(profile.getVersion());
+        if (profile.isOverlay()) {
+            LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
+            overlayProfile = profile;
+        } else {
+            String profileId = profile.getId();
+            String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
+            if (environment == null) {
+                // lets default to the environment from the current active
+                // set of profiles (e.g. docker or openshift)
+                environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
+            }
+            Version version = getRequiredVersion(profile.getVersion());
+            OverlayOptionsProvider provider = new OverlayOptionsProvider(version, profile, environment, overlayCache);
+            List<Profile> inherited = provider.getInheritedProfiles();
+            String cacheKey = profile.getVersion() + "/" + profileId + "#" + environment;
+            overlayProfile = overlayCache.getOverlay(cacheKey, inherited);
+            if (overlayProfile == null) {
                 ProfileBuilder builder = ProfileBuilder.Factory.create(profile.getVersion(), profileId);
-                builder.addOptions(new OverlayOptionsProvider(version, profile, environment));
+                builder.addOptions(provider);
                 overlayProfile = builder.getProfile();
+                overlayCache.putOverlay(cacheKey, inherited, overlayProfile);
 
                 // Log the overlay profile difference
                 if (LOGGER.isDebugEnabled()) {
@@ -261,112 +289,192 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
         }
     }
 
+    /**
+     * Memoizes the overlay profiles and the parsed properties files they are made of.
+     * <p/>
+     * An overlay is reused as long as it is requested for the same environment and the very same
+     * profile instances are inherited. The versions are immutable and reloaded by the registry when
+     * they change, so a changed profile is a different instance, and the properties files are
+     * parsed once per byte array. The overlays inheriting from the profiles of a data store change
+     * notification are also evicted, so that the overlays of the previous versions are not retained.
+     */
+    static class OverlayCache implements Runnable, ProfileChangeListener {
+
+        static final int MAX_OVERLAYS = 1024;
+
+        private final Map<String, CachedOverlay> overlays = new LinkedHashMap<String, CachedOverlay>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedOverlay> eldest) {
+                return size() > MAX_OVERLAYS;
+            }
+        };
+        // keyed by identity, as arrays don't override equals and hashCode
+        private final Map<byte[], Map<String, String>> properties = new WeakHashMap<byte[], Map<String, String>>();
+
+        private static class CachedOverlay {
+            final List<Profile> inherited;
+            final List<String> hashes;
+            final Profile overlay;
+            final Set<String> profileIds = new HashSet<String>();
+
+            CachedOverlay(List<Profile> inherited, Profile overlay) {
+                this.inherited = inherited;
+                this.hashes = hashes(inherited);
+                this.overlay = overlay;
+                for (Profile profile : inherited) {
+                    if (profile != null) {
+                        profileIds.add(profile.getId());
+                    }
+                }
+            }
+
+            boolean matches(List<Profile> profiles) {
+                if (profiles.size() != inherited.size()) {
+                    return false;
+                }
+                for (int i = 0; i < profiles.size(); i++) {
+                    if (profiles.get(i) != inherited.get(i)) {
+                        return false;
+                    }
+                }
+                return hashes.equals(hashes(profiles));
+            }
+
+            private static List<String> hashes(List<Profile> profiles) {
+                List<String> answer = new ArrayList<String>(profiles.size());
+                for (Profile profile : profiles) {
+                    answer.add(profile != null ? profile.getProfileHash() : null);
+                }
+                return answer;
+            }
+        }
+
+        synchronized Profile getOverlay(String key, List<Profile> inherited) {
+            CachedOverlay cached = overlays.get(key);
+            return cached != null && cached.matches(inherited) ? cached.overlay : null;
+        }
+
+        synchronized void putOverlay(String key, List<Profile> inherited, Profile overlay) {
+            overlays.put(key, new CachedOverlay(inherited, overlay));
+        }
+
+        /**
+         * Returns the unmodifiable content of the given properties file
+         */
+        Map<String, String> getProperties(byte[] data) {
+            if (data == null) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> answer;
+            synchronized (this) {
+                answer = properties.get(data);
+            }
+            if (answer == null) {
+                answer = Collections.unmodifiableMap(new HashMap<String, String>(ProfileUtils.toProperties(data)));
+                synchronized (this) {
+                    properties.put(data, answer);
+                }
+            }
+            return answer;
+        }
+
+        /**
+         * Clears the cache
+         */
+        @Override
+        public synchronized void run() {
+            overlays.clear();
+            properties.clear();
+        }
+
+        /**
+         * Evicts the overlays inheriting from the changed profiles, called when the data store changes.
+         * The properties of the changed files are not referenced anymore, so they are left to the GC.
+         */
+        @Override
+        public synchronized void profilesChanged(ProfileChangeEvent event) {
+            if (event.isFullChange()) {
+                run();
+                return;
+            }
+            for (Iterator<CachedOverlay> iterator = overlays.values().iterator(); iterator.hasNext(); ) {
+                CachedOverlay cached = iterator.next();
+                if (event.isAffected(cached.overlay.getVersion(), cached.profileIds)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
     static class OverlayOptionsProvider implements OptionsProvider<ProfileBuilder> {
 
         private final Version version;
         private final Profile self;
         private final String environment;
+        private final OverlayCache cache;
 
         private static class SupplementControl {
             byte[] data;
-            Properties props;
+            Map<String, String> props;
+            // the props are shared with the cache until they are first updated
+            boolean shared;
         }
 
-        OverlayOptionsProvider(Version version, Profile self, String environment) {
+        OverlayOptionsProvider(Version version, Profile self, String environment, OverlayCache cache) {
             this.version = version;
             this.self = self;
             this.environment = environment;
+            this.cache = cache;
         }
 
         @Override
         public ProfileBuilder addOptions(ProfileBuilder builder) {
+            Map<String, SupplementControl> aggregate = getAggregate();
             builder.setAttributes(self.getAttributes());
-            builder.setFileConfigurations(getFileConfigurations());
-            builder.setConfigurations(getConfigurations());
+            builder.setFileConfigurations(getFileConfigurations(aggregate));
+            builder.setConfigurations(getConfigurations(aggregate));
             builder.setLastModified(getLastModified());
             builder.setOverlay(true);
             return builder;
         }
 
-        private Map<String, byte[]> getFileConfigurations() {
+        private Map<String, SupplementControl> getAggregate() {
             try {
                 Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
                 for (Profile profile : getInheritedProfiles()) {
                     supplement(profile, aggregate);
                 }
-
-                Map<String, byte[]> rc = new HashMap<String, byte[]>();
-                for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                    SupplementControl ctrl = entry.getValue();
-                    if (ctrl.props != null) {
-                        ctrl.data = DataStoreUtils.toBytes(ctrl.props);
-                    }
-                    rc.put(entry.getKey(), ctrl.data);
-                }
-                return rc;
+                return aggregate;
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
         }
 
-        private Map<String, Map<String, String>> getConfigurations() {
-            try {
-                Map<String, SupplementControl> aggregate = new HashMap<String, SupplementControl>();
-                for (Profile profile : getInheritedProfiles()) {
-                    supplement(profile, aggregate);
-                }
-
-                Map<String, Map<String, String>> rc = new HashMap<String, Map<String, String>>();
-                for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
-                    SupplementControl ctrl = entry.getValue();
-                    if (ctrl.props != null) {
-                        rc.put(DataStoreUtils.stripSuffix(entry.getKey(), ".properties"), ctrl.props);
-                    }
-                }
-                return rc;
-            } catch (Exception e) {
-                throw FabricException.launderThrowable(e);
-            }
-        }
-
-        private List<Profile> getInheritedProfiles() {
-            List<Profile> profiles = new ArrayList<>();
-            fillParentProfiles(self, profiles);
-            // always prepend "default" as first profile
-            if(profiles.size() > 0){
-                if(!"default".equals(profiles.get(0).getId())){
-                    profiles.add(0, version.getProfile("default"));
+        private Map<String, byte[]> getFileConfigurations(Map<String, SupplementControl> aggregate) {
+            // the properties files are serialized from the configurations
+            Map<String, byte[]> rc = new HashMap<String, byte[]>();
+            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
+                SupplementControl ctrl = entry.getValue();
+                if (ctrl.props == null) {
+                    rc.put(entry.getKey(), ctrl.data);
                 }
             }
-            return profiles;
+            return rc;
         }
 
-        private void fillParentProfiles(Profile profile, List<Profile> profiles) {
-            if (!profiles.contains(profile)) {
-                List<Profile> circularRelationship = new ArrayList<>();
-                for (String parentId : profile.getParentIds()) {
-                    Profile parent = version.getRequiredProfile(parentId);
-                    if ( !isCircularRelationship(profile, parent)){
-                        fillParentProfiles(parent, profiles);
-                    } else {
-                        circularRelationship.add(parent);
-                    }
-                }
-                profiles.add(profile);
-                for(Profile p: circularRelationship){
-                    fillParentProfiles(p, profiles);
+        private Map<String, Map<String, String>> getConfigurations(Map<String, SupplementControl> aggregate) {
+            Map<String, Map<String, String>> rc = new HashMap<String, Map<String, String>>();
+            for (Map.Entry<String, SupplementControl> entry : aggregate.entrySet()) {
+                SupplementControl ctrl = entry.getValue();
+                if (ctrl.props != null) {
+                    rc.put(DataStoreUtils.stripSuffix(entry.getKey(), ".properties"), ctrl.props);
                 }
             }
+            return rc;
         }
 
-        boolean isCircularRelationship(Profile a, Profile b){
-            boolean result = false;
-            List<String> aParents = a.getParentIds();
-            List<String> bParents = b.getParentIds();
-            if(a.getParentIds().contains(b.getId()) && b.getParentIds().contains(a.getId())){
-                result = true;
-            }
-            return result;
+        List<Profile> getInheritedProfiles() {
+            return Profiles.getInheritedProfiles(version, self);
         }
 
         private void supplement(Profile profile, Map<String, SupplementControl> aggregate) throws Exception {
@@ -388,13 +496,20 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
                     SupplementControl ctrl = aggregate.get(fileName);
                     if (ctrl != null) {
                         // we can update the file..
-                        Properties childMap = ProfileUtils.toProperties(value);
-                        if (childMap.remove(Profile.DELETED) != null) {
+                        Map<String, String> childMap = cache.getProperties(value);
+                        if (ctrl.shared) {
+                            ctrl.props = new HashMap<String, String>(ctrl.props);
+                            ctrl.shared = false;
+                        }
+                        if (childMap.containsKey(Profile.DELETED)) {
                             ctrl.props.clear();
                         }
 
                         // Update the entries...
                         for (Map.Entry<String, String> p : childMap.entrySet()) {
+                            if (Profile.DELETED.equals(p.getKey())) {
+                                continue;
+                            }
                             if (Profile.DELETED.equals(p.getValue())) {
                                 ctrl.props.remove(p.getKey());
                             } else {
@@ -405,7 +520,8 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
                     } else {
                         // new file..
                         ctrl = new SupplementControl();
-                        ctrl.props = ProfileUtils.toProperties(value);
+                        ctrl.props = cache.getProperties(value);
+                        ctrl.shared = true;
                         aggregate.put(fileName, ctrl);
                     }
                 } else {
@@ -445,4 +561,13 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     void unbindRuntimeProperties(RuntimeProperties service) {
         this.runtimeProperties.unbind(service);
     }
+
+    @VisibleForExternal
+    public void bindDataStore(DataStore service) {
+        this.dataStore.bind(service);
+    }
+
+    void unbindDataStore(DataStore service) {
+        this.dataStore.unbind(service);
+    }
 }
@@ -0,0 +1,145 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import io.fabric8.api.jcip.GuardedBy;
+import io.fabric8.api.jcip.ThreadSafe;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.recipes.cache.TreeData;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains a {@link ContainerRegistrySnapshot} from the events of a tree cache on the container registry,
+ * and from the local writes to the registry.
+ * <p/>
+ * The snapshot is initialized once every node that is known to exist has been received. Until then readers
+ * have to go to ZooKeeper, since a node missing from the snapshot may just not have been loaded yet.
+ */
+@ThreadSafe
+final class ContainerRegistryCache implements PathChildrenCacheListener {
+
+    private static final transient Logger LOGGER = LoggerFactory.getLogger(ContainerRegistryCache.class);
+
+    private final AtomicReference<ContainerRegistrySnapshot> snapshot = new AtomicReference<>(ContainerRegistrySnapshot.EMPTY);
+
+    // Nodes known to exist but not received yet, and the nodes received so far, until the snapshot is initialized
+    @GuardedBy("this") private final Set<String> pending = new HashSet<>();
+    @GuardedBy("this") private final Set<String> received = new HashSet<>();
+    @GuardedBy("this") private boolean seeded;
+
+    ContainerRegistrySnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Start waiting for the initial load with the children of the registry root, read before the tree cache is started.
+     */
+    synchronized void seed(String rootPath, Collection<String> children) {
+        for (String child : children) {
+            String path = ZKPaths.makePath(rootPath, child);
+            if (!received.contains(path)) {
+                pending.add(path);
+            }
+        }
+        seeded = true;
+        maybeInitialize();
+    }
+
+    @Override
+    public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+        ChildData childData = event.getData();
+        if (childData == null || childData.getPath() == null) {
+            return;
+        }
+        switch (event.getType()) {
+            case CHILD_ADDED:
+            case CHILD_UPDATED:
+                Collection<String> children = childData instanceof TreeData ? ((TreeData) childData).getChildren() : null;
+                nodeChanged(childData.getPath(), childData.getStat(), childData.getData(), children);
+                break;
+            case CHILD_REMOVED:
+                nodeRemoved(childData.getPath(), childData.getStat());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Apply the data of a node, with its children if known.
+     * @param stat the stat of the node after the change, or null if unknown in which case any later change replaces the data
+     */
+    synchronized void nodeChanged(String path, Stat stat, byte[] data, Collection<String> children) {
+        ContainerRegistrySnapshot current = snapshot.get();
+        snapshot.set(current.setData(path, stat != null ? stat.getMzxid() : 0, data));
+        if (!current.isInitialized()) {
+            received.add(path);
+            pending.remove(path);
+            if (children != null) {
+                for (String child : children) {
+                    String childPath = ZKPaths.makePath(path, child);
+                    if (!received.contains(childPath)) {
+                        pending.add(childPath);
+                    }
+                }
+            }
+            maybeInitialize();
+        }
+    }
+
+    /**
+     * Apply the removal of a node.
+     * @param stat the last known stat of the node, or null to remove the node and its descendants unconditionally
+     */
+    synchronized void nodeRemoved(String path, Stat stat) {
+        ContainerRegistrySnapshot current = snapshot.get();
+        snapshot.set(current.delete(path, stat != null ? stat.getMzxid() : Long.MAX_VALUE));
+        if (!current.isInitialized()) {
+            String prefix = path + "/";
+            Iterator<String> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                String pendingPath = iterator.next();
+                if (pendingPath.equals(path) || pendingPath.startsWith(prefix)) {
+                    iterator.remove();
+                }
+            }
+            maybeInitialize();
+        }
+    }
+
+    @GuardedBy("this")
+    private void maybeInitialize() {
+        if (seeded && pending.isEmpty()) {
+            ContainerRegistrySnapshot initialized = snapshot.get().initialize();
+            snapshot.set(initialized);
+            received.clear();
+            LOGGER.debug("Container registry loaded: {}", initialized);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import io.fabric8.api.jcip.Immutable;
+import io.fabric8.zookeeper.ZkPath;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable view of the container registry nodes under {@link ZkPath#CONTAINER_REGISTRY}, grouped by container.
+ * <p/>
+ * Every change results in a new snapshot with a higher version. Nodes carry the zxid of their last modification,
+ * so that changes that arrive out of order don't replace newer data.
+ */
+@Immutable
+final class ContainerRegistrySnapshot {
+
+    static final ContainerRegistrySnapshot EMPTY = new ContainerRegistrySnapshot(0, false, Collections.<String, Map<String, Node>>emptyMap());
+
+    private static final String REGISTRY_PREFIX = ZkPath.CONTAINER_REGISTRY.getPath() + "/";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long version;
+    private final boolean initialized;
+    private final Map<String, Map<String, Node>> containers;
+
+    private ContainerRegistrySnapshot(long version, boolean initialized, Map<String, Map<String, Node>> containers) {
+        this.version = version;
+        this.initialized = initialized;
+        this.containers = containers;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * True once the whole registry has been loaded, so that a missing node is known not to exist.
+     */
+    boolean isInitialized() {
+        return initialized;
+    }
+
+    boolean exists(String path) {
+        return getNode(path) != null;
+    }
+
+    byte[] getData(String path) {
+        Node node = getNode(path);
+        return node != null ? node.data : null;
+    }
+
+    /**
+     * Get the zxid of the last modification of the node, or -1 if it doesn't exist.
+     */
+    long getMzxid(String path) {
+        Node node = getNode(path);
+        return node != null ? node.mzxid : -1;
+    }
+
+    String getStringData(String path) {
+        byte[] data = getData(path);
+        return data != null ? new String(data, UTF_8) : null;
+    }
+
+    List<String> getChildren(String path) {
+        String containerId = getContainerId(path);
+        Map<String, Node> nodes = containerId != null ? containers.get(containerId) : null;
+        if (nodes == null) {
+            return Collections.emptyList();
+        }
+        String prefix = path + "/";
+        List<String> children = new ArrayList<>();
+        for (String nodePath : nodes.keySet()) {
+            if (nodePath.startsWith(prefix) && nodePath.indexOf('/', prefix.length()) < 0) {
+                children.add(nodePath.substring(prefix.length()));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Returns a snapshot with the given data for the node, or this snapshot if it already holds newer data.
+     */
+    ContainerRegistrySnapshot setData(String path, long mzxid, byte[] data) {
+        String containerId = getContainerId(path);
+        if (containerId == null) {
+            return this;
+        }
+        Map<String, Node> nodes = containers.get(containerId);
+        Node node = nodes != null ? nodes.get(path) : null;
+        if (node != null && node.mzxid > mzxid) {
+            return this;
+        }
+        Map<String, Node> newNodes = nodes != null ? new HashMap<>(nodes) : new HashMap<String, Node>();
+        newNodes.put(path, new Node(mzxid, data));
+        return withContainer(containerId, newNodes);
+    }
+
+    /**
+     * Returns a snapshot without the node and its descendants that have not been modified after the given zxid.
+     */
+    ContainerRegistrySnapshot delete(String path, long mzxid) {
+        String containerId = getContainerId(path);
+        Map<String, Node> nodes = containerId != null ? containers.get(containerId) : null;
+        if (nodes == null) {
+            return this;
+        }
+        String prefix = path + "/";
+        Map<String, Node> newNodes = new HashMap<>(nodes);
+        Iterator<Map.Entry<String, Node>> iterator = newNodes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Node> entry = iterator.next();
+            String nodePath = entry.getKey();
+            if ((nodePath.equals(path) || nodePath.startsWith(prefix)) && entry.getValue().mzxid <= mzxid) {
+                iterator.remove();
+            }
+        }
+        return newNodes.size() != nodes.size() ? withContainer(containerId, newNodes) : this;
+    }
+
+    ContainerRegistrySnapshot initialize() {
+        return new ContainerRegistrySnapshot(version + 1, true, containers);
+    }
+
+    private ContainerRegistrySnapshot withContainer(String containerId, Map<String, Node> nodes) {
+        Map<String, Map<String, Node>> newContainers = new HashMap<>(containers);
+        if (nodes.isEmpty()) {
+            newContainers.remove(containerId);
+        } else {
+            newContainers.put(containerId, Collections.unmodifiableMap(nodes));
+        }
+        return new ContainerRegistrySnapshot(version + 1, initialized, Collections.unmodifiableMap(newContainers));
+    }
+
+    private Node getNode(String path) {
+        String containerId = getContainerId(path);
+        Map<String, Node> nodes = containerId != null ? containers.get(containerId) : null;
+        return nodes != null ? nodes.get(path) : null;
+    }
+
+    /**
+     * Get the container of a registry path, which follows the category e.g. config, alive or provision.
+     * Returns null for paths that don't belong to a container.
+     */
+    static String getContainerId(String path) {
+        if (path == null || !path.startsWith(REGISTRY_PREFIX)) {
+            return null;
+        }
+        int categoryEnd = path.indexOf('/', REGISTRY_PREFIX.length());
+        if (categoryEnd < 0) {
+            return null;
+        }
+        int containerEnd = path.indexOf('/', categoryEnd + 1);
+        String containerId = containerEnd < 0 ? path.substring(categoryEnd + 1) : path.substring(categoryEnd + 1, containerEnd);
+        return containerId.isEmpty() ? null : containerId;
+    }
+
+    @Override
+    public String toString() {
+        return "ContainerRegistrySnapshot[version=" + version + ",initialized=" + initialized + ",containers=" + containers.keySet() + "]";
+    }
+
+    private static final class Node {
+
+        private final long mzxid;
+        private final byte[] data;
+
+        private Node(long mzxid, byte[] data) {
+            this.mzxid = mzxid;
+            this.data = data;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
@@ -562,7 +563,13 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
                 new Thread("Creating container " + containerName) {
                     public void run() {
                         try {
-                            if (dataStore.get().hasContainer(containerName)) {
+                            boolean exists = dataStore.get().readThrough(new Callable<Boolean>() {
+                                @Override
+                                public Boolean call() throws Exception {
+                                    return dataStore.get().hasContainer(containerName);
+                                }
+                            });
+                            if (exists) {
                                 CreateContainerBasicMetadata metadata = new CreateContainerBasicMetadata();
                                 metadata.setContainerName(containerName);
                                 metadata.setCreateOptions(containerOptions);
@@ -123,6 +123,10 @@ public class PatchServiceImpl implements PatchService {
             checkRequirements(version, descriptors);
             // Create patch profile
             List<Profile> profiles = version.getProfiles();
+            // the patch profiles and the default profile are changed in a single commit
+            ProfileChanges changes = new ProfileChanges();
+            Profile defaultProfile = version.getRequiredProfile("default");
+            List<String> parentIds = new LinkedList<String>(defaultProfile.getParentIds());
             for (PatchDescriptor descriptor : descriptors) {
                 String profileId = "patch-" + descriptor.getId();
                 Profile profile = getPatchProfile(version, descriptor);
@@ -139,20 +143,22 @@ public class PatchServiceImpl implements PatchService {
                     if( descriptor.migratorBundle !=null ) {
                         builder.setBundles(Collections.singletonList(descriptor.migratorBundle));
                     }
-                    profile = profileService.createProfile(builder.getProfile());
-                    Profile defaultProfile = version.getRequiredProfile("default");
-                    List<String> parentIds = new LinkedList<String>();
-                    parentIds.addAll(defaultProfile.getParentIds());
-                    if (!parentIds.contains(profile.getId())) {
-                        parentIds.add(profile.getId());
-                        builder = ProfileBuilder.Factory.createFrom(defaultProfile);
-                        builder.setParents(parentIds);
-                        profileService.updateProfile(builder.getProfile());
+                    changes.createProfile(builder.getProfile());
+                    if (!parentIds.contains(profileId)) {
+                        parentIds.add(profileId);
                     }
                 } else {
                     LOGGER.info("The patch {} has already been applied to version {}, ignoring.", descriptor.getId(), version.getId());
                 }
             }
+            if (!parentIds.equals(defaultProfile.getParentIds())) {
+                ProfileBuilder builder = ProfileBuilder.Factory.createFrom(defaultProfile);
+                builder.setParents(parentIds);
+                changes.updateProfile(builder.getProfile());
+            }
+            if (!changes.isEmpty()) {
+                profileService.updateProfiles(changes);
+            }
         } catch (PatchException e) {
             // PatchException already is a RuntimeException - simply rethrowing it
             throw e;
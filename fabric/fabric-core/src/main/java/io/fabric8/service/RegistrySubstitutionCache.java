@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import io.fabric8.api.jcip.ThreadSafe;
+import io.fabric8.zookeeper.ZkPath;
+import io.fabric8.zookeeper.utils.InterpolationHelper;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.curator.framework.CuratorFramework;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Memoizes the substitution of {@code zk:} placeholders in container registry values.
+ * <p/>
+ * Each result records the registry nodes it has been resolved from, with the zxid of their last modification,
+ * and is reused for as long as none of them has changed in the registry snapshot. Placeholders that refer to
+ * nodes outside of the container registry, or to properties and json fragments, are resolved from ZooKeeper
+ * and make the result uncacheable.
+ */
+@ThreadSafe
+final class RegistrySubstitutionCache {
+
+    private static final String ZK_PREFIX = "zk:";
+    private static final int MAX_SUBSTITUTIONS = 10000;
+
+    private final Cache<String, Substitution> substitutions = CacheBuilder.newBuilder().maximumSize(MAX_SUBSTITUTIONS).build();
+
+    /**
+     * Get the given value with its placeholders substituted, as of the given registry snapshot.
+     */
+    String substitute(final ContainerRegistrySnapshot snapshot, final CuratorFramework curator, String value) {
+        if (value == null) {
+            return null;
+        }
+        Substitution substitution = substitutions.getIfPresent(value);
+        if (substitution != null && substitution.isCurrent(snapshot)) {
+            return substitution.result;
+        }
+
+        final Map<String, Long> dependencies = new HashMap<>();
+        final boolean[] cacheable = new boolean[] { true };
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("data", value);
+        InterpolationHelper.performSubstitution(props, new InterpolationHelper.SubstitutionCallback() {
+            @Override
+            public String getValue(String key) {
+                if (key.startsWith(ZK_PREFIX)) {
+                    String path = getRegistryPath(key);
+                    if (path != null) {
+                        dependencies.put(path, snapshot.getMzxid(path));
+                        return snapshot.getStringData(path);
+                    }
+                    cacheable[0] = false;
+                    try {
+                        return new String(ZkPath.loadURL(curator, key), "UTF-8");
+                    } catch (Exception e) {
+                        //ignore and just return null.
+                    }
+                }
+                return null;
+            }
+        });
+        String result = props.get("data");
+        if (cacheable[0]) {
+            substitutions.put(value, new Substitution(result, dependencies));
+        }
+        return result;
+    }
+
+    /**
+     * Get the registry node a {@code zk:} url refers to, or null if it is outside of the container registry
+     * or refers to a fragment of the node data.
+     */
+    private static String getRegistryPath(String url) {
+        String path = url.substring(ZK_PREFIX.length()).trim();
+        if (path.contains("#")) {
+            return null;
+        }
+        if (!path.startsWith("/")) {
+            path = ZkPath.CONTAINER.getPath(path);
+        }
+        return ContainerRegistrySnapshot.getContainerId(path) != null ? path : null;
+    }
+
+    private static final class Substitution {
+
+        private final String result;
+        private final Map<String, Long> dependencies;
+
+        private Substitution(String result, Map<String, Long> dependencies) {
+            this.result = result;
+            this.dependencies = Collections.unmodifiableMap(dependencies);
+        }
+
+        private boolean isCurrent(ContainerRegistrySnapshot snapshot) {
+            for (Map.Entry<String, Long> entry : dependencies.entrySet()) {
+                if (snapshot.getMzxid(entry.getKey()) != entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -18,7 +18,7 @@ package io.fabric8.service;
 import static io.fabric8.zookeeper.ZkPath.CONTAINER_DOMAIN;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.deleteSafe;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
-import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getByteData;
+import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildren;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildrenSafe;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getStringData;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getSubstitutedPath;
@@ -30,6 +30,8 @@ import io.fabric8.api.DataStore;
 import io.fabric8.api.FabricException;
 import io.fabric8.api.FabricRequirements;
 import io.fabric8.api.FabricService;
+import io.fabric8.api.ProfileChangeEvent;
+import io.fabric8.api.ProfileChangeListener;
 import io.fabric8.api.ProfileService;
 import io.fabric8.api.RuntimeProperties;
 import io.fabric8.api.ZkDefs;
@@ -44,24 +46,43 @@ import io.fabric8.utils.Base64Encoder;
 import io.fabric8.utils.FabricVersionUtils;
 import io.fabric8.utils.NamedThreadFactory;
 import io.fabric8.zookeeper.ZkPath;
+import io.fabric8.zookeeper.utils.InterpolationHelper;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
 import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
@@ -73,6 +94,7 @@ import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 import io.fabric8.api.gravia.IllegalArgumentAssertion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -87,6 +109,8 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     
     private static final transient Logger LOGGER = LoggerFactory.getLogger(ZkDataStoreImpl.class);
     
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private static final String JVM_OPTIONS_PATH = "/fabric/configs/io.fabric8.containers.jvmOptions";
     private static final String REQUIREMENTS_JSON_PATH = "/fabric/configs/io.fabric8.requirements.json";
     
@@ -97,7 +121,20 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     
     private final CopyOnWriteArrayList<Runnable> callbacks = new CopyOnWriteArrayList<Runnable>();
     private final ExecutorService cacheExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("zk-cache"));
+    private final ExecutorService containerCacheExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("zk-container-cache"));
     private final ExecutorService callbacksExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("zk-datastore"));
+    // Completes the asynchronous reads, off the ZooKeeper event thread as substitutions may read more nodes
+    private final ExecutorService asyncReadExecutor = Executors.newFixedThreadPool(4, new NamedThreadFactory("zk-datastore-async"));
+    private final ContainerRegistryCache containerRegistry = new ContainerRegistryCache();
+    private final RegistrySubstitutionCache substitutions = new RegistrySubstitutionCache();
+    // incremented on each config cache event and profile change notification, see getGeneration()
+    private final AtomicLong configGeneration = new AtomicLong();
+    private final ThreadLocal<Boolean> readThrough = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
     private TreeCache configCache;
     private TreeCache containerCache;
 
@@ -118,26 +155,35 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
         configCache.start(TreeCache.StartMode.NORMAL);
         configCache.getListenable().addListener(this);
 
-        containerCache = new TreeCache(curator.get(), ZkPath.CONTAINERS.getPath(), true, false, true, cacheExecutor);
+        // The container cache needs its own thread, as the cache loop of the config cache never gives up the shared one.
+        // It only feeds the container registry snapshot, container changes don't trigger the configuration callbacks.
+        containerCache = new TreeCache(curator.get(), ZkPath.CONTAINER_REGISTRY.getPath(), true, false, true, containerCacheExecutor);
+        containerCache.getListenable().addListener(containerRegistry);
+        try {
+            containerRegistry.seed(ZkPath.CONTAINER_REGISTRY.getPath(), getChildrenSafe(curator.get(), ZkPath.CONTAINER_REGISTRY.getPath()));
+        } catch (Exception e) {
+            LOGGER.warn("Cannot read the container registry, container reads will go to ZooKeeper: " + e);
+        }
         containerCache.start(TreeCache.StartMode.NORMAL);
-        containerCache.getListenable().addListener(this);
-
     }
 
     private void deactivateInternal() {
         configCache.getListenable().removeListener(this);
         Closeables.closeQuietly(configCache);
 
-        containerCache.getListenable().removeListener(this);
+        containerCache.getListenable().removeListener(containerRegistry);
         Closeables.closeQuietly(containerCache);
 
         callbacksExecutor.shutdownNow();
+        asyncReadExecutor.shutdownNow();
         cacheExecutor.shutdownNow();
+        containerCacheExecutor.shutdownNow();
     }
 
     @Override
     public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
         if (isValid()) {
+            configGeneration.incrementAndGet();
 
             // guard against events with null data or path
             String path;
@@ -189,26 +235,36 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     
     @Override
     public void fireChangeNotifications() {
-        runCallbacks();
+        fireChangeNotifications(ProfileChangeEvent.all());
+    }
+
+    @Override
+    public void fireChangeNotifications(ProfileChangeEvent event) {
+        configGeneration.incrementAndGet();
+        runCallbacks(event);
     }
     
-    private void runCallbacks() {
+    private void runCallbacks(final ProfileChangeEvent event) {
         callbacksExecutor.submit(new Runnable() {
             @Override
             public void run() {
-                doRunCallbacks();
+                doRunCallbacks(event);
             }
         });
     }
     
-    private void doRunCallbacks() {
+    private void doRunCallbacks(ProfileChangeEvent event) {
         assertValid();
         for (Runnable callback : callbacks) {
             try {
                 if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Running callback " + callback);
+                    LOGGER.debug("Running callback " + callback + " for " + event);
+                }
+                if (callback instanceof ProfileChangeListener) {
+                    ((ProfileChangeListener) callback).profilesChanged(event);
+                } else {
+                    callback.run();
                 }
-                callback.run();
             } catch (Throwable e) {
                 LOGGER.warn("Caught: " + e, e);
             }
@@ -236,7 +292,10 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     public List<String> getContainers() {
         assertValid();
         try {
-            return getChildrenSafe(curator.get(), ZkPath.CONFIGS_CONTAINERS.getPath());
+            if (readThrough.get()) {
+                return getChildrenSafe(curator.get(), ZkPath.CONFIGS_CONTAINERS.getPath());
+            }
+            return getChildren(configCache, ZkPath.CONFIGS_CONTAINERS.getPath());
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -252,7 +311,9 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     public String getContainerParent(String containerId) {
         assertValid();
         try {
-            String parentName = getStringData(curator.get(), ZkPath.CONTAINER_PARENT.getPath(containerId));
+            String path = ZkPath.CONTAINER_PARENT.getPath(containerId);
+            ContainerRegistrySnapshot snapshot = getRegistrySnapshot();
+            String parentName = snapshot != null ? snapshot.getStringData(path) : getStringData(curator.get(), path);
             return parentName != null ? parentName.trim() : "";
         } catch (KeeperException.NoNodeException e) {
             // Ignore
@@ -281,6 +342,11 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             deleteSafe(curator.get(), ZkPath.CONTAINER_PROVISION.getPath(containerId));
             deleteSafe(curator.get(), ZkPath.CONTAINER_STATUS.getPath(containerId));
             deleteSafe(curator.get(), ZkPath.AUTHENTICATION_CONTAINER.getPath(containerId));
+            containerRegistry.nodeRemoved(ZkPath.CONTAINER.getPath(containerId), null);
+            containerRegistry.nodeRemoved(ZkPath.CONTAINER_ALIVE.getPath(containerId), null);
+            containerRegistry.nodeRemoved(ZkPath.CONTAINER_DOMAINS.getPath(containerId), null);
+            containerRegistry.nodeRemoved(ZkPath.CONTAINER_PROVISION.getPath(containerId), null);
+            containerRegistry.nodeRemoved(ZkPath.CONTAINER_STATUS.getPath(containerId), null);
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -304,7 +370,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
 
             setData(curator.get(), ZkPath.CONFIG_CONTAINER.getPath(containerId), versionId);
             setData(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), sb.toString());
-            setData(curator.get(), ZkPath.CONTAINER_PARENT.getPath(containerId), parent);
+            setRegistryData(ZkPath.CONTAINER_PARENT.getPath(containerId), parent);
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -341,7 +407,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             for (Map.Entry<String, String> entry : configuration.entrySet()) {
                 String key = entry.getKey();
                 String value = entry.getValue();
-                setData(curator.get(), ZkPath.CONTAINER_ENTRY.getPath(metadata.getContainerName(), key), value);
+                setRegistryData(ZkPath.CONTAINER_ENTRY.getPath(metadata.getContainerName(), key), value);
             }
 
             // If no resolver specified but a resolver is already present in the registry, use the registry value
@@ -359,7 +425,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
                 resolver = ZkDefs.DEFAULT_RESOLVER;
             }
             // Set the resolver if not already set
-            setData(curator.get(), ZkPath.CONTAINER_RESOLVER.getPath(containerId), resolver);
+            setRegistryData(ZkPath.CONTAINER_RESOLVER.getPath(containerId), resolver);
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -369,7 +435,9 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     public CreateContainerMetadata getContainerMetadata(String containerId, final ClassLoader classLoader) {
         assertValid();
         try {
-            byte[] encoded = getByteData(configCache, ZkPath.CONTAINER_METADATA.getPath(containerId));
+            String path = ZkPath.CONTAINER_METADATA.getPath(containerId);
+            ContainerRegistrySnapshot snapshot = getRegistrySnapshot();
+            byte[] encoded = snapshot != null ? snapshot.getData(path) : curator.get().getData().forPath(path);
             if (encoded == null) {
                 return null;
             }
@@ -397,7 +465,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
         assertValid();
         //We encode the metadata so that they are more friendly to import/export.
         try {
-            setData(curator.get(), ZkPath.CONTAINER_METADATA.getPath(metadata.getContainerName()), Base64Encoder.encode(ObjectUtils.toBytes(metadata)));
+            setRegistryData(ZkPath.CONTAINER_METADATA.getPath(metadata.getContainerName()), Base64Encoder.encode(ObjectUtils.toBytes(metadata)));
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -471,7 +539,9 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     public boolean isContainerAlive(String id) {
         assertValid();
         try {
-            return exists(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(id)) != null;
+            String path = ZkPath.CONTAINER_ALIVE.getPath(id);
+            ContainerRegistrySnapshot snapshot = getRegistrySnapshot();
+            return snapshot != null ? snapshot.exists(path) : exists(curator.get(), path) != null;
         } catch (KeeperException.NoNodeException e) {
             return false;
         } catch (Exception e) {
@@ -483,10 +553,12 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     public void setContainerAlive(String id, boolean flag) {
         assertValid();
         try {
+            String path = ZkPath.CONTAINER_ALIVE.getPath(id);
             if (flag) {
-                setData(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(id), "alive");
+                setRegistryData(path, "alive");
             } else {
-                deleteSafe(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(id));
+                deleteSafe(curator.get(), path);
+                containerRegistry.nodeRemoved(path, null);
             }
         } catch (KeeperException.NoNodeException e) {
             // ignore
@@ -500,7 +572,9 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
         assertValid();
         if (attribute == ContainerAttribute.Domains) {
             try {
-                List<String> list = curator.get().getChildren().forPath(ZkPath.CONTAINER_DOMAINS.getPath(containerId));
+                String path = ZkPath.CONTAINER_DOMAINS.getPath(containerId);
+                ContainerRegistrySnapshot snapshot = getRegistrySnapshot();
+                List<String> list = snapshot != null ? snapshot.getChildren(path) : curator.get().getChildren().forPath(path);
                 Collections.sort(list);
                 StringBuilder sb = new StringBuilder();
                 for (String l : list) {
@@ -515,10 +589,17 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             }
         } else {
             try {
-                if (substituted) {
-                    return getSubstitutedPath(curator.get(), getAttributePath(containerId, attribute));
+                String path = getAttributePath(containerId, attribute);
+                ContainerRegistrySnapshot snapshot = getRegistrySnapshot();
+                if (snapshot == null) {
+                    return substituted ? getSubstitutedPath(curator.get(), path) : getStringData(curator.get(), path);
+                } else if (substituted) {
+                    String data = snapshot.getStringData(path);
+                    return data != null && !data.isEmpty() ? substitutions.substitute(snapshot, curator.get(), data) : null;
+                } else if (snapshot.exists(path)) {
+                    return snapshot.getStringData(path);
                 } else {
-                    return getStringData(curator.get(), getAttributePath(containerId, attribute));
+                    throw new KeeperException.NoNodeException(path);
                 }
             } catch (KeeperException.NoNodeException e) {
                 if (mandatory) {
@@ -539,8 +620,8 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
         // TODO: something like ${zk:container/${zk:container/resolver}}
         if (attribute == ContainerAttribute.Resolver) {
             try {
-                setData(curator.get(), ZkPath.CONTAINER_IP.getPath(containerId), "${zk:" + containerId + "/" + value + "}");
-                setData(curator.get(), ZkPath.CONTAINER_RESOLVER.getPath(containerId), value);
+                setRegistryData(ZkPath.CONTAINER_IP.getPath(containerId), "${zk:" + containerId + "/" + value + "}");
+                setRegistryData(ZkPath.CONTAINER_RESOLVER.getPath(containerId), value);
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
@@ -552,7 +633,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
                     String path = CONTAINER_DOMAIN.getPath(containerId, domain);
                     // add any missing domains
                     if (!zkSet.remove(domain)) {
-                        setData(curator.get(), path, "");
+                        setRegistryData(path, "");
                     }
                 }
 
@@ -560,6 +641,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
                 for (String domain : zkSet) {
                     String path = CONTAINER_DOMAIN.getPath(containerId, domain);
                     deleteSafe(curator.get(), path);
+                    containerRegistry.nodeRemoved(path, null);
                 }
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
@@ -569,7 +651,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
                 //                if (value == null) {
                 //                    deleteSafe(zk, getAttributePath(containerId, attribute));
                 //                } else {
-                setData(curator.get(), getAttributePath(containerId, attribute), value);
+                setRegistryData(getAttributePath(containerId, attribute), value);
                 //                }
             } catch (KeeperException.NoNodeException e) {
                 // Ignore
@@ -635,6 +717,257 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             throw new IllegalArgumentException("Unsupported container attribute " + attribute);
         }
     }
+
+    /**
+     * Get the container registry snapshot to read from, or null if the read has to go to ZooKeeper
+     * because the snapshot is still loading or the caller asked for read-through.
+     */
+    private ContainerRegistrySnapshot getRegistrySnapshot() {
+        ContainerRegistrySnapshot snapshot = containerRegistry.getSnapshot();
+        return snapshot.isInitialized() && !readThrough.get() ? snapshot : null;
+    }
+
+    /**
+     * Sets the data of a container registry node and applies it to the registry snapshot right away,
+     * so that the writer reads its own writes without waiting for the cache event.
+     */
+    private void setRegistryData(String path, String value) throws Exception {
+        byte[] bytes = value != null ? value.getBytes("UTF-8") : null;
+        CuratorFramework curatorFramework = curator.get();
+        if (exists(curatorFramework, path) == null) {
+            curatorFramework.create().creatingParentsIfNeeded().forPath(path, bytes);
+        }
+        Stat stat = curatorFramework.setData().forPath(path, bytes);
+        containerRegistry.nodeChanged(path, stat, bytes, null);
+    }
+
+    @Override
+    public <T> T readThrough(Callable<T> task) {
+        assertValid();
+        Boolean previous = readThrough.get();
+        readThrough.set(Boolean.TRUE);
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw FabricException.launderThrowable(e);
+        } finally {
+            readThrough.set(previous);
+        }
+    }
+
+    @Override
+    public long getGeneration() {
+        // both parts only grow, so does their sum
+        return containerRegistry.getSnapshot().getVersion() + configGeneration.get();
+    }
+
+    @Override
+    public ListenableFuture<String> getContainerVersionAsync(String containerId) {
+        // served by the config cache, there is no round trip to wait for
+        try {
+            return Futures.immediateFuture(getContainerVersion(containerId));
+        } catch (FabricException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ListenableFuture<List<String>> getContainerProfilesAsync(String containerId) {
+        // served by the config cache, there is no round trip to wait for
+        try {
+            return Futures.immediateFuture(getContainerProfiles(containerId));
+        } catch (FabricException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ListenableFuture<String> getContainerAttributeAsync(final String containerId, final ContainerAttribute attribute, final String def, final boolean mandatory, final boolean substituted) {
+        assertValid();
+        if (getRegistrySnapshot() != null) {
+            // served by the container registry snapshot, with the substitutions of the registry substitution cache
+            try {
+                return Futures.immediateFuture(getContainerAttribute(containerId, attribute, def, mandatory, substituted));
+            } catch (FabricException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+        if (attribute == ContainerAttribute.Domains) {
+            ListenableFuture<List<String>> children = getChildrenAsync(ZkPath.CONTAINER_DOMAINS.getPath(containerId));
+            return Futures.withFallback(Futures.transform(children, new Function<List<String>, String>() {
+                @Override
+                public String apply(List<String> domains) {
+                    List<String> sorted = new ArrayList<String>(domains);
+                    Collections.sort(sorted);
+                    return Strings.join(sorted, "\n");
+                }
+            }, asyncReadExecutor), new FutureFallback<String>() {
+                @Override
+                public ListenableFuture<String> create(Throwable t) {
+                    return Futures.immediateFuture("");
+                }
+            });
+        }
+        ListenableFuture<String> value = Futures.transform(getDataAsync(getAttributePath(containerId, attribute)), new Function<byte[], String>() {
+            @Override
+            public String apply(byte[] data) {
+                return data != null ? new String(data, UTF_8) : null;
+            }
+        }, asyncReadExecutor);
+        if (substituted) {
+            value = Futures.transform(value, new AsyncFunction<String, String>() {
+                @Override
+                public ListenableFuture<String> apply(String data) {
+                    return data != null && !data.isEmpty() ? substituteAsync(data, new HashMap<String, String>()) : Futures.<String>immediateFuture(null);
+                }
+            }, asyncReadExecutor);
+        }
+        return Futures.withFallback(value, new FutureFallback<String>() {
+            @Override
+            public ListenableFuture<String> create(Throwable t) {
+                if (t instanceof KeeperException.NoNodeException && (substituted || !mandatory)) {
+                    // like getContainerAttribute(), a missing substituted attribute is null and a missing plain one the default
+                    return Futures.immediateFuture(substituted ? null : def);
+                }
+                return Futures.immediateFailedFuture(FabricException.launderThrowable(t));
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Map<String, Map<ContainerAttribute, String>>> getContainerAttributesAsync(Collection<String> containerIds, Collection<ContainerAttribute> attributes, boolean substituted) {
+        assertValid();
+        final List<String> ids = new ArrayList<String>(containerIds);
+        final List<ContainerAttribute> attrs = new ArrayList<ContainerAttribute>(attributes);
+        // issue all the reads before waiting for any of them, so that they are pipelined
+        List<ListenableFuture<String>> values = new ArrayList<ListenableFuture<String>>(ids.size() * attrs.size());
+        for (String containerId : ids) {
+            for (ContainerAttribute attribute : attrs) {
+                values.add(getContainerAttributeAsync(containerId, attribute, null, false, substituted));
+            }
+        }
+        return Futures.transform(Futures.allAsList(values), new Function<List<String>, Map<String, Map<ContainerAttribute, String>>>() {
+            @Override
+            public Map<String, Map<ContainerAttribute, String>> apply(List<String> values) {
+                Map<String, Map<ContainerAttribute, String>> result = new LinkedHashMap<String, Map<ContainerAttribute, String>>();
+                Iterator<String> it = values.iterator();
+                for (String containerId : ids) {
+                    Map<ContainerAttribute, String> containerAttributes = new EnumMap<ContainerAttribute, String>(ContainerAttribute.class);
+                    for (ContainerAttribute attribute : attrs) {
+                        String value = it.next();
+                        if (value != null) {
+                            containerAttributes.put(attribute, value);
+                        }
+                    }
+                    if (!containerAttributes.isEmpty()) {
+                        result.put(containerId, containerAttributes);
+                    }
+                }
+                return result;
+            }
+        }, asyncReadExecutor);
+    }
+
+    private ListenableFuture<byte[]> getDataAsync(String path) {
+        final SettableFuture<byte[]> future = SettableFuture.create();
+        try {
+            curator.get().getData().inBackground(new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                    if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                        future.set(event.getData());
+                    } else {
+                        future.setException(KeeperException.create(KeeperException.Code.get(event.getResultCode()), event.getPath()));
+                    }
+                }
+            }, asyncReadExecutor).forPath(path);
+        } catch (Exception e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    private ListenableFuture<List<String>> getChildrenAsync(String path) {
+        final SettableFuture<List<String>> future = SettableFuture.create();
+        try {
+            curator.get().getChildren().inBackground(new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                    if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                        future.set(event.getChildren());
+                    } else {
+                        future.setException(KeeperException.create(KeeperException.Code.get(event.getResultCode()), event.getPath()));
+                    }
+                }
+            }, asyncReadExecutor).forPath(path);
+        } catch (Exception e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    /**
+     * Substitutes the {@code zk:} placeholders of the value like {@link io.fabric8.zookeeper.utils.ZooKeeperUtils#getSubstitutedData},
+     * with the nodes they refer to read in the background. The values of these nodes may have placeholders of their own,
+     * so the placeholders are resolved in rounds, until all of them have been read.
+     *
+     * @param resolved the values of the placeholders read so far, null for the ones that couldn't be read
+     */
+    private ListenableFuture<String> substituteAsync(final String value, final Map<String, String> resolved) {
+        final Set<String> unresolved = new LinkedHashSet<String>();
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("data", value);
+        InterpolationHelper.performSubstitution(props, new InterpolationHelper.SubstitutionCallback() {
+            @Override
+            public String getValue(String key) {
+                if (key.startsWith("zk:")) {
+                    if (resolved.containsKey(key)) {
+                        return resolved.get(key);
+                    }
+                    unresolved.add(key);
+                }
+                return null;
+            }
+        });
+        if (unresolved.isEmpty()) {
+            return Futures.immediateFuture(props.get("data"));
+        }
+        // issue the reads of the round before waiting for any of them
+        final List<String> urls = new ArrayList<String>(unresolved);
+        List<ListenableFuture<String>> values = new ArrayList<ListenableFuture<String>>(urls.size());
+        for (String url : urls) {
+            values.add(loadURLAsync(url));
+        }
+        return Futures.transform(Futures.successfulAsList(values), new AsyncFunction<List<String>, String>() {
+            @Override
+            public ListenableFuture<String> apply(List<String> values) {
+                // like getSubstitutedData(), a placeholder that can't be read is left to the interpolation
+                for (int i = 0; i < urls.size(); i++) {
+                    resolved.put(urls.get(i), values.get(i));
+                }
+                return substituteAsync(value, resolved);
+            }
+        }, asyncReadExecutor);
+    }
+
+    private ListenableFuture<String> loadURLAsync(final String url) {
+        ListenableFuture<byte[]> data;
+        try {
+            data = getDataAsync(ZkPath.getURLPath(url));
+        } catch (Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        return Futures.transform(data, new Function<byte[], String>() {
+            @Override
+            public String apply(byte[] data) {
+                try {
+                    return new String(ZkPath.getURLData(url, data), UTF_8);
+                } catch (Exception e) {
+                    throw FabricException.launderThrowable(e);
+                }
+            }
+        }, asyncReadExecutor);
+    }
     
     @Override
     public String getDefaultVersion() {
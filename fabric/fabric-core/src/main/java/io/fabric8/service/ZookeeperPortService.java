@@ -15,16 +15,26 @@
  */
 package io.fabric8.service;
 
+import java.nio.charset.Charset;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import io.fabric8.api.scr.support.Strings;
-import io.fabric8.internal.Objects;
+import io.fabric8.common.util.Closeables;
+import io.fabric8.utils.NamedThreadFactory;
 import io.fabric8.utils.Ports;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.api.UnhandledErrorListener;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeData;
 import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreV2;
 import org.apache.curator.framework.recipes.locks.Lease;
 import org.apache.felix.scr.annotations.Activate;
@@ -35,120 +45,105 @@ import org.apache.felix.scr.annotations.Service;
 import io.fabric8.api.Container;
 import io.fabric8.api.FabricException;
 import io.fabric8.api.PortService;
+import io.fabric8.api.jcip.GuardedBy;
 import io.fabric8.api.jcip.ThreadSafe;
 import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.zookeeper.ZkPath;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.*;
 
+/**
+ * Registers the ports of the containers in ZooKeeper.
+ * <p/>
+ * Every port in use on a host is claimed by a node under {@link ZkPath#PORTS_IP}, that holds the id of the owning container.
+ * The claims are created optimistically, so that allocating a port from a range needs no lock, and a cache of the claims
+ * per host is used to skip the ports known to be in use. Ports registered by older versions, in the data of the host node,
+ * are still honoured.
+ * <p/>
+ * A {@link Lock} acquires a semaphore per host, the first time the host is used within its scope, so that the
+ * registrations on different hosts don't wait for each other.
+ * <p/>
+ * Until all the containers of the fabric have been upgraded, the service runs in legacy mode, which is turned off
+ * with the {@code fabric.ports.legacy=false} system property. In legacy mode the registrations also take the global
+ * port lock and list the claimed ports in the data of the host node, like older versions do, so that the containers
+ * that have not been upgraded yet don't allocate the same ports. Registering a port claimed by another container
+ * only logs a warning in legacy mode, like older versions did, and fails once the legacy mode is turned off.
+ */
 @ThreadSafe
 @Component(name = "io.fabric8.portservice.zookeeper", label = "Fabric8 ZooKeeper Port Service", metatype = false)
 @Service(PortService.class)
 public final class ZookeeperPortService extends AbstractComponent implements PortService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ZookeeperPortService.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String RESERVED_PORTS = "reserved_ports";
+    private static final String LEGACY_PROPERTY = "fabric.ports.legacy";
 
 
     @Reference(referenceInterface = CuratorFramework.class)
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
 
-    private InterProcessSemaphoreV2 interProcessLock;
+    private final ConcurrentMap<String, InterProcessSemaphoreV2> hostLocks = new ConcurrentHashMap<String, InterProcessSemaphoreV2>();
+    private volatile boolean legacy = Boolean.parseBoolean(System.getProperty(LEGACY_PROPERTY, "true"));
+    private InterProcessSemaphoreV2 legacyLock;
+    private ExecutorService portsCacheExecutor;
+    private TreeCache portsCache;
 
     @Activate
-    void activate() {
-        interProcessLock = new InterProcessSemaphoreV2(curator.get(), ZkPath.PORTS_LOCK.getPath(), 1);
+    void activate() throws Exception {
+        legacyLock = new InterProcessSemaphoreV2(curator.get(), ZkPath.PORTS_LOCK.getPath(), 1);
+        portsCacheExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("zk-ports-cache"));
+        portsCache = new TreeCache(curator.get(), ZkPath.PORTS_IPS.getPath(), true, false, true, portsCacheExecutor);
+        portsCache.start(TreeCache.StartMode.NORMAL);
         activateComponent();
     }
 
     @Deactivate
     void deactivate() {
         deactivateComponent();
+        Closeables.closeQuietly(portsCache);
+        portsCacheExecutor.shutdownNow();
+        hostLocks.clear();
     }
 
     @Override
     public int registerPort(Container container, String pid, String key, int fromPort, int toPort, Set<Integer> excludes) {
         assertValid();
-        Lease lease = null;
-        try {
-            lease = interProcessLock.acquire(60, TimeUnit.SECONDS);
-            if (lease != null) {
-                int port = lookupPort(container, pid, key);
-                if (port > 0 && (port >= fromPort && port <= toPort)) {
-                    //if the previous port isn't in the port range then
-                    //get one from the port range
-                    return port;
-                }
-                Set<Integer> boundPorts = findUsedPortByHost(container, lease);
-                boundPorts.addAll(excludes);
-
-                for (port = fromPort; port <= toPort; port++) {
-                    if (!boundPorts.contains(port)) {
-                        if(Ports.isPortFree(port)) {
-                            registerPort(container, pid, key, port, lease);
-                            return port;
-                        }
-                    }
-                }
-            } else {
-                throw new FabricException("Could not acquire port lock for pid " + pid);
-            }
-            throw new FabricException("Could not find port within range [" + fromPort + "," + toPort + "] for pid " + pid);
-        } catch (InterruptedException ex) {
-            cleanUpDirtyZKNodes(interProcessLock);
-            throw FabricException.launderThrowable(ex);
-        } catch (Exception ex) {
-            throw FabricException.launderThrowable(ex);
-        } finally {
-            releaseLock(lease);
-        }
-    }
-
-    private void registerPort(Container container, String pid, String key, int port, Lease existingLease) {
-        assertValid();
-        String portAsString = String.valueOf(port);
-        String containerPortsPath = ZkPath.PORTS_CONTAINER_PID_KEY.getPath(container.getId(), pid, key);
-        String reservedPortsPath = ZkPath.PORTS_CONTAINER_RESERVED_PORTS.getPath(container.getId());
-
         String ip = container.getIp();
         assertValidIp(container, ip);
-        String ipPortsPath = ZkPath.PORTS_IP.getPath(ip);
-        Lease lease = null;
+        HostLocks scope = new HostLocks();
         try {
-            if (existingLease != null) {
-                lease = existingLease;
-            } else {
-                lease = interProcessLock.acquire(60, TimeUnit.SECONDS);
+            scope.acquireLegacy();
+            int previousPort = lookupPort(container, pid, key);
+            if (previousPort > 0 && (previousPort >= fromPort && previousPort <= toPort)) {
+                //if the previous port isn't in the port range then
+                //get one from the port range
+                return previousPort;
             }
-            if (lease != null) {
-                createDefault(curator.get(), containerPortsPath, portAsString);
-                createDefault(curator.get(), ipPortsPath, portAsString);
-
-
-                setData(curator.get(), containerPortsPath, portAsString);
-                String existingPorts = getStringData(curator.get(), ipPortsPath);
-                if (!existingPorts.contains(portAsString)) {
-                    setData(curator.get(), ipPortsPath, existingPorts + " " + portAsString);
-                    createDefault(curator.get(), reservedPortsPath, portAsString);
-                    String reservedPortsPerContainer = getStringData(curator.get(), reservedPortsPath);
-                    if (!reservedPortsPerContainer.contains(portAsString)) {
-                        setData(curator.get(), reservedPortsPath, reservedPortsPerContainer + " " + portAsString);
+            // The cached ports may miss the latest claims, these are detected when creating the claim.
+            // The ports listed by older versions are not claimed, they are read under the legacy lock instead.
+            Set<Integer> boundPorts = legacy ? getPortsByHost(ip) : getCachedPortsByHost(ip);
+            boundPorts.addAll(excludes);
+
+            for (int port = fromPort; port <= toPort; port++) {
+                if (!boundPorts.contains(port) && Ports.isPortFree(port) && createClaim(container.getId(), ip, port)) {
+                    setData(curator.get(), ZkPath.PORTS_CONTAINER_PID_KEY.getPath(container.getId(), pid, key), String.valueOf(port));
+                    if (previousPort > 0) {
+                        releasePort(container.getId(), ip, previousPort);
                     }
+                    return port;
                 }
-            } else {
-                throw new FabricException("Could not acquire port lock for pid " + pid);
             }
-        } catch (InterruptedException ex) {
-            cleanUpDirtyZKNodes(interProcessLock);
-            throw FabricException.launderThrowable(ex);
+            throw new FabricException("Could not find port within range [" + fromPort + "," + toPort + "] for pid " + pid);
         } catch (Exception ex) {
             throw FabricException.launderThrowable(ex);
         } finally {
-            if (existingLease == null) {
-                releaseLock(lease);
-            }
+            scope.release();
         }
     }
 
@@ -165,52 +160,54 @@ public final class ZookeeperPortService extends AbstractComponent implements Por
 
     @Override
     public void registerPort(Container container, String pid, String key, int port, Lock lock) {
-        Lease lease = null;
-        if (lock != null && lock instanceof LeaseLock) {
-            lease = ((LeaseLock)lock).getLease();
-        }
-        registerPort(container, pid, key, port, lease);
-    }
-
-    private void unregisterPort(Container container, String pid, String key, Lease existingLease) {
         assertValid();
-        String containerPortsPidKeyPath = ZkPath.PORTS_CONTAINER_PID_KEY.getPath(container.getId(), pid, key);
         String ip = container.getIp();
         assertValidIp(container, ip);
-        String ipPortsPath = ZkPath.PORTS_IP.getPath(ip);
-        Lease lease = null;
+        HostLocks scope = lock instanceof HostLocks ? (HostLocks) lock : new HostLocks();
         try {
-            if (existingLease != null) {
-                lease = existingLease;
-            } else {
-                lease = interProcessLock.acquire(60, TimeUnit.SECONDS);
+            // the global lock of older versions is always acquired before the host locks
+            scope.acquireLegacy();
+            if (lock instanceof HostLocks) {
+                scope.acquire(ip);
             }
-
-            if (lease != null) {
-                if (exists(curator.get(), containerPortsPidKeyPath) != null) {
-                    int port = lookupPort(container, pid, key);
-                    deleteSafe(curator.get(), containerPortsPidKeyPath);
-
-                    Set<Integer> allPorts = findUsedPortByHost(container, lease);
-
-                    allPorts.remove(port);
-                    StringBuilder sb = buildPortsString(allPorts);
-                    setData(curator.get(), ipPortsPath, sb.toString());
-                }
-            } else {
-                throw new FabricException("Could not acquire port lock for pid " + pid);
+            claimPort(container.getId(), ip, port);
+            int previousPort = lookupPort(container, pid, key);
+            setData(curator.get(), ZkPath.PORTS_CONTAINER_PID_KEY.getPath(container.getId(), pid, key), String.valueOf(port));
+            if (previousPort > 0 && previousPort != port) {
+                releasePort(container.getId(), ip, previousPort);
             }
-        } catch (InterruptedException ex) {
-            cleanUpDirtyZKNodes(interProcessLock);
-            throw FabricException.launderThrowable(ex);
         } catch (Exception ex) {
             throw FabricException.launderThrowable(ex);
         } finally {
-            if (existingLease == null) {
-                releaseLock(lease);
+            if (scope != lock) {
+                scope.release();
             }
         }
+    }
+
+    @Override
+    public void unregisterPort(Container container, String pid, String key) {
+        assertValid();
+        String ip = container.getIp();
+        assertValidIp(container, ip);
+        HostLocks scope = new HostLocks();
+        try {
+            scope.acquireLegacy();
+            unregisterPort(container, ip, pid, key);
+        } catch (Exception ex) {
+            throw FabricException.launderThrowable(ex);
+        } finally {
+            scope.release();
+        }
+    }
 
+    private void unregisterPort(Container container, String ip, String pid, String key) throws Exception {
+        String containerPortsPidKeyPath = ZkPath.PORTS_CONTAINER_PID_KEY.getPath(container.getId(), pid, key);
+        if (exists(curator.get(), containerPortsPidKeyPath) != null) {
+            int port = lookupPort(container, pid, key);
+            deleteSafe(curator.get(), containerPortsPidKeyPath);
+            releasePort(container.getId(), ip, port);
+        }
     }
 
     private StringBuilder buildPortsString(Set<Integer> allPorts) {
@@ -228,46 +225,29 @@ public final class ZookeeperPortService extends AbstractComponent implements Por
     }
 
     @Override
-    public void unregisterPort(Container container, String pid, String key) {
-        unregisterPort(container, pid, key, (Lease)null);
-    }
-
-    private void unregisterPort(Container container, String pid, Lease existingLease) {
+    public void unregisterPort(Container container, String pid) {
         assertValid();
-        String containerPortsPidPath = ZkPath.PORTS_CONTAINER_PID.getPath(container.getId(), pid);
-        Lease lease = null;
+        String ip = container.getIp();
+        assertValidIp(container, ip);
+        HostLocks scope = new HostLocks();
         try {
-            if (existingLease != null) {
-                lease = existingLease;
-            } else {
-                lease = interProcessLock.acquire(60, TimeUnit.SECONDS);
-            }
-
-            if (lease != null) {
-                if (exists(curator.get(), containerPortsPidPath) != null) {
-                    for (String key : getChildren(curator.get(), containerPortsPidPath)) {
-                        unregisterPort(container, pid, key, lease);
-                    }
-                    deleteSafe(curator.get(), containerPortsPidPath);
-                }
-            } else {
-                throw new FabricException("Could not acquire port lock for pid " + pid);
-            }
-        } catch (InterruptedException ex) {
-            cleanUpDirtyZKNodes(interProcessLock);
-            throw FabricException.launderThrowable(ex);
+            scope.acquireLegacy();
+            unregisterPort(container, ip, pid);
         } catch (Exception ex) {
             throw FabricException.launderThrowable(ex);
         } finally {
-            if (existingLease == null) {
-                releaseLock(lease);
-            }
+            scope.release();
         }
     }
 
-    @Override
-    public void unregisterPort(Container container, String pid) {
-        unregisterPort(container, pid, (Lease) null);
+    private void unregisterPort(Container container, String ip, String pid) throws Exception {
+        String containerPortsPidPath = ZkPath.PORTS_CONTAINER_PID.getPath(container.getId(), pid);
+        if (exists(curator.get(), containerPortsPidPath) != null) {
+            for (String key : getChildren(curator.get(), containerPortsPidPath)) {
+                unregisterPort(container, ip, pid, key);
+            }
+            deleteSafe(curator.get(), containerPortsPidPath);
+        }
     }
 
     @Override
@@ -276,41 +256,26 @@ public final class ZookeeperPortService extends AbstractComponent implements Por
         String containerPortsPath = ZkPath.PORTS_CONTAINER.getPath(container.getId());
         String reservedPortsPath = ZkPath.PORTS_CONTAINER_RESERVED_PORTS.getPath(container.getId());
         String ip = container.getIp();
-        String ipPortsPath = ZkPath.PORTS_IP.getPath(ip);
-
-        Lease lease = null;
+        HostLocks scope = new HostLocks();
         try {
-            lease = interProcessLock.acquire(60, TimeUnit.SECONDS);
-            if (lease != null) {
-                if (exists(curator.get(), containerPortsPath) != null) {
-                    for (String pid : getChildren(curator.get(), containerPortsPath)) {
-                        unregisterPort(container, pid, lease);
-
-                        if (exists(curator.get(), reservedPortsPath) != null) {
-                            Set<Integer> allPorts = findUsedPortByHost(container, lease);
-                            String reservedPortsPerContainer = getStringData(curator.get(), reservedPortsPath);
-                            String[] split = reservedPortsPerContainer.split(" ");
-                            for(String p : split){
-                                allPorts.remove(Integer.valueOf(p));
-                            }
-
-                            StringBuilder sb = buildPortsString(allPorts);
-                            setData(curator.get(), ipPortsPath, sb.toString() );
-                        }
-                    }
+            scope.acquireLegacy();
+            if (exists(curator.get(), containerPortsPath) != null) {
+                // Ports reserved by older versions are only listed in the data of the host node
+                if (exists(curator.get(), reservedPortsPath) != null) {
+                    removeLegacyPorts(ip, parsePorts(getStringData(curator.get(), reservedPortsPath)));
                     deleteSafe(curator.get(), reservedPortsPath);
-                    deleteSafe(curator.get(), containerPortsPath);
                 }
-            } else {
-                throw new FabricException("Could not acquire port lock");
+                for (String pid : getChildren(curator.get(), containerPortsPath)) {
+                    if (!RESERVED_PORTS.equals(pid)) {
+                        unregisterPort(container, ip, pid);
+                    }
+                }
+                deleteSafe(curator.get(), containerPortsPath);
             }
-        } catch (InterruptedException ex) {
-            cleanUpDirtyZKNodes(interProcessLock);
-            throw FabricException.launderThrowable(ex);
         } catch (Exception ex) {
             throw FabricException.launderThrowable(ex);
         } finally {
-            releaseLock(lease);
+            scope.release();
         }
     }
 
@@ -323,9 +288,6 @@ public final class ZookeeperPortService extends AbstractComponent implements Por
             if (exists(curator.get(), path) != null) {
                 port = Integer.parseInt(getStringData(curator.get(), path));
             }
-        } catch (InterruptedException ex) {
-            cleanUpDirtyZKNodes(interProcessLock);
-            throw FabricException.launderThrowable(ex);
         } catch (Exception ex) {
             throw FabricException.launderThrowable(ex);
         }
@@ -337,130 +299,275 @@ public final class ZookeeperPortService extends AbstractComponent implements Por
         assertValid();
         Set<Integer> ports = new HashSet<Integer>();
         String path = ZkPath.PORTS_CONTAINER.getPath(container.getId());
-        Lease lease = null;
         try {
-            lease = interProcessLock.acquire(60, TimeUnit.SECONDS);
-            if (lease != null) {
-                if (exists(curator.get(), path) != null) {
-
-                    for (String pid : getChildren(curator.get(), path)) {
-                        for (String key : getChildren(curator.get(), ZkPath.PORTS_CONTAINER_PID.getPath(container.getId(), pid))) {
-                            String port = getStringData(curator.get(), ZkPath.PORTS_CONTAINER_PID_KEY.getPath(container.getId(), pid, key));
-                            try {
-                                ports.add(Integer.parseInt(port));
-                            } catch (Exception ex) {
-                                //ignore
-                            }
+            if (exists(curator.get(), path) != null) {
+
+                for (String pid : getChildren(curator.get(), path)) {
+                    for (String key : getChildren(curator.get(), ZkPath.PORTS_CONTAINER_PID.getPath(container.getId(), pid))) {
+                        String port = getStringData(curator.get(), ZkPath.PORTS_CONTAINER_PID_KEY.getPath(container.getId(), pid, key));
+                        try {
+                            ports.add(Integer.parseInt(port));
+                        } catch (Exception ex) {
+                            //ignore
                         }
                     }
                 }
-            } else {
-                throw new FabricException("Could not acquire port lock");
             }
-        } catch (InterruptedException ex) {
-            cleanUpDirtyZKNodes(interProcessLock);
-            throw FabricException.launderThrowable(ex);
         } catch (Exception ex) {
             throw FabricException.launderThrowable(ex);
-        } finally {
-            releaseLock(lease);
         }
         return ports;
     }
 
     @Override
     public Lock acquirePortLock() throws Exception {
-        return new LeaseLock(interProcessLock.acquire(60, TimeUnit.SECONDS));
+        HostLocks lock = new HostLocks();
+        lock.acquireLegacy();
+        return lock;
     }
 
     @Override
     public void releasePortLock(Lock lock) {
-        if (lock instanceof LeaseLock) {
-            interProcessLock.returnLease(((LeaseLock)lock).getLease());
+        if (lock instanceof HostLocks) {
+            ((HostLocks) lock).release();
         }
     }
 
-    private Set<Integer> findUsedPortByHost(Container container, Lease existingLease) {
+    @Override
+    public Set<Integer> findUsedPortByHost(Container container) {
+        return findUsedPortByHost(container, (Lock)null);
+    }
+
+    @Override
+    public Set<Integer> findUsedPortByHost(Container container, Lock lock) {
         assertValid();
         String ip = container.getIp();
         assertValidIp(container, ip);
-        Set<Integer> ports = new HashSet<Integer>();
-        String path = ZkPath.PORTS_IP.getPath(ip);
-        Lease lease = null;
         try {
-            if (existingLease != null) {
-                lease = existingLease;
-            } else {
-                lease = interProcessLock.acquire(60, TimeUnit.SECONDS);
+            if (lock instanceof HostLocks) {
+                ((HostLocks) lock).acquire(ip);
             }
-            if (lease != null) {
-                createDefault(curator.get(), path, "");
-                String boundPorts = getStringData(curator.get(), path);
-                if (boundPorts != null && !boundPorts.isEmpty()) {
-                    for (String port : boundPorts.split(" ")) {
-                        try {
-                            ports.add(Integer.parseInt(port.trim()));
-                        } catch (NumberFormatException ex) {
-                            //ignore
-                        }
-                    }
-                }
-            } else {
-                throw new FabricException("Could not acquire port lock");
-            }
-        } catch (InterruptedException ex) {
-            cleanUpDirtyZKNodes(interProcessLock);
-            throw FabricException.launderThrowable(ex);
+            return getPortsByHost(ip);
         } catch (Exception ex) {
             throw FabricException.launderThrowable(ex);
-        } finally {
-            if (existingLease == null) {
-                releaseLock(lease);
+        }
+    }
+
+    /**
+     * Get the ports in use on the host from the registry.
+     */
+    private Set<Integer> getPortsByHost(String ip) throws Exception {
+        String path = ZkPath.PORTS_IP.getPath(ip);
+        Set<Integer> ports = new HashSet<Integer>();
+        try {
+            ports.addAll(parsePorts(getStringData(curator.get(), path)));
+            ports.addAll(parsePorts(getChildren(curator.get(), path)));
+        } catch (KeeperException.NoNodeException e) {
+            // no ports registered on the host
+        }
+        return ports;
+    }
+
+    /**
+     * Get the ports in use on the host from the cache, which may lag behind the registry.
+     */
+    private Set<Integer> getCachedPortsByHost(String ip) {
+        Set<Integer> ports = new HashSet<Integer>();
+        TreeData data = portsCache.getCurrentData(ZkPath.PORTS_IP.getPath(ip));
+        if (data != null) {
+            if (data.getData() != null) {
+                ports.addAll(parsePorts(new String(data.getData(), UTF_8)));
             }
+            ports.addAll(parsePorts(data.getChildren()));
         }
         return ports;
     }
 
-    @Override
-    public Set<Integer> findUsedPortByHost(Container container) {
-        return findUsedPortByHost(container, (Lock)null);
+    /**
+     * Creates the claim of the port for the container, returns false if the port is already claimed.
+     */
+    private boolean createClaim(String containerId, String ip, int port) throws Exception {
+        try {
+            curator.get().create().creatingParentsIfNeeded().forPath(ZkPath.PORTS_IP_PORT.getPath(ip, String.valueOf(port)), containerId.getBytes(UTF_8));
+        } catch (KeeperException.NodeExistsException e) {
+            return false;
+        }
+        if (legacy) {
+            // older versions only read the ports listed in the data of the host node
+            addLegacyPort(ip, port);
+        }
+        return true;
     }
 
-    @Override
-    public Set<Integer> findUsedPortByHost(Container container, Lock lock) {
-        Lease lease = null;
-        if (lock != null && lock instanceof LeaseLock) {
-            lease = ((LeaseLock)lock).getLease();
+    /**
+     * Claims the port for the container, unless the container already owns its claim.
+     *
+     * @throws FabricException if the port is claimed by another container, outside of the legacy mode
+     */
+    private void claimPort(String containerId, String ip, int port) throws Exception {
+        String path = ZkPath.PORTS_IP_PORT.getPath(ip, String.valueOf(port));
+        while (!createClaim(containerId, ip, port)) {
+            String owner;
+            try {
+                owner = getStringData(curator.get(), path);
+            } catch (KeeperException.NoNodeException e) {
+                // released in the meantime, claim it again
+                continue;
+            }
+            if (containerId.equals(owner)) {
+                return;
+            }
+            String message = "Port " + port + " on " + ip + " is already registered by container " + owner;
+            if (legacy) {
+                LOGGER.warn(message);
+                return;
+            }
+            throw new FabricException(message);
+        }
+    }
+
+    /**
+     * Releases the port registered by the container, unless it is claimed by another container.
+     */
+    private void releasePort(String containerId, String ip, int port) throws Exception {
+        if (releaseClaim(containerId, ip, port)) {
+            removeLegacyPorts(ip, Collections.singleton(port));
         }
-        return findUsedPortByHost(container, lease);
     }
 
-    private void releaseLock(Lease lease) {
+    /**
+     * Deletes the claim of the port, if it is owned by the container.
+     *
+     * @return false if the port is claimed by another container
+     */
+    private boolean releaseClaim(String containerId, String ip, int port) throws Exception {
+        String path = ZkPath.PORTS_IP_PORT.getPath(ip, String.valueOf(port));
         try {
-            if (interProcessLock != null) {
-                interProcessLock.returnLease(lease);
+            Stat stat = new Stat();
+            byte[] owner = curator.get().getData().storingStatIn(stat).forPath(path);
+            if (owner != null && containerId.equals(new String(owner, UTF_8))) {
+                curator.get().delete().withVersion(stat.getVersion()).forPath(path);
+                return true;
             }
-        } catch (Exception e) {
-            LOGGER.debug("Couldn't realease lock for " + ZkPath.PORTS_LOCK.getPath(), e);
+            return false;
+        } catch (KeeperException.NoNodeException e) {
+            // released in the meantime, or registered by an older version
+            return true;
+        } catch (KeeperException.BadVersionException e) {
+            // claimed again in the meantime
+            return false;
         }
     }
 
-    private void cleanUpDirtyZKNodes(InterProcessSemaphoreV2 interProcessLock) {
-        if (interProcessLock != null) {
+    /**
+     * Lists the port in the data of the host node, where older versions look for the ports in use.
+     */
+    private void addLegacyPort(String ip, int port) throws Exception {
+        String path = ZkPath.PORTS_IP.getPath(ip);
+        while (true) {
+            Stat stat = new Stat();
+            byte[] data = curator.get().getData().storingStatIn(stat).forPath(path);
+            Set<Integer> legacyPorts = parsePorts(data != null ? new String(data, UTF_8) : null);
+            if (!legacyPorts.add(port)) {
+                return;
+            }
             try {
-                LOGGER.info("Cleaning eventual partial nodes");
-                Collection<String> participantNodes = interProcessLock.getParticipantNodes();
-                for (String nodePath : participantNodes) {
-                    String path =  "/fabric/registry/ports/lock/leases/" + nodePath;
-                    LOGGER.debug("Remove dirty zk lock node: {}", path);
-                    deleteSafe(curator.get(), path);
+                curator.get().setData().withVersion(stat.getVersion()).forPath(path, buildPortsString(legacyPorts).toString().getBytes(UTF_8));
+                return;
+            } catch (KeeperException.BadVersionException e) {
+                // concurrently modified, try again
+            }
+        }
+    }
+
+    /**
+     * Removes the ports from the data of the host node, where older versions registered them.
+     */
+    private void removeLegacyPorts(String ip, Set<Integer> ports) throws Exception {
+        String path = ZkPath.PORTS_IP.getPath(ip);
+        while (true) {
+            Stat stat = new Stat();
+            byte[] data;
+            try {
+                data = curator.get().getData().storingStatIn(stat).forPath(path);
+            } catch (KeeperException.NoNodeException e) {
+                return;
+            }
+            Set<Integer> legacyPorts = parsePorts(data != null ? new String(data, UTF_8) : null);
+            if (!legacyPorts.removeAll(ports)) {
+                return;
+            }
+            try {
+                curator.get().setData().withVersion(stat.getVersion()).forPath(path, buildPortsString(legacyPorts).toString().getBytes(UTF_8));
+                return;
+            } catch (KeeperException.BadVersionException e) {
+                // concurrently modified, try again
+            }
+        }
+    }
+
+    private static Set<Integer> parsePorts(String ports) {
+        Set<Integer> result = new HashSet<Integer>();
+        if (ports != null && !ports.isEmpty()) {
+            for (String port : ports.split(" ")) {
+                try {
+                    result.add(Integer.parseInt(port.trim()));
+                } catch (NumberFormatException ex) {
+                    //ignore
                 }
-            } catch (Exception e) {
-                LOGGER.error("Error while cleaning zk partial nodes", e);
             }
-        } else {
-            LOGGER.info("No registerPort leftovers nodes found");
         }
+        return result;
+    }
+
+    private static Set<Integer> parsePorts(Collection<String> ports) {
+        Set<Integer> result = new HashSet<Integer>();
+        for (String port : ports) {
+            try {
+                result.add(Integer.parseInt(port));
+            } catch (NumberFormatException ex) {
+                //ignore
+            }
+        }
+        return result;
+    }
+
+    private InterProcessSemaphoreV2 getHostLock(String ip) {
+        InterProcessSemaphoreV2 lock = hostLocks.get(ip);
+        if (lock == null) {
+            InterProcessSemaphoreV2 newLock = new InterProcessSemaphoreV2(curator.get(), ZkPath.PORTS_IP_LOCK.getPath(ip), 1);
+            lock = hostLocks.putIfAbsent(ip, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    private void releaseLock(String ip, Lease lease) {
+        try {
+            getHostLock(ip).returnLease(lease);
+        } catch (Exception e) {
+            LOGGER.debug("Couldn't realease lock for " + ZkPath.PORTS_IP_LOCK.getPath(ip), e);
+        }
+    }
+
+    private void cleanUpDirtyZKNodes(InterProcessSemaphoreV2 interProcessLock, String lockPath) {
+        try {
+            LOGGER.info("Cleaning eventual partial nodes");
+            Collection<String> participantNodes = interProcessLock.getParticipantNodes();
+            for (String nodePath : participantNodes) {
+                String path = lockPath + "/leases/" + nodePath;
+                LOGGER.debug("Remove dirty zk lock node: {}", path);
+                deleteSafe(curator.get(), path);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error while cleaning zk partial nodes", e);
+        }
+    }
+
+    void setLegacy(boolean legacy) {
+        this.legacy = legacy;
     }
 
     void bindCurator(CuratorFramework curator) {
@@ -471,15 +578,65 @@ public final class ZookeeperPortService extends AbstractComponent implements Por
         this.curator.unbind(curator);
     }
 
-    private class LeaseLock implements Lock {
-        private Lease lease;
+    /**
+     * The leases of the hosts used within the scope of a lock, and of the global lock taken by older versions.
+     */
+    private class HostLocks implements Lock {
+
+        @GuardedBy("this")
+        private final Map<String, Lease> leases = new HashMap<String, Lease>();
+        @GuardedBy("this")
+        private Lease legacyLease;
+
+        /**
+         * Acquires the global lock of older versions, in legacy mode only.
+         */
+        synchronized void acquireLegacy() throws Exception {
+            if (!legacy || legacyLease != null) {
+                return;
+            }
+            try {
+                legacyLease = legacyLock.acquire(60, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                cleanUpDirtyZKNodes(legacyLock, ZkPath.PORTS_LOCK.getPath());
+                throw ex;
+            }
+            if (legacyLease == null) {
+                throw new FabricException("Could not acquire port lock");
+            }
+        }
 
-        public LeaseLock(Lease lease) {
-            this.lease = lease;
+        synchronized void acquire(String ip) throws Exception {
+            if (leases.containsKey(ip)) {
+                return;
+            }
+            InterProcessSemaphoreV2 interProcessLock = getHostLock(ip);
+            Lease lease;
+            try {
+                lease = interProcessLock.acquire(60, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                cleanUpDirtyZKNodes(interProcessLock, ZkPath.PORTS_IP_LOCK.getPath(ip));
+                throw ex;
+            }
+            if (lease == null) {
+                throw new FabricException("Could not acquire port lock for " + ip);
+            }
+            leases.put(ip, lease);
         }
 
-        public Lease getLease() {
-            return lease;
+        synchronized void release() {
+            for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+                releaseLock(entry.getKey(), entry.getValue());
+            }
+            leases.clear();
+            if (legacyLease != null) {
+                try {
+                    legacyLock.returnLease(legacyLease);
+                } catch (Exception e) {
+                    LOGGER.debug("Couldn't realease lock for " + ZkPath.PORTS_LOCK.getPath(), e);
+                }
+                legacyLease = null;
+            }
         }
     }
 
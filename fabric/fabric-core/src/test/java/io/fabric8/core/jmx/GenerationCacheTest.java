@@ -0,0 +1,72 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.core.jmx;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GenerationCacheTest {
+
+    private final GenerationCache<Integer> cache = new GenerationCache<Integer>(16);
+    private final AtomicInteger computations = new AtomicInteger();
+
+    private final Callable<Integer> query = new Callable<Integer>() {
+        @Override
+        public Integer call() {
+            return computations.incrementAndGet();
+        }
+    };
+
+    @Test
+    public void testReusedWithinGeneration() {
+        List<String> key = Arrays.asList("containers", "id");
+        Assert.assertEquals(Integer.valueOf(1), cache.get(key, 1, query));
+        Assert.assertEquals(Integer.valueOf(1), cache.get(Arrays.asList("containers", "id"), 1, query));
+        Assert.assertEquals(Integer.valueOf(2), cache.get(Arrays.asList("containers", "alive"), 1, query));
+
+        Assert.assertEquals(Integer.valueOf(3), cache.get(key, 2, query));
+        // an older generation is served the later result
+        Assert.assertEquals(Integer.valueOf(3), cache.get(key, 1, query));
+        Assert.assertEquals(3, computations.get());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        List<String> key = Arrays.asList("containersForProfile", "1.0", "missing");
+        Callable<Integer> failing = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                computations.incrementAndGet();
+                throw new IllegalStateException("Profile does not exist");
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(key, 1, failing);
+                Assert.fail("IllegalStateException expected");
+            } catch (IllegalStateException e) {
+                // expected, as thrown by the query
+            }
+        }
+        Assert.assertEquals(2, computations.get());
+        Assert.assertEquals(Integer.valueOf(3), cache.get(key, 1, query));
+    }
+}
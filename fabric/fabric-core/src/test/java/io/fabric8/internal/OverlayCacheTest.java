@@ -0,0 +1,173 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import io.fabric8.api.Profile;
+import io.fabric8.api.ProfileBuilder;
+import io.fabric8.api.ProfileChangeEvent;
+import io.fabric8.api.Profiles;
+import io.fabric8.api.Version;
+import io.fabric8.api.VersionBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OverlayCacheTest {
+
+    private final ProfileServiceImpl.OverlayCache cache = new ProfileServiceImpl.OverlayCache();
+
+    @Test
+    public void testParentChangeInvalidatesOverlay() {
+        Profile parent = profile("parent", "1", "a", "1");
+        Version version = version(profile("default", "1", "d", "1"), parent, profile("child", "1", "c", "1", "parent"));
+
+        Profile overlay = overlay(version, "child");
+        Assert.assertEquals("1", overlay.getConfiguration("pid").get("a"));
+        Assert.assertSame(overlay, overlay(version, "child"));
+
+        // the same parent instance with another hash
+        Profile changed = profile("parent", "2", "a", "2");
+        version = version(version.getProfile("default"), changed, version.getProfile("child"));
+        Profile updated = overlay(version, "child");
+        Assert.assertNotSame(overlay, updated);
+        Assert.assertEquals("2", updated.getConfiguration("pid").get("a"));
+
+        // another parent instance with the same hash
+        version = version(version.getProfile("default"), profile("parent", "2", "a", "3"), version.getProfile("child"));
+        Assert.assertEquals("3", overlay(version, "child").getConfiguration("pid").get("a"));
+    }
+
+    @Test
+    public void testNoMutationLeaksBetweenOverlays() {
+        Version version = version(profile("default", "1", "a", "1"), profile("left", "1", "b", "2"), profile("right", "1", "c", "3"));
+
+        Map<String, String> left = overlay(version, "left").getConfiguration("pid");
+        Map<String, String> right = overlay(version, "right").getConfiguration("pid");
+        Map<String, String> base = overlay(version, "default").getConfiguration("pid");
+
+        Assert.assertEquals(2, left.size());
+        Assert.assertEquals("2", left.get("b"));
+        Assert.assertEquals(2, right.size());
+        Assert.assertEquals("3", right.get("c"));
+        Assert.assertEquals(Collections.singletonMap("a", "1"), base);
+        Assert.assertEquals(Collections.singletonMap("a", "1"), cache.getProperties(version.getProfile("default").getFileConfiguration("pid.properties")));
+    }
+
+    @Test
+    public void testInheritedProfiles() {
+        Version version = version(profile("default", "1", "a", "1"), profile("base", "1", "b", "1"),
+                profile("left", "1", "c", "1", "base"), profile("right", "1", "d", "1", "base"), profile("child", "1", "e", "1", "left", "right"));
+        Assert.assertEquals(Arrays.asList("default", "base", "left", "right", "child"),
+                Profiles.profileIds(Profiles.getInheritedProfiles(version, version.getProfile("child"))));
+        Assert.assertEquals(Arrays.asList("default"), Profiles.profileIds(Profiles.getInheritedProfiles(version, version.getProfile("default"))));
+    }
+
+    @Test
+    public void testPropertiesAreShared() {
+        byte[] data = ProfileUtils.toBytes(Collections.singletonMap("a", "1"));
+        Map<String, String> props = cache.getProperties(data);
+        Assert.assertSame(props, cache.getProperties(data));
+        try {
+            props.put("b", "2");
+            Assert.fail("UnsupportedOperationException expected");
+        } catch (UnsupportedOperationException e) {
+            // expected, the properties are shared by the overlays
+        }
+        Assert.assertTrue(cache.getProperties(null).isEmpty());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedOverlaysAreEvicted() {
+        List<Profile> inherited = Collections.emptyList();
+        Profile profile = profile("default", "1", "a", "1");
+        for (int i = 0; i < ProfileServiceImpl.OverlayCache.MAX_OVERLAYS; i++) {
+            cache.putOverlay("1.0/p" + i, inherited, profile);
+        }
+        // touch the eldest, so that the next one goes first
+        Assert.assertSame(profile, cache.getOverlay("1.0/p0", inherited));
+        cache.putOverlay("1.0/extra", inherited, profile);
+
+        Assert.assertSame(profile, cache.getOverlay("1.0/p0", inherited));
+        Assert.assertNull(cache.getOverlay("1.0/p1", inherited));
+        Assert.assertSame(profile, cache.getOverlay("1.0/p2", inherited));
+        Assert.assertSame(profile, cache.getOverlay("1.0/extra", inherited));
+
+        cache.run();
+        Assert.assertNull(cache.getOverlay("1.0/p0", inherited));
+    }
+
+    @Test
+    public void testOnlyAffectedOverlaysAreEvicted() {
+        Version version = version(profile("default", "1", "a", "1"), profile("base", "1", "b", "1"),
+                profile("child", "1", "c", "1", "base"), profile("other", "1", "d", "1"));
+        Profile child = overlay(version, "child");
+        Profile other = overlay(version, "other");
+        Profile base = overlay(version, "base");
+
+        cache.profilesChanged(ProfileChangeEvent.profilesChanged("1.0", Collections.singleton("base")));
+        Assert.assertNotSame(child, overlay(version, "child"));
+        Assert.assertNotSame(base, overlay(version, "base"));
+        Assert.assertSame(other, overlay(version, "other"));
+
+        // the changes of another version don't affect these overlays
+        other = overlay(version, "other");
+        cache.profilesChanged(ProfileChangeEvent.versionChanged("1.1"));
+        Assert.assertSame(other, overlay(version, "other"));
+
+        cache.profilesChanged(ProfileChangeEvent.versionChanged("1.0"));
+        Assert.assertNotSame(other, overlay(version, "other"));
+
+        other = overlay(version, "other");
+        cache.profilesChanged(ProfileChangeEvent.all());
+        Assert.assertNotSame(other, overlay(version, "other"));
+    }
+
+    // same as ProfileServiceImpl.getOverlayProfile
+    private Profile overlay(Version version, String profileId) {
+        ProfileServiceImpl.OverlayOptionsProvider provider = new ProfileServiceImpl.OverlayOptionsProvider(version, version.getRequiredProfile(profileId), null, cache);
+        List<Profile> inherited = provider.getInheritedProfiles();
+        String key = version.getId() + "/" + profileId + "#null";
+        Profile overlay = cache.getOverlay(key, inherited);
+        if (overlay == null) {
+            overlay = ProfileBuilder.Factory.create(version.getId(), profileId).addOptions(provider).getProfile();
+            cache.putOverlay(key, inherited, overlay);
+        }
+        return overlay;
+    }
+
+    private static Version version(Profile... profiles) {
+        VersionBuilder builder = VersionBuilder.Factory.create("1.0");
+        for (Profile profile : profiles) {
+            builder.addProfile(profile);
+        }
+        return builder.getVersion();
+    }
+
+    private static Profile profile(String profileId, String lastModified, String key, String value, String... parents) {
+        ProfileBuilder builder = ProfileBuilder.Factory.create("1.0", profileId)
+                .setLastModified(lastModified)
+                .addConfiguration("pid", key, value);
+        for (String parent : parents) {
+            builder.addParent(parent);
+        }
+        return builder.getProfile();
+    }
+}
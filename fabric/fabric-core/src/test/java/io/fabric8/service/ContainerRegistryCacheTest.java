@@ -0,0 +1,149 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.fabric8.zookeeper.ZkPath;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeData;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContainerRegistryCacheTest {
+
+    private static final String ROOT = ZkPath.CONTAINER_REGISTRY.getPath();
+
+    @Test
+    public void testInitialization() throws Exception {
+        ContainerRegistryCache cache = new ContainerRegistryCache();
+        cache.seed(ROOT, Arrays.asList("config", "alive"));
+        Assert.assertFalse(cache.getSnapshot().isInitialized());
+
+        added(cache, ROOT + "/config", 1, null, "c1");
+        added(cache, ROOT + "/alive", 2, null);
+        Assert.assertFalse(cache.getSnapshot().isInitialized());
+
+        added(cache, ZkPath.CONTAINER.getPath("c1"), 3, null, "ip", "parent");
+        added(cache, ZkPath.CONTAINER_IP.getPath("c1"), 4, "10.0.0.1");
+        Assert.assertFalse(cache.getSnapshot().isInitialized());
+
+        added(cache, ZkPath.CONTAINER_PARENT.getPath("c1"), 5, "root");
+        ContainerRegistrySnapshot snapshot = cache.getSnapshot();
+        Assert.assertTrue(snapshot.isInitialized());
+        Assert.assertEquals("10.0.0.1", snapshot.getStringData(ZkPath.CONTAINER_IP.getPath("c1")));
+        Assert.assertEquals("root", snapshot.getStringData(ZkPath.CONTAINER_PARENT.getPath("c1")));
+        Assert.assertFalse(snapshot.exists(ZkPath.CONTAINER_ALIVE.getPath("c1")));
+    }
+
+    @Test
+    public void testEmptyRegistry() throws Exception {
+        ContainerRegistryCache cache = new ContainerRegistryCache();
+        cache.seed(ROOT, Collections.<String>emptyList());
+        Assert.assertTrue(cache.getSnapshot().isInitialized());
+    }
+
+    @Test
+    public void testRemovedBeforeLoaded() throws Exception {
+        ContainerRegistryCache cache = new ContainerRegistryCache();
+        cache.seed(ROOT, Arrays.asList("alive"));
+        added(cache, ROOT + "/alive", 1, null, "c1");
+        Assert.assertFalse(cache.getSnapshot().isInitialized());
+
+        removed(cache, ROOT + "/alive", 1);
+        Assert.assertTrue(cache.getSnapshot().isInitialized());
+    }
+
+    @Test
+    public void testOutOfOrderEvents() throws Exception {
+        ContainerRegistryCache cache = new ContainerRegistryCache();
+        cache.seed(ROOT, Collections.<String>emptyList());
+        String path = ZkPath.CONTAINER_IP.getPath("c1");
+
+        updated(cache, path, 7, "new");
+        updated(cache, path, 5, "old");
+        Assert.assertEquals("new", cache.getSnapshot().getStringData(path));
+
+        // The removal of an older version doesn't remove a newer one
+        removed(cache, path, 5);
+        Assert.assertEquals("new", cache.getSnapshot().getStringData(path));
+
+        removed(cache, path, 7);
+        Assert.assertFalse(cache.getSnapshot().exists(path));
+    }
+
+    @Test
+    public void testLocalWrites() throws Exception {
+        ContainerRegistryCache cache = new ContainerRegistryCache();
+        cache.seed(ROOT, Collections.<String>emptyList());
+        long version = cache.getSnapshot().getVersion();
+
+        cache.nodeChanged(ZkPath.CONTAINER_DOMAIN.getPath("c1", "java.lang"), stat(3), new byte[0], null);
+        cache.nodeChanged(ZkPath.CONTAINER_DOMAIN.getPath("c1", "org.apache"), stat(4), new byte[0], null);
+        cache.nodeChanged(ZkPath.CONTAINER_ALIVE.getPath("c1"), stat(5), "alive".getBytes("UTF-8"), null);
+        ContainerRegistrySnapshot snapshot = cache.getSnapshot();
+        Assert.assertTrue(snapshot.getVersion() > version);
+        Assert.assertTrue(snapshot.exists(ZkPath.CONTAINER_ALIVE.getPath("c1")));
+        Assert.assertEquals(Arrays.asList("java.lang", "org.apache"), sorted(snapshot.getChildren(ZkPath.CONTAINER_DOMAINS.getPath("c1"))));
+
+        // Local deletes are unconditional and remove the descendants
+        cache.nodeRemoved(ZkPath.CONTAINER_DOMAINS.getPath("c1"), null);
+        Assert.assertTrue(cache.getSnapshot().getChildren(ZkPath.CONTAINER_DOMAINS.getPath("c1")).isEmpty());
+        Assert.assertTrue(cache.getSnapshot().exists(ZkPath.CONTAINER_ALIVE.getPath("c1")));
+
+        // Snapshots already handed out are not affected
+        Assert.assertEquals(2, snapshot.getChildren(ZkPath.CONTAINER_DOMAINS.getPath("c1")).size());
+    }
+
+    @Test
+    public void testContainerId() {
+        Assert.assertEquals("c1", ContainerRegistrySnapshot.getContainerId(ZkPath.CONTAINER_IP.getPath("c1")));
+        Assert.assertEquals("c1", ContainerRegistrySnapshot.getContainerId(ZkPath.CONTAINER_ALIVE.getPath("c1")));
+        Assert.assertEquals("c1", ContainerRegistrySnapshot.getContainerId(ZkPath.CONTAINER_EXTENDER_STATUS.getPath("c1", "blueprint")));
+        Assert.assertNull(ContainerRegistrySnapshot.getContainerId(ROOT + "/config"));
+        Assert.assertNull(ContainerRegistrySnapshot.getContainerId(ZkPath.CONFIG_CONTAINER.getPath("c1")));
+    }
+
+    private static List<String> sorted(List<String> list) {
+        Collections.sort(list);
+        return list;
+    }
+
+    private static void added(ContainerRegistryCache cache, String path, long mzxid, String data, String... children) throws Exception {
+        cache.childEvent(null, new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_ADDED, treeData(path, mzxid, data, children)));
+    }
+
+    private static void updated(ContainerRegistryCache cache, String path, long mzxid, String data) throws Exception {
+        cache.childEvent(null, new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_UPDATED, treeData(path, mzxid, data)));
+    }
+
+    private static void removed(ContainerRegistryCache cache, String path, long mzxid) throws Exception {
+        cache.childEvent(null, new PathChildrenCacheEvent(PathChildrenCacheEvent.Type.CHILD_REMOVED, treeData(path, mzxid, null)));
+    }
+
+    private static TreeData treeData(String path, long mzxid, String data, String... children) throws Exception {
+        return new TreeData(path, stat(mzxid), data != null ? data.getBytes("UTF-8") : null, Arrays.asList(children));
+    }
+
+    private static Stat stat(long mzxid) {
+        Stat stat = new Stat();
+        stat.setMzxid(mzxid);
+        return stat;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import java.util.Collections;
+
+import io.fabric8.zookeeper.ZkPath;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegistrySubstitutionCacheTest {
+
+    private ContainerRegistryCache registry;
+    private RegistrySubstitutionCache substitutions;
+
+    @Before
+    public void setUp() {
+        registry = new ContainerRegistryCache();
+        registry.seed(ZkPath.CONTAINER_REGISTRY.getPath(), Collections.<String>emptyList());
+        substitutions = new RegistrySubstitutionCache();
+    }
+
+    @Test
+    public void testNestedPlaceholders() throws Exception {
+        set(ZkPath.CONTAINER_RESOLVER.getPath("child"), 1, "localip");
+        set(ZkPath.CONTAINER_LOCAL_IP.getPath("child"), 2, "${zk:root/localip}");
+        set(ZkPath.CONTAINER_LOCAL_IP.getPath("root"), 3, "10.0.0.1");
+
+        String ip = "${zk:child/${zk:child/resolver}}";
+        Assert.assertEquals("10.0.0.1", substitutions.substitute(registry.getSnapshot(), null, ip));
+    }
+
+    @Test
+    public void testInvalidatedByDependency() throws Exception {
+        set(ZkPath.CONTAINER_RESOLVER.getPath("c1"), 1, "localip");
+        set(ZkPath.CONTAINER_LOCAL_IP.getPath("c1"), 2, "10.0.0.1");
+        set(ZkPath.CONTAINER_PUBLIC_IP.getPath("c1"), 3, "192.168.0.1");
+        String ip = "${zk:c1/${zk:c1/resolver}}";
+        Assert.assertEquals("10.0.0.1", substitutions.substitute(registry.getSnapshot(), null, ip));
+
+        // Unrelated changes keep the result
+        set(ZkPath.CONTAINER_PUBLIC_IP.getPath("c1"), 4, "192.168.0.2");
+        set(ZkPath.CONTAINER_LOCAL_IP.getPath("c2"), 5, "10.0.0.2");
+        Assert.assertEquals("10.0.0.1", substitutions.substitute(registry.getSnapshot(), null, ip));
+
+        set(ZkPath.CONTAINER_RESOLVER.getPath("c1"), 6, "publicip");
+        Assert.assertEquals("192.168.0.2", substitutions.substitute(registry.getSnapshot(), null, ip));
+
+        set(ZkPath.CONTAINER_PUBLIC_IP.getPath("c1"), 7, "192.168.0.3");
+        Assert.assertEquals("192.168.0.3", substitutions.substitute(registry.getSnapshot(), null, ip));
+    }
+
+    @Test
+    public void testMissingDependency() throws Exception {
+        String url = "http://${zk:c1/localip}:8181";
+        String unresolved = substitutions.substitute(registry.getSnapshot(), null, url);
+        Assert.assertNotEquals("http://10.0.0.1:8181", unresolved);
+
+        set(ZkPath.CONTAINER_LOCAL_IP.getPath("c1"), 1, "10.0.0.1");
+        Assert.assertEquals("http://10.0.0.1:8181", substitutions.substitute(registry.getSnapshot(), null, url));
+
+        registry.nodeRemoved(ZkPath.CONTAINER_LOCAL_IP.getPath("c1"), null);
+        Assert.assertEquals(unresolved, substitutions.substitute(registry.getSnapshot(), null, url));
+    }
+
+    private void set(String path, long mzxid, String data) throws Exception {
+        Stat stat = new Stat();
+        stat.setMzxid(mzxid);
+        registry.nodeChanged(path, stat, data.getBytes("UTF-8"), null);
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.fabric8.api.DataStore.ContainerAttribute;
+import io.fabric8.api.FabricException;
+import io.fabric8.zookeeper.ZkPath;
+import org.apache.commons.io.FileUtils;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ServerConfig;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.apache.zookeeper.server.persistence.FileTxnSnapLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ZkDataStoreImplAsyncTest {
+
+    private CuratorFramework curator;
+    private NIOServerCnxnFactory cnxnFactory;
+    private ZkDataStoreImpl dataStore;
+
+    @Before
+    public void init() throws Exception {
+        int port = findFreePort();
+        cnxnFactory = startZooKeeper(port);
+
+        curator = CuratorFrameworkFactory.builder()
+                .connectString("localhost:" + port)
+                .retryPolicy(new RetryOneTime(1000))
+                .build();
+        curator.start();
+        curator.getZookeeperClient().blockUntilConnectedOrTimedOut();
+
+        // c1 resolves its ip through a placeholder of its own, that refers to another container
+        setData(ZkPath.CONTAINER_RESOLVER.getPath("c1"), "localip");
+        setData(ZkPath.CONTAINER_IP.getPath("c1"), "${zk:c1/localip}");
+        setData(ZkPath.CONTAINER_LOCAL_IP.getPath("c1"), "${zk:root/localip}");
+        setData(ZkPath.CONTAINER_LOCAL_IP.getPath("root"), "10.0.0.1");
+        setData(ZkPath.CONTAINER_LOCAL_IP.getPath("c2"), "10.0.0.2");
+
+        dataStore = new ZkDataStoreImpl();
+        dataStore.bindCurator(curator);
+        dataStore.activate();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        dataStore.deactivate();
+        curator.close();
+        cnxnFactory.shutdown();
+    }
+
+    @Test
+    public void snapshotReads() throws Exception {
+        awaitRegistrySnapshot();
+        dataStore.setContainerAttribute("c2", ContainerAttribute.Resolver, "localip");
+
+        // served by the snapshot, there is nothing to wait for
+        ListenableFuture<String> ip = dataStore.getContainerAttributeAsync("c2", ContainerAttribute.Ip, null, false, true);
+        assertThat(ip.isDone(), is(true));
+        assertThat(ip.get(), equalTo("10.0.0.2"));
+        assertThat(dataStore.getContainerAttributeAsync("c1", ContainerAttribute.Ip, null, false, true).get(), equalTo("10.0.0.1"));
+        assertThat(dataStore.getContainerAttributeAsync("c1", ContainerAttribute.Ip, null, false, false).get(), equalTo("${zk:c1/localip}"));
+        assertThat(dataStore.getContainerAttributeAsync("c1", ContainerAttribute.PublicIp, "none", false, false).get(), equalTo("none"));
+        assertFabricException(dataStore.getContainerAttributeAsync("c1", ContainerAttribute.PublicIp, null, true, false));
+    }
+
+    @Test
+    public void zooKeeperReads() throws Exception {
+        assertThat(readThrough("c1", ContainerAttribute.Ip, null, false, true).get(), equalTo("10.0.0.1"));
+        assertThat(readThrough("c1", ContainerAttribute.Ip, null, false, false).get(), equalTo("${zk:c1/localip}"));
+        assertThat(readThrough("c2", ContainerAttribute.LocalIp, null, true, false).get(), equalTo("10.0.0.2"));
+        // a placeholder that can't be read is substituted like the synchronous read does
+        setData(ZkPath.CONTAINER_IP.getPath("c2"), "http://${zk:c3/localip}:8181");
+        assertThat(readThrough("c2", ContainerAttribute.Ip, null, false, true).get(),
+                equalTo(dataStore.readThrough(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return dataStore.getContainerAttribute("c2", ContainerAttribute.Ip, null, false, true);
+                    }
+                })));
+    }
+
+    @Test
+    public void zooKeeperReadsOfMissingNodes() throws Exception {
+        assertThat(readThrough("c1", ContainerAttribute.PublicIp, "none", false, false).get(), equalTo("none"));
+        assertThat(readThrough("c1", ContainerAttribute.PublicIp, "none", true, true).get(), nullValue());
+        assertThat(readThrough("c3", ContainerAttribute.Domains, null, true, false).get(), equalTo(""));
+        assertFabricException(readThrough("c1", ContainerAttribute.PublicIp, null, true, false));
+    }
+
+    @Test
+    public void bulkReads() throws Exception {
+        ListenableFuture<Map<String, Map<ContainerAttribute, String>>> future = dataStore.readThrough(new Callable<ListenableFuture<Map<String, Map<ContainerAttribute, String>>>>() {
+            @Override
+            public ListenableFuture<Map<String, Map<ContainerAttribute, String>>> call() throws Exception {
+                return dataStore.getContainerAttributesAsync(Arrays.asList("c1", "c2", "c3"),
+                        Arrays.asList(ContainerAttribute.Ip, ContainerAttribute.LocalIp, ContainerAttribute.PublicIp), true);
+            }
+        });
+        Map<String, Map<ContainerAttribute, String>> attributes = future.get(10, TimeUnit.SECONDS);
+        // the attributes that are not set and the containers that don't exist are left out
+        assertThat(attributes.keySet().toString(), equalTo("[c1, c2]"));
+        assertThat(attributes.get("c1").toString(), equalTo("{Ip=10.0.0.1, LocalIp=10.0.0.1}"));
+        assertThat(attributes.get("c2").toString(), equalTo("{LocalIp=10.0.0.2}"));
+
+        awaitRegistrySnapshot();
+        attributes = dataStore.getContainerAttributesAsync(Arrays.asList("c2", "c1", "c3"),
+                Arrays.asList(ContainerAttribute.LocalIp, ContainerAttribute.Resolver), false).get(10, TimeUnit.SECONDS);
+        assertThat(attributes.keySet().toString(), equalTo("[c2, c1]"));
+        assertThat(attributes.get("c1").toString(), equalTo("{Resolver=localip, LocalIp=${zk:root/localip}}"));
+    }
+
+    private ListenableFuture<String> readThrough(final String containerId, final ContainerAttribute attribute, final String def, final boolean mandatory, final boolean substituted) {
+        return dataStore.readThrough(new Callable<ListenableFuture<String>>() {
+            @Override
+            public ListenableFuture<String> call() throws Exception {
+                return dataStore.getContainerAttributeAsync(containerId, attribute, def, mandatory, substituted);
+            }
+        });
+    }
+
+    private void assertFabricException(ListenableFuture<String> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("FabricException expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(FabricException.class));
+        }
+    }
+
+    private void awaitRegistrySnapshot() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if (dataStore.getContainerAttributeAsync("c2", ContainerAttribute.LocalIp, null, false, false).isDone()) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("The container registry snapshot isn't loaded");
+    }
+
+    private void setData(String path, String data) throws Exception {
+        if (curator.checkExists().forPath(path) == null) {
+            curator.create().creatingParentsIfNeeded().forPath(path, data.getBytes("UTF-8"));
+        } else {
+            curator.setData().forPath(path, data.getBytes("UTF-8"));
+        }
+    }
+
+    private int findFreePort() throws Exception {
+        ServerSocket ss = new ServerSocket(0);
+        int port = ss.getLocalPort();
+        ss.close();
+        return port;
+    }
+
+    private NIOServerCnxnFactory startZooKeeper(int port) throws Exception {
+        String testDirectory = "target/zk-datastore/data" + System.currentTimeMillis();
+        FileUtils.deleteDirectory(new File(testDirectory));
+        ServerConfig cfg = new ServerConfig();
+        cfg.parse(new String[]{Integer.toString(port), testDirectory});
+
+        ZooKeeperServer zkServer = new ZooKeeperServer();
+        FileTxnSnapLog ftxn = new FileTxnSnapLog(new File(cfg.getDataLogDir()), new File(cfg.getDataDir()));
+        zkServer.setTxnLogFactory(ftxn);
+        zkServer.setTickTime(cfg.getTickTime());
+        zkServer.setMinSessionTimeout(cfg.getMinSessionTimeout());
+        zkServer.setMaxSessionTimeout(cfg.getMaxSessionTimeout());
+        NIOServerCnxnFactory cnxnFactory = new NIOServerCnxnFactory();
+        cnxnFactory.configure(cfg.getClientPortAddress(), cfg.getMaxClientCnxns());
+        cnxnFactory.startup(zkServer);
+        return cnxnFactory;
+    }
+}
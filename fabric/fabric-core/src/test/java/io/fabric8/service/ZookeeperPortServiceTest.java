@@ -17,17 +17,24 @@ package io.fabric8.service;
 
 import java.io.File;
 import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import io.fabric8.api.Container;
+import io.fabric8.api.FabricException;
 import io.fabric8.api.PortService;
 import org.apache.commons.io.FileUtils;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreV2;
+import org.apache.curator.framework.recipes.locks.Lease;
 import org.apache.curator.retry.RetryOneTime;
 import org.apache.zookeeper.server.NIOServerCnxnFactory;
 import org.apache.zookeeper.server.ServerConfig;
@@ -42,7 +49,9 @@ import org.slf4j.LoggerFactory;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class ZookeeperPortServiceTest {
 
@@ -134,6 +143,106 @@ public class ZookeeperPortServiceTest {
         }
     }
 
+    @Test
+    public void registerPortFromRangeSkipsClaimedPorts() throws Exception {
+        portService1.registerPort(c1, "org.apache.karaf.management", "rmiRegistryPort", 41099);
+        int port = portService2.registerPort(c2, "org.apache.karaf.management", "rmiRegistryPort", 41099, 41199, new HashSet<Integer>());
+        assertThat(port == 41099, is(false));
+        assertThat(portService2.registerPort(c2, "org.apache.karaf.management", "rmiRegistryPort", 41099, 41199, new HashSet<Integer>()), equalTo(port));
+        byte[] bytes = curator1.getData().forPath("/fabric/registry/ports/ip/localhost/" + port);
+        assertThat(new String(bytes), equalTo("c2"));
+
+        portService2.unregisterPort(c2);
+        assertThat(curator1.checkExists().forPath("/fabric/registry/ports/ip/localhost/" + port), nullValue());
+        assertThat(curator1.checkExists().forPath("/fabric/registry/ports/containers/c2"), nullValue());
+        assertThat(portService1.findUsedPortByHost(c1), equalTo(Collections.singleton(41099)));
+    }
+
+    @Test
+    public void registerPortClaimedByAnotherContainerFails() throws Exception {
+        portService1.setLegacy(false);
+        portService2.setLegacy(false);
+        portService1.registerPort(c1, "org.apache.karaf.management", "rmiRegistryPort", 41099);
+        try {
+            portService2.registerPort(c2, "org.apache.karaf.management", "rmiRegistryPort", 41099);
+            fail("FabricException expected");
+        } catch (FabricException e) {
+            // expected, the port is claimed by c1
+        }
+        assertThat(curator1.checkExists().forPath("/fabric/registry/ports/containers/c2/org.apache.karaf.management/rmiRegistryPort"), nullValue());
+        assertThat(new String(curator1.getData().forPath("/fabric/registry/ports/ip/localhost/41099")), equalTo("c1"));
+
+        // registering the same port again is fine, another port releases the previous claim
+        portService1.registerPort(c1, "org.apache.karaf.management", "rmiRegistryPort", 41099);
+        portService1.registerPort(c1, "org.apache.karaf.management", "rmiRegistryPort", 41100);
+        assertThat(curator1.checkExists().forPath("/fabric/registry/ports/ip/localhost/41099"), nullValue());
+        assertThat(portService1.findUsedPortByHost(c1), equalTo(Collections.singleton(41100)));
+    }
+
+    @Test
+    public void registerPortClaimedByAnotherContainerInLegacyMode() throws Exception {
+        portService1.registerPort(c1, "org.apache.karaf.management", "rmiRegistryPort", 41099);
+        // older versions didn't check the owner of the port
+        portService2.registerPort(c2, "org.apache.karaf.management", "rmiRegistryPort", 41099);
+        assertThat(new String(curator1.getData().forPath("/fabric/registry/ports/containers/c2/org.apache.karaf.management/rmiRegistryPort")), equalTo("41099"));
+        assertThat(new String(curator1.getData().forPath("/fabric/registry/ports/ip/localhost/41099")), equalTo("c1"));
+
+        // the port is still registered for c1
+        portService2.unregisterPort(c2);
+        assertThat(new String(curator1.getData().forPath("/fabric/registry/ports/ip/localhost")), equalTo("41099"));
+        assertThat(portService1.findUsedPortByHost(c1), equalTo(Collections.singleton(41099)));
+    }
+
+    @Test
+    public void legacyRegistryIsUpdatedInLegacyMode() throws Exception {
+        portService1.registerPort(c1, "org.apache.karaf.management", "rmiRegistryPort", 41099);
+        int port = portService2.registerPort(c2, "org.apache.karaf.management", "rmiRegistryPort", 41099, 41199, new HashSet<Integer>());
+        // older versions only read the ports listed in the data of the host node
+        assertThat(parsePorts(curator1.getData().forPath("/fabric/registry/ports/ip/localhost")), equalTo((Set<Integer>) new HashSet<Integer>(Arrays.asList(41099, port))));
+
+        portService2.unregisterPort(c2);
+        assertThat(new String(curator1.getData().forPath("/fabric/registry/ports/ip/localhost")), equalTo("41099"));
+
+        // the registrations wait for the global lock held by older versions
+        InterProcessSemaphoreV2 legacyLock = new InterProcessSemaphoreV2(curator2, "/fabric/registry/ports/lock", 1);
+        Lease lease = legacyLock.acquire(10, TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> registration = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return portService1.registerPort(c1, "org.apache.karaf.shell", "sshPort", 48101, 48199, new HashSet<Integer>());
+                }
+            });
+            Thread.sleep(500);
+            assertThat(registration.isDone(), is(false));
+            legacyLock.returnLease(lease);
+            assertThat(registration.get(10, TimeUnit.SECONDS) >= 48101, is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void legacyRegistryIsNotUpdatedOutsideLegacyMode() throws Exception {
+        portService1.setLegacy(false);
+        portService1.registerPort(c1, "org.apache.karaf.management", "rmiRegistryPort", 41099);
+        assertThat(new String(curator1.getData().forPath("/fabric/registry/ports/ip/localhost")), equalTo(""));
+        assertThat(portService1.findUsedPortByHost(c1), equalTo(Collections.singleton(41099)));
+    }
+
+    @Test
+    public void legacyPortsOfHost() throws Exception {
+        curator1.setData().forPath("/fabric/registry/ports/ip/localhost", "2000 2001".getBytes());
+        curator1.create().creatingParentsIfNeeded().forPath("/fabric/registry/ports/containers/c1/org.apache.karaf.shell/sshPort", "2000".getBytes());
+        curator1.create().forPath("/fabric/registry/ports/containers/c1/reserved_ports", "2000".getBytes());
+        assertThat(portService1.findUsedPortByHost(c1), equalTo((Set<Integer>) new HashSet<Integer>(Arrays.asList(2000, 2001))));
+
+        portService1.unregisterPort(c1);
+        assertThat(portService1.findUsedPortByHost(c1), equalTo(Collections.singleton(2001)));
+        assertThat(new String(curator1.getData().forPath("/fabric/registry/ports/ip/localhost")), equalTo("2001"));
+    }
+
     @Test
     public void multiVmPortOperations() throws Exception {
         LOG.info("Starting multithreaded ZookeeperPortService test");
@@ -188,6 +297,14 @@ public class ZookeeperPortServiceTest {
         }
     }
 
+    private static Set<Integer> parsePorts(byte[] data) {
+        Set<Integer> ports = new HashSet<Integer>();
+        for (String port : new String(data).split(" ")) {
+            ports.add(Integer.parseInt(port));
+        }
+        return ports;
+    }
+
     private int findFreePort() throws Exception {
         ServerSocket ss = new ServerSocket(0);
         int port = ss.getLocalPort();
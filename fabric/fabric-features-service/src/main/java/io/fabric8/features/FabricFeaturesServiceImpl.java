@@ -15,7 +15,6 @@
  */
 package io.fabric8.features;
 
-import static io.fabric8.utils.features.FeatureUtils.search;
 import io.fabric8.api.Container;
 import io.fabric8.api.FabricService;
 import io.fabric8.api.InvalidComponentException;
@@ -34,6 +33,7 @@ import java.net.URI;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.fabric8.utils.NamedThreadFactory;
 import org.apache.felix.scr.annotations.Activate;
@@ -91,6 +91,11 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
     @GuardedBy("this")
     private final Set<Feature> installedFeatures = new HashSet<Feature>();
 
+    // incremented whenever the repositories are reloaded, which discards the features computed from them
+    private final AtomicLong repositoriesGeneration = new AtomicLong();
+    private volatile Cached<FeatureIndex> availableFeatures;
+    private volatile Cached<Feature[]> installedFeatureClosure;
+
     @Activate
     void activate() {
         fabricService.get().trackConfiguration(this);
@@ -107,6 +112,8 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
     @Override
     public synchronized void run() {
         assertValid();
+        repositories.invalidateAll();
+        repositoriesGeneration.incrementAndGet();
         boolean updated = false;
         final int MAX_RETRIES = 10;
         int iteration = 0;
@@ -115,7 +122,6 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
                 iteration = iteration + 1;
                 List<Repository> listInstalledRepositories = Arrays.asList(listInstalledRepositories());
                 List<Feature> listInstalledFeatures = Arrays.asList(listInstalledFeatures());
-                repositories.invalidateAll();
 
                 installedRepositories.clear();
                 installedFeatures.clear();
@@ -193,6 +199,19 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
     @Override
     public Repository[] listRepositories() {
         assertValid();
+        return getAvailableFeatures().getRepositories();
+    }
+
+    /**
+     * Get the index of the features of all the {@link Repository} entries of the current {@link Container} {@link Version},
+     * which is kept until the repositories are reloaded.
+     */
+    private FeatureIndex getAvailableFeatures() {
+        long generation = repositoriesGeneration.get();
+        Cached<FeatureIndex> cached = availableFeatures;
+        if (cached != null && cached.generation == generation) {
+            return cached.value;
+        }
         Set<Repository> repos = new LinkedHashSet<Repository>();
         for (String uri : getAllProfilesOverlay().getRepositories()) {
             try {
@@ -201,8 +220,9 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
                 LOGGER.warn("Error while populating repositories from uri.", ex);
             }
         }
-
-        return repos.toArray(new Repository[repos.size()]);
+        FeatureIndex index = FeatureIndex.create(repos.toArray(new Repository[repos.size()]));
+        availableFeatures = new Cached<FeatureIndex>(generation, index);
+        return index;
     }
 
     @Override
@@ -282,30 +302,26 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
     @Override
     public Feature[] listFeatures() throws Exception {
         assertValid();
-        Set<Feature> allfeatures = new HashSet<Feature>();
-            Repository[] repositories = listRepositories();
-            for (Repository repository : repositories) {
-                try {
-                    for (Feature feature : repository.getFeatures()) {
-                        if (!allfeatures.contains(feature)) {
-                            allfeatures.add(feature);
-                        }
-                    }
-                } catch (Exception ex) {
-                    LOGGER.debug("Could not load features from %s.", repository.getURI());
-                }
-            }
-        return allfeatures.toArray(new Feature[allfeatures.size()]);
+        return getAvailableFeatures().getFeatures();
     }
 
+    /**
+     * Lists the features of the profiles of the current {@link Container} and their dependencies,
+     * which are kept until the repositories are reloaded.
+     */
     @Override
     public Feature[] listInstalledFeatures() {
         assertValid();
+        long generation = repositoriesGeneration.get();
+        Cached<Feature[]> cached = installedFeatureClosure;
+        if (cached != null && cached.generation == generation) {
+            return cached.value.clone();
+        }
         Set<Feature> installed = new HashSet<Feature>();
             try {
-                Map<String, Map<String, Feature>> allFeatures = getFeatures(installedRepositories);
                 Profile overlayProfile = fabricService.get().getCurrentContainer().getOverlayProfile();
                 Profile effectiveProfile = Profiles.getEffectiveProfile(fabricService.get(), overlayProfile);
+                FeatureIndex index = FeatureIndex.create(listInstalledRepositories(effectiveProfile));
                 for (String featureName : effectiveProfile.getFeatures()) {
                     try {
                         Feature f;
@@ -313,16 +329,22 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
                             String[] parts = featureName.split("/");
                             String name = parts[0];
                             String version = parts[1];
-                            f = allFeatures.get(name).get(version);
+                            f = index.getFeature(name, version);
+                        } else {
+                            f = index.getLastFeature(featureName);
+                        }
+                        if (f != null) {
+                            addFeatures(f, installed, index);
                         } else {
-                            TreeMap<String, Feature> versionMap = (TreeMap<String, Feature>) allFeatures.get(featureName);
-                            f = versionMap.lastEntry().getValue();
+                            LOGGER.debug("Feature {} not found in the repositories of the container", featureName);
                         }
-                        addFeatures(f, installed);
                     } catch (Exception ex) {
-                        LOGGER.debug("Error while adding {} to the features list");
+                        LOGGER.debug("Error while adding {} to the features list", featureName);
                     }
                 }
+                Feature[] result = installed.toArray(new Feature[installed.size()]);
+                installedFeatureClosure = new Cached<Feature[]>(generation, result);
+                return result.clone();
             } catch (IllegalStateException e){
                 if ("Client is not started".equals(e.getMessage())){
                     LOGGER.warn("Zookeeper connection not available. It's not yet possible to compute features.");
@@ -343,46 +365,13 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
     @Override
     public Feature getFeature(String name) throws Exception {
         assertValid();
-        Feature[] features = listFeatures();
-        for (Feature feature : features) {
-            if (name.equals(feature.getName())) {
-                return feature;
-            }
-        }
-        return null;
+        return getAvailableFeatures().getFeature(name);
     }
 
     @Override
     public Feature getFeature(String name, String version) throws Exception {
         assertValid();
-        Feature[] features = listFeatures();
-        for (Feature feature : features) {
-            if (name.equals(feature.getName()) && version.equals(feature.getVersion())) {
-                return feature;
-            }
-        }
-        return null;
-    }
-
-
-    private Map<String, Map<String, Feature>> getFeatures(Iterable<Repository> repositories) throws Exception {
-        Map<String, Map<String, Feature>> features = new HashMap<String, Map<String, Feature>>();
-        for (Repository repo : repositories) {
-            try {
-                for (Feature f : repo.getFeatures()) {
-                    if (features.get(f.getName()) == null) {
-                        Map<String, Feature> versionMap = new TreeMap<String, Feature>();
-                        versionMap.put(f.getVersion(), f);
-                        features.put(f.getName(), versionMap);
-                    } else {
-                        features.get(f.getName()).put(f.getVersion(), f);
-                    }
-                }
-            } catch (Exception ex) {
-                LOGGER.debug("Could not load features from %s.", repo.getURI());
-            }
-        }
-        return features;
+        return getAvailableFeatures().getFeature(name, version);
     }
 
 
@@ -390,11 +379,14 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
      * Lists all {@link Repository} enties found in the {@link Profile}s assigned to the current {@link Container}.
      */
     private Repository[] listInstalledRepositories() {
+        Profile overlayProfile = fabricService.get().getCurrentContainer().getOverlayProfile();
+        return listInstalledRepositories(Profiles.getEffectiveProfile(fabricService.get(), overlayProfile));
+    }
+
+    private Repository[] listInstalledRepositories(Profile effectiveProfile) {
         Set<String> repositoryUris = new LinkedHashSet<String>();
         Set<Repository> repos = new LinkedHashSet<Repository>();
 
-        Profile overlayProfile = fabricService.get().getCurrentContainer().getOverlayProfile();
-        Profile effectiveProfile = Profiles.getEffectiveProfile(fabricService.get(), overlayProfile);
         if (effectiveProfile.getRepositories() != null) {
             for (String uri : effectiveProfile.getRepositories()) {
                 repositoryUris.add(uri);
@@ -425,14 +417,17 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
     /**
      * Adds {@link Feature} and its dependencies to the set of {@link Feature}s.
      */
-    private void addFeatures(Feature feature, Set<Feature> features) {
+    private void addFeatures(Feature feature, Set<Feature> features, FeatureIndex index) {
         if (features.contains(feature)) {
             return;
         }
 
         features.add(feature);
         for (Feature dependency : feature.getDependencies()) {
-            addFeatures(search(dependency.getName(), dependency.getVersion(), repositories.asMap().values()), features);
+            Feature match = index.search(dependency.getName(), dependency.getVersion());
+            if (match != null) {
+                addFeatures(match, features, index);
+            }
         }
     }
 
@@ -470,6 +465,17 @@ public final class FabricFeaturesServiceImpl extends AbstractComponent implement
         this.urlHandler.unbind(urlHandler);
     }
 
+    private static final class Cached<T> {
+
+        private final long generation;
+        private final T value;
+
+        private Cached(long generation, T value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+
     static class VersionProfileOptionsProvider implements OptionsProvider<ProfileBuilder> {
 
     	private final Version version;
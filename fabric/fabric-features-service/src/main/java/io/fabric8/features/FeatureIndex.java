@@ -0,0 +1,115 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.features;
+
+import io.fabric8.api.jcip.Immutable;
+import io.fabric8.utils.features.FeatureUtils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.karaf.features.Feature;
+import org.apache.karaf.features.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The features of a set of repositories, indexed by name and version.
+ */
+@Immutable
+final class FeatureIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeatureIndex.class);
+
+    private final Repository[] repositories;
+    private final Feature[] features;
+    // the versions of each feature, in the order of the repositories, the first repository defining a version wins
+    private final Map<String, Map<String, Feature>> featuresByName;
+
+    private FeatureIndex(Repository[] repositories, Feature[] features, Map<String, Map<String, Feature>> featuresByName) {
+        this.repositories = repositories;
+        this.features = features;
+        this.featuresByName = featuresByName;
+    }
+
+    static FeatureIndex create(Repository[] repositories) {
+        Set<Feature> features = new LinkedHashSet<Feature>();
+        Map<String, Map<String, Feature>> featuresByName = new HashMap<String, Map<String, Feature>>();
+        for (Repository repository : repositories) {
+            try {
+                for (Feature feature : repository.getFeatures()) {
+                    if (features.add(feature)) {
+                        Map<String, Feature> versions = featuresByName.get(feature.getName());
+                        if (versions == null) {
+                            versions = new LinkedHashMap<String, Feature>();
+                            featuresByName.put(feature.getName(), versions);
+                        }
+                        if (!versions.containsKey(feature.getVersion())) {
+                            versions.put(feature.getVersion(), feature);
+                        }
+                    }
+                }
+            } catch (Exception ex) {
+                LOGGER.debug("Could not load features from {}.", repository.getURI());
+            }
+        }
+        return new FeatureIndex(repositories.clone(), features.toArray(new Feature[features.size()]), featuresByName);
+    }
+
+    Repository[] getRepositories() {
+        return repositories.clone();
+    }
+
+    Feature[] getFeatures() {
+        return features.clone();
+    }
+
+    /**
+     * Get the first feature with the given name, in the order of the repositories.
+     */
+    Feature getFeature(String name) {
+        Map<String, Feature> versions = featuresByName.get(name);
+        return versions != null ? versions.values().iterator().next() : null;
+    }
+
+    /**
+     * Get the first feature with the given name and version, in the order of the repositories.
+     */
+    Feature getFeature(String name, String version) {
+        Map<String, Feature> versions = featuresByName.get(name);
+        return versions != null ? versions.get(version) : null;
+    }
+
+    /**
+     * Get the feature with the given name and the last version in lexicographical order.
+     */
+    Feature getLastFeature(String name) {
+        Map<String, Feature> versions = featuresByName.get(name);
+        return versions != null ? new TreeMap<String, Feature>(versions).lastEntry().getValue() : null;
+    }
+
+    /**
+     * Get the feature with the given name and the highest version within the version range.
+     */
+    Feature search(String name, String version) {
+        Map<String, Feature> versions = featuresByName.get(name);
+        return versions != null ? FeatureUtils.searchFeature(name, version, versions.values()) : null;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.features;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import org.apache.karaf.features.Feature;
+import org.apache.karaf.features.Repository;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class FeatureIndexTest {
+
+    private final Feature foo10 = feature("foo", "1.0.0");
+    private final Feature foo12 = feature("foo", "1.2.0");
+    private final Feature bar = feature("bar", "1.0.0");
+    // the second repository redefines foo 1.0.0
+    private final Feature otherFoo10 = feature("foo", "1.0.0");
+    private final Feature foo110 = feature("foo", "1.10.0");
+
+    private final FeatureIndex index = FeatureIndex.create(new Repository[]{
+            repository("mvn:test/first/1.0/xml/features", foo10, foo12, bar),
+            repository("mvn:test/second/1.0/xml/features", otherFoo10, foo110)});
+
+    @Test
+    public void testFirstRepositoryWins() {
+        Assert.assertSame(foo10, index.getFeature("foo"));
+        Assert.assertSame(foo10, index.getFeature("foo", "1.0.0"));
+        Assert.assertSame(foo110, index.getFeature("foo", "1.10.0"));
+        Assert.assertSame(bar, index.getFeature("bar"));
+        Assert.assertNull(index.getFeature("baz"));
+        Assert.assertNull(index.getFeature("bar", "2.0.0"));
+        Assert.assertEquals(Arrays.asList(foo10, foo12, bar, otherFoo10, foo110), Arrays.asList(index.getFeatures()));
+        Assert.assertEquals(2, index.getRepositories().length);
+    }
+
+    @Test
+    public void testLastVersionIsLexicographical() {
+        Assert.assertSame(foo12, index.getLastFeature("foo"));
+        Assert.assertSame(bar, index.getLastFeature("bar"));
+        Assert.assertNull(index.getLastFeature("baz"));
+    }
+
+    @Test
+    public void testSearchVersionRange() {
+        Assert.assertSame(foo110, index.search("foo", "1.0.0"));
+        Assert.assertSame(foo12, index.search("foo", "[1.0.0,1.5.0)"));
+        Assert.assertSame(foo10, index.search("foo", "[1.0.0,1.1.0)"));
+        Assert.assertNull(index.search("foo", "[2.0.0,3.0.0)"));
+        Assert.assertNull(index.search("baz", "1.0.0"));
+    }
+
+    @Test
+    public void testFailingRepositoryIsSkipped() throws Exception {
+        Repository failing = Mockito.mock(Repository.class);
+        Mockito.when(failing.getURI()).thenReturn(new URI("mvn:test/failing/1.0/xml/features"));
+        Mockito.when(failing.getFeatures()).thenThrow(new IllegalStateException("unavailable"));
+        FeatureIndex index = FeatureIndex.create(new Repository[]{failing, repository("mvn:test/first/1.0/xml/features", bar)});
+        Assert.assertSame(bar, index.getFeature("bar"));
+        Assert.assertEquals(1, index.getFeatures().length);
+    }
+
+    private static Repository repository(String uri, Feature... features) {
+        Repository repository = Mockito.mock(Repository.class);
+        try {
+            Mockito.when(repository.getURI()).thenReturn(new URI(uri));
+            Mockito.when(repository.getFeatures()).thenReturn(features);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return repository;
+    }
+
+    private static Feature feature(String name, String version) {
+        Feature feature = Mockito.mock(Feature.class);
+        Mockito.when(feature.getName()).thenReturn(name);
+        Mockito.when(feature.getVersion()).thenReturn(version);
+        return feature;
+    }
+}
@@ -23,6 +23,8 @@ import io.fabric8.api.GitContext;
 import io.fabric8.api.LockHandle;
 import io.fabric8.api.Profile;
 import io.fabric8.api.ProfileBuilder;
+import io.fabric8.api.ProfileChangeEvent;
+import io.fabric8.api.ProfileChanges;
 import io.fabric8.api.ProfileBuilders;
 import io.fabric8.api.ProfileRegistry;
 import io.fabric8.api.Profiles;
@@ -53,6 +55,7 @@ import io.fabric8.zookeeper.utils.ZooKeeperUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -72,13 +75,18 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.shared.SharedCount;
@@ -94,25 +102,33 @@ import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.zookeeper.KeeperException;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.gitective.core.RepositoryUtils;
 import io.fabric8.api.gravia.IllegalArgumentAssertion;
 import io.fabric8.api.gravia.IllegalStateAssertion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 
 import static io.fabric8.patch.management.impl.GitPatchRepository.ADMIN_HISTORY_BRANCH;
 import static io.fabric8.patch.management.impl.GitPatchRepository.HISTORY_BRANCH;
@@ -141,6 +157,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     private static final int GIT_COMMIT_SHORT_LENGTH = 7;
     private static final int MAX_COMMITS_WITHOUT_GC = 40;
     private static final long AQUIRE_LOCK_TIMEOUT = 25 * 1000L;
+    private static final int MAX_PROFILE_COMMIT_ATTEMPTS = 5;
 
     @Reference(referenceInterface = CuratorFramework.class)
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<>();
@@ -163,13 +180,18 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     private final ImportExportHandler importExportHandler = new ImportExportHandler();
     private final GitDataStoreListener gitListener = new GitDataStoreListener();
     private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    // profile changes are committed straight to the version branches under the read lock and the lock of the version
+    private final ConcurrentMap<String, ReentrantLock> versionLocks = new ConcurrentHashMap<>();
+    // the version branches may have been moved without updating the working tree
+    private volatile boolean workingTreeStale;
     private final boolean strictLockAssert = true;
 
     private int commitsWithoutGC = MAX_COMMITS_WITHOUT_GC;
     private Map<String, String> dataStoreProperties;
     private ProxySelector defaultProxySelector;
     private PullPushPolicy pullPushPolicy;
-    private boolean notificationRequired;
+    // the changes to notify once the write lock is released
+    private ProfileChangeEvent pendingChanges;
     private SharedCount counter;
     private String remoteUrl;
 
@@ -183,8 +205,13 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     private long gitRemotePollInterval = 60 * 1000L;
     @Property(name = GIT_GC_ON_LOAD, label = "Run Git GC", description = "Whether or not to run Git GC on load of the Git repo", boolValue = false)
     private boolean gitGcOnLoad = false;
+    @Property(name = "versionCacheSize", label = "Version Cache Size", description = "The maximum size in megabytes of the profile files kept in memory, the least recently used versions are evicted first", intValue = 256)
+    private int versionCacheSize = 256;
     
-    private final LoadingCache<String, Version> versionCache = CacheBuilder.newBuilder().build(new VersionCacheLoader());
+    private final ProfileTreeReader profileTreeReader = new ProfileTreeReader();
+    // the profiles of the versions by git tree id, so that the unchanged profiles are reused when a version is reloaded
+    private Cache<ObjectId, CachedProfiles> profileCache;
+    private LoadingCache<String, CachedVersion> versionCache;
     private final Set<String> versions = new HashSet<String>();
 
     // ENTESB-6336: This latch will be triggerred after versionCache contains some sane data
@@ -195,6 +222,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     public void activate(Map<String, ?> configuration) throws Exception {
         LockFile.unlock(getGit().getRepository().getIndexFile());
         configurer.configure(configuration, this);
+        createCaches();
 
         // Remove non-String values from the configuration
         Map<String, String> properties = new HashMap<>();
@@ -446,21 +474,73 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
             success = false;
         }
         IllegalStateAssertion.assertTrue(success, "Cannot obtain profile write lock in time");
+        if (workingTreeStale && readWriteLock.getWriteHoldCount() == 1) {
+            resetWorkingTree();
+        }
         return new LockHandle() {
             @Override
             public void unlock() {
-                if (notificationRequired && readWriteLock.getWriteHoldCount() == 1) {
-                    try {
-                        dataStore.get().fireChangeNotifications();
-                    } finally {
-                        notificationRequired = false;
-                    }
+                ProfileChangeEvent changes = null;
+                if (readWriteLock.getWriteHoldCount() == 1) {
+                    changes = pendingChanges;
+                    pendingChanges = null;
                 }
                 writeLock.unlock();
+                // the listeners are notified once the lock is released, so that they can read the profiles
+                if (changes != null) {
+                    dataStore.get().fireChangeNotifications(changes);
+                }
             }
         };
     }
 
+    /**
+     * Obtains the lock of a version, which must be obtained after the read lock
+     */
+    private LockHandle aquireVersionLock(String versionId) {
+        ReentrantLock lock = versionLocks.get(versionId);
+        if (lock == null) {
+            ReentrantLock newLock = new ReentrantLock();
+            lock = versionLocks.putIfAbsent(versionId, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        final ReentrantLock versionLock = lock;
+        boolean success;
+        try {
+            success = versionLock.tryLock() || versionLock.tryLock(AQUIRE_LOCK_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            success = false;
+        }
+        IllegalStateAssertion.assertTrue(success, "Cannot obtain version lock in time: " + versionId);
+        return new LockHandle() {
+            @Override
+            public void unlock() {
+                versionLock.unlock();
+            }
+        };
+    }
+
+    /**
+     * Resets the working tree to the head of the checked out branch, which may have been moved by
+     * a profile commit made in the object database
+     */
+    private void resetWorkingTree() {
+        assertWriteLock();
+        ClassLoader tccl = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(GitDataStoreImpl.class.getClassLoader());
+            workingTreeStale = false;
+            getGit().reset().setMode(ResetCommand.ResetType.HARD).call();
+        } catch (Exception e) {
+            workingTreeStale = true;
+            throw FabricException.launderThrowable(e);
+        } finally {
+            Thread.currentThread().setContextClassLoader(tccl);
+        }
+    }
+
     @Override
     public LockHandle aquireReadLock() {
         final ReadLock readLock = readWriteLock.readLock();
@@ -520,10 +600,28 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         return Collections.unmodifiableMap(dataStoreProperties);
     }
 
+    private void createCaches() {
+        // the two caches share the budget: a profile file is only held by the cached profiles and versions, which
+        // weigh at most half of it each. A single segment makes the bound global, instead of split across segments
+        long maxWeight = versionCacheSize * 1024L * 1024L / 2;
+        profileCache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(maxWeight).weigher(new Weigher<ObjectId, CachedProfiles>() {
+            @Override
+            public int weigh(ObjectId key, CachedProfiles cached) {
+                return cached.getTree().getSize();
+            }
+        }).build();
+        versionCache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(maxWeight).weigher(new Weigher<String, CachedVersion>() {
+            @Override
+            public int weigh(String key, CachedVersion cached) {
+                return cached.getWeight();
+            }
+        }).build(new VersionCacheLoader());
+    }
+
     private Version getVersionFromCache(String versionId, String profileId) {
         Version result = getVersionFromCacheRO(versionId, profileId);
         if (result == null) {
-            return getVersionFromCacheRW(versionId, profileId);
+            return loadVersionIntoCache(versionId, profileId);
         }
         return result;
     }
@@ -534,11 +632,8 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
             assertValid();
             String branch = GitHelpers.getProfileBranch(versionId, profileId);
             if (GitHelpers.localBranchExists(getGit(), branch)) {
-                if( versionCache.asMap().containsKey(versionId) ) {
-                    return versionCache.asMap().get(versionId);
-                } else {
-                    return null;
-                }
+                CachedVersion cached = versionCache.getIfPresent(versionId);
+                return cached != null && cached.isCurrent(getGit().getRepository()) ? cached.getVersion() : null;
             } else {
                 return null;
             }
@@ -549,26 +644,33 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
     }
 
-    private Version getVersionFromCacheRW(String versionId, String profileId){
+    private Version loadVersionIntoCache(String versionId, String profileId){
         try {
             initialVersionsAvailable.await(15, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             LOGGER.warn("Waiting for initial versions failed");
         }
 
-        LockHandle writeLock = aquireWriteLock();
+        // versions are read from the object database, so they can be loaded concurrently
+        LockHandle readLock = aquireReadLock();
         try {
             assertValid();
             String branch = GitHelpers.getProfileBranch(versionId, profileId);
             if (GitHelpers.localBranchExists(getGit(), branch)) {
-                return versionCache.get(versionId);
+                CachedVersion cached = versionCache.get(versionId);
+                if (!cached.isCurrent(getGit().getRepository())) {
+                    // loaded while a profile commit moved a branch, which invalidated the version before it was cached
+                    versionCache.asMap().remove(versionId, cached);
+                    cached = versionCache.get(versionId);
+                }
+                return cached.getVersion();
             } else {
                 return null;
             }
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -741,6 +843,14 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     @Override
     public String createProfile(GitContext context, final Profile profile) {
         IllegalStateAssertion.assertNotNull(profile, "profile");
+        if (!context.isRequirePull()) {
+            return writeProfiles(context, profile.getVersion(), new VersionTreeWriter.Operation<String>() {
+                @Override
+                public String apply(VersionTreeWriter writer) throws Exception {
+                    return createProfile(writer, profile);
+                }
+            });
+        }
         LockHandle writeLock = aquireWriteLock();
         try {
             assertValid();
@@ -771,8 +881,16 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     }
 
     @Override
-    public String updateProfile(GitContext context, final Profile profile, boolean force) {
+    public String updateProfile(GitContext context, final Profile profile, final boolean force) {
         IllegalStateAssertion.assertNotNull(profile, "profile");
+        if (!context.isRequirePull()) {
+            return writeProfiles(context, profile.getVersion(), new VersionTreeWriter.Operation<String>() {
+                @Override
+                public String apply(VersionTreeWriter writer) throws Exception {
+                    return updateProfile(writer, profile, force);
+                }
+            });
+        }
         LockHandle writeLock = aquireWriteLock();
         try {
             assertValid();
@@ -841,6 +959,16 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     public void deleteProfile(GitContext context, final String versionId, final String profileId) {
         IllegalStateAssertion.assertNotNull(versionId, "versionId");
         IllegalStateAssertion.assertNotNull(profileId, "profileId");
+        if (!context.isRequirePull()) {
+            writeProfiles(context, versionId, new VersionTreeWriter.Operation<Void>() {
+                @Override
+                public Void apply(VersionTreeWriter writer) throws Exception {
+                    deleteProfile(writer, profileId);
+                    return null;
+                }
+            });
+            return;
+        }
         LockHandle writeLock = aquireWriteLock();
         try {
             assertValid();
@@ -860,6 +988,218 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
     }
 
+    @Override
+    public void updateProfiles(ProfileChanges changes) {
+        updateProfiles(new GitContext().requirePush(), changes);
+    }
+
+    @Override
+    public void updateProfiles(GitContext context, final ProfileChanges changes) {
+        IllegalStateAssertion.assertNotNull(changes, "changes");
+        IllegalStateAssertion.assertFalse(context.isRequirePull(), "Profile changes cannot be applied after a pull");
+        Map<String, VersionTreeWriter.Operation<Void>> operations = new HashMap<>();
+        for (final String versionId : changes.getVersionIds()) {
+            operations.put(versionId, new VersionTreeWriter.Operation<Void>() {
+                @Override
+                public Void apply(VersionTreeWriter writer) throws Exception {
+                    for (ProfileChanges.Change change : changes.getChanges(versionId)) {
+                        switch (change.getType()) {
+                            case CREATE:
+                                createProfile(writer, change.getProfile());
+                                break;
+                            case UPDATE:
+                                updateProfile(writer, change.getProfile(), change.isForce());
+                                break;
+                            case DELETE:
+                                deleteProfile(writer, change.getProfileId());
+                                break;
+                            case VERSION_ATTRIBUTES:
+                                writer.setVersionAttributes(change.getAttributes());
+                                break;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        writeVersions(context, operations);
+    }
+
+    private String createProfile(VersionTreeWriter writer, Profile profile) throws IOException {
+        String profileId = profile.getId();
+        IllegalStateAssertion.assertFalse(writer.hasProfile(profileId), "Profile already exists: " + profileId);
+        assertParentsExist(writer, profile);
+        LOGGER.debug("Create {}", Profiles.getProfileInfo(profile));
+        writer.setProfile(profile);
+        return profileId;
+    }
+
+    private String updateProfile(VersionTreeWriter writer, Profile profile, boolean force) throws IOException {
+        String versionId = profile.getVersion();
+        String profileId = profile.getId();
+        IllegalStateAssertion.assertTrue(writer.hasProfile(profileId), "Profile does not exist: " + versionId + "/" + profileId);
+        // a profile changed earlier in the same batch is never skipped
+        Profile lastProfile = writer.isChanged(profileId) ? null : getProfileFromCache(versionId, profileId);
+        if (force || lastProfile == null || !lastProfile.equals(profile)) {
+            assertParentsExist(writer, profile);
+            LOGGER.debug("Update {}", lastProfile != null ? Profiles.getProfileDifference(lastProfile, profile) : Profiles.getProfileInfo(profile));
+            writer.setProfile(profile);
+        } else {
+            LOGGER.debug("Skip unchanged profile update for: {}", profile);
+        }
+        return profileId;
+    }
+
+    private void deleteProfile(VersionTreeWriter writer, String profileId) throws IOException {
+        LOGGER.debug("Delete " + ProfileBuilder.Factory.create(writer.getVersionId(), profileId).getProfile());
+        writer.deleteProfile(profileId);
+    }
+
+    private void assertParentsExist(VersionTreeWriter writer, Profile profile) throws IOException {
+        for (String parentId : profile.getParentIds()) {
+            IllegalStateAssertion.assertTrue(writer.hasProfile(parentId), "Parent profile does not exist: " + parentId);
+        }
+    }
+
+    private <T> T writeProfiles(GitContext context, String versionId, VersionTreeWriter.Operation<T> operation) {
+        IllegalStateAssertion.assertNotNull(versionId, "versionId");
+        return writeVersions(context, Collections.singletonMap(versionId, operation)).get(versionId);
+    }
+
+    /**
+     * Applies profile changes to versions with commits made straight in the object database.
+     * <p/>
+     * Only the read lock and the locks of the versions are held, so that the profiles of other
+     * versions can be written concurrently. The changes of all the versions are applied before
+     * any of them is committed, so that invalid changes leave all the versions alone. The branches
+     * are moved only if none has been moved since the changes have been applied, otherwise those
+     * already moved are rolled back and the changes are applied again to the new heads. The commits are pushed once, under the write lock, and a single
+     * change notification is fired.
+     */
+    private <T> Map<String, T> writeVersions(final GitContext context, Map<String, ? extends VersionTreeWriter.Operation<T>> operations) {
+        // the version locks are taken in order, so that concurrent batches cannot deadlock
+        final SortedMap<String, VersionTreeWriter.Operation<T>> sortedOperations = new TreeMap<>(operations);
+        final ProfileChangeEvent[] changes = new ProfileChangeEvent[1];
+        try {
+            Map<String, T> results;
+            List<LockHandle> versionLockHandles = new ArrayList<>();
+            LockHandle readLock = aquireReadLock();
+            try {
+                for (String versionId : sortedOperations.keySet()) {
+                    versionLockHandles.add(aquireVersionLock(versionId));
+                }
+                assertValid();
+                GitOperation<Map<String, T>> gitop = new GitOperation<Map<String, T>>() {
+                    public Map<String, T> call(Git git, GitContext readContext) throws Exception {
+                        Repository repository = git.getRepository();
+                        for (int attempt = 1; ; attempt++) {
+                            Map<String, T> results = new HashMap<>();
+                            Map<String, ProfileTreeWriter> writers = new TreeMap<>();
+                            for (Map.Entry<String, VersionTreeWriter.Operation<T>> entry : sortedOperations.entrySet()) {
+                                String versionId = entry.getKey();
+                                results.put(versionId, entry.getValue().apply(new VersionTreeWriter(repository, versionId, writers)));
+                            }
+                            if (commitBranches(repository, writers, changes)) {
+                                return results;
+                            }
+                            IllegalStateAssertion.assertTrue(attempt < MAX_PROFILE_COMMIT_ATTEMPTS, "Versions concurrently modified: " + sortedOperations.keySet());
+                            LOGGER.debug("Versions {} concurrently modified, applying the changes again", sortedOperations.keySet());
+                        }
+                    }
+                };
+                results = executeInternal(new GitContext(), null, gitop);
+            } finally {
+                for (LockHandle versionLock : versionLockHandles) {
+                    versionLock.unlock();
+                }
+                readLock.unlock();
+            }
+            if (changes[0] != null && context.isRequirePush()) {
+                pushCommits(context);
+            }
+            return results;
+        } finally {
+            if (changes[0] != null) {
+                if (readWriteLock.isWriteLockedByCurrentThread()) {
+                    // the listeners are notified when the write lock is released, like the other changes made under it
+                    addPendingChanges(changes[0]);
+                } else {
+                    dataStore.get().fireChangeNotifications(changes[0]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Commits the changes of the given writers, all or none of them. The master branch is committed first, as
+     * it is not guarded by the version locks and may be moved by the changes of other versions.
+     *
+     * @return false if a branch has been moved concurrently, after rolling back the branches committed so far
+     */
+    private boolean commitBranches(Repository repository, Map<String, ProfileTreeWriter> writers, ProfileChangeEvent[] changes) throws IOException {
+        List<ProfileTreeWriter> ordered = new ArrayList<>(writers.values());
+        ProfileTreeWriter masterWriter = writers.get(GitHelpers.MASTER_BRANCH);
+        if (masterWriter != null) {
+            ordered.remove(masterWriter);
+            ordered.add(0, masterWriter);
+        }
+        PersonIdent person = new PersonIdent(repository);
+        List<ProfileTreeWriter> committed = new ArrayList<>();
+        for (ProfileTreeWriter writer : ordered) {
+            if (!writer.commit(person)) {
+                for (ProfileTreeWriter done : committed) {
+                    IllegalStateAssertion.assertTrue(done.rollback(person), "Cannot roll back the changes of branch: " + done.getBranch());
+                    LOGGER.debug("Rolled back branch {} to {}", done.getBranch(), done.getHead().getName());
+                }
+                return false;
+            }
+            if (writer.getCommitId() != null) {
+                committed.add(writer);
+            }
+        }
+        for (ProfileTreeWriter writer : committed) {
+            String branch = writer.getBranch();
+            ObjectId commitId = writer.getCommitId();
+            LOGGER.debug("Committed {} to branch {}", commitId.getName(), branch);
+            workingTreeStale = true;
+            ProfileChangeEvent event;
+            if (branch.equals(GitHelpers.MASTER_BRANCH)) {
+                // the profiles of the master branch are part of every version
+                versionCache.invalidateAll();
+                event = ProfileChangeEvent.all();
+            } else {
+                versionCache.invalidate(branch);
+                event = getChanges(repository, branch, writer.getHead(), commitId);
+            }
+            changes[0] = changes[0] != null ? changes[0].merge(event) : event;
+        }
+        return true;
+    }
+
+    /**
+     * Pushes the commits made under the read lock. A rejected push resets the branches and the working tree,
+     * so the write lock is needed.
+     */
+    private void pushCommits(final GitContext context) {
+        LockHandle writeLock = aquireWriteLock();
+        try {
+            assertValid();
+            GitOperation<Void> gitop = new GitOperation<Void>() {
+                public Void call(Git git, GitContext pushContext) throws Exception {
+                    PushPolicyResult pushResult = doPushInternal(context, getCredentialsProvider());
+                    if (!pushResult.getRejectedUpdates().isEmpty()) {
+                        Exception gitex = pushResult.getLastException();
+                        throw new IllegalStateException("Push rejected: " + pushResult.getRejectedUpdates(), gitex);
+                    }
+                    return null;
+                }
+            };
+            executeInternal(new GitContext(), null, gitop);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     private String createOrUpdateProfile(GitContext context, Profile lastProfile, Profile profile, Set<String> profiles) throws IOException, GitAPIException {
         assertWriteLock();
 
@@ -1094,6 +1434,12 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
                 personIdent = new PersonIdent(repository);
             }
 
+            // the branches may have been moved by profile commits since the write lock was taken,
+            // if it is held more than once or a profile commit was made while holding it
+            if (workingTreeStale && (context.isRequirePull() || context.isRequireCommit())) {
+                resetWorkingTree();
+            }
+
             if (context.isRequirePull()) {
                 doPullInternal(context, getCredentialsProvider(), false);
             }
@@ -1105,10 +1451,11 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
                 Object cacheKey = context.getCacheKey();
                 if( cacheKey==null || cacheKey.equals(GitHelpers.MASTER_BRANCH)  ) {
                     versionCache.invalidateAll();
+                    addPendingChanges(ProfileChangeEvent.all());
                 } else {
                     versionCache.invalidate(cacheKey);
+                    addPendingChanges(ProfileChangeEvent.versionChanged(cacheKey.toString()));
                 }
-                notificationRequired = true;
             }
 
             if (context.isRequirePush()) {
@@ -1176,6 +1523,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     }
     
     private PullPolicyResult doPullInternal(GitContext context, CredentialsProvider credentialsProvider, boolean allowVersionDelete) {
+        Map<String, ObjectId> previousHeads = getBranchHeads();
         PullPolicyResult pullResult = pullPushPolicy.doPull(context, credentialsProvider, allowVersionDelete);
         if (pullResult.getLastException() == null) {
             Set<String> updatedVersions = pullResult.localUpdateVersions();
@@ -1187,7 +1535,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
                         versionCache.invalidate(version);
                     }
                 }
-                notificationRequired = true;
+                addPendingChanges(getPulledChanges(previousHeads, updatedVersions));
             }
             Set<String> pullVersions = pullResult.getVersions();
             if (!pullVersions.isEmpty() && !pullVersions.equals(versions)) {
@@ -1206,6 +1554,79 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         return pullResult;
     }
 
+    private void addPendingChanges(ProfileChangeEvent event) {
+        pendingChanges = pendingChanges != null ? pendingChanges.merge(event) : event;
+    }
+
+    private Map<String, ObjectId> getBranchHeads() {
+        Map<String, ObjectId> heads = new HashMap<>();
+        try {
+            for (Map.Entry<String, Ref> entry : getGit().getRepository().getRefDatabase().getRefs("refs/heads/").entrySet()) {
+                heads.put(entry.getKey(), entry.getValue().getObjectId());
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Cannot read the branch heads: " + e.getMessage(), e);
+        }
+        return heads;
+    }
+
+    /**
+     * Get the changes made by a pull to the given versions, comparing their heads before and after the pull.
+     * Changes to the master branch apply to every version and cannot be narrowed down.
+     */
+    private ProfileChangeEvent getPulledChanges(Map<String, ObjectId> previousHeads, Set<String> updatedVersions) {
+        if (updatedVersions.contains(GitHelpers.MASTER_BRANCH)) {
+            return ProfileChangeEvent.all();
+        }
+        Map<String, ObjectId> heads = getBranchHeads();
+        Repository repository = getGit().getRepository();
+        ProfileChangeEvent result = null;
+        for (String versionId : updatedVersions) {
+            ProfileChangeEvent event;
+            try {
+                event = getChanges(repository, versionId, previousHeads.get(versionId), heads.get(versionId));
+            } catch (IOException e) {
+                LOGGER.debug("Cannot compute the changes of version " + versionId + ": " + e.getMessage(), e);
+                event = ProfileChangeEvent.versionChanged(versionId);
+            }
+            result = result != null ? result.merge(event) : event;
+        }
+        return result;
+    }
+
+    /**
+     * Get the profiles of a version that differ between the given commits
+     */
+    private ProfileChangeEvent getChanges(Repository repository, String versionId, ObjectId previousId, ObjectId commitId) throws IOException {
+        if (previousId == null || commitId == null || !getVersionAttributesId(repository, previousId).equals(getVersionAttributesId(repository, commitId))) {
+            return ProfileChangeEvent.versionChanged(versionId);
+        }
+        Map<String, ProfileTreeReader.ProfileTree> previous = profileTreeReader.readProfiles(repository, previousId);
+        Map<String, ProfileTreeReader.ProfileTree> current = profileTreeReader.readProfiles(repository, commitId);
+        Set<String> profileIds = new HashSet<>();
+        for (Map.Entry<String, ProfileTreeReader.ProfileTree> entry : current.entrySet()) {
+            ProfileTreeReader.ProfileTree tree = previous.get(entry.getKey());
+            if (tree == null || !tree.getId().equals(entry.getValue().getId())) {
+                profileIds.add(entry.getKey());
+            }
+        }
+        for (String profileId : previous.keySet()) {
+            if (!current.containsKey(profileId)) {
+                profileIds.add(profileId);
+            }
+        }
+        return ProfileChangeEvent.profilesChanged(versionId, profileIds);
+    }
+
+    private ObjectId getVersionAttributesId(Repository repository, ObjectId commitId) throws IOException {
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            try (TreeWalk treeWalk = TreeWalk.forPath(repository, GitHelpers.VERSION_ATTRIBUTES, commit.getTree())) {
+                return treeWalk != null ? treeWalk.getObjectId(0) : ObjectId.zeroId();
+            }
+        }
+    }
+
     private PushPolicyResult doPushInternal(GitContext context, CredentialsProvider credentialsProvider) {
         return pullPushPolicy.doPush(context, credentialsProvider);
     }
@@ -1595,8 +2016,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
 
                 GitOperation<String> gitop = new GitOperation<String>() {
                     public String call(Git git, GitContext context) throws Exception {
-                        checkoutRequiredProfileBranch(git, context, versionId, null);
-                        return exportProfiles(git, context, outputFile, wildcard);
+                        return exportProfiles(git, versionId, outputFile, wildcard);
                     }
                 };
                 executeRead(gitop);
@@ -1606,15 +2026,61 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
 
         /**
-         * exports one or more profile folders from the given version into the zip
+         * exports one or more profile folders from the given version into the zip.
+         * The profiles are read from the head of the version branch, as the working tree is not updated
+         * by the profile commits and may be checked out on another branch.
          */
-        private String exportProfiles(Git git, GitContext context, File outputFile, String wildcard) throws IOException {
+        private String exportProfiles(Git git, String versionId, File outputFile, String wildcard) throws IOException {
+            Repository repository = git.getRepository();
+            Ref ref = repository.getRef("refs/heads/" + versionId);
+            IllegalStateAssertion.assertNotNull(ref, "Version does not exist: " + versionId);
+
             File profilesDirectory = GitHelpers.getProfilesDirectory(git);
-            ProfilesVisitor<Path> visitor = new ProfilesVisitor<>(profilesDirectory, wildcard);
-            java.nio.file.Files.walkFileTree(profilesDirectory.toPath(), visitor);
-            List<File> matchingProfiles = visitor.getProfiles();
+            PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + profilesDirectory.toString() + "**" + wildcard + "**.profile");
+            String prefix = ProfileTreeReader.PROFILES_PATH + "/";
+
+            try (RevWalk revWalk = new RevWalk(repository);
+                 TreeWalk treeWalk = new TreeWalk(repository);
+                 ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(outputFile))) {
+                treeWalk.addTree(revWalk.parseCommit(ref.getObjectId()).getTree());
+                treeWalk.setFilter(PathFilter.create(ProfileTreeReader.PROFILES_PATH));
+                treeWalk.setRecursive(true);
+                Set<String> directories = new HashSet<>();
+                while (treeWalk.next()) {
+                    String path = treeWalk.getPathString().substring(prefix.length());
+                    String profilePath = getMatchingProfilePath(profilesDirectory, pathMatcher, path);
+                    if (profilePath == null) {
+                        continue;
+                    }
+                    // the zip entries are laid out like Zips.createZipFile does for the profile directories
+                    String[] segments = path.substring(profilePath.length() + 1).split("/");
+                    String entry = "/" + profilePath + "/";
+                    for (int i = 0; i < segments.length - 1; i++) {
+                        entry += segments[i] + "/";
+                        if (directories.add(entry)) {
+                            zos.putNextEntry(new ZipEntry(entry));
+                        }
+                    }
+                    zos.putNextEntry(new ZipEntry(entry + segments[segments.length - 1]));
+                    repository.open(treeWalk.getObjectId(0)).copyTo(zos);
+                    zos.closeEntry();
+                }
+            }
+            return null;
+        }
 
-            Zips.createZipFile(LOGGER, profilesDirectory, matchingProfiles, outputFile);
+        /**
+         * Returns the path of the outermost profile directory of the given file that matches the wildcard
+         */
+        private String getMatchingProfilePath(File profilesDirectory, PathMatcher pathMatcher, String path) {
+            int index = path.indexOf(Profiles.PROFILE_FOLDER_SUFFIX + "/");
+            while (index >= 0) {
+                String profilePath = path.substring(0, index + Profiles.PROFILE_FOLDER_SUFFIX.length());
+                if (pathMatcher.matches(Paths.get(profilesDirectory.toString(), profilePath))) {
+                    return profilePath;
+                }
+                index = path.indexOf(Profiles.PROFILE_FOLDER_SUFFIX + "/", index + 1);
+            }
             return null;
         }
         
@@ -1829,137 +2295,162 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
     }
     
-    class VersionCacheLoader extends CacheLoader<String, Version> {
+    /**
+     * A cached version, with the heads of the branches it has been loaded from. Profile commits move the
+     * branches under the read lock, possibly while the version is loaded, so a cached version is only used
+     * if the branches have not moved since.
+     */
+    static final class CachedVersion {
+
+        private final Version version;
+        private final ObjectId masterId;
+        private final ObjectId headId;
+        private final Set<ObjectId> blobIds;
+        private final int weight;
+
+        CachedVersion(Version version, ObjectId masterId, ObjectId headId, Set<ObjectId> blobIds, int weight) {
+            this.version = version;
+            this.masterId = masterId;
+            this.headId = headId;
+            this.blobIds = blobIds;
+            this.weight = weight;
+        }
+
+        Version getVersion() {
+            return version;
+        }
+
+        /**
+         * Returns the ids of the files of the profiles of the version
+         */
+        Set<ObjectId> getBlobIds() {
+            return blobIds;
+        }
+
+        /**
+         * Returns the size of the files which were not already held by another cached version when it was loaded
+         */
+        int getWeight() {
+            return weight;
+        }
+
+        boolean isCurrent(Repository repository) throws IOException {
+            return isHead(repository, GitHelpers.MASTER_BRANCH, masterId) && isHead(repository, version.getId(), headId);
+        }
+
+        private static boolean isHead(Repository repository, String branch, ObjectId commitId) throws IOException {
+            Ref ref = repository.getRef("refs/heads/" + branch);
+            return ref != null && commitId.equals(ref.getObjectId());
+        }
+    }
+
+    /**
+     * The profiles read from a git tree, by version and profile id. They share the files of the tree,
+     * so that the tree is weighed once whatever the number of versions it is part of.
+     */
+    static final class CachedProfiles {
+
+        private final ProfileTreeReader.ProfileTree tree;
+        private final ConcurrentMap<String, Profile> profiles = new ConcurrentHashMap<>();
+
+        CachedProfiles(ProfileTreeReader.ProfileTree tree) {
+            this.tree = tree;
+        }
+
+        ProfileTreeReader.ProfileTree getTree() {
+            return tree;
+        }
+
+        Profile getProfile(String versionId, String profileId) {
+            String key = versionId + "/" + profileId;
+            Profile profile = profiles.get(key);
+            if (profile == null) {
+                ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, profileId);
+                profileBuilder.setFileConfigurations(tree.getFiles());
+                profile = profileBuilder.getProfile();
+                Profile existing = profiles.putIfAbsent(key, profile);
+                if (existing != null) {
+                    profile = existing;
+                }
+            }
+            return profile;
+        }
+    }
+
+    /**
+     * Loads the versions from the git object database, so that they can be loaded under the read lock.
+     * The profiles whose git tree didn't change since they were last loaded are reused.
+     * <p/>
+     * A version is weighed by the size of the files that no other cached version holds, as the versions
+     * share the content of their unchanged files. A file shared with a version which is evicted first is
+     * then no longer weighed, until the versions holding it are reloaded.
+     */
+    class VersionCacheLoader extends CacheLoader<String, CachedVersion> {
         
         @Override
-        public Version load(final String versionId) {
-            assertWriteLock();
-            GitOperation<Version> gitop = new GitOperation<Version>() {
-                public Version call(Git git, GitContext context) throws Exception {
-                    String revision = git.getRepository().getRefDatabase().getRef(versionId).getObjectId().getName();
-                    return loadVersion(git, context, versionId, revision);
+        public CachedVersion load(final String versionId) {
+            assertReadLock();
+            GitOperation<CachedVersion> gitop = new GitOperation<CachedVersion>() {
+                public CachedVersion call(Git git, GitContext context) throws Exception {
+                    return loadVersion(git, context, versionId);
                 }
             };
             GitContext context = new GitContext();
             return executeInternal(context, null, gitop);
         }
         
-        private Version loadVersion(Git git, GitContext context, String versionId, String revision) throws Exception {
-            VersionBuilder vbuilder = VersionBuilder.Factory.create(versionId).setRevision(revision);
+        private CachedVersion loadVersion(Git git, GitContext context, String versionId) throws Exception {
+            Repository repository = git.getRepository();
+            ObjectId masterId = getRequiredBranchHead(repository, GitHelpers.MASTER_BRANCH);
+            ObjectId versionHeadId = getRequiredBranchHead(repository, versionId);
+            VersionBuilder vbuilder = VersionBuilder.Factory.create(versionId).setRevision(versionHeadId.getName());
             vbuilder.setAttributes(getVersionAttributes(git, context, versionId));
-            populateVersionBuilder(git, context, vbuilder, GitHelpers.MASTER_BRANCH, versionId);
-            populateVersionBuilder(git, context, vbuilder, versionId, versionId);
-            return vbuilder.getVersion();
-        }
-
-        private void populateVersionBuilder(Git git, GitContext context, VersionBuilder builder, String branch, String versionId) throws GitAPIException, IOException {
-            checkoutRequiredProfileBranch(git, context, branch, null);
-            File profilesDir = GitHelpers.getProfilesDirectory(git);
-            if (profilesDir.exists()) {
-                String[] files = profilesDir.list();
-                if (files != null) {
-                    for (String childName : files) {
-                        Path childPath = profilesDir.toPath().resolve(childName);
-                        if (childPath.toFile().isDirectory()) {
-                            populateProfile(git, builder, branch, versionId, childPath.toFile(), "");
-
-                        }
-                    }
+            Map<String, ProfileTreeReader.ProfileTree> trees = new HashMap<>();
+            populateVersionBuilder(repository, vbuilder, masterId, versionId, trees);
+            populateVersionBuilder(repository, vbuilder, versionHeadId, versionId, trees);
+            Map<ObjectId, byte[]> blobs = ProfileTreeReader.getBlobs(trees.values());
+            long weight = 0;
+            for (Map.Entry<ObjectId, byte[]> entry : blobs.entrySet()) {
+                if (!isHeldByOtherVersion(entry.getKey(), versionId)) {
+                    weight += entry.getValue().length;
                 }
             }
+            return new CachedVersion(vbuilder.getVersion(), masterId, versionHeadId, blobs.keySet(), (int) Math.min(weight, Integer.MAX_VALUE));
         }
 
-        private void populateProfile(Git git, VersionBuilder versionBuilder, String branch, String versionId, File profileFile, String prefix) throws IOException {
-            String profileName = profileFile.getName();
-            String profileId = profileName;
-            if (profileId.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
-                profileId = prefix + profileId.substring(0, profileId.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
-            } else {
-                // lets recurse all children
-                File[] files = profileFile.listFiles();
-                if (files != null) {
-                    for (File childFile : files) {
-                        if (childFile.isDirectory()) {
-                            populateProfile(git, versionBuilder, branch, versionId, childFile, prefix + profileFile.getName() + "-");
-                        }
-                    }
+        private boolean isHeldByOtherVersion(ObjectId blobId, String versionId) {
+            for (CachedVersion cached : versionCache.asMap().values()) {
+                if (!cached.getVersion().getId().equals(versionId) && cached.getBlobIds().contains(blobId)) {
+                    return true;
                 }
-                return;
             }
+            return false;
+        }
 
-            Map<String, byte[]> fileConfigurations = doGetFileConfigurations(git, profileId);
-            
-            ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, profileId);
-            profileBuilder.setFileConfigurations(fileConfigurations);
-            versionBuilder.addProfile(profileBuilder.getProfile());
-        }
-
-        private Map<String, byte[]> doGetFileConfigurations(Git git, String profileId) throws IOException {
-            Map<String, byte[]> configurations = new HashMap<String, byte[]>();
-            File profileDirectory = GitHelpers.getProfileDirectory(git, profileId);
-            populateFileConfigurations(configurations, profileDirectory, profileDirectory);
-            return configurations;
-        }
-
-        private void populateFileConfigurations(Map<String, byte[]> configurations, File profileDirectory, File directory) throws IOException {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        String relativePath = getFilePattern(profileDirectory, file);
-                        configurations.put(relativePath, loadFileConfiguration(file));
-                    } else if (file.isDirectory()) {
-                        populateFileConfigurations(configurations, profileDirectory, file);
-                    }
-                }
-            }
+        private ObjectId getRequiredBranchHead(Repository repository, String branch) throws IOException {
+            Ref ref = repository.getRef("refs/heads/" + branch);
+            IllegalStateAssertion.assertNotNull(ref, "Cannot find profile branch: " + branch);
+            return ref.getObjectId();
         }
 
-        private byte[] loadFileConfiguration(File file) throws IOException {
-            if (file.isDirectory()) {
-                // Not sure why we do this, but for directory pids, lets recurse...
-                StringBuilder buf = new StringBuilder();
-                File[] files = file.listFiles();
-                if (files != null) {
-                    for (File child : files) {
-                        String value = Files.toString(child);
-                        buf.append(String.format("%s = %s\n", child.getName(), value));
+        private void populateVersionBuilder(Repository repository, VersionBuilder builder, ObjectId commitId, String versionId,
+                                            Map<String, ProfileTreeReader.ProfileTree> trees) throws IOException {
+            for (Map.Entry<String, ProfileTreeReader.ProfileTree> entry : profileTreeReader.readProfiles(repository, commitId).entrySet()) {
+                String profileId = entry.getKey();
+                ProfileTreeReader.ProfileTree tree = entry.getValue();
+                CachedProfiles cached = profileCache.getIfPresent(tree.getId());
+                if (cached == null) {
+                    cached = new CachedProfiles(tree);
+                    CachedProfiles existing = profileCache.asMap().putIfAbsent(tree.getId(), cached);
+                    if (existing != null) {
+                        cached = existing;
                     }
                 }
-                return buf.toString().getBytes();
-            } else if (file.exists() && file.isFile()) {
-                return Files.readBytes(file);
+                builder.addProfile(cached.getProfile(versionId, profileId));
+                // the profiles of the version branch override the ones of master
+                trees.put(profileId, tree);
             }
-            return null;
-        }
-    }
-
-}
-
-
-/**
- * Find all profile directories under rootDirectory that match the given pattern
- * @param <T>
- */
-class ProfilesVisitor<T> extends SimpleFileVisitor<T> {
-    private List<File> profiles = new ArrayList<>();
-    private PathMatcher pathMatcher;
-
-    public ProfilesVisitor(File rootDirectory, String pattern) {
-        pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + rootDirectory.toString() + "**" + pattern + "**.profile");
-    }
-
-    @Override
-    public FileVisitResult preVisitDirectory(T dir, BasicFileAttributes attrs) throws IOException {
-        Path p = (Path) dir;
-
-        if (pathMatcher.matches(p)) {
-            profiles.add(p.toFile());
         }
-        return FileVisitResult.CONTINUE;
     }
 
-    public List<File> getProfiles() {
-        return profiles;
-    }
 }
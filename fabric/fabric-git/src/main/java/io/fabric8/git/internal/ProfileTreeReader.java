@@ -0,0 +1,167 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profiles;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Reads the profiles of a commit straight from the git object database, without checking out
+ * the branch, so that several versions can be read concurrently.
+ * <p/>
+ * The content is addressed by git object id: the files of a profile are cached by the id of the
+ * profile directory tree and the content of the files by blob id, so that the profiles and files
+ * which are the same in several versions, or before and after a pull, are read once and share
+ * the same byte arrays.
+ */
+class ProfileTreeReader {
+
+    static final String PROFILES_PATH = "fabric/profiles";
+
+    /**
+     * The files of a profile directory, identified by the id of its git tree
+     */
+    static class ProfileTree {
+        private final ObjectId id;
+        private final Map<String, byte[]> files;
+        private final Map<ObjectId, byte[]> blobs;
+        private final int size;
+
+        ProfileTree(ObjectId id, Map<String, byte[]> files, Map<ObjectId, byte[]> blobs) {
+            this.id = id;
+            this.files = Collections.unmodifiableMap(files);
+            this.blobs = Collections.unmodifiableMap(blobs);
+            long total = 0;
+            for (byte[] data : blobs.values()) {
+                total += data.length;
+            }
+            this.size = (int) Math.min(total, Integer.MAX_VALUE);
+        }
+
+        ObjectId getId() {
+            return id;
+        }
+
+        Map<String, byte[]> getFiles() {
+            return files;
+        }
+
+        /**
+         * Returns the content of the files by blob id
+         */
+        Map<ObjectId, byte[]> getBlobs() {
+            return blobs;
+        }
+
+        /**
+         * Returns the total size of the distinct files
+         */
+        int getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * Returns the content of the distinct files of the given trees by blob id
+     */
+    static Map<ObjectId, byte[]> getBlobs(Collection<ProfileTree> trees) {
+        Map<ObjectId, byte[]> blobs = new HashMap<>();
+        for (ProfileTree tree : trees) {
+            blobs.putAll(tree.getBlobs());
+        }
+        return blobs;
+    }
+
+    private final Cache<ObjectId, ProfileTree> trees = CacheBuilder.newBuilder().weakValues().build();
+    private final Cache<ObjectId, byte[]> blobs = CacheBuilder.newBuilder().weakValues().build();
+
+    /**
+     * Returns the profiles of the given commit, by profile id
+     */
+    Map<String, ProfileTree> readProfiles(Repository repository, ObjectId commitId) throws IOException {
+        Map<String, ProfileTree> profiles = new HashMap<>();
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk revWalk = new RevWalk(reader);
+             TreeWalk treeWalk = new TreeWalk(reader)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setFilter(PathFilter.create(PROFILES_PATH));
+            while (treeWalk.next()) {
+                if (!treeWalk.isSubtree()) {
+                    continue;
+                }
+                String path = treeWalk.getPathString();
+                if (path.length() > PROFILES_PATH.length() && path.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+                    // "foo/bar.profile" is the directory of the profile "foo-bar"
+                    String relativePath = path.substring(PROFILES_PATH.length() + 1, path.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
+                    profiles.put(relativePath.replace('/', '-'), readTree(reader, treeWalk.getObjectId(0)));
+                } else {
+                    treeWalk.enterSubtree();
+                }
+            }
+        }
+        return profiles;
+    }
+
+    private ProfileTree readTree(ObjectReader reader, ObjectId treeId) throws IOException {
+        ProfileTree tree = trees.getIfPresent(treeId);
+        if (tree == null) {
+            Map<String, byte[]> files = new HashMap<>();
+            Map<ObjectId, byte[]> blobs = new HashMap<>();
+            try (TreeWalk treeWalk = new TreeWalk(reader)) {
+                treeWalk.addTree(treeId);
+                treeWalk.setRecursive(true);
+                while (treeWalk.next()) {
+                    if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE) {
+                        ObjectId blobId = treeWalk.getObjectId(0);
+                        byte[] data = readBlob(reader, blobId);
+                        files.put(treeWalk.getPathString(), data);
+                        blobs.put(blobId, data);
+                    }
+                }
+            }
+            tree = new ProfileTree(treeId, files, blobs);
+            trees.put(treeId, tree);
+        }
+        return tree;
+    }
+
+    private byte[] readBlob(ObjectReader reader, ObjectId blobId) throws IOException {
+        byte[] data = blobs.getIfPresent(blobId);
+        if (data == null) {
+            data = reader.open(blobId).getBytes(Integer.MAX_VALUE);
+            blobs.put(blobId, data);
+        }
+        return data;
+    }
+}
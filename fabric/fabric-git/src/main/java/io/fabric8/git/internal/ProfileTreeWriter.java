@@ -0,0 +1,274 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Constants;
+import io.fabric8.api.Profile;
+import io.fabric8.api.Profiles;
+import io.fabric8.utils.DataStoreUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Builds a commit of profile changes on a branch straight in the git object database, without
+ * checking out the branch, so that several branches can be written to concurrently.
+ * <p/>
+ * The changes are applied to an in-memory index of the head of the branch, and the branch is
+ * moved to the new commit only if it still points to that head. Otherwise {@link #commit} returns
+ * false and the changes have to be applied again on the new head.
+ */
+class ProfileTreeWriter {
+
+    private final Repository repository;
+    private final String branch;
+    private final ObjectId head;
+    private final ObjectId headTree;
+    private final DirCache index = DirCache.newInCore();
+    private final Map<ObjectId, byte[]> blobs = new HashMap<>();
+    private final Set<String> changedProfiles = new HashSet<>();
+    private final StringBuilder message = new StringBuilder();
+    private ObjectId commitId;
+
+    ProfileTreeWriter(Repository repository, String branch) throws IOException {
+        this.repository = repository;
+        this.branch = branch;
+        this.head = repository.resolve("refs/heads/" + branch);
+        if (head == null) {
+            throw new IllegalStateException("Cannot find profile branch: " + branch);
+        }
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+            RevCommit commit = revWalk.parseCommit(head);
+            this.headTree = commit.getTree();
+            DirCacheBuilder builder = index.builder();
+            builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, headTree);
+            builder.finish();
+        }
+    }
+
+    String getBranch() {
+        return branch;
+    }
+
+    ObjectId getHead() {
+        return head;
+    }
+
+    boolean hasProfile(String profileId) {
+        return index.getEntriesWithin(getProfilePath(profileId)).length > 0;
+    }
+
+    /**
+     * True if the given profile has been written or deleted by this writer
+     */
+    boolean isChanged(String profileId) {
+        return changedProfiles.contains(profileId);
+    }
+
+    /**
+     * Writes the files of the given profile, removing the files it no longer has except the agent properties
+     */
+    void setProfile(Profile profile) {
+        String profileId = profile.getId();
+        String profilePath = getProfilePath(profileId);
+        changedProfiles.add(profileId);
+        Map<String, byte[]> fileConfigurations = profile.getFileConfigurations();
+
+        Set<String> stalePaths = new HashSet<>();
+        DirCacheEntry[] entries = index.getEntriesWithin(profilePath);
+        if (entries.length == 0) {
+            appendMessage("Added profile " + profileId);
+            if (!fileConfigurations.containsKey(Constants.AGENT_PROPERTIES)) {
+                byte[] metadata = ("#Profile:" + profileId + "\n").getBytes(Charset.defaultCharset());
+                setFile(profilePath + "/" + Constants.AGENT_PROPERTIES, metadata);
+            }
+        }
+        for (DirCacheEntry entry : entries) {
+            String path = entry.getPathString();
+            if (!path.endsWith("/" + Constants.AGENT_PROPERTIES)) {
+                stalePaths.add(path);
+            }
+        }
+
+        boolean changed = false;
+        for (Map.Entry<String, byte[]> entry : fileConfigurations.entrySet()) {
+            String path = profilePath + "/" + entry.getKey().replace(File.separatorChar, '/');
+            changed |= setFile(path, entry.getValue());
+            stalePaths.remove(path);
+        }
+        if (!stalePaths.isEmpty()) {
+            DirCacheEditor editor = index.editor();
+            for (String path : stalePaths) {
+                editor.add(new DirCacheEditor.DeletePath(path));
+            }
+            editor.finish();
+            changed = true;
+        }
+        if (changed) {
+            appendMessage("Update configurations for profile: " + profileId);
+        }
+    }
+
+    void deleteProfile(String profileId) {
+        changedProfiles.add(profileId);
+        DirCacheEditor editor = index.editor();
+        editor.add(new DirCacheEditor.DeleteTree(getProfilePath(profileId)));
+        editor.finish();
+        appendMessage("Removed profile " + profileId);
+    }
+
+    void setVersionAttributes(Map<String, String> attributes) {
+        if (setFile(GitHelpers.VERSION_ATTRIBUTES, DataStoreUtils.toBytes(attributes))) {
+            appendMessage("Update attributes of version " + branch);
+        }
+    }
+
+    /**
+     * Returns the commit created by {@link #commit}, or null if there was nothing to commit
+     */
+    ObjectId getCommitId() {
+        return commitId;
+    }
+
+    /**
+     * Commits the changes, if any, and moves the branch to the new commit
+     *
+     * @return false if the branch has been moved by someone else since the changes have been made
+     */
+    boolean commit(PersonIdent person) throws IOException {
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            for (byte[] data : blobs.values()) {
+                inserter.insert(org.eclipse.jgit.lib.Constants.OBJ_BLOB, data);
+            }
+            ObjectId tree = index.writeTree(inserter);
+            if (tree.equals(headTree)) {
+                return true;
+            }
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(tree);
+            commit.setParentId(head);
+            commit.setAuthor(person);
+            commit.setCommitter(person);
+            commit.setMessage(message.length() > 0 ? message.toString() : "Update profiles");
+            ObjectId newCommitId = inserter.insert(commit);
+            inserter.flush();
+
+            RefUpdate update = repository.updateRef("refs/heads/" + branch);
+            update.setExpectedOldObjectId(head);
+            update.setNewObjectId(newCommitId);
+            update.setRefLogIdent(person);
+            update.setRefLogMessage("commit: " + commit.getMessage(), false);
+            RefUpdate.Result result = update.update();
+            switch (result) {
+                case NEW:
+                case FAST_FORWARD:
+                case FORCED:
+                    commitId = newCommitId;
+                    return true;
+                case LOCK_FAILURE:
+                case REJECTED:
+                    return false;
+                default:
+                    throw new IOException("Cannot update branch " + branch + ": " + result);
+            }
+        }
+    }
+
+    /**
+     * Moves the branch back to the head the changes have been applied to, undoing the commit made by {@link #commit}
+     *
+     * @return false if the branch has been moved by someone else since the commit
+     */
+    boolean rollback(PersonIdent person) throws IOException {
+        if (commitId == null) {
+            return true;
+        }
+        RefUpdate update = repository.updateRef("refs/heads/" + branch);
+        update.setExpectedOldObjectId(commitId);
+        update.setNewObjectId(head);
+        update.setForceUpdate(true);
+        update.setRefLogIdent(person);
+        update.setRefLogMessage("reset: rollback of " + commitId.getName(), false);
+        RefUpdate.Result result = update.update();
+        switch (result) {
+            case FORCED:
+            case FAST_FORWARD:
+            case NO_CHANGE:
+                commitId = null;
+                return true;
+            case LOCK_FAILURE:
+            case REJECTED:
+                return false;
+            default:
+                throw new IOException("Cannot reset branch " + branch + ": " + result);
+        }
+    }
+
+    private boolean setFile(String path, byte[] data) {
+        final ObjectId blobId;
+        try (ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+            blobId = formatter.idFor(org.eclipse.jgit.lib.Constants.OBJ_BLOB, data);
+        }
+        DirCacheEntry existing = index.getEntry(path);
+        if (existing != null && existing.getObjectId().equals(blobId)) {
+            return false;
+        }
+        // the blobs are only inserted when committing
+        blobs.put(blobId, data);
+        DirCacheEditor editor = index.editor();
+        editor.add(new DirCacheEditor.PathEdit(path) {
+            @Override
+            public void apply(DirCacheEntry entry) {
+                entry.setFileMode(FileMode.REGULAR_FILE);
+                entry.setObjectId(blobId);
+            }
+        });
+        editor.finish();
+        return true;
+    }
+
+    private void appendMessage(String line) {
+        if (message.length() > 0) {
+            message.append("\n");
+        }
+        message.append(line);
+    }
+
+    private static String getProfilePath(String profileId) {
+        return ProfileTreeReader.PROFILES_PATH + "/" + Profiles.convertProfileIdToPath(profileId).replace(File.separatorChar, '/');
+    }
+}
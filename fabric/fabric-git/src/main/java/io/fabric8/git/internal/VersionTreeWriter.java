@@ -0,0 +1,96 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import io.fabric8.api.Profile;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Applies profile changes to a version, through the {@link ProfileTreeWriter} of the branch each profile
+ * is kept in: the ensemble profiles are kept in the master branch, the other profiles in the version branch.
+ * <p/>
+ * The writers are shared by the versions changed together, so that each branch gets a single commit.
+ */
+class VersionTreeWriter {
+
+    /**
+     * Changes applied to a version, which may be applied again if a branch has been moved concurrently
+     */
+    interface Operation<T> {
+        T apply(VersionTreeWriter writer) throws Exception;
+    }
+
+    private final Repository repository;
+    private final String versionId;
+    private final Map<String, ProfileTreeWriter> writers;
+
+    VersionTreeWriter(Repository repository, String versionId, Map<String, ProfileTreeWriter> writers) {
+        this.repository = repository;
+        this.versionId = versionId;
+        this.writers = writers;
+    }
+
+    String getVersionId() {
+        return versionId;
+    }
+
+    /**
+     * True if the version has the given profile, in its own branch or in the master branch as the version is
+     * made of the profiles of both
+     */
+    boolean hasProfile(String profileId) throws IOException {
+        if (getBranchWriter(versionId).hasProfile(profileId)) {
+            return true;
+        }
+        return getBranchWriter(GitHelpers.MASTER_BRANCH).hasProfile(profileId);
+    }
+
+    /**
+     * True if the given profile has been written or deleted by the writers
+     */
+    boolean isChanged(String profileId) throws IOException {
+        return getProfileWriter(profileId).isChanged(profileId);
+    }
+
+    void setProfile(Profile profile) throws IOException {
+        getProfileWriter(profile.getId()).setProfile(profile);
+    }
+
+    void deleteProfile(String profileId) throws IOException {
+        getProfileWriter(profileId).deleteProfile(profileId);
+    }
+
+    void setVersionAttributes(Map<String, String> attributes) throws IOException {
+        getBranchWriter(versionId).setVersionAttributes(attributes);
+    }
+
+    private ProfileTreeWriter getProfileWriter(String profileId) throws IOException {
+        return getBranchWriter(GitHelpers.getProfileBranch(versionId, profileId));
+    }
+
+    private ProfileTreeWriter getBranchWriter(String branch) throws IOException {
+        ProfileTreeWriter writer = writers.get(branch);
+        if (writer == null) {
+            writer = new ProfileTreeWriter(repository, branch);
+            writers.put(branch, writer);
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import java.io.File;
+import java.util.Map;
+
+import io.fabric8.common.util.Files;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ProfileTreeReaderTest {
+
+    private File root;
+    private Git git;
+
+    @Before
+    public void init() throws Exception {
+        root = new File("target/profile-tree-reader");
+        Files.recursiveDelete(root);
+        git = Git.init().setDirectory(root).call();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        git.close();
+        Files.recursiveDelete(root);
+    }
+
+    @Test
+    public void testReadProfiles() throws Exception {
+        write("fabric/profiles/default.profile/io.fabric8.agent.properties", "a=1");
+        write("fabric/profiles/foo/bar.profile/io.fabric8.agent.properties", "b=2");
+        write("fabric/profiles/foo/bar.profile/scripts/run.sh", "echo");
+        write("fabric/profiles/ReadMe.md", "not a profile");
+        write("version.attributes", "x=y");
+        ObjectId first = commit();
+
+        ProfileTreeReader reader = new ProfileTreeReader();
+        Map<String, ProfileTreeReader.ProfileTree> profiles = reader.readProfiles(git.getRepository(), first);
+        assertEquals(2, profiles.size());
+        assertArrayEquals("a=1".getBytes(), profiles.get("default").getFiles().get("io.fabric8.agent.properties"));
+        Map<String, byte[]> files = profiles.get("foo-bar").getFiles();
+        assertEquals(2, files.size());
+        assertArrayEquals("echo".getBytes(), files.get("scripts/run.sh"));
+        assertEquals(7, profiles.get("foo-bar").getSize());
+
+        // the working tree is not used
+        write("fabric/profiles/foo/bar.profile/io.fabric8.agent.properties", "b=3");
+        assertArrayEquals("b=2".getBytes(), reader.readProfiles(git.getRepository(), first).get("foo-bar").getFiles().get("io.fabric8.agent.properties"));
+
+        ObjectId second = commit();
+        Map<String, ProfileTreeReader.ProfileTree> changed = reader.readProfiles(git.getRepository(), second);
+        assertArrayEquals("b=3".getBytes(), changed.get("foo-bar").getFiles().get("io.fabric8.agent.properties"));
+        assertFalse(changed.containsKey("foo"));
+    }
+
+    @Test
+    public void testContentIsShared() throws Exception {
+        write("fabric/profiles/a.profile/io.fabric8.agent.properties", "a=1");
+        write("fabric/profiles/b.profile/io.fabric8.agent.properties", "b=1");
+        write("fabric/profiles/b.profile/common.properties", "c=1");
+        ObjectId first = commit();
+        write("fabric/profiles/b.profile/io.fabric8.agent.properties", "b=2");
+        ObjectId second = commit();
+
+        ProfileTreeReader reader = new ProfileTreeReader();
+        Map<String, ProfileTreeReader.ProfileTree> before = reader.readProfiles(git.getRepository(), first);
+        Map<String, ProfileTreeReader.ProfileTree> after = reader.readProfiles(git.getRepository(), second);
+
+        // the unchanged profile is the same tree
+        assertEquals(before.get("a").getId(), after.get("a").getId());
+        assertSame(before.get("a"), after.get("a"));
+        // the changed profile is a new tree sharing the unchanged files
+        assertNotEquals(before.get("b").getId(), after.get("b").getId());
+        assertSame(before.get("b").getFiles().get("common.properties"), after.get("b").getFiles().get("common.properties"));
+        assertNotSame(before.get("b").getFiles().get("io.fabric8.agent.properties"), after.get("b").getFiles().get("io.fabric8.agent.properties"));
+    }
+
+    @Test
+    public void testSharedFilesAreWeighedOnce() throws Exception {
+        write("fabric/profiles/a.profile/io.fabric8.agent.properties", "a=1");
+        write("fabric/profiles/a.profile/copy.properties", "a=1");
+        write("fabric/profiles/b.profile/io.fabric8.agent.properties", "a=1");
+        write("fabric/profiles/b.profile/other.properties", "b=22");
+        ObjectId commit = commit();
+
+        Map<String, ProfileTreeReader.ProfileTree> profiles = new ProfileTreeReader().readProfiles(git.getRepository(), commit);
+        assertEquals(3, profiles.get("a").getSize());
+        assertEquals(7, profiles.get("b").getSize());
+        Map<ObjectId, byte[]> blobs = ProfileTreeReader.getBlobs(profiles.values());
+        assertEquals(2, blobs.size());
+    }
+
+    private void write(String path, String content) throws Exception {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.writeToFile(file, content.getBytes());
+    }
+
+    private ObjectId commit() throws Exception {
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage("test").call().getId();
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.fabric8.api.Profile;
+import io.fabric8.common.util.Files;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProfileTreeWriterTest {
+
+    private static final PersonIdent PERSON = new PersonIdent("test", "test@fabric8.io");
+
+    private File root;
+    private Git git;
+
+    @Before
+    public void init() throws Exception {
+        root = new File("target/profile-tree-writer");
+        Files.recursiveDelete(root);
+        git = Git.init().setDirectory(root).call();
+        write("fabric/profiles/default.profile/io.fabric8.agent.properties", "a=1");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("init").call();
+        git.branchCreate().setName("1.0").call();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        git.close();
+        Files.recursiveDelete(root);
+    }
+
+    @Test
+    public void testSetProfile() throws Exception {
+        ProfileTreeWriter writer = new ProfileTreeWriter(git.getRepository(), "1.0");
+        assertTrue(writer.hasProfile("default"));
+        assertFalse(writer.hasProfile("foo-bar"));
+        writer.setProfile(profile("foo-bar", "scripts/run.sh", "echo"));
+        assertTrue(writer.commit(PERSON));
+        assertTrue(writer.getCommitId() != null);
+        assertEquals(writer.getCommitId(), git.getRepository().resolve("refs/heads/1.0"));
+
+        Map<String, ProfileTreeReader.ProfileTree> profiles = new ProfileTreeReader().readProfiles(git.getRepository(), writer.getCommitId());
+        Map<String, byte[]> files = profiles.get("foo-bar").getFiles();
+        assertArrayEquals("echo".getBytes(), files.get("scripts/run.sh"));
+        assertArrayEquals("#Profile:foo-bar\n".getBytes(), files.get("io.fabric8.agent.properties"));
+        // the working tree and the other branches are left alone
+        assertFalse(new File(root, "fabric/profiles/foo/bar.profile").exists());
+        assertFalse(new ProfileTreeReader().readProfiles(git.getRepository(), git.getRepository().resolve("refs/heads/master")).containsKey("foo-bar"));
+
+        // files missing from the profile are removed, except the agent properties
+        writer = new ProfileTreeWriter(git.getRepository(), "1.0");
+        writer.setProfile(profile("foo-bar", "other.properties", "x=y"));
+        assertTrue(writer.commit(PERSON));
+        files = new ProfileTreeReader().readProfiles(git.getRepository(), writer.getCommitId()).get("foo-bar").getFiles();
+        assertEquals(2, files.size());
+        assertArrayEquals("x=y".getBytes(), files.get("other.properties"));
+        assertTrue(files.containsKey("io.fabric8.agent.properties"));
+
+        // an unchanged profile makes no commit
+        ObjectId head = git.getRepository().resolve("refs/heads/1.0");
+        writer = new ProfileTreeWriter(git.getRepository(), "1.0");
+        writer.setProfile(profile("foo-bar", "other.properties", "x=y"));
+        assertTrue(writer.commit(PERSON));
+        assertNull(writer.getCommitId());
+        assertEquals(head, git.getRepository().resolve("refs/heads/1.0"));
+    }
+
+    @Test
+    public void testDeleteProfile() throws Exception {
+        ProfileTreeWriter writer = new ProfileTreeWriter(git.getRepository(), "1.0");
+        writer.deleteProfile("default");
+        assertTrue(writer.commit(PERSON));
+        assertTrue(new ProfileTreeReader().readProfiles(git.getRepository(), writer.getCommitId()).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentCommit() throws Exception {
+        ProfileTreeWriter first = new ProfileTreeWriter(git.getRepository(), "1.0");
+        ProfileTreeWriter second = new ProfileTreeWriter(git.getRepository(), "1.0");
+        first.setProfile(profile("a", "a.properties", "a=1"));
+        second.setProfile(profile("b", "b.properties", "b=1"));
+        assertTrue(first.commit(PERSON));
+        // the branch has been moved since the second writer read it
+        assertFalse(second.commit(PERSON));
+        assertEquals(first.getCommitId(), git.getRepository().resolve("refs/heads/1.0"));
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        ObjectId head = git.getRepository().resolve("refs/heads/1.0");
+        ProfileTreeWriter writer = new ProfileTreeWriter(git.getRepository(), "1.0");
+        writer.setProfile(profile("a", "a.properties", "a=1"));
+        assertTrue(writer.commit(PERSON));
+        assertTrue(writer.rollback(PERSON));
+        assertNull(writer.getCommitId());
+        assertEquals(head, git.getRepository().resolve("refs/heads/1.0"));
+
+        // a commit made on top of the rolled back one is kept
+        writer = new ProfileTreeWriter(git.getRepository(), "1.0");
+        writer.setProfile(profile("a", "a.properties", "a=1"));
+        assertTrue(writer.commit(PERSON));
+        ProfileTreeWriter other = new ProfileTreeWriter(git.getRepository(), "1.0");
+        other.setProfile(profile("b", "b.properties", "b=1"));
+        assertTrue(other.commit(PERSON));
+        assertFalse(writer.rollback(PERSON));
+        assertEquals(other.getCommitId(), git.getRepository().resolve("refs/heads/1.0"));
+    }
+
+    @Test
+    public void testVersionAttributes() throws Exception {
+        ProfileTreeWriter writer = new ProfileTreeWriter(git.getRepository(), "1.0");
+        writer.setVersionAttributes(Collections.singletonMap("description", "test"));
+        writer.setProfile(profile("foo", "foo.properties", "a=1"));
+        assertTrue(writer.isChanged("foo"));
+        assertFalse(writer.isChanged("default"));
+        assertTrue(writer.commit(PERSON));
+
+        // the version attributes and the profile are in the same commit
+        RevCommit commit = git.log().add(writer.getCommitId()).setMaxCount(1).call().iterator().next();
+        assertEquals(1, commit.getParentCount());
+        assertTrue(commit.getFullMessage().contains("Update attributes of version 1.0"));
+        assertTrue(commit.getFullMessage().contains("Added profile foo"));
+        try (TreeWalk walk = TreeWalk.forPath(git.getRepository(), GitHelpers.VERSION_ATTRIBUTES, commit.getTree())) {
+            assertTrue(walk != null);
+        }
+    }
+
+    private Profile profile(String id, String file, String content) {
+        Map<String, byte[]> files = new HashMap<>();
+        files.put(file, content.getBytes());
+        Profile profile = mock(Profile.class);
+        when(profile.getId()).thenReturn(id);
+        when(profile.getFileConfigurations()).thenReturn(files);
+        return profile;
+    }
+
+    private void write(String path, String content) throws Exception {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.writeToFile(file, content.getBytes());
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git.internal;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.fabric8.api.Profile;
+import io.fabric8.common.util.Files;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class VersionTreeWriterTest {
+
+    private static final PersonIdent PERSON = new PersonIdent("test", "test@fabric8.io");
+
+    private File root;
+    private Git git;
+
+    @Before
+    public void init() throws Exception {
+        root = new File("target/version-tree-writer");
+        Files.recursiveDelete(root);
+        git = Git.init().setDirectory(root).call();
+        write("fabric/profiles/fabric/ensemble/0000.profile/io.fabric8.agent.properties", "a=1");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("init").call();
+        git.branchCreate().setName("1.0").call();
+        git.checkout().setName("1.0").call();
+        write("fabric/profiles/default.profile/io.fabric8.agent.properties", "a=1");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("default").call();
+        git.checkout().setName("master").call();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        git.close();
+        Files.recursiveDelete(root);
+    }
+
+    @Test
+    public void testProfilesOfBothBranches() throws Exception {
+        Map<String, ProfileTreeWriter> writers = new TreeMap<>();
+        VersionTreeWriter writer = new VersionTreeWriter(git.getRepository(), "1.0", writers);
+        assertTrue(writer.hasProfile("default"));
+        assertTrue(writer.hasProfile("fabric-ensemble-0000"));
+        assertFalse(writer.hasProfile("foo"));
+    }
+
+    @Test
+    public void testEnsembleProfilesAreWrittenToMaster() throws Exception {
+        Map<String, ProfileTreeWriter> writers = new TreeMap<>();
+        VersionTreeWriter writer = new VersionTreeWriter(git.getRepository(), "1.0", writers);
+        writer.setProfile(profile("fabric-ensemble-0000-1", "a.properties", "a=1"));
+        writer.setProfile(profile("foo", "foo.properties", "b=1"));
+        // another version of the same batch shares the writer of master
+        new VersionTreeWriter(git.getRepository(), "1.1", writers).setProfile(profile("fabric-ensemble-0000-2", "a.properties", "a=2"));
+        assertEquals(2, writers.size());
+
+        for (ProfileTreeWriter branchWriter : writers.values()) {
+            assertTrue(branchWriter.commit(PERSON));
+        }
+        ObjectId master = git.getRepository().resolve("refs/heads/master");
+        ObjectId version = git.getRepository().resolve("refs/heads/1.0");
+        Map<String, ProfileTreeReader.ProfileTree> masterProfiles = new ProfileTreeReader().readProfiles(git.getRepository(), master);
+        Map<String, ProfileTreeReader.ProfileTree> versionProfiles = new ProfileTreeReader().readProfiles(git.getRepository(), version);
+        assertNotNull(masterProfiles.get("fabric-ensemble-0000-1"));
+        assertNotNull(masterProfiles.get("fabric-ensemble-0000-2"));
+        assertFalse(masterProfiles.containsKey("foo"));
+        assertNotNull(versionProfiles.get("foo"));
+        assertFalse(versionProfiles.containsKey("fabric-ensemble-0000-1"));
+    }
+
+    private Profile profile(String id, String file, String content) {
+        Map<String, byte[]> files = new HashMap<>();
+        files.put(file, content.getBytes());
+        Profile profile = mock(Profile.class);
+        when(profile.getId()).thenReturn(id);
+        when(profile.getFileConfigurations()).thenReturn(files);
+        return profile;
+    }
+
+    private void write(String path, String content) throws Exception {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.writeToFile(file, content.getBytes());
+    }
+}
@@ -20,6 +20,10 @@ package io.fabric8.groups;
  *   Callback interface used to get notifications of changes
  *   to a cluster group.
  * </p>
+ * <p>
+ *   The events of a group are delivered in order, one at a time. A listener that blocks
+ *   delays the next events of its group, but not the events of the other groups.
+ * </p>
  *
  */
 public interface GroupListener<T extends NodeState> {
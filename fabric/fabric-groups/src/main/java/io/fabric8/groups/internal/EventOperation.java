@@ -31,7 +31,7 @@ class EventOperation implements Operation
     @Override
     public void invoke()
     {
-        cache.callListeners(event);
+        cache.fireEvent(event);
     }
 
     @Override
@@ -53,10 +53,14 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>A utility that attempts to keep all data from all children of a ZK path locally cached. This class
@@ -73,17 +77,40 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
 
     static private final Logger LOG = LoggerFactory.getLogger(ZooKeeperGroup.class);
 
+    /**
+     * The maximum number of operations a group runs before yielding its dispatcher thread to other groups.
+     */
+    private static final int MAX_OPERATIONS_PER_DISPATCH = 64;
+
+    /**
+     * Dispatcher shared by the groups created without an explicit executor or thread factory. Each group
+     * has at most one pending dispatch task, so the pool stays bounded however many groups are created.
+     * Idle threads time out, so the pool does not keep the JVM alive. The listeners of these groups are
+     * called on a thread of their own group, so that a blocking listener doesn't hold up the other groups.
+     */
+    private static final ExecutorService SHARED_EXECUTOR = createSharedExecutor();
+
     private final Class<T> clazz;
     private final CuratorFramework client;
     private final String path;
     private final ExecutorService executorService;
+    private final boolean sharedExecutor;
+    // calls the listeners in order when the operations are dispatched on the shared executor, null otherwise
+    private volatile ExecutorService listenerExecutor;
+    private volatile Thread listenerThread;
     private final EnsurePath ensurePath;
     private final BlockingQueue<Operation> operations = new LinkedBlockingQueue<Operation>();
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+    // held while an operation runs, so that close() waits for the running one
+    private final ReentrantLock operationLock = new ReentrantLock();
     private final ListenerContainer<GroupListener<T>> listeners = new ListenerContainer<GroupListener<T>>();
     protected final ConcurrentMap<String, ChildData<T>> currentData = Maps.newConcurrentMap();
     private final AtomicBoolean started = new AtomicBoolean();
     private final AtomicBoolean connected = new AtomicBoolean();
     protected final SequenceComparator sequenceComparator = new SequenceComparator();
+    // incremented on each change of the current data, to detect a stale member snapshot
+    private final AtomicLong dataVersion = new AtomicLong();
+    private volatile Members<T> members = new Members<T>(-1, Collections.<ChildData<T>>emptyList());
     private final String uuid = UUID.randomUUID().toString();
 
     private volatile String id;
@@ -126,8 +153,7 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
      * @param path   path to watch
      */
     public ZooKeeperGroup(CuratorFramework client, String path, Class<T> clazz) {
-        this(client, path, clazz,
-                Executors.newSingleThreadExecutor(new NamedThreadFactory("ZKGroup")));
+        this(client, path, clazz, SHARED_EXECUTOR, true);
     }
 
     /**
@@ -145,20 +171,43 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
      * @param executorService ExecutorService to use for the ZooKeeperGroup's background thread
      */
     public ZooKeeperGroup(CuratorFramework client, String path, Class<T> clazz, final ExecutorService executorService) {
+        this(client, path, clazz, executorService, false);
+    }
+
+    private ZooKeeperGroup(CuratorFramework client, String path, Class<T> clazz, ExecutorService executorService, boolean sharedExecutor) {
         LOG.info("Creating ZK Group for path \"" + path + "\"");
         this.client = client;
         this.path = path;
         this.clazz = clazz;
         this.executorService = executorService;
+        this.sharedExecutor = sharedExecutor;
         ensurePath = client.newNamespaceAwareEnsurePath(path);
     }
 
+    private static ExecutorService createSharedExecutor() {
+        int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("ZKGroup"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ExecutorService createListenerExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("ZKGroup-listener"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Start the cache. The cache is not started automatically. You must call this method.
      */
     public void start() {
         LOG.info("Starting ZK Group for path \"" + path + "\"");
         if (started.compareAndSet(false, true)) {
+            if (sharedExecutor) {
+                listenerExecutor = createListenerExecutor();
+            }
             connected.set(client.getZookeeperClient().isConnected());
 
             if (isConnected()) {
@@ -166,12 +215,7 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
             }
 
             client.getConnectionStateListenable().addListener(connectionStateListener);
-            executorService.execute(new Runnable() {
-                @Override
-                public void run() {
-                    mainLoop();
-                }
-            });
+            scheduleDispatch();
         }
     }
 
@@ -185,9 +229,23 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
         LOG.debug(this + ".close, connected:" + connected);
         if (started.compareAndSet(true, false)) {
             client.getConnectionStateListenable().removeListener(connectionStateListener);
-            executorService.shutdownNow();
+            operations.clear();
             try {
-                executorService.awaitTermination(5, TimeUnit.SECONDS);
+                if (sharedExecutor) {
+                    // the dispatcher stops after the running operation, wait for it
+                    if (operationLock.tryLock(5, TimeUnit.SECONDS)) {
+                        operationLock.unlock();
+                    }
+                    // the events already fired are delivered before the disconnection,
+                    // unless the group is closed by one of its listeners
+                    listenerExecutor.shutdown();
+                    if (Thread.currentThread() != listenerThread) {
+                        listenerExecutor.awaitTermination(5, TimeUnit.SECONDS);
+                    }
+                } else {
+                    executorService.shutdownNow();
+                    executorService.awaitTermination(5, TimeUnit.SECONDS);
+                }
             } catch (InterruptedException e) {
                 throw (IOException) new InterruptedIOException().initCause(e);
             }
@@ -233,8 +291,9 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
                         ||   state != null && oldState == null
                         || !Arrays.equals(encode(state), encode(oldState));
             if (update) {
+                // the data watchers keep the known members up to date, only the new ones need to be fetched
                 offerOperation(new CompositeOperation(
-                        new RefreshOperation(this, RefreshMode.FORCE_GET_DATA_AND_STAT),
+                        new RefreshOperation(this, RefreshMode.STANDARD),
                         new UpdateOperation<T>(this, state)
                 ));
             }
@@ -309,43 +368,55 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
         }
     }
 
+    /**
+     * Returns an unmodifiable map of the active members, in sequence order.
+     */
     @Override
     public Map<String, T> members() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        Map<String, T> members = new LinkedHashMap<String, T>();
-        for (ChildData<T> child : children) {
-            members.put(child.getPath(), child.getNode());
-        }
-        return members;
+        return getMembers().members;
     }
 
     @Override
     public boolean isMaster() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        return (!children.isEmpty() && children.get(0).getPath().equals(id));
+        ChildData<T> master = getMembers().master;
+        return master != null && master.getPath().equals(id);
     }
 
     @Override
     public T master() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        if (children.isEmpty()) {
-            return null;
-        }
-        return children.get(0).getNode();
+        ChildData<T> master = getMembers().master;
+        return master != null ? master.getNode() : null;
     }
 
+    /**
+     * Returns an unmodifiable list of the active members but the master, in sequence order.
+     */
     @Override
     public List<T> slaves() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        List<T> slaves = new ArrayList<T>();
-        for (int i = 1; i < children.size(); i++) {
-            slaves.add(children.get(i).getNode());
+        return getMembers().slaves;
+    }
+
+    /**
+     * Returns the active children, sorted by sequence, as an immutable list.
+     */
+    protected List<ChildData<T>> getSortedActiveChildren() {
+        return getMembers().children;
+    }
+
+    /**
+     * Returns the snapshot of the active members, rebuilding it if the current data changed since.
+     */
+    private Members<T> getMembers() {
+        Members<T> snapshot = members;
+        long version = dataVersion.get();
+        if (snapshot.version != version) {
+            List<ChildData<T>> children = getActiveChildren();
+            Collections.sort(children, sequenceComparator);
+            snapshot = new Members<T>(version, children);
+            // a concurrent change may already have published a later snapshot, it is rebuilt on the next read then
+            members = snapshot;
         }
-        return slaves;
+        return snapshot;
     }
 
     /**
@@ -419,7 +490,7 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
      */
     public void clearAndRefresh(boolean force, boolean sync) throws Exception {
         RefreshMode mode = force ? RefreshMode.FORCE_GET_DATA_AND_STAT : RefreshMode.STANDARD;
-        currentData.clear();
+        clear();
         if (sync) {
             this.refresh(mode);
         } else {
@@ -433,6 +504,7 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
      */
     public void clear() {
         currentData.clear();
+        dataVersion.incrementAndGet();
     }
 
     enum RefreshMode {
@@ -456,6 +528,32 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
         }
     }
 
+    /**
+     * Calls the listeners with the event, on the listener thread of the group if it uses the shared executor.
+     */
+    void fireEvent(final GroupListener.GroupEvent event) {
+        ExecutorService executor = listenerExecutor;
+        if (executor == null) {
+            callListeners(event);
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listenerThread = Thread.currentThread();
+                    try {
+                        callListeners(event);
+                    } finally {
+                        listenerThread = null;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Listener executor of " + this + " is shut down, dropping the " + event + " event");
+        }
+    }
+
     void callListeners(final GroupListener.GroupEvent event) {
         listeners.forEach
                 (
@@ -479,6 +577,12 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
         applyNewData(fullPath, KeeperException.Code.OK.intValue(), stat, data);
     }
 
+    @VisibleForTesting
+    void putCurrentData(String fullPath, ChildData<T> data) {
+        currentData.put(fullPath, data);
+        dataVersion.incrementAndGet();
+    }
+
     /**
      * Default behavior is just to log the exception
      *
@@ -495,6 +599,7 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     protected void remove(String fullPath) {
         ChildData data = currentData.remove(fullPath);
         if (data != null) {
+            dataVersion.incrementAndGet();
             offerOperation(new EventOperation(this, GroupListener.GroupEvent.CHANGED));
         }
     }
@@ -503,10 +608,11 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
         try {
             Stat stat = new Stat();
             byte[] bytes = client.getData().storingStatIn(stat).forPath(fullPath);
-            currentData.put(fullPath, new ChildData<T>(fullPath, stat, bytes, decode(bytes)));
+            putCurrentData(fullPath, new ChildData<T>(fullPath, stat, bytes, decode(bytes)));
         } catch (KeeperException.NoNodeException ignore) {
             // node no longer exists - remove it
             currentData.remove(fullPath);
+            dataVersion.incrementAndGet();
         }
     }
 
@@ -565,23 +671,63 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     private void applyNewData(String fullPath, int resultCode, Stat stat, byte[] bytes) {
         if (resultCode == KeeperException.Code.OK.intValue()) {
             // otherwise - node must have dropped or something - we should be getting another event
-            ChildData<T> data = new ChildData<T>(fullPath, stat, bytes, decode(bytes));
-            ChildData<T> previousData = currentData.put(fullPath, data);
+            ChildData<T> previousData = currentData.get(fullPath);
+            if (previousData != null && previousData.getStat().getMzxid() == stat.getMzxid()) {
+                // unchanged since the last read, no need to decode it again
+                return;
+            }
+            putCurrentData(fullPath, new ChildData<T>(fullPath, stat, bytes, decode(bytes)));
             if (previousData == null || previousData.getStat().getVersion() != stat.getVersion()) {
                 offerOperation(new EventOperation(this, GroupListener.GroupEvent.CHANGED));
             }
         }
     }
 
-    private void mainLoop() {
-        while (started.get() && !Thread.currentThread().isInterrupted()) {
+    /**
+     * Runs the queued operations in order, on at most one thread at a time.
+     */
+    private void dispatch() {
+        try {
+            for (int i = 0; i < MAX_OPERATIONS_PER_DISPATCH && started.get(); i++) {
+                Operation operation = operations.poll();
+                if (operation == null) {
+                    break;
+                }
+                operationLock.lock();
+                try {
+                    if (started.get()) {
+                        operation.invoke();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    handleException(e);
+                } finally {
+                    operationLock.unlock();
+                }
+            }
+        } finally {
+            dispatching.set(false);
+        }
+        // operations offered after the last poll, or left over to let other groups run first
+        if (!operations.isEmpty()) {
+            scheduleDispatch();
+        }
+    }
+
+    private void scheduleDispatch() {
+        if (started.get() && dispatching.compareAndSet(false, true)) {
             try {
-                operations.take().invoke();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            } catch (Exception e) {
-                handleException(e);
+                executorService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                dispatching.set(false);
+                LOG.debug("Executor of " + this + " is shut down, dropping " + operations.size() + " operations");
             }
         }
     }
@@ -605,10 +751,16 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     }
 
     private void offerOperation(Operation operation) {
-        if (!operations.contains(operation)) {
+        // a queued refresh covers the refreshes requested until it runs
+        if (!operations.contains(operation) && !isCoveredByQueuedRefresh(operation)) {
             operations.offer(operation);
+            scheduleDispatch();
         }
-//        operations.remove(operation);   // avoids herding for refresh operations
+    }
+
+    private boolean isCoveredByQueuedRefresh(Operation operation) {
+        return operation.equals(new RefreshOperation(this, RefreshMode.STANDARD))
+                && operations.contains(new RefreshOperation(this, RefreshMode.FORCE_GET_DATA_AND_STAT));
     }
 
     public static <T> Map<String, T> members(ObjectMapper mapper, CuratorFramework curator, String path, Class<T> clazz) throws Exception {
@@ -630,4 +782,32 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     void setId(String id) {
         this.id = id;
     }
+
+    /**
+     * An immutable snapshot of the active members, sorted by sequence.
+     */
+    private static final class Members<T> {
+
+        private final long version;
+        private final List<ChildData<T>> children;
+        private final ChildData<T> master;
+        private final Map<String, T> members;
+        private final List<T> slaves;
+
+        private Members(long version, List<ChildData<T>> children) {
+            this.version = version;
+            this.children = Collections.unmodifiableList(new ArrayList<ChildData<T>>(children));
+            this.master = children.isEmpty() ? null : children.get(0);
+            Map<String, T> members = new LinkedHashMap<String, T>();
+            List<T> slaves = new ArrayList<T>();
+            for (ChildData<T> child : children) {
+                members.put(child.getPath(), child.getNode());
+                if (child != master) {
+                    slaves.add(child.getNode());
+                }
+            }
+            this.members = Collections.unmodifiableMap(members);
+            this.slaves = Collections.unmodifiableList(slaves);
+        }
+    }
 }
@@ -17,6 +17,7 @@ package io.fabric8.groups.internal;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -77,7 +78,7 @@ public class ZooKeeperGroupTest {
         ByteArrayOutputStream data = new ByteArrayOutputStream();
         new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).writeValue(data, node);
         ChildData<NodeState> child = new ChildData<>(path, new Stat(), data.toByteArray(), node);
-        group.currentData.put(path, child);
+        group.putCurrentData(path, child);
     }
 
     @Test
@@ -229,4 +230,22 @@ public class ZooKeeperGroupTest {
         assertThat(slaves.get(1).getContainer(), equalTo("container3"));
     }
 
+    @Test
+    public void testMembersSnapshot() throws Exception {
+        putChildData(group, PATH + "/001", "container1");
+        putChildData(group, PATH + "/002", "container2");
+
+        Map<String, NodeState> members = group.members();
+        assertThat(group.members(), sameInstance(members));
+
+        putChildData(group, PATH + "/003", "container3");
+        assertThat(members.size(), equalTo(2));
+        assertThat(group.members().size(), equalTo(3));
+        assertThat(group.slaves().size(), equalTo(2));
+
+        group.remove(PATH + "/001");
+        assertThat(group.master().getContainer(), equalTo("container2"));
+        assertThat(group.members().size(), equalTo(2));
+    }
+
 }
@@ -15,7 +15,11 @@
  */
 package io.fabric8.utils.features;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.felix.utils.version.VersionCleaner;
 import org.apache.felix.utils.version.VersionRange;
 import org.apache.karaf.features.Feature;
@@ -44,25 +48,32 @@ public class FeatureUtils {
     }
 
     public static Feature search(String name, String version, Collection<Repository> repositories) {
-        VersionRange range = new VersionRange(version, false, true);
-        Feature bestFeature = null;
-        Version bestVersion = null;
+        List<Feature> features = new ArrayList<Feature>();
         for (Repository repo : repositories) {
-            Feature[] features;
             try {
-                features = repo.getFeatures();
+                Collections.addAll(features, repo.getFeatures());
             } catch (Exception e) {
                 // This should not happen as the repository has been loaded already
                 throw new IllegalStateException(e);
             }
-            for (Feature feature : features) {
-                if (name.equals(feature.getName())) {
-                    Version v = new Version(VersionCleaner.clean(feature.getVersion()));
-                    if (range.contains(v)) {
-                        if (bestVersion == null || bestVersion.compareTo(v) < 0) {
-                            bestFeature = feature;
-                            bestVersion = v;
-                        }
+        }
+        return searchFeature(name, version, features);
+    }
+
+    /**
+     * Get the feature with the given name and the highest version within the version range, or null if there is none.
+     */
+    public static Feature searchFeature(String name, String version, Iterable<Feature> features) {
+        VersionRange range = new VersionRange(version, false, true);
+        Feature bestFeature = null;
+        Version bestVersion = null;
+        for (Feature feature : features) {
+            if (name.equals(feature.getName())) {
+                Version v = new Version(VersionCleaner.clean(feature.getVersion()));
+                if (range.contains(v)) {
+                    if (bestVersion == null || bestVersion.compareTo(v) < 0) {
+                        bestFeature = feature;
+                        bestVersion = v;
                     }
                 }
             }
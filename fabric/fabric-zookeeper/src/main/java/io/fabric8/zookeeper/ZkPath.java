@@ -28,6 +28,7 @@ import io.fabric8.zookeeper.internal.SimplePathTemplate;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Map;
 import java.util.Properties;
 import java.util.regex.Pattern;
@@ -85,6 +86,7 @@ public enum ZkPath {
     TASK_MEMBER_PARTITIONS         ("/fabric/registry/containers/task/{container}/{task}"),
 
     // Agent nodes
+    CONTAINER_REGISTRY             ("/fabric/registry/containers"),
     CONTAINERS                     ("/fabric/registry/containers/config"),
     CONTAINER                      ("/fabric/registry/containers/config/{container}"),
     CONTAINER_DOMAINS              ("/fabric/registry/containers/domains/{container}"),
@@ -154,6 +156,9 @@ public enum ZkPath {
     PORTS_CONTAINER_PID            ("/fabric/registry/ports/containers/{container}/{pid}"),
     PORTS_CONTAINER_PID_KEY        ("/fabric/registry/ports/containers/{container}/{pid}/{key}"),
     PORTS_IP                       ("/fabric/registry/ports/ip/{address}"),
+    PORTS_IPS                      ("/fabric/registry/ports/ip"),
+    PORTS_IP_PORT                  ("/fabric/registry/ports/ip/{address}/{port}"),
+    PORTS_IP_LOCK                  ("/fabric/registry/ports/locks/{address}"),
 
     AUTHENTICATION_CRYPT_ALGORITHM ("/fabric/authentication/crypt/algorithm"),
     AUTHENTICATION_CRYPT_PASSWORD  ("/fabric/authentication/crypt/password"),
@@ -198,15 +203,29 @@ public enum ZkPath {
      * Loads a zoo keeper URL content using the provided ZooKeeper client.
      */
     public static byte[] loadURL(CuratorFramework curator, String url) throws Exception {
-        URI uri = new URI(url);
-        String ref = uri.getFragment();
-        String path = uri.getSchemeSpecificPart();
+        return getURLData(url, curator.getData().forPath(getURLPath(url)));
+    }
+
+    /**
+     * Returns the path of the node a zoo keeper URL refers to.
+     */
+    public static String getURLPath(String url) throws URISyntaxException {
+        String path = new URI(url).getSchemeSpecificPart();
         path = path.trim();
         if( !path.startsWith("/") ) {
             path = ZkPath.CONTAINER.getPath(path);
         }
+        return path;
+    }
+
+    /**
+     * Returns the content of a zoo keeper URL, from the data of the node it refers to.
+     */
+    public static byte[] getURLData(String url, byte[] data) throws Exception {
+        String ref = new URI(url).getFragment();
+        String path = getURLPath(url);
 
-        byte rc [] = curator.getData().forPath(path);
+        byte rc [] = data;
         if( ref!=null ) {
             if( path.endsWith(".properties") ) {
                 Properties properties = new Properties();
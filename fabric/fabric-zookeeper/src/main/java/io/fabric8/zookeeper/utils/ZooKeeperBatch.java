@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.zookeeper.utils;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+
+/**
+ * Collects writes of persistent nodes and commits them in a single ZooKeeper transaction.
+ * <p/>
+ * Instead of an exists() call per node, the existing nodes are found with one getChildren() call per parent node.
+ * If a node is concurrently created or deleted in between, the transaction fails as a whole and is retried.
+ * <p/>
+ * A batch is not thread safe and can be committed more than once.
+ */
+public final class ZooKeeperBatch {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_COMMIT_ATTEMPTS = 3;
+
+    private final Map<String, byte[]> data = new LinkedHashMap<>();
+    private final Set<String> defaults = new HashSet<>();
+
+    /**
+     * Sets the data of the node, creating it if needed, like {@link ZooKeeperUtils#setData(CuratorFramework, String, String)}.
+     */
+    public ZooKeeperBatch setData(String path, String value) {
+        data.put(path, value != null ? value.getBytes(UTF_8) : null);
+        defaults.remove(path);
+        return this;
+    }
+
+    /**
+     * Creates the node with the given data if it doesn't exist, like {@link ZooKeeperUtils#createDefault(CuratorFramework, String, String)}.
+     */
+    public ZooKeeperBatch createDefault(String path, String value) {
+        if (!data.containsKey(path)) {
+            data.put(path, value != null ? value.getBytes(UTF_8) : null);
+            defaults.add(path);
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    public void commit(CuratorFramework curator) throws Exception {
+        if (data.isEmpty()) {
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                tryCommit(curator);
+                return;
+            } catch (KeeperException.NodeExistsException | KeeperException.NoNodeException e) {
+                if (attempt == MAX_COMMIT_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void tryCommit(CuratorFramework curator) throws Exception {
+        Map<String, Set<String>> children = new HashMap<>();
+        for (String path : data.keySet()) {
+            String parent = ZKPaths.getPathAndNode(path).getPath();
+            if (!children.containsKey(parent)) {
+                children.put(parent, getChildren(curator, parent));
+            }
+        }
+
+        CuratorTransaction transaction = curator.inTransaction();
+        CuratorTransactionFinal operations = null;
+        for (Map.Entry<String, byte[]> entry : data.entrySet()) {
+            String path = entry.getKey();
+            ZKPaths.PathAndNode pathAndNode = ZKPaths.getPathAndNode(path);
+            boolean exists = children.get(pathAndNode.getPath()).contains(pathAndNode.getNode());
+            if (!exists) {
+                operations = transaction.create().forPath(path, entry.getValue()).and();
+            } else if (!defaults.contains(path)) {
+                operations = transaction.setData().forPath(path, entry.getValue()).and();
+            } else {
+                continue;
+            }
+            transaction = operations;
+        }
+        if (operations != null) {
+            operations.commit();
+        }
+    }
+
+    /**
+     * Get the children of the given node, which is created with its parents if it doesn't exist.
+     */
+    private static Set<String> getChildren(CuratorFramework curator, String path) throws Exception {
+        try {
+            return new HashSet<>(curator.getChildren().forPath(path));
+        } catch (KeeperException.NoNodeException e) {
+            try {
+                curator.create().creatingParentsIfNeeded().forPath(path, new byte[0]);
+            } catch (KeeperException.NodeExistsException ignore) {
+                return new HashSet<>(curator.getChildren().forPath(path));
+            }
+            return Collections.emptySet();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.zookeeper.utils;
+
+import java.io.File;
+import java.net.ServerSocket;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ServerConfig;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.apache.zookeeper.server.persistence.FileTxnSnapLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ZooKeeperBatchTest {
+
+    private CuratorFramework curator;
+    private NIOServerCnxnFactory cnxnFactory;
+
+    @Before
+    public void init() throws Exception {
+        int port = findFreePort();
+
+        curator = CuratorFrameworkFactory.builder()
+            .connectString("localhost:" + port)
+            .retryPolicy(new RetryOneTime(1000))
+            .build();
+        curator.start();
+
+        cnxnFactory = startZooKeeper(port);
+        curator.getZookeeperClient().blockUntilConnectedOrTimedOut();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        curator.close();
+        cnxnFactory.shutdown();
+    }
+
+    @Test
+    public void testCreatesMissingNodesAndParents() throws Exception {
+        new ZooKeeperBatch()
+                .setData("/batch1/config/c1/ip", "10.0.0.1")
+                .createDefault("/batch1/config/c1/resolver", "localip")
+                .setData("/batch1/other/c1", "value")
+                .commit(curator);
+
+        assertThat(new String(curator.getData().forPath("/batch1/config/c1/ip")), equalTo("10.0.0.1"));
+        assertThat(new String(curator.getData().forPath("/batch1/config/c1/resolver")), equalTo("localip"));
+        assertThat(new String(curator.getData().forPath("/batch1/other/c1")), equalTo("value"));
+        assertThat(curator.getData().forPath("/batch1/config/c1").length, equalTo(0));
+    }
+
+    @Test
+    public void testDefaultsKeepExistingData() throws Exception {
+        curator.create().creatingParentsIfNeeded().forPath("/batch2/c1/resolver", "publicip".getBytes());
+        curator.create().creatingParentsIfNeeded().forPath("/batch2/c1/ip", "10.0.0.1".getBytes());
+
+        new ZooKeeperBatch()
+                .createDefault("/batch2/c1/resolver", "localip")
+                .setData("/batch2/c1/ip", "10.0.0.2")
+                .commit(curator);
+
+        assertThat(new String(curator.getData().forPath("/batch2/c1/resolver")), equalTo("publicip"));
+        assertThat(new String(curator.getData().forPath("/batch2/c1/ip")), equalTo("10.0.0.2"));
+    }
+
+    @Test
+    public void testSetDataOverridesDefault() throws Exception {
+        ZooKeeperBatch batch = new ZooKeeperBatch()
+                .createDefault("/batch3/c1/ip", "10.0.0.1")
+                .setData("/batch3/c1/ip", "10.0.0.2")
+                .createDefault("/batch3/c1/ip", "10.0.0.3");
+        batch.commit(curator);
+        assertThat(new String(curator.getData().forPath("/batch3/c1/ip")), equalTo("10.0.0.2"));
+
+        // Committing again updates the existing node
+        curator.setData().forPath("/batch3/c1/ip", "10.0.0.4".getBytes());
+        batch.commit(curator);
+        assertThat(new String(curator.getData().forPath("/batch3/c1/ip")), equalTo("10.0.0.2"));
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+        ZooKeeperBatch batch = new ZooKeeperBatch();
+        assertThat(batch.isEmpty(), is(true));
+        batch.commit(curator);
+    }
+
+    private int findFreePort() throws Exception {
+        ServerSocket ss = new ServerSocket(0);
+        int port = ss.getLocalPort();
+        ss.close();
+        return port;
+    }
+
+    private NIOServerCnxnFactory startZooKeeper(int port) throws Exception {
+        ServerConfig cfg = new ServerConfig();
+        cfg.parse(new String[]{Integer.toString(port), "target/zk/data"});
+
+        ZooKeeperServer zkServer = new ZooKeeperServer();
+        FileTxnSnapLog ftxn = new FileTxnSnapLog(new File(cfg.getDataLogDir()), new File(cfg.getDataDir()));
+        zkServer.setTxnLogFactory(ftxn);
+        zkServer.setTickTime(cfg.getTickTime());
+        zkServer.setMinSessionTimeout(cfg.getMinSessionTimeout());
+        zkServer.setMaxSessionTimeout(cfg.getMaxSessionTimeout());
+        NIOServerCnxnFactory cnxnFactory = new NIOServerCnxnFactory();
+        cnxnFactory.configure(cfg.getClientPortAddress(), cfg.getMaxClientCnxns());
+        cnxnFactory.startup(zkServer);
+        return cnxnFactory;
+    }
+
+}
@@ -22,6 +22,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -267,8 +268,11 @@ public class DeployToProfileMojo extends AbstractProfileMojo {
 
             DeployResults results = uploadRequirements(client, requirements);
             if (results != null) {
-                uploadReadMeFile(client, results);
-                uploadProfileConfigurations(client, results);
+                // the configuration files are all uploaded in one profile update
+                Map<String, File> configFiles = new LinkedHashMap<>();
+                addReadMeFile(configFiles);
+                addProfileConfigurations(configFiles);
+                uploadProfileConfigFiles(client, results, configFiles);
                 refreshProfile(client, results);
             }
         } catch (MojoExecutionException e) {
@@ -471,15 +475,15 @@ public class DeployToProfileMojo extends AbstractProfileMojo {
         }
     }
 
-    protected void uploadProfileConfigurations(J4pClient client, DeployResults results) throws Exception {
+    protected void addProfileConfigurations(Map<String, File> configFiles) throws Exception {
         if (profileConfigDir != null && profileConfigDir.exists()) {
-            uploadProfileConfigDir(client, results, profileConfigDir, profileConfigDir);
+            addProfileConfigDir(configFiles, profileConfigDir, profileConfigDir);
         } else {
             getLog().info("No profile configuration file directory " + profileConfigDir + " is defined in this project; so not importing any other configuration files into the profile.");
         }
     }
 
-    protected void uploadReadMeFile(J4pClient client, DeployResults results) throws Exception {
+    protected void addReadMeFile(Map<String, File> configFiles) throws Exception {
         File profileConfigReadme = null;
         if (profileConfigDir != null) {
             File[] files = profileConfigDir.listFiles(new FilenameFilter() {
@@ -506,47 +510,71 @@ public class DeployToProfileMojo extends AbstractProfileMojo {
         });
         if (files != null && files.length == 1) {
             File rootConfigReadme = files[0];
-            uploadProfileConfigFile(client, results, project.getBasedir(), rootConfigReadme);
+            addProfileConfigFile(configFiles, project.getBasedir(), rootConfigReadme);
         }
     }
 
-    protected void uploadProfileConfigDir(J4pClient client, DeployResults results, File rootDir, File file) throws MojoExecutionException, J4pException, IOException, MalformedObjectNameException {
+    protected void addProfileConfigDir(Map<String, File> configFiles, File rootDir, File file) throws IOException {
         if (file.isDirectory()) {
             File[] files = file.listFiles();
             if (files != null) {
                 for (File child : files) {
-                    uploadProfileConfigDir(client, results, rootDir, child);
+                    addProfileConfigDir(configFiles, rootDir, child);
                 }
             }
         } else if (file.isFile()) {
-            uploadProfileConfigFile(client, results, rootDir, file);
+            addProfileConfigFile(configFiles, rootDir, file);
         }
     }
 
+    protected void addProfileConfigFile(Map<String, File> configFiles, File rootDir, File configFile) throws IOException {
+        String relativePath = Files.getRelativePath(rootDir, configFile);
+        if (relativePath.startsWith("/")) relativePath = relativePath.substring(1);
+        // the path should use forward slash only as we use forward slashes in fabric profiles
+        relativePath = Files.normalizePath(relativePath, '\\', '/');
+        configFiles.put(relativePath, configFile);
+    }
+
     protected void uploadProfileConfigFile(J4pClient client, DeployResults results, File rootDir, File configFile) throws MojoExecutionException, J4pException, IOException, MalformedObjectNameException {
+        Map<String, File> configFiles = new LinkedHashMap<>();
+        addProfileConfigFile(configFiles, rootDir, configFile);
+        uploadProfileConfigFiles(client, results, configFiles);
+    }
+
+    /**
+     * Uploads the given configuration files, by their path in the profile, with one invocation of the mbean
+     */
+    protected void uploadProfileConfigFiles(J4pClient client, DeployResults results, Map<String, File> configFiles) throws MojoExecutionException, J4pException, IOException, MalformedObjectNameException {
+        if (configFiles.isEmpty()) {
+            return;
+        }
         String profileId = results.getProfileId();
         String versionId = results.getVersionId();
         if (Strings.isNullOrBlank(profileId)) {
-            throw new MojoExecutionException("Cannot upload configuration file " + configFile + " to profile as the profileId was not returned");
+            throw new MojoExecutionException("Cannot upload configuration files " + configFiles.values() + " to profile as the profileId was not returned");
         }
         if (Strings.isNullOrBlank(versionId)) {
-            throw new MojoExecutionException("Cannot upload configuration file " + configFile + " to profile as the versionId was not returned");
+            throw new MojoExecutionException("Cannot upload configuration files " + configFiles.values() + " to profile as the versionId was not returned");
         }
-        String relativePath = Files.getRelativePath(rootDir, configFile);
-        if (relativePath.startsWith("/")) relativePath = relativePath.substring(1);
-        // the path should use forward slash only as we use forward slashes in fabric profiles
-        relativePath = Files.normalizePath(relativePath, '\\', '/');
-        String configFileContents = loadFilteredConfigFile(configFile);
-        if (configFileContents == null) {
-            getLog().debug(String.format("Filtered copy of the config file %s not found. Using the original file.", configFile));
-            configFileContents = Files.toString(configFile);
+        List<String> profileIds = new ArrayList<>();
+        List<String> fileNames = new ArrayList<>();
+        List<String> data = new ArrayList<>();
+        for (Map.Entry<String, File> entry : configFiles.entrySet()) {
+            File configFile = entry.getValue();
+            String configFileContents = loadFilteredConfigFile(configFile);
+            if (configFileContents == null) {
+                getLog().debug(String.format("Filtered copy of the config file %s not found. Using the original file.", configFile));
+                configFileContents = Files.toString(configFile);
+            }
+            String expandedConfig = expandPlaceholders(configFileContents);
+            profileIds.add(profileId);
+            fileNames.add(entry.getKey());
+            data.add(Base64Encoder.encode(expandedConfig));
         }
-        String expandedConfig = expandPlaceholders(configFileContents);
-        String data = Base64Encoder.encode(expandedConfig);
         String mbeanName = "io.fabric8:type=Fabric";
-        getLog().info("Uploading file " + relativePath + " to invoke mbean " + mbeanName + " on jolokia URL: " + jolokiaUrl + " with user: " + fabricServer.getUsername());
+        getLog().info("Uploading files " + fileNames + " to invoke mbean " + mbeanName + " on jolokia URL: " + jolokiaUrl + " with user: " + fabricServer.getUsername());
         try {
-            J4pExecRequest request = new J4pExecRequest(mbeanName, "setConfigurationFile", versionId, profileId, relativePath, data);
+            J4pExecRequest request = new J4pExecRequest(mbeanName, "setConfigurationFiles", versionId, profileIds, fileNames, data);
             J4pResponse<J4pExecRequest> response = client.execute(request, "POST");
             Object value = response.getValue();
             if (value != null) {
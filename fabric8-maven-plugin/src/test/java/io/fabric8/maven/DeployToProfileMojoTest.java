@@ -30,6 +30,7 @@ import org.mockito.ArgumentCaptor;
 import javax.management.MalformedObjectNameException;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import static io.fabric8.api.FabricConstants.FABRIC_VERSION;
 import static io.fabric8.common.util.Base64Encoder.decode;
@@ -148,7 +149,10 @@ public class DeployToProfileMojoTest extends Assert {
     private String decodeSentConfig() throws J4pException {
         verify(jolokiaClient).execute(jolokiaRequest.capture(), anyString());
         J4pExecRequest capturedRequest = jolokiaRequest.getValue();
-        String encodedConfig = (String) capturedRequest.getArguments().get(3);
+        assertEquals("setConfigurationFiles", capturedRequest.getOperation());
+        List<?> data = (List<?>) capturedRequest.getArguments().get(3);
+        assertEquals(1, data.size());
+        String encodedConfig = (String) data.get(0);
         return decode(encodedConfig);
     }
 
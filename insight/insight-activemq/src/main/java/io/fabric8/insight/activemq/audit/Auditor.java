@@ -30,6 +30,8 @@ import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.broker.region.Subscription;
 import org.apache.activemq.command.Message;
 import io.fabric8.insight.activemq.base.SwichtableBrokerPlugin;
+import io.fabric8.insight.storage.AsyncStorage;
+import io.fabric8.insight.storage.StorageQueue;
 import io.fabric8.insight.storage.StorageService;
 import org.mvel2.ParserContext;
 import org.mvel2.templates.CompiledTemplate;
@@ -41,12 +43,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Audits the messages going through the broker.
+ * <p/>
+ * The audit events are stored asynchronously through a bounded {@link AsyncStorage} queue,
+ * so that a slow storage does not slow down the message dispatch.
  */
 public class Auditor extends SwichtableBrokerPlugin implements ManagedService, AuditorMBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Auditor.class);
 
-    private StorageService storage;
+    private final StorageService storage;
+    private final AsyncStorage queue;
     private String type = "activemq";
 
     private Dictionary<String, ?> properties;
@@ -58,6 +65,12 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
     public Auditor(StorageService storage) {
         super(false);
         this.storage = storage;
+        this.queue = new AsyncStorage("Insight ActiveMQ Auditor") {
+            @Override
+            protected StorageService getStorage() {
+                return Auditor.this.storage;
+            }
+        };
         context = new ParserContext();
         try {
             context.addImport("toJson", ScriptUtils.class.getMethod("toJson", Object.class));
@@ -68,36 +81,36 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
 
     @Override
     public void send(ProducerBrokerExchange producerExchange, Message messageSend) throws Exception {
-        if (isEnabled(messageSend)) {
+        if (isEnabled(messageSend) && queue.accept()) {
             String json = toJson("Sent", messageSend);
-            storage.store(type, System.currentTimeMillis(), json);
+            queue.store(type, System.currentTimeMillis(), json);
         }
         super.send(producerExchange, messageSend);
     }
 
     @Override
     public void messageConsumed(ConnectionContext context, MessageReference messageReference) {
-        if (isEnabled(messageReference)) {
+        if (isEnabled(messageReference) && queue.accept()) {
             String json = toJson("Consumed", messageReference);
-            storage.store(type, System.currentTimeMillis(), json);
+            queue.store(type, System.currentTimeMillis(), json);
         }
         super.messageConsumed(context, messageReference);
     }
 
     @Override
     public void messageDelivered(ConnectionContext context, MessageReference messageReference) {
-        if (isEnabled(messageReference)) {
+        if (isEnabled(messageReference) && queue.accept()) {
             String json = toJson("Delivered", messageReference);
-            storage.store(type, System.currentTimeMillis(), json);
+            queue.store(type, System.currentTimeMillis(), json);
         }
         super.messageDelivered(context, messageReference);
     }
 
     @Override
     public void messageDiscarded(ConnectionContext context, Subscription sub, MessageReference messageReference) {
-        if (isEnabled(messageReference)) {
+        if (isEnabled(messageReference) && queue.accept()) {
             String json = toJson("Discarded", messageReference);
-            storage.store(type, System.currentTimeMillis(), json);
+            queue.store(type, System.currentTimeMillis(), json);
         }
         super.messageDiscarded(context, sub, messageReference);
     }
@@ -107,6 +120,68 @@ public class Auditor extends SwichtableBrokerPlugin implements ManagedService, A
         this.properties = properties;
     }
 
+    @Override
+    public void update(Map<String, String> properties) {
+        Map<String, ?> previous = getProperties();
+        super.update(properties);
+        if (properties != null && !properties.equals(previous)) {
+            queue.configure(properties);
+        }
+    }
+
+    public void start() {
+        queue.start();
+    }
+
+    public void stop() {
+        queue.stop();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queue.getQueueSize();
+    }
+
+    @Override
+    public long getDropped() {
+        return queue.getDropped();
+    }
+
+    @Override
+    public long getDelayed() {
+        return queue.getDelayed();
+    }
+
+    @Override
+    public long getMaxDelay() {
+        return queue.getMaxDelay();
+    }
+
+    @Override
+    public void resetStatistics() {
+        queue.resetStatistics();
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return queue.getOverflowPolicy().name();
+    }
+
+    @Override
+    public void setOverflowPolicy(String overflowPolicy) {
+        queue.setOverflowPolicy(StorageQueue.OverflowPolicy.valueOf(overflowPolicy.toUpperCase()));
+    }
+
+    @Override
+    public int getSampleRate() {
+        return queue.getSampleRate();
+    }
+
+    @Override
+    public void setSampleRate(int sampleRate) {
+        queue.setSampleRate(sampleRate);
+    }
+
     protected String toJson(String eventType, MessageReference messageReference) {
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         try {
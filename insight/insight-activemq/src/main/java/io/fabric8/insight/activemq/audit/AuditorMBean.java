@@ -18,4 +18,38 @@ package io.fabric8.insight.activemq.audit;
 import io.fabric8.insight.activemq.base.SwichtableBrokerPluginMBean;
 
 public interface AuditorMBean extends SwichtableBrokerPluginMBean {
+
+    /**
+     * Returns the number of audit events waiting to be stored
+     */
+    int getQueueSize();
+
+    /**
+     * Returns the number of audit events dropped because the queue was full or which were not sampled
+     */
+    long getDropped();
+
+    /**
+     * Returns the number of audit events stored more than the delay threshold, a second by default, after they were queued
+     */
+    long getDelayed();
+
+    /**
+     * Returns the maximum time in ms an audit event has been waiting to be stored
+     */
+    long getMaxDelay();
+
+    void resetStatistics();
+
+    /**
+     * Returns DROP or SAMPLE, the policy applied when the queue fills up
+     */
+    String getOverflowPolicy();
+
+    void setOverflowPolicy(String overflowPolicy);
+
+    int getSampleRate();
+
+    void setSampleRate(int sampleRate);
+
 }
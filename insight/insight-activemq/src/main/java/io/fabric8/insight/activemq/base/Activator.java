@@ -53,13 +53,15 @@ public class Activator implements BundleActivator, ManagedService {
 
     private final Map<String, InsightBrokerPlugin> plugins = new HashMap<String, InsightBrokerPlugin>();
     private StorageProxy storageProxy = new StorageProxy();
+    private final Auditor auditor;
     private BundleContext bundleContext;
     private MBeanServer mbeanServer;
     private ServiceRegistration<ManagedService> registration;
     private List<ServiceRegistration> commandRegistrations;
 
     public Activator() {
-        this.plugins.put("auditor", new Auditor(storageProxy));
+        this.auditor = new Auditor(storageProxy);
+        this.plugins.put("auditor", auditor);
     }
 
     public static Broker installPlugins(Broker broker) throws Exception {
@@ -82,6 +84,7 @@ public class Activator implements BundleActivator, ManagedService {
         this.bundleContext = context;
         storageProxy.setContext(context);
         storageProxy.init();
+        auditor.start();
         mbeanServer = lookupMBeanServer();
         if (mbeanServer != null) {
             for (BrokerPlugin plugin : plugins.values()) {
@@ -120,6 +123,7 @@ public class Activator implements BundleActivator, ManagedService {
                 }
             }
         }
+        auditor.stop();
         storageProxy.destroy();
     }
 
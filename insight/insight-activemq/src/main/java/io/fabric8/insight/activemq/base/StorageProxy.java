@@ -15,11 +15,15 @@
  */
 package io.fabric8.insight.activemq.base;
 
+import io.fabric8.insight.storage.BatchStorageService;
+import io.fabric8.insight.storage.StorageEvent;
 import io.fabric8.insight.storage.StorageService;
 import org.osgi.framework.BundleContext;
 import org.osgi.util.tracker.ServiceTracker;
 
-public class StorageProxy implements StorageService {
+import java.util.List;
+
+public class StorageProxy implements BatchStorageService {
 
     private BundleContext context;
     private ServiceTracker<StorageService, StorageService> tracker;
@@ -48,4 +52,24 @@ public class StorageProxy implements StorageService {
         }
     }
 
+    @Override
+    public void store(String type, long timestamp, byte[] jsonData) {
+        StorageService storage = this.tracker.getService();
+        if (storage != null) {
+            storage.store(type, timestamp, jsonData);
+        }
+    }
+
+    @Override
+    public void store(List<StorageEvent> events) {
+        StorageService storage = this.tracker.getService();
+        if (storage instanceof BatchStorageService) {
+            ((BatchStorageService) storage).store(events);
+        } else if (storage != null) {
+            for (StorageEvent event : events) {
+                event.storeIn(storage);
+            }
+        }
+    }
+
 }
@@ -18,6 +18,8 @@ package io.fabric8.insight.camel.audit;
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.common.util.IOHelpers;
 import io.fabric8.insight.camel.base.SwitchableContainerStrategy;
+import io.fabric8.insight.storage.AsyncStorage;
+import io.fabric8.insight.storage.StorageQueue;
 import io.fabric8.insight.storage.StorageService;
 import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
@@ -41,7 +43,11 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- *
+ * Audits the exchanges to the storage.
+ * <p/>
+ * The audit events are rendered on the route thread, as the exchange is not safe to read from another
+ * thread, but they are stored asynchronously through a bounded {@link AsyncStorage} queue, so that
+ * a slow storage does not slow down the routes.
  */
 @ManagedResource(description = "Auditor")
 public class Auditor extends SwitchableContainerStrategy implements EventNotifier, AuditorMBean {
@@ -50,6 +56,12 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
 
     private ValidatingReference<StorageService> storage;
     private String type = "camel";
+    private final AsyncStorage queue = new AsyncStorage("Insight Camel Auditor") {
+        @Override
+        protected StorageService getStorage() {
+            return Auditor.this.getStorage();
+        }
+    };
 
     private boolean ignoreExchangeCreatedEvent;
     private boolean ignoreExchangeCompletedEvent;
@@ -83,8 +95,25 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         context.getManagementStrategy().addEventNotifier(this);
     }
 
+    @Override
+    public void update(Map<String, String> properties) {
+        Map<String, ?> previous = getProperties();
+        super.update(properties);
+        if (properties != null && !properties.equals(previous)) {
+            queue.configure(properties);
+        }
+    }
+
+    public void start() {
+        queue.start();
+    }
+
+    public void stop() {
+        queue.stop();
+    }
+
     public StorageService getStorage() {
-        return storage.getOptional();
+        return storage != null ? storage.getOptional() : null;
     }
 
     public void setStorage(ValidatingReference<StorageService> storage) {
@@ -107,9 +136,9 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
                 if (aee instanceof ExchangeSendingEvent) {
                     aee.getExchange().getIn().setHeader("AuditCallId", aee.getExchange().getContext().getUuidGenerator().generateUuid());
                 }
-                String json = toJson(aee);
-                if (getStorage() != null) {
-                    getStorage().store(type, System.currentTimeMillis(), json);
+                if (getStorage() != null && queue.accept()) {
+                    String json = toJson(aee);
+                    queue.store(type, System.currentTimeMillis(), json);
                 }
             }
         }
@@ -179,6 +208,51 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         return source;
     }
 
+    @Override
+    public int getQueueSize() {
+        return queue.getQueueSize();
+    }
+
+    @Override
+    public long getDropped() {
+        return queue.getDropped();
+    }
+
+    @Override
+    public long getDelayed() {
+        return queue.getDelayed();
+    }
+
+    @Override
+    public long getMaxDelay() {
+        return queue.getMaxDelay();
+    }
+
+    @Override
+    public void resetStatistics() {
+        queue.resetStatistics();
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return queue.getOverflowPolicy().name();
+    }
+
+    @Override
+    public void setOverflowPolicy(String overflowPolicy) {
+        queue.setOverflowPolicy(StorageQueue.OverflowPolicy.valueOf(overflowPolicy.toUpperCase()));
+    }
+
+    @Override
+    public int getSampleRate() {
+        return queue.getSampleRate();
+    }
+
+    @Override
+    public void setSampleRate(int sampleRate) {
+        queue.setSampleRate(sampleRate);
+    }
+
     @Override
     public boolean isEnabled(EventObject eventObject) {
         return true;
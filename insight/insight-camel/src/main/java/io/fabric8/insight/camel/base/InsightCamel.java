@@ -55,6 +55,7 @@ public class InsightCamel {
     private static final transient Logger LOG = LoggerFactory.getLogger(InsightCamel.class);
 
     private final Map<String, ContainerStrategy> strategies = new HashMap<String, ContainerStrategy>();
+    private final Auditor auditor;
 
     @Reference(referenceInterface = StorageService.class)
     private ValidatingReference<StorageService> storage = new ValidatingReference<>();
@@ -73,12 +74,14 @@ public class InsightCamel {
         strategies.put(BREADCRUMBS, new Breadcrumbs());
         strategies.put(PROFILER, new Profiler());
         strategies.put(TRACER, new Tracer());
-        strategies.put(AUDITOR, new Auditor(storage));
+        auditor = new Auditor(storage);
+        strategies.put(AUDITOR, auditor);
     }
 
     @Activate
     public void activate(BundleContext context, Map<String, ?> configuration) throws Exception {
         this.bundleContext = context;
+        auditor.start();
         if (mbeanServer != null) {
             for (ContainerStrategy strategy : strategies.values()) {
                 try {
@@ -117,6 +120,7 @@ public class InsightCamel {
                 }
             }
         }
+        auditor.stop();
     }
 
     @Modified
@@ -23,15 +23,37 @@ import java.util.LinkedList;
 import java.util.Map;
 
 /**
- *
+ * The profiling data of an exchange, kept as a property of the exchange until it completes,
+ * so that profiling a step doesn't touch any state shared by the exchanges.
  */
 public class ExchangeData implements Synchronization {
+    public static final String PROPERTY = "CamelInsightProfilerData";
+
+    final String exchangeId;
     final Map<Stats, ProcessorData> data = new HashMap<Stats, ProcessorData>();
     final LinkedList<Stats> queue = new LinkedList<Stats>();
     long last;
     long level;
     boolean completed;
 
+    public ExchangeData(String exchangeId) {
+        this.exchangeId = exchangeId;
+    }
+
+    /**
+     * Returns the data of the given exchange, attaching it to the exchange when first seen
+     */
+    public static ExchangeData get(Exchange exchange) {
+        ExchangeData data = exchange.getProperty(PROPERTY, ExchangeData.class);
+        // copies of an exchange share its properties, but are profiled separately
+        if (data == null || !data.exchangeId.equals(exchange.getExchangeId())) {
+            data = new ExchangeData(exchange.getExchangeId());
+            exchange.setProperty(PROPERTY, data);
+            exchange.addOnCompletion(data);
+        }
+        return data;
+    }
+
     public static class ProcessorData {
         long time;
         long total;
@@ -41,7 +63,10 @@ public class ExchangeData implements Synchronization {
     @Override
     public void onComplete(Exchange exchange) {
         completed = true;
-        checkCompletedExchange();
+        // the completions of the copies of an exchange may be handed over to the exchange itself
+        if (checkCompletedExchange() && exchange.getProperty(PROPERTY) == this) {
+            exchange.removeProperty(PROPERTY);
+        }
     }
 
     @Override
@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.profiler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with logarithmic buckets.
+ * <p/>
+ * Each power of two is split in {@link #SUB_BUCKETS} buckets, so that the reported
+ * percentiles are within 25% of the exact value. As for {@link StripedCounter}, the
+ * buckets are striped by thread so that concurrent updates do not contend.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+    private static final int STRIPES = Math.min(StripedCounter.STRIPES, 4);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(STRIPES * BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int stripe = StripedCounter.stripe() & (STRIPES - 1);
+        buckets.incrementAndGet(stripe * BUCKETS + bucket(value));
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values fall,
+     * or 0 if no value has been recorded
+     *
+     * @param fraction the fraction between 0 and 1, for instance 0.99 for the 99th percentile
+     */
+    public long getPercentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < STRIPES * BUCKETS; i++) {
+            long c = buckets.get(i);
+            counts[i % BUCKETS] += c;
+            count += c;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES * BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -29,11 +29,12 @@ import org.apache.camel.spi.ProcessorFactory;
 import org.apache.camel.spi.RouteContext;
 import org.apache.camel.util.StringHelper;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -42,7 +43,6 @@ import java.util.concurrent.ConcurrentHashMap;
 public class Profiler extends SwitchableContainerStrategy implements ProfilerMBean {
 
     private final Map<ProcessorDefinition<?>, Stats> statistics = new LinkedHashMap<ProcessorDefinition<?>, Stats>();
-    private final Map<String, ExchangeData> exchanges = new ConcurrentHashMap<String, ExchangeData>();
 
     public Profiler() {
         disable();
@@ -80,7 +80,7 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
                 RouteDefinitionHelper.forceAssignIds(routeContext.getCamelContext(), route);
             }
         }
-        ProfilerProcessor profilerProcessor = new ProfilerProcessor(this, processor, getStats(definition), exchanges);
+        ProfilerProcessor profilerProcessor = new ProfilerProcessor(this, processor, getStats(definition));
         profilerProcessor.setCamelContext(routeContext.getCamelContext());
         if (processor instanceof CamelContextAware) {
             ((CamelContextAware) processor).setCamelContext(routeContext.getCamelContext());
@@ -115,6 +115,42 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
         return dumpStatsAsXml(null);
     }
 
+    public List<Map<String, Object>> dumpStats(String routeId) {
+        Map<ProcessorDefinition<?>, Stats> snapshot;
+        synchronized (statistics) {
+            snapshot = new LinkedHashMap<ProcessorDefinition<?>, Stats>(statistics);
+        }
+        List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<ProcessorDefinition<?>, Stats> entry : snapshot.entrySet()) {
+            ProcessorDefinition<?> definition = entry.getKey();
+            RouteDefinition route = ProcessorDefinitionHelper.getRoute(definition);
+            String id = route != null ? route.getId() : null;
+            if (routeId != null && !routeId.equals(id)) {
+                continue;
+            }
+            Stats stats = entry.getValue();
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("routeId", id);
+            map.put("id", definition.getId());
+            map.put("parentId", definition.getParent() != null ? definition.getParent().getId() : null);
+            map.put("definition", definition.toString());
+            map.put("label", definition.getLabel());
+            map.put("count", stats.getCount());
+            map.put("self", stats.getSelf());
+            map.put("total", stats.getTotal());
+            map.put("mean", stats.getMean());
+            map.put("p50", stats.getP50());
+            map.put("p99", stats.getP99());
+            map.put("max", stats.getMax());
+            answer.add(map);
+        }
+        return answer;
+    }
+
+    public List<Map<String, Object>> dumpAllStats() {
+        return dumpStats(null);
+    }
+
     protected void appendStats(StringBuilder sb, ProcessorDefinition<?> definition) {
         Stats stats = statistics.get(definition);
         if (stats != null) {
@@ -129,6 +165,9 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
             sb.append(" count=\"").append(stats.getCount()).append("\"");
             sb.append(" self=\"").append(stats.getSelf()).append("\"");
             sb.append(" total=\"").append(stats.getTotal()).append("\"");
+            sb.append(" p50=\"").append(stats.getP50()).append("\"");
+            sb.append(" p99=\"").append(stats.getP99()).append("\"");
+            sb.append(" max=\"").append(stats.getMax()).append("\"");
             sb.append(">");
             for (ProcessorDefinition<?> child : statistics.keySet()) {
                 if (child.getParent() == definition) {
@@ -17,6 +17,9 @@ package io.fabric8.insight.camel.profiler;
 
 import io.fabric8.insight.camel.base.SwitchableContainerStrategyMBean;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  *
  */
@@ -26,4 +29,12 @@ public interface ProfilerMBean extends SwitchableContainerStrategyMBean {
 
     String dumpStatsAsXml(String routeId);
 
+    /**
+     * Returns the statistics of the processors of the given route, one map per processor with
+     * the count, self and total times and the p50, p99 and max total times in nanoseconds
+     */
+    List<Map<String, Object>> dumpStats(String routeId);
+
+    List<Map<String, Object>> dumpAllStats();
+
 }
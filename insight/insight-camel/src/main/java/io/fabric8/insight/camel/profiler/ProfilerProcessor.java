@@ -18,22 +18,18 @@ package io.fabric8.insight.camel.profiler;
 import org.apache.camel.*;
 import org.apache.camel.processor.DelegateAsyncProcessor;
 
-import java.util.Map;
-
 /**
  *
  */
 public class ProfilerProcessor extends DelegateAsyncProcessor implements CamelContextAware {
     private final Profiler profiler;
     private final Stats stats;
-    private final Map<String, ExchangeData> exchanges;
     private CamelContext camelContext;
 
-    public ProfilerProcessor(Profiler profiler, Processor processor, Stats stats, Map<String, ExchangeData> exchanges) {
+    public ProfilerProcessor(Profiler profiler, Processor processor, Stats stats) {
         super(processor);
         this.profiler = profiler;
         this.stats = stats;
-        this.exchanges = exchanges;
     }
 
     @Override
@@ -41,13 +37,7 @@ public class ProfilerProcessor extends DelegateAsyncProcessor implements CamelCo
         if (!profiler.isEnabled(exchange)) {
             return processor.process(exchange, callback);
         }
-        ExchangeData data = exchanges.get(exchange.getExchangeId());
-        if (data == null) {
-            data = new ExchangeData();
-            exchanges.put(exchange.getExchangeId(), data);
-            exchange.addOnCompletion(data);
-        }
-        final ExchangeData ed = data;
+        final ExchangeData ed = ExchangeData.get(exchange);
         ed.start(stats);
         try {
             return processor.process(exchange, new AsyncCallback() {
@@ -58,14 +48,14 @@ public class ProfilerProcessor extends DelegateAsyncProcessor implements CamelCo
                         callback.done(doneSync);
                     } finally {
                         if (ed.stop(stats)) {
-                            exchanges.remove(exchange.getExchangeId());
+                            exchange.removeProperty(ExchangeData.PROPERTY);
                         }
                     }
                 }
             });
         } finally {
             if (ed.stop(stats)) {
-                exchanges.remove(exchange.getExchangeId());
+                exchange.removeProperty(ExchangeData.PROPERTY);
             }
         }
     }
@@ -17,15 +17,17 @@ package io.fabric8.insight.camel.profiler;
 
 import org.apache.camel.model.ProcessorDefinition;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 /**
- *
+ * The statistics of a processor, updated once per exchange when it completes.
+ * <p/>
+ * <tt>self</tt> is the time spent in the processor itself and <tt>total</tt> the time spent
+ * in the processor and its children. The distribution of the total times is kept as well.
  */
 public class Stats {
-    final AtomicLong count = new AtomicLong();
-    final AtomicLong self = new AtomicLong();
-    final AtomicLong total = new AtomicLong();
+    final StripedCounter count = new StripedCounter();
+    final StripedCounter self = new StripedCounter();
+    final StripedCounter total = new StripedCounter();
+    final LatencyHistogram latencies = new LatencyHistogram();
     final Stats parent;
     final ProcessorDefinition definition;
 
@@ -34,10 +36,11 @@ public class Stats {
         this.parent = parent;
     }
 
-    public synchronized void addTime(long self, long total) {
-        this.count.incrementAndGet();
-        this.self.addAndGet(self);
-        this.total.addAndGet(total);
+    public void addTime(long self, long total) {
+        this.count.increment();
+        this.self.add(self);
+        this.total.add(total);
+        this.latencies.record(total);
     }
 
     public Stats getParent() {
@@ -56,10 +59,28 @@ public class Stats {
         return total.get();
     }
 
+    public long getMean() {
+        long c = getCount();
+        return c > 0 ? getTotal() / c : 0;
+    }
+
+    public long getP50() {
+        return latencies.getPercentile(0.5);
+    }
+
+    public long getP99() {
+        return latencies.getPercentile(0.99);
+    }
+
+    public long getMax() {
+        return latencies.getMax();
+    }
+
     public void reset() {
-        count.set(0);
-        self.set(0);
-        total.set(0);
+        count.reset();
+        self.reset();
+        total.reset();
+        latencies.reset();
     }
 
     public String toString() {
@@ -0,0 +1,66 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.profiler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over several cells, so that threads updating it
+ * concurrently do not contend on a single value.
+ * <p/>
+ * Each thread updates the cell selected by its id and the cells are
+ * padded to sit on distinct cache lines.
+ */
+public class StripedCounter {
+
+    static final int STRIPES = stripes();
+
+    // 8 longs fill a 64 bytes cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void add(long value) {
+        cells.addAndGet(stripe() * PADDING, value);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    static int stripe() {
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    private static int stripes() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        return Math.min(Integer.highestOneBit(Math.max(cpus, 1) * 2 - 1), 16);
+    }
+}
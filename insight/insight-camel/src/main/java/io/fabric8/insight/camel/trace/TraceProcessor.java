@@ -21,26 +21,23 @@ import org.apache.camel.processor.DelegateAsyncProcessor;
 import org.apache.camel.util.MessageHelper;
 
 import java.util.Date;
-import java.util.Queue;
 
 /**
  *
  */
 public class TraceProcessor extends DelegateAsyncProcessor implements CamelContextAware {
 
-    private final Queue<TracerEventMessage> queue;
     private final Tracer tracer;
     private final ProcessorDefinition<?> processorDefinition;
     private final ProcessorDefinition<?> routeDefinition;
     private final boolean first;
     private CamelContext camelContext;
 
-    public TraceProcessor(Queue<TracerEventMessage> queue, Processor processor,
+    public TraceProcessor(Processor processor,
                           ProcessorDefinition<?> processorDefinition,
                           ProcessorDefinition<?> routeDefinition, boolean first,
                           Tracer tracer) {
         super(processor);
-        this.queue = queue;
         this.processorDefinition = processorDefinition;
         this.routeDefinition = routeDefinition;
         this.first = first;
@@ -49,30 +46,27 @@ public class TraceProcessor extends DelegateAsyncProcessor implements CamelConte
 
     @Override
     public boolean process(Exchange exchange, AsyncCallback callback) {
-        if (tracer.isEnabled(exchange)) {
+        if (tracer.isEnabled(exchange) && tracer.isSampled(exchange)) {
             try {
-                // ensure there is space on the queue
-                int drain = queue.size() - tracer.getQueueSize();
-                if (drain > 0) {
-                    for (int i = 0; i < drain; i++) {
-                        queue.poll();
-                    }
-                }
-
-                Date timestamp = new Date();
+                long timestamp = System.currentTimeMillis();
                 String toNode = processorDefinition.getId();
                 String exchangeId = exchange.getExchangeId();
-                String messageAsXml = MessageHelper.dumpAsXml(exchange.getIn());
+                // render the message now, as the route may change its body and headers afterwards,
+                // without reading streams and with the body clipped to maxChars, which keeps the rendering cheap
+                int maxChars = tracer.getMaxChars();
+                String messageAsXml = MessageHelper.dumpAsXml(exchange.getIn(), true, 0, false, true,
+                        maxChars > 0 ? maxChars : Integer.MAX_VALUE);
 
                 // if first we should add a pseudo trace message as well, so we have a starting message as well
                 if (first) {
-                    Date created = exchange.getProperty(Exchange.CREATED_TIMESTAMP, timestamp, Date.class);
+                    Date created = exchange.getProperty(Exchange.CREATED_TIMESTAMP, Date.class);
                     String routeId = routeDefinition.getId();
-                    TracerEventMessage pseudo = new TracerEventMessage(tracer.incrementTraceCounter(), created, routeId, exchangeId, messageAsXml);
-                    queue.add(pseudo);
+                    TracerEventMessage pseudo = new TracerEventMessage(tracer.incrementTraceCounter(),
+                            created != null ? created.getTime() : timestamp, routeId, exchangeId, messageAsXml);
+                    tracer.addEvent(pseudo);
                 }
                 TracerEventMessage event = new TracerEventMessage(tracer.incrementTraceCounter(), timestamp, toNode, exchangeId, messageAsXml);
-                queue.add(event);
+                tracer.addEvent(event);
             } catch (Exception e) {
                 exchange.setException(e);
                 callback.done(true);
@@ -85,7 +79,7 @@ public class TraceProcessor extends DelegateAsyncProcessor implements CamelConte
 
     public void stop() throws Exception {
         super.stop();
-        queue.clear();
+        tracer.clearEvents();
         // notify tracer we are stopping to not leak resources
         tracer.stopProcessor(this, processorDefinition);
     }
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size ring keeping the most recent trace events.
+ * <p/>
+ * Adding an event overwrites the oldest one once the ring is full, without locking
+ * and without having to trim the ring. Each slot records the sequence number of its event,
+ * so that readers skip the slots which have been overwritten, or not written yet, while they read.
+ */
+public class TraceRing {
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile long start;
+
+    public TraceRing(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The size must be a positive number, was: " + size);
+        }
+        this.slots = new AtomicReferenceArray<Slot>(size);
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public void add(TracerEventMessage event) {
+        long seq = sequence.getAndIncrement();
+        slots.set(index(seq), new Slot(seq, event));
+    }
+
+    /**
+     * Returns the events in the ring, oldest first
+     */
+    public List<TracerEventMessage> snapshot() {
+        long end = sequence.get();
+        long first = Math.max(start, end - slots.length());
+        List<TracerEventMessage> answer = new ArrayList<TracerEventMessage>((int) (end - first));
+        for (long seq = first; seq < end; seq++) {
+            Slot slot = slots.get(index(seq));
+            if (slot != null && slot.seq == seq) {
+                answer.add(slot.event);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the events in the ring, oldest first, and removes them
+     */
+    public List<TracerEventMessage> drain() {
+        long end = sequence.get();
+        List<TracerEventMessage> answer = new ArrayList<TracerEventMessage>();
+        for (long seq = Math.max(start, end - slots.length()); seq < end; seq++) {
+            int index = index(seq);
+            Slot slot = slots.get(index);
+            // a slot already holding a later event is left to the next drain
+            if (slot != null && slot.seq == seq && slots.compareAndSet(index, slot, null)) {
+                answer.add(slot.event);
+            }
+        }
+        start = end;
+        return answer;
+    }
+
+    public void clear() {
+        drain();
+    }
+
+    private int index(long seq) {
+        return (int) (seq % slots.length());
+    }
+
+    private static final class Slot {
+
+        private final long seq;
+        private final TracerEventMessage event;
+
+        private Slot(long seq, TracerEventMessage event) {
+            this.seq = seq;
+            this.event = event;
+        }
+    }
+}
@@ -17,6 +17,7 @@ package io.fabric8.insight.camel.trace;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.CamelContextAware;
+import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.api.management.ManagedAttribute;
 import org.apache.camel.api.management.ManagedOperation;
@@ -29,24 +30,36 @@ import org.apache.camel.spi.NodeIdFactory;
 import org.apache.camel.spi.ProcessorFactory;
 import org.apache.camel.spi.RouteContext;
 import io.fabric8.insight.camel.base.SwitchableContainerStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Traces the messages flowing through the routes.
+ * <p/>
+ * Whether an exchange is traced is decided once, when it reaches its first traced processor,
+ * so that only one exchange out of {@link #getSampleRate()} is traced, at every step.
  */
 @ManagedResource(description = "Tracer")
 public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
 
+    public static final String SAMPLED_PROPERTY = "CamelInsightTraceSampled";
+    // the messages are rendered on the route thread, so only the start of the bodies is traced by default
+    public static final int DEFAULT_MAX_CHARS = 1000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(Tracer.class);
+
     private final AtomicLong traceCounter = new AtomicLong(0);
-    private Queue<TracerEventMessage> queue =  new ArrayBlockingQueue<TracerEventMessage>(1000);
-    private int queueSize = 10;
+    private final AtomicLong sampleCounter = new AtomicLong(0);
+    private volatile TraceRing ring = new TraceRing(10);
+    private volatile int sampleRate = 1;
+    private volatile int maxChars = DEFAULT_MAX_CHARS;
     // remember the processors we are tracing, which we need later
     private final Set<ProcessorDefinition<?>> processors = new HashSet<ProcessorDefinition<?>>();
     private final Set<RouteContext> routeContexts = new HashSet<RouteContext>();
@@ -91,7 +104,7 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
         }
         routeContexts.add(routeContext);
         processors.add(definition);
-        TraceProcessor traceProcessor = new TraceProcessor(queue, processor, definition, route, first, this);
+        TraceProcessor traceProcessor = new TraceProcessor(processor, definition, route, first, this);
         traceProcessor.setCamelContext(routeContext.getCamelContext());
         if (processor instanceof CamelContextAware) {
             ((CamelContextAware) processor).setCamelContext(routeContext.getCamelContext());
@@ -110,17 +123,71 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
         }
     }
 
+    @Override
+    public void update(Map<String, String> properties) {
+        Map<String, ?> previous = getProperties();
+        super.update(properties);
+        if (properties != null && !properties.equals(previous)) {
+            String rate = properties.get("sampleRate");
+            try {
+                setSampleRate(rate != null ? Integer.parseInt(rate.trim()) : 1);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Invalid tracer sampleRate " + rate + ", keeping " + sampleRate + ": " + e.getMessage());
+            }
+            String chars = properties.get("maxChars");
+            try {
+                setMaxChars(chars != null ? Integer.parseInt(chars.trim()) : DEFAULT_MAX_CHARS);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Invalid tracer maxChars " + chars + ", keeping " + maxChars + ": " + e.getMessage());
+            }
+        }
+    }
+
     @ManagedAttribute(description = "Number of traced messages to keep in FIFO queue")
     public int getQueueSize() {
-        return queueSize;
+        return ring.capacity();
     }
 
     @ManagedAttribute(description = "Number of traced messages to keep in FIFO queue")
-    public void setQueueSize(int queueSize) {
+    public synchronized void setQueueSize(int queueSize) {
         if (queueSize <= 0) {
             throw new IllegalArgumentException("The queue size must be a positive number, was: " + queueSize);
         }
-        this.queueSize = queueSize;
+        if (queueSize != ring.capacity()) {
+            TraceRing old = ring;
+            TraceRing ring = new TraceRing(queueSize);
+            // publish the new ring first, so that the events added while copying are not lost with the old ring
+            this.ring = ring;
+            for (TracerEventMessage event : old.drain()) {
+                ring.add(event);
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "Trace one exchange out of this number of exchanges")
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @ManagedAttribute(description = "Trace one exchange out of this number of exchanges")
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("The sample rate must be a positive number, was: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    @ManagedAttribute(description = "Maximum number of characters of the message bodies to trace, 0 for no limit")
+    public int getMaxChars() {
+        return maxChars;
+    }
+
+    @ManagedAttribute(description = "Maximum number of characters of the message bodies to trace, 0 for no limit")
+    public void setMaxChars(int maxChars) {
+        if (maxChars < 0) {
+            throw new IllegalArgumentException("The maximum number of characters must not be negative, was: " + maxChars);
+        }
+        this.maxChars = maxChars;
     }
 
     @ManagedAttribute(description = "Number of total traced messages")
@@ -137,7 +204,7 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
     public List<TracerEventMessage> dumpTracedMessages(String nodeId) {
         List<TracerEventMessage> answer = new ArrayList<TracerEventMessage>();
         if (nodeId != null) {
-            for (TracerEventMessage message : queue) {
+            for (TracerEventMessage message : ring.snapshot()) {
                 if (nodeId.equals(message.getToNode())) {
                     answer.add(message);
                 }
@@ -161,10 +228,7 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
 
     @ManagedOperation(description = "Dumps the traced messages for all nodes")
     public List<TracerEventMessage> dumpAllTracedMessages() {
-        List<TracerEventMessage> answer = new ArrayList<TracerEventMessage>();
-        answer.addAll(queue);
-        queue.clear();
-        return answer;
+        return ring.drain();
     }
 
     @ManagedOperation(description = "Dumps the traced messages for all nodes in xml format")
@@ -180,6 +244,30 @@ public class Tracer extends SwitchableContainerStrategy implements TracerMBean {
         return sb.toString();
     }
 
+    /**
+     * Returns true if the exchange is traced, deciding it when the exchange is first seen
+     */
+    boolean isSampled(Exchange exchange) {
+        int rate = sampleRate;
+        if (rate <= 1) {
+            return true;
+        }
+        Boolean sampled = exchange.getProperty(SAMPLED_PROPERTY, Boolean.class);
+        if (sampled == null) {
+            sampled = sampleCounter.getAndIncrement() % rate == 0;
+            exchange.setProperty(SAMPLED_PROPERTY, sampled);
+        }
+        return sampled;
+    }
+
+    void addEvent(TracerEventMessage event) {
+        ring.add(event);
+    }
+
+    void clearEvents() {
+        ring.clear();
+    }
+
     long incrementTraceCounter() {
         return traceCounter.incrementAndGet();
     }
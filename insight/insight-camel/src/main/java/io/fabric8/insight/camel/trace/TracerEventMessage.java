@@ -27,15 +27,19 @@ public class TracerEventMessage implements Serializable {
     public static final String ROOT_TAG = "tracerEventMessage";
     public static final String TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     private final long uid;
-    private final Date timestamp;
+    private final long timestamp;
     private final String toNode;
     private final String exchangeId;
     private final String messageAsXml;
 
     public TracerEventMessage(long uid, Date timestamp, String toNode, String exchangeId, String messageAsXml) {
+        this(uid, timestamp.getTime(), toNode, exchangeId, messageAsXml);
+    }
+
+    public TracerEventMessage(long uid, long timestamp, String toNode, String exchangeId, String messageAsXml) {
         this.uid = uid;
         this.timestamp = timestamp;
         this.toNode = toNode;
@@ -48,7 +52,7 @@ public class TracerEventMessage implements Serializable {
     }
 
     public Date getTimestamp() {
-        return timestamp;
+        return new Date(timestamp);
     }
 
     public String getToNode() {
@@ -79,7 +83,7 @@ public class TracerEventMessage implements Serializable {
         StringBuilder sb = new StringBuilder();
         sb.append("<").append(ROOT_TAG).append(">\n");
         sb.append("<uid>").append(uid).append("</uid>\n");
-        String ts = new SimpleDateFormat(TIMESTAMP_FORMAT).format(timestamp);
+        String ts = new SimpleDateFormat(TIMESTAMP_FORMAT).format(new Date(timestamp));
         sb.append("<timestamp>").append(ts).append("</timestamp>\n");
         sb.append("<toNode>").append(toNode).append("</toNode>\n");
         sb.append("<exchangeId>").append(exchangeId).append("</exchangeId>\n");
@@ -28,6 +28,14 @@ public interface TracerMBean extends SwitchableContainerStrategyMBean {
 
     int getQueueSize();
 
+    void setSampleRate(int sampleRate);
+
+    int getSampleRate();
+
+    void setMaxChars(int maxChars);
+
+    int getMaxChars();
+
     long getTraceCounter();
 
     void resetTraceCounter();
@@ -18,6 +18,7 @@ package io.fabric8.insight.camel;
 import io.fabric8.insight.camel.profiler.Stats;
 import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
 import org.apache.camel.ProducerTemplate;
 import org.apache.camel.Property;
 import org.apache.camel.builder.RouteBuilder;
@@ -27,17 +28,29 @@ import org.apache.camel.impl.DefaultProducerTemplate;
 import org.apache.camel.model.ProcessorDefinition;
 import org.apache.camel.processor.aggregate.AggregationStrategy;
 import io.fabric8.insight.camel.breadcrumb.Breadcrumbs;
+import io.fabric8.insight.camel.profiler.ExchangeData;
 import io.fabric8.insight.camel.profiler.Profiler;
+import io.fabric8.insight.camel.trace.TraceRing;
+import io.fabric8.insight.camel.trace.Tracer;
+import io.fabric8.insight.camel.trace.TracerEventMessage;
 import org.junit.Test;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 /**
  * @version
  */
@@ -112,6 +125,13 @@ public class ContainerTest {
         System.out.println("Total time: " + TimeUnit.MILLISECONDS.convert(t1 - t0, TimeUnit.NANOSECONDS));
         print(profiler.getStatistics());
 
+        List<Map<String, Object>> stats = profiler.dumpAllStats();
+        assertFalse(stats.isEmpty());
+        for (Map<String, Object> s : stats) {
+            assertTrue((Long) s.get("p50") <= (Long) s.get("p99"));
+            assertTrue((Long) s.get("p99") <= (Long) s.get("max"));
+        }
+
         System.out.println();
 
         MBeanServer mbeanServer = context.getManagementStrategy().getManagementAgent().getMBeanServer();
@@ -203,5 +223,173 @@ public class ContainerTest {
         template.sendBody("direct:a", "Hello");
     }
 
+    @Test
+    public void testProfilerDataIsRemovedOnCompletion() throws Exception {
+        Profiler profiler = new Profiler();
+        profiler.setEnabled(true);
+
+        CamelContext context = new DefaultCamelContext();
+        profiler.manage(context);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:a").multicast().to("mock:b", "mock:c").end().to("mock:d");
+            }
+        });
+        context.start();
+
+        ProducerTemplate template = new DefaultProducerTemplate(context);
+        template.start();
+        Exchange exchange = template.send("direct:a", new Processor() {
+            @Override
+            public void process(Exchange exchange) throws Exception {
+                exchange.getIn().setBody("Hello");
+            }
+        });
+
+        // the profiling data is dropped once the exchange completes, the copies made by the multicast are profiled separately
+        assertNull(exchange.getProperty(ExchangeData.PROPERTY));
+        for (Map<String, Object> stats : profiler.dumpAllStats()) {
+            assertEquals(1L, stats.get("count"));
+        }
+
+        context.stop();
+    }
+
+    @Test
+    public void testTracerSampling() throws Exception {
+        Tracer tracer = new Tracer();
+        tracer.setQueueSize(100);
+        tracer.setSampleRate(2);
+        tracer.setMaxChars(10);
+
+        CamelContext context = new DefaultCamelContext();
+        tracer.manage(context);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:a").to("mock:b").to("mock:c");
+            }
+        });
+        context.start();
+        tracer.setEnabled(true);
+
+        ProducerTemplate template = new DefaultProducerTemplate(context);
+        template.start();
+        for (int i = 0; i < 10; i++) {
+            template.sendBody("direct:a", "A message body longer than the limit " + i);
+        }
+
+        List<TracerEventMessage> events = tracer.dumpAllTracedMessages();
+        HashSet<String> exchanges = new HashSet<String>();
+        for (TracerEventMessage event : events) {
+            exchanges.add(event.getExchangeId());
+            assertTrue(event.getMessageAsXml().contains("A message "));
+            assertFalse(event.getMessageAsXml().contains("longer"));
+        }
+        // one exchange out of two is traced, at the route and at both steps
+        assertEquals(5, exchanges.size());
+        assertEquals(15, events.size());
+        assertTrue(tracer.dumpAllTracedMessages().isEmpty());
+
+        context.stop();
+    }
+
+    @Test
+    public void testTracerRendersMessagesWhenTraced() throws Exception {
+        Tracer tracer = new Tracer();
+
+        CamelContext context = new DefaultCamelContext();
+        tracer.manage(context);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:a").to("mock:b").process(new Processor() {
+                    @Override
+                    public void process(Exchange exchange) throws Exception {
+                        exchange.getIn().getBody(StringBuilder.class).append(" changed");
+                        exchange.getIn().setHeader("step", "changed");
+                    }
+                }).id("change").to("mock:c");
+            }
+        });
+        context.start();
+        tracer.setEnabled(true);
+
+        ProducerTemplate template = new DefaultProducerTemplate(context);
+        template.start();
+        template.sendBodyAndHeader("direct:a", new StringBuilder("Hello"), "step", "original");
+
+        // the message traced before the change is not affected by it
+        List<TracerEventMessage> events = tracer.dumpTracedMessages("change");
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).getMessageAsXml().contains("original"));
+        assertFalse(events.get(0).getMessageAsXml().contains("changed"));
+
+        context.stop();
+    }
+
+    @Test
+    public void testTracerKeepsSettingsOnInvalidProperties() throws Exception {
+        Tracer tracer = new Tracer();
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("sampleRate", "4");
+        properties.put("maxChars", "100");
+        tracer.update(properties);
+
+        properties = new HashMap<String, String>();
+        properties.put("sampleRate", "four");
+        properties.put("maxChars", "-1");
+        tracer.update(properties);
+
+        assertEquals(4, tracer.getSampleRate());
+        assertEquals(100, tracer.getMaxChars());
+    }
+
+    @Test
+    public void testTraceRing() throws Exception {
+        TraceRing ring = new TraceRing(3);
+        for (int i = 0; i < 5; i++) {
+            ring.add(new TracerEventMessage(i, i, "node", "exchange-" + i, "<message/>"));
+        }
+        List<TracerEventMessage> events = ring.snapshot();
+        assertEquals(3, events.size());
+        assertEquals(2, events.get(0).getUid());
+        assertEquals(4, events.get(2).getUid());
+
+        assertEquals(3, ring.drain().size());
+        assertTrue(ring.snapshot().isEmpty());
+        ring.add(new TracerEventMessage(5, 5, "node", "exchange-5", "<message/>"));
+        assertEquals(1, ring.snapshot().size());
+        assertEquals(5, ring.snapshot().get(0).getUid());
+    }
+
+    @Test
+    public void testTracerQueueSizeKeepsEvents() throws Exception {
+        Tracer tracer = new Tracer();
+        tracer.setQueueSize(3);
+
+        CamelContext context = new DefaultCamelContext();
+        tracer.manage(context);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:a").to("mock:b");
+            }
+        });
+        context.start();
+        tracer.setEnabled(true);
+
+        ProducerTemplate template = new DefaultProducerTemplate(context);
+        template.start();
+        for (int i = 0; i < 3; i++) {
+            template.sendBody("direct:a", "Hello " + i);
+        }
+        tracer.setQueueSize(10);
+        assertEquals(10, tracer.getQueueSize());
+        // the route event and the mock:b event of the last exchange, and the mock:b event of the one before
+        assertEquals(3, tracer.dumpAllTracedMessages().size());
 
+        context.stop();
+    }
 }
@@ -17,8 +17,11 @@ package io.fabric8.insight.elasticsearch;
 
 import io.fabric8.insight.metrics.model.MetricsStorageService;
 import io.fabric8.insight.metrics.model.QueryResult;
+import io.fabric8.insight.metrics.model.rollup.Resolution;
 import io.fabric8.insight.metrics.mvel.MetricsStorageServiceImpl;
-import io.fabric8.insight.storage.StorageService;
+import io.fabric8.insight.metrics.mvel.RollupMetricsStorageService;
+import io.fabric8.insight.storage.BatchStorageService;
+import io.fabric8.insight.storage.StorageEvent;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.template.put.PutIndexTemplateRequest;
 import org.elasticsearch.action.admin.indices.template.put.PutIndexTemplateRequestBuilder;
@@ -32,12 +35,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
-public abstract class AbstractElasticsearchStorage implements StorageService, MetricsStorageService, Runnable {
+public abstract class AbstractElasticsearchStorage implements BatchStorageService, MetricsStorageService, Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractElasticsearchStorage.class);
 
@@ -51,7 +56,7 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
 
     private BlockingQueue<ActionRequest> queue = new LinkedBlockingQueue<ActionRequest>();
 
-    private MetricsStorageService metricsStorage = new MetricsStorageServiceImpl(this);
+    private final RollupMetricsStorageService metricsStorage = new RollupMetricsStorageService(new MetricsStorageServiceImpl(this), this);
 
     protected void putInsightTemplate() {
         IndicesAdminClient indicesAdminClient = getNode().client().admin().indices();
@@ -72,16 +77,62 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
 
     @Override
     public void store(String type, long timestamp, String jsonData) {
-        Date ts = new Date(timestamp);
-        Date utc = new Date(ts.getTime() + ts.getTimezoneOffset() * 60000);
         IndexRequest ir = new IndexRequest()
-                .index("insight-"+ indexFormat.format(utc))
+                .index(indexName(type, timestamp))
+                .type(type)
+                .source(jsonData)
+                .create(true);
+        queue.add(ir);
+    }
+
+    @Override
+    public void store(String type, long timestamp, byte[] jsonData) {
+        IndexRequest ir = new IndexRequest()
+                .index(indexName(type, timestamp))
                 .type(type)
                 .source(jsonData)
                 .create(true);
         queue.add(ir);
     }
 
+    @Override
+    public void store(List<StorageEvent> events) {
+        List<ActionRequest> requests = new ArrayList<ActionRequest>(events.size());
+        for (StorageEvent event : events) {
+            IndexRequest ir = new IndexRequest()
+                    .index(indexName(event.getType(), event.getTimestamp()))
+                    .type(event.getType())
+                    .create(true);
+            if (event.getBytes() != null) {
+                ir.source(event.getBytes());
+            } else {
+                ir.source(event.getJson());
+            }
+            requests.add(ir);
+        }
+        // queued together, so that they are sent in the same bulk request
+        queue.addAll(requests);
+    }
+
+    /**
+     * Returns the daily index of the given event. The rolled up metrics go to their own indices,
+     * one per resolution, so that they can be kept longer than the raw events. The coarser ones
+     * are monthly.
+     */
+    protected String indexName(String type, long timestamp) {
+        Date ts = new Date(timestamp);
+        Date utc = new Date(ts.getTime() + ts.getTimezoneOffset() * 60000);
+        String date;
+        synchronized (indexFormat) {
+            date = indexFormat.format(utc);
+        }
+        if (type.startsWith(RollupMetricsStorageService.TYPE_PREFIX)) {
+            Resolution resolution = Resolution.fromName(type.substring(RollupMetricsStorageService.TYPE_PREFIX.length()));
+            return "insight-" + type + "-" + (resolution.isMonthly() ? date.substring(0, 7) : date);
+        }
+        return "insight-" + date;
+    }
+
     public void run() {
         while (running) {
             try {
@@ -94,14 +145,7 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
                     nb++;
                     req = queue.poll();
                 }
-                if (bulk.numberOfActions() > 0) {
-                    BulkResponse rep = getNode().client().bulk(bulk).actionGet();
-                    for (BulkItemResponse bir : rep.getItems()) {
-                        if (bir.isFailed()) {
-                            LOGGER.warn("Error executing request: {}", bir.getFailureMessage());
-                        }
-                    }
-                }
+                send(bulk);
             } catch (Exception e) {
                 if (running) {
                     LOGGER.warn("Error while sending requests", e);
@@ -110,5 +154,35 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
         }
     }
 
+    /**
+     * Stores the rollup buckets still open and sends the pending requests, so that they are not lost
+     * when the storage is deactivated. To be called once the storage thread has been told to stop.
+     */
+    protected void flush() {
+        try {
+            metricsStorage.flush();
+            List<ActionRequest> pending = new ArrayList<ActionRequest>();
+            queue.drainTo(pending);
+            BulkRequest bulk = new BulkRequest();
+            for (ActionRequest req : pending) {
+                bulk.add(req);
+            }
+            send(bulk);
+        } catch (Exception e) {
+            LOGGER.warn("Error while sending the pending requests", e);
+        }
+    }
+
+    private void send(BulkRequest bulk) {
+        if (bulk.numberOfActions() > 0) {
+            BulkResponse rep = getNode().client().bulk(bulk).actionGet();
+            for (BulkItemResponse bir : rep.getItems()) {
+                if (bir.isFailed()) {
+                    LOGGER.warn("Error executing request: {}", bir.getFailureMessage());
+                }
+            }
+        }
+    }
+
     public abstract Node getNode();
 }
@@ -42,6 +42,7 @@ public class ElasticsearchLogStorage extends AbstractElasticsearchStorage {
         if (thread != null) {
             thread.interrupt();
         }
+        flush();
     }
 
     private void bindNode(Node node) {
@@ -38,6 +38,7 @@ public class ElasticsearchMetricsStorage extends AbstractElasticsearchStorage {
         if (thread != null) {
             thread.interrupt();
         }
+        flush();
     }
 
     @Reference(name = "node", referenceInterface = org.elasticsearch.node.Node.class, target = "(cluster.name=insight)")
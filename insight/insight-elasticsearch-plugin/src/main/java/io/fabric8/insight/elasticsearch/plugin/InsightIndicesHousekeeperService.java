@@ -33,6 +33,8 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.regex.Matcher;
@@ -54,6 +56,8 @@ public class InsightIndicesHousekeeperService extends AbstractLifecycleComponent
 
     private final int daysStored;
 
+    private final Map<String, Integer> rollupDaysStored = new LinkedHashMap<>();
+
     private final TimeValue interval;
 
     private ScheduledFuture<?> future;
@@ -70,6 +74,10 @@ public class InsightIndicesHousekeeperService extends AbstractLifecycleComponent
         daysOpened = this.settings.getAsInt("opened", 7);
         daysClosed = this.settings.getAsInt("closed", 14);
         daysStored = this.settings.getAsInt("stored", 0);
+        // the rolled up metrics are kept longer, the coarser they are
+        rollupDaysStored.put("1m", this.settings.getAsInt("rollup.1m.stored", 14));
+        rollupDaysStored.put("10m", this.settings.getAsInt("rollup.10m.stored", 90));
+        rollupDaysStored.put("1h", this.settings.getAsInt("rollup.1h.stored", 365));
 
         interval = TimeValue.parseTimeValue(settings.get("interval"), TimeValue.timeValueHours(1));
 
@@ -104,6 +112,8 @@ public class InsightIndicesHousekeeperService extends AbstractLifecycleComponent
 
         private final Pattern pattern = Pattern.compile(indicesPrefix + "-([0-9]{4})\\.([0-9]{2})\\.([0-9]{2})");
 
+        private final Pattern rollupPattern = Pattern.compile(indicesPrefix + "-rollup-([0-9]+[mh])-([0-9]{4})\\.([0-9]{2})(?:\\.([0-9]{2}))?$");
+
         @Override
         public void run() {
             boolean reschedule = true;
@@ -143,25 +153,45 @@ public class InsightIndicesHousekeeperService extends AbstractLifecycleComponent
                         } else {
                             logger.debug("Ignoring index: Index {} is only {} day(s) old", index, daysOld);
                         }
+                    } else if ((matcher = rollupPattern.matcher(index)).find()) {
+                        Integer stored = rollupDaysStored.get(matcher.group(1));
+                        LocalDate date;
+                        if (matcher.group(4) != null) {
+                            date = new LocalDate(Integer.parseInt(matcher.group(2)),
+                                    Integer.parseInt(matcher.group(3)),
+                                    Integer.parseInt(matcher.group(4)));
+                        } else {
+                            // a monthly index is as old as its last day
+                            date = new LocalDate(Integer.parseInt(matcher.group(2)),
+                                    Integer.parseInt(matcher.group(3)), 1).plusMonths(1).minusDays(1);
+                        }
+
+                        int daysOld = Days.daysBetween(date, now).getDays();
+                        if (stored != null && stored > 0 && daysOld > stored) {
+                            logger.debug("Adding rollup index to delete: Index {} is {} day(s) old", index, daysOld);
+                            toDelete.add(index);
+                        } else {
+                            logger.debug("Ignoring rollup index: Index {} is only {} day(s) old", index, daysOld);
+                        }
                     } else {
                         logger.debug("Ignoring index: Name {} does not match the supported pattern ({})", index, pattern.pattern());
                     }
+                }
 
-                    IndicesAdminClient indicesAdminClient = adminClient.indices();
+                IndicesAdminClient indicesAdminClient = adminClient.indices();
 
-                    if (!toClose.isEmpty()) {
-                        logger.info("Closing indices: {}", toClose);
-                        String[] indices = toClose.toArray(new String[toClose.size()]);
-                        CloseIndexRequest req = indicesAdminClient.prepareClose(indices).request();
-                        indicesAdminClient.close(req).actionGet();
-                    }
+                if (!toClose.isEmpty()) {
+                    logger.info("Closing indices: {}", toClose);
+                    String[] indices = toClose.toArray(new String[toClose.size()]);
+                    CloseIndexRequest req = indicesAdminClient.prepareClose(indices).request();
+                    indicesAdminClient.close(req).actionGet();
+                }
 
-                    if (!toDelete.isEmpty()) {
-                        logger.info("Deleting indices: {}", toDelete);
-                        String[] indices = toDelete.toArray(new String[toDelete.size()]);
-                        DeleteIndexRequest req = indicesAdminClient.prepareDelete(indices).request();
-                        indicesAdminClient.delete(req).actionGet();
-                    }
+                if (!toDelete.isEmpty()) {
+                    logger.info("Deleting indices: {}", toDelete);
+                    String[] indices = toDelete.toArray(new String[toDelete.size()]);
+                    DeleteIndexRequest req = indicesAdminClient.prepareDelete(indices).request();
+                    indicesAdminClient.delete(req).actionGet();
                 }
 
 
@@ -28,12 +28,14 @@ public class LogFilter {
     private String matchesText;
     private Long beforeTimestamp;
     private Long afterTimestamp;
+    private Long afterSeq;
 
     @Override
     public String toString() {
         return "LogFilter{" +
                 "count=" + count +
                 ", afterTimestamp=" + afterTimestamp +
+                ", afterSeq=" + afterSeq +
                 ", matchesText='" + matchesText + '\'' +
                 '}';
     }
@@ -88,4 +90,12 @@ public class LogFilter {
     public void setBeforeTimestamp(Long beforeTimestamp) {
         this.beforeTimestamp = beforeTimestamp;
     }
+
+    public Long getAfterSeq() {
+        return afterSeq;
+    }
+
+    public void setAfterSeq(Long afterSeq) {
+        this.afterSeq = afterSeq;
+    }
 }
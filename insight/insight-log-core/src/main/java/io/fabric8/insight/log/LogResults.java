@@ -25,6 +25,7 @@ public class LogResults {
     private List<LogEvent> events;
     private Long fromTimestamp;
     private Long toTimestamp;
+    private Long toSeq;
     private String host;
 
     public void addEvent(LogEvent event) {
@@ -58,6 +59,18 @@ public class LogResults {
         this.toTimestamp = toTimestamp;
     }
 
+    /**
+     * Returns the sequence number of the newest event when the query was performed, which can be
+     * used as the <code>afterSeq</code> of a {@link LogFilter} to only retrieve newer events
+     */
+    public Long getToSeq() {
+        return toSeq;
+    }
+
+    public void setToSeq(Long toSeq) {
+        this.toSeq = toSeq;
+    }
+
     public String getHost() {
         return host;
     }
@@ -0,0 +1,432 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.support;
+
+import io.fabric8.insight.log.LogEvent;
+import io.fabric8.insight.log.LogFilter;
+import io.fabric8.insight.log.LogResults;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size ring of log events indexed by level and timestamp.
+ * <p/>
+ * Each event is stored along with a compact record of the fields used for filtering, so that
+ * queries are answered newest-first and only the matching events are converted to a {@link LogEvent}.
+ * Every event is given an increasing sequence number which can be used as a cursor to only
+ * retrieve the events added since a previous query.
+ * <p/>
+ * Writers never block: a sequence number is claimed with a compare-and-set on an immutable
+ * {@link Sequence}, which also carries the per-level and timestamp indexes so that they stay
+ * ordered by sequence number. Readers only see the events up to the published cursor, which the
+ * writers advance over the events whose writers have completed.
+ */
+public class LogEventStore<T> {
+
+    /**
+     * Converts a stored element to a {@link LogEvent}
+     */
+    public interface Converter<T> {
+        LogEvent toLogEvent(T element);
+    }
+
+    private static final String[] LEVELS = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+    private static final int OTHER_LEVEL = LEVELS.length;
+    private static final int MAX_INTERNED = 4096;
+
+    private final int capacity;
+    private final AtomicReferenceArray<Record<T>> records;
+    private final AtomicReference<Sequence> sequence = new AtomicReference<Sequence>(Sequence.INITIAL);
+    // the highest sequence number such that the writers of all the events up to it have completed
+    private final AtomicLong published = new AtomicLong(-1);
+    private final ConcurrentMap<String, String> interned = new ConcurrentHashMap<String, String>();
+
+    public LogEventStore(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The size must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.records = new AtomicReferenceArray<Record<T>>(capacity);
+    }
+
+    /**
+     * Adds an event to the store, evicting the oldest one if the store is full.
+     *
+     * @return the sequence number of the event
+     */
+    public long add(T element, String level, long timestamp, String logger, String thread) {
+        if (null == element) {
+            throw new NullPointerException("Attempted to add null object to buffer");
+        }
+        int levelIndex = levelIndex(level);
+        Sequence current;
+        Sequence next;
+        do {
+            current = sequence.get();
+            next = current.next(levelIndex, timestamp);
+        } while (!sequence.compareAndSet(current, next));
+        Record<T> record = new Record<T>(next.seq, element, intern(level), levelIndex, timestamp, next.maxTimestamp,
+                intern(logger), intern(thread), current.lastSeq(levelIndex));
+        records.set(index(next.seq), record);
+        publish();
+        return next.seq;
+    }
+
+    /**
+     * Advances the published cursor over the completed events. A writer completing out of order
+     * leaves it to the writer of the previous event, which advances the cursor over both.
+     */
+    private void publish() {
+        long current = published.get();
+        while (!isInFlight(current + 1)) {
+            if (published.compareAndSet(current, current + 1)) {
+                current++;
+            } else {
+                current = published.get();
+            }
+        }
+    }
+
+    public int size() {
+        return (int) Math.min(sequence.get().seq + 1, capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the sequence number of the newest event, or -1 if the store is empty
+     */
+    public long getHeadSeq() {
+        return sequence.get().seq;
+    }
+
+    /**
+     * Returns the newest events matching the filter, in chronological order.
+     *
+     * @param filter    the filter on levels, timestamps and sequence numbers or null
+     * @param maxCount  the maximum number of events to return or <= 0 for all of them
+     * @param predicate an additional predicate applied to the converted events or null
+     * @param converter converts the matching elements to log events
+     */
+    public LogResults query(LogFilter filter, int maxCount, Predicate<LogEvent> predicate, Converter<T> converter) {
+        Sequence snapshot = sequence.get();
+        long first = Math.max(0, snapshot.seq - capacity + 1);
+        long last = Math.min(published.get(), snapshot.seq);
+        Long before = null;
+        Long after = null;
+        Set<String> levels = Collections.emptySet();
+        if (filter != null) {
+            before = filter.getBeforeTimestamp();
+            after = filter.getAfterTimestamp();
+            levels = filter.getLevelsSet();
+            if (filter.getAfterSeq() != null) {
+                first = Math.max(first, filter.getAfterSeq() + 1);
+            }
+        }
+        if (after != null) {
+            first = firstAfter(first, last, after);
+        }
+
+        List<LogEvent> list = new ArrayList<LogEvent>();
+        Cursor<T> cursor = levels.isEmpty() ? new SeqCursor(last) : new LevelCursor(levels, snapshot, last);
+        for (Record<T> record = cursor.next(); record != null && record.seq >= first; record = cursor.next()) {
+            if (!levels.isEmpty() && !levels.contains(record.level)) {
+                continue;
+            }
+            if (before != null && record.timestamp >= before) {
+                continue;
+            }
+            if (after != null && record.timestamp <= after) {
+                continue;
+            }
+            LogEvent event = converter.toLogEvent(record.element);
+            if (event != null && (predicate == null || predicate.matches(event))) {
+                list.add(event);
+                if (maxCount > 0 && list.size() >= maxCount) {
+                    break;
+                }
+            }
+        }
+        Collections.reverse(list);
+
+        LogResults results = new LogResults();
+        results.setEvents(list);
+        results.setToSeq(last);
+        Record<T> oldest = get(Math.max(0, last - capacity + 1));
+        Record<T> newest = get(last);
+        if (oldest != null) {
+            results.setFromTimestamp(oldest.timestamp);
+        }
+        if (newest != null) {
+            results.setToTimestamp(newest.maxTimestamp);
+        }
+        return results;
+    }
+
+    /**
+     * Returns true if the given sequence number has not been claimed yet, or has been claimed but its record is not stored yet
+     */
+    private boolean isInFlight(long seq) {
+        Record<T> record = records.get(index(seq));
+        return record == null || record.seq < seq;
+    }
+
+    /**
+     * Returns the lowest sequence number in the given range which may hold an event
+     * newer than the given timestamp, using the running maximum of the timestamps
+     */
+    private long firstAfter(long low, long high, long timestamp) {
+        long result = high + 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            Record<T> record = get(mid);
+            if (record == null || record.maxTimestamp <= timestamp) {
+                low = mid + 1;
+            } else {
+                result = mid;
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the record with the given sequence number, or null if it has been evicted
+     */
+    private Record<T> get(long seq) {
+        if (seq < 0) {
+            return null;
+        }
+        Record<T> record = records.get(index(seq));
+        return record != null && record.seq == seq ? record : null;
+    }
+
+    private int index(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    private static int levelIndex(String level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equals(level)) {
+                return i;
+            }
+        }
+        return OTHER_LEVEL;
+    }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String answer = interned.get(value);
+        if (answer == null) {
+            if (interned.size() >= MAX_INTERNED) {
+                interned.clear();
+            }
+            answer = interned.putIfAbsent(value, value);
+            if (answer == null) {
+                answer = value;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * The last claimed sequence number along with the indexes which must be
+     * updated in the same order as the sequence numbers. The last sequence number
+     * of each level is kept in its own field, so that claiming a sequence number
+     * allocates nothing but the new instance.
+     */
+    private static final class Sequence {
+        static final Sequence INITIAL = new Sequence(-1, Long.MIN_VALUE, -1, -1, -1, -1, -1, -1, -1);
+
+        final long seq;
+        final long maxTimestamp;
+        private final long lastTrace;
+        private final long lastDebug;
+        private final long lastInfo;
+        private final long lastWarn;
+        private final long lastError;
+        private final long lastFatal;
+        private final long lastOther;
+
+        Sequence(long seq, long maxTimestamp, long lastTrace, long lastDebug, long lastInfo, long lastWarn,
+                 long lastError, long lastFatal, long lastOther) {
+            this.seq = seq;
+            this.maxTimestamp = maxTimestamp;
+            this.lastTrace = lastTrace;
+            this.lastDebug = lastDebug;
+            this.lastInfo = lastInfo;
+            this.lastWarn = lastWarn;
+            this.lastError = lastError;
+            this.lastFatal = lastFatal;
+            this.lastOther = lastOther;
+        }
+
+        Sequence next(int levelIndex, long timestamp) {
+            long next = seq + 1;
+            return new Sequence(next, Math.max(maxTimestamp, timestamp),
+                    levelIndex == 0 ? next : lastTrace,
+                    levelIndex == 1 ? next : lastDebug,
+                    levelIndex == 2 ? next : lastInfo,
+                    levelIndex == 3 ? next : lastWarn,
+                    levelIndex == 4 ? next : lastError,
+                    levelIndex == 5 ? next : lastFatal,
+                    levelIndex == OTHER_LEVEL ? next : lastOther);
+        }
+
+        /**
+         * Returns the sequence number of the last event of the level, or -1 if there is none
+         */
+        long lastSeq(int levelIndex) {
+            switch (levelIndex) {
+            case 0:
+                return lastTrace;
+            case 1:
+                return lastDebug;
+            case 2:
+                return lastInfo;
+            case 3:
+                return lastWarn;
+            case 4:
+                return lastError;
+            case 5:
+                return lastFatal;
+            default:
+                return lastOther;
+            }
+        }
+    }
+
+    private static final class Record<T> {
+        final long seq;
+        final T element;
+        final String level;
+        final int levelIndex;
+        final long timestamp;
+        final long maxTimestamp;
+        final String logger;
+        final String thread;
+        final long previousSeqSameLevel;
+
+        Record(long seq, T element, String level, int levelIndex, long timestamp, long maxTimestamp,
+               String logger, String thread, long previousSeqSameLevel) {
+            this.seq = seq;
+            this.element = element;
+            this.level = level;
+            this.levelIndex = levelIndex;
+            this.timestamp = timestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.logger = logger;
+            this.thread = thread;
+            this.previousSeqSameLevel = previousSeqSameLevel;
+        }
+    }
+
+    /**
+     * Iterates over the records newest-first, returning null once the oldest
+     * retained record has been reached
+     */
+    private interface Cursor<T> {
+        Record<T> next();
+    }
+
+    /**
+     * Visits every record
+     */
+    private class SeqCursor implements Cursor<T> {
+        private long seq;
+
+        SeqCursor(long last) {
+            this.seq = last;
+        }
+
+        @Override
+        public Record<T> next() {
+            Record<T> record = seq >= 0 ? get(seq--) : null;
+            if (record == null) {
+                seq = -1;
+            }
+            return record;
+        }
+    }
+
+    /**
+     * Merges the per-level chains of the requested levels
+     */
+    private class LevelCursor implements Cursor<T> {
+        private final Record<T>[] heads;
+
+        @SuppressWarnings("unchecked")
+        LevelCursor(Set<String> levels, Sequence snapshot, long last) {
+            boolean other = false;
+            List<Integer> indexes = new ArrayList<Integer>();
+            for (String level : levels) {
+                int index = levelIndex(level);
+                if (index != OTHER_LEVEL) {
+                    indexes.add(index);
+                } else {
+                    other = true;
+                }
+            }
+            if (other) {
+                indexes.add(OTHER_LEVEL);
+            }
+            heads = new Record[indexes.size()];
+            for (int i = 0; i < heads.length; i++) {
+                int levelIndex = indexes.get(i);
+                long seq = snapshot.lastSeq(levelIndex);
+                // skip the events of the level which are newer than the last completed one,
+                // scanning the records when one of them is still being written
+                while (seq > last) {
+                    Record<T> record = get(seq);
+                    if (record != null && record.levelIndex == levelIndex) {
+                        seq = record.previousSeqSameLevel;
+                    } else {
+                        seq--;
+                    }
+                }
+                heads[i] = get(seq);
+            }
+        }
+
+        @Override
+        public Record<T> next() {
+            int newest = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && (newest < 0 || heads[i].seq > heads[newest].seq)) {
+                    newest = i;
+                }
+            }
+            if (newest < 0) {
+                return null;
+            }
+            Record<T> record = heads[newest];
+            heads[newest] = get(record.previousSeqSameLevel);
+            return record;
+        }
+    }
+}
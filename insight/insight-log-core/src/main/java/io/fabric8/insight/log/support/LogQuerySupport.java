@@ -113,6 +113,13 @@ public abstract class LogQuerySupport implements LogQuerySupportMBean {
         return queryLogResults(filter);
     }
 
+    @Override
+    public LogResults logResultsSinceSeq(long seq) throws IOException {
+        LogFilter filter = new LogFilter();
+        filter.setAfterSeq(seq);
+        return queryLogResults(filter);
+    }
+
     public String getLogEvents(int maxCount) throws IOException {
         LogResults results = getLogResults(maxCount);
         return toJSON(results);
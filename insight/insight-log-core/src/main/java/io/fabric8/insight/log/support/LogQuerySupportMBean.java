@@ -39,6 +39,14 @@ public interface LogQuerySupportMBean {
      */
     public LogResults logResultsSince(long time) throws IOException;
 
+    /**
+     * Returns all the available log events added after the given sequence number, as returned by
+     * {@link io.fabric8.insight.log.LogResults#getToSeq()} of a previous query, so that the log can be tailed incrementally
+     *
+     * @return the log events as a serialized object
+     */
+    public LogResults logResultsSinceSeq(long seq) throws IOException;
+
     /**
      * Returns the recent log events as a {@link LogResults} object which is then serialized
      *
@@ -0,0 +1,162 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.support;
+
+import io.fabric8.insight.log.LogEvent;
+import io.fabric8.insight.log.LogFilter;
+import io.fabric8.insight.log.LogResults;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogEventStoreTest {
+
+    private final List<LogEvent> converted = new ArrayList<LogEvent>();
+
+    private final LogEventStore.Converter<LogEvent> converter = new LogEventStore.Converter<LogEvent>() {
+        @Override
+        public LogEvent toLogEvent(LogEvent element) {
+            converted.add(element);
+            return element;
+        }
+    };
+
+    @Test
+    public void testNewestMatchesAreReturned() throws Exception {
+        LogEventStore<LogEvent> store = new LogEventStore<LogEvent>(10);
+        for (int i = 0; i < 25; i++) {
+            add(store, i % 5 == 0 ? "ERROR" : "INFO", i);
+        }
+        assertEquals(10, store.size());
+
+        LogFilter filter = new LogFilter();
+        filter.setLevels(new String[]{"ERROR"});
+        LogResults results = store.query(filter, 1, null, converter);
+        assertEquals(Arrays.asList("m20"), messages(results));
+        // Only the matching event should have been converted
+        assertEquals(1, converted.size());
+
+        results = store.query(filter, -1, null, converter);
+        assertEquals(Arrays.asList("m15", "m20"), messages(results));
+        assertEquals(15L, (long) results.getFromTimestamp());
+        assertEquals(24L, (long) results.getToTimestamp());
+        assertEquals(24L, (long) results.getToSeq());
+    }
+
+    @Test
+    public void testTimestampFilters() throws Exception {
+        LogEventStore<LogEvent> store = new LogEventStore<LogEvent>(100);
+        for (int i = 0; i < 50; i++) {
+            add(store, "INFO", i * 10);
+        }
+        LogFilter filter = new LogFilter();
+        filter.setAfterTimestamp(450L);
+        filter.setBeforeTimestamp(480L);
+        assertEquals(Arrays.asList("m460", "m470"), messages(store.query(filter, -1, null, converter)));
+        assertEquals(2, converted.size());
+    }
+
+    @Test
+    public void testSinceSeq() throws Exception {
+        LogEventStore<LogEvent> store = new LogEventStore<LogEvent>(100);
+        add(store, "INFO", 1);
+        add(store, "WARN", 2);
+        LogResults results = store.query(null, -1, null, converter);
+        assertEquals(Arrays.asList("m1", "m2"), messages(results));
+
+        add(store, "INFO", 3);
+        LogFilter filter = new LogFilter();
+        filter.setAfterSeq(results.getToSeq());
+        results = store.query(filter, -1, null, converter);
+        assertEquals(Arrays.asList("m3"), messages(results));
+
+        filter.setAfterSeq(results.getToSeq());
+        assertEquals(0, store.query(filter, -1, null, converter).getEvents().size());
+    }
+
+    @Test
+    public void testConcurrentWritersAndTailingReader() throws Exception {
+        final LogEventStore<LogEvent> store = new LogEventStore<LogEvent>(100000);
+        final int threads = 4;
+        final int count = 5000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        add(store, i % 2 == 0 ? "ERROR" : "INFO", thread * count + i);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        // tail the store while it is being written
+        Set<String> tailed = new HashSet<String>();
+        LogFilter filter = new LogFilter();
+        filter.setAfterSeq(-1L);
+        boolean finished = false;
+        while (!finished) {
+            finished = done.await(1, TimeUnit.MILLISECONDS);
+            LogResults results = store.query(filter, -1, null, converter);
+            for (String message : messages(results)) {
+                assertTrue("Duplicate event " + message, tailed.add(message));
+            }
+            filter.setAfterSeq(results.getToSeq());
+        }
+        executor.shutdown();
+        LogResults results = store.query(filter, -1, null, converter);
+        tailed.addAll(messages(results));
+        assertEquals(threads * count, tailed.size());
+
+        filter = new LogFilter();
+        filter.setLevels(new String[]{"ERROR"});
+        assertEquals(threads * count / 2, store.query(filter, -1, null, converter).getEvents().size());
+    }
+
+    private static void add(LogEventStore<LogEvent> store, String level, long timestamp) {
+        LogEvent event = new LogEvent();
+        event.setLevel(level);
+        event.setTimestamp(new Date(timestamp));
+        event.setMessage("m" + timestamp);
+        event.setLogger("test");
+        event.setThread("main");
+        store.add(event, level, timestamp, event.getLogger(), event.getThread());
+    }
+
+    private static List<String> messages(LogResults results) {
+        List<String> answer = new ArrayList<String>();
+        for (LogEvent event : results.getEvents()) {
+            answer.add(event.getMessage());
+        }
+        return answer;
+    }
+}
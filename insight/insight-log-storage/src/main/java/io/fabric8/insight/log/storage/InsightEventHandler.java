@@ -15,6 +15,7 @@
  */
 package io.fabric8.insight.log.storage;
 
+import io.fabric8.insight.storage.StorageQueue;
 import io.fabric8.insight.storage.StorageService;
 import org.apache.felix.scr.annotations.*;
 import org.osgi.service.event.Event;
@@ -41,17 +42,30 @@ public class InsightEventHandler implements EventHandler {
 
     private String name;
 
-    private String type = "events";
+    private volatile String type = "events";
 
     @Reference
     private StorageService storageService;
 
+    private final StorageQueue<ReceivedEvent> queue = new StorageQueue<ReceivedEvent>("InsightEventHandler") {
+        @Override
+        protected void process(ReceivedEvent event) throws Exception {
+            store(event, JsonBuffer.get());
+        }
+    };
+
     @Activate
     public void activate(Map<String, ?> configuration) {
         name = System.getProperty("runtime.id");
         if (configuration.containsKey(LOG_TYPE)) {
             type = (String) configuration.get(LOG_TYPE);
         }
+        queue.start();
+    }
+
+    @Deactivate
+    public void deactivate() {
+        queue.stop();
     }
 
     @Modified
@@ -64,57 +78,72 @@ public class InsightEventHandler implements EventHandler {
     }
 
     public void handleEvent(final Event event) {
-        try {
-            StringBuilder writer = new StringBuilder();
-            writer.append("{ \"host\": ");
+        if (type != null && storageService != null) {
+            queue.offer(new ReceivedEvent(event, System.currentTimeMillis()));
+        }
+    }
+
+    protected void store(ReceivedEvent received, JsonBuffer buffer) throws Exception {
+        Event event = received.event;
+        StringBuilder writer = buffer.getBuilder();
+        writer.append("{ \"host\": ");
+        quote(name, writer);
+        writer.append(", \"topic\": ");
+        quote(event.getTopic(), writer);
+        writer.append(", \"properties\": { ");
+        boolean first = true;
+
+        long timestamp = 0;
+
+        for (String name : event.getPropertyNames()) {
+            if (first) {
+                first = false;
+            } else {
+                writer.append(", ");
+            }
             quote(name, writer);
-            writer.append(", \"topic\": ");
-            quote(event.getTopic(), writer);
-            writer.append(", \"properties\": { ");
-            boolean first = true;
-
-            long timestamp = 0;
-
-            for (String name : event.getPropertyNames()) {
-                if (first) {
-                    first = false;
-                } else {
-                    writer.append(", ");
-                }
-                quote(name, writer);
-                writer.append(": ");
-                Object value = event.getProperty(name);
-                if (value == null) {
-                    writer.append("null");
-                } else if (EventConstants.TIMESTAMP.equals(name) && value instanceof Long) {
-                    timestamp = (Long) value;
-                    quote(formatDate(timestamp), writer);
-                } else if (value.getClass().isArray()) {
-                    writer.append(" [ ");
-                    boolean vfirst = true;
-                    for (Object v : ((Object[]) value)) {
-                        if (!vfirst) {
-                            writer.append(", ");
-                        } else {
-                            vfirst = false;
-                        }
-                        quote(v.toString(), writer);
+            writer.append(": ");
+            Object value = event.getProperty(name);
+            if (value == null) {
+                writer.append("null");
+            } else if (EventConstants.TIMESTAMP.equals(name) && value instanceof Long) {
+                timestamp = (Long) value;
+                quote(formatDate(timestamp), writer);
+            } else if (value.getClass().isArray()) {
+                writer.append(" [ ");
+                boolean vfirst = true;
+                for (Object v : ((Object[]) value)) {
+                    if (!vfirst) {
+                        writer.append(", ");
+                    } else {
+                        vfirst = false;
                     }
-                    writer.append(" ] ");
-                } else {
-                    quote(value.toString(), writer);
+                    quote(v.toString(), writer);
                 }
+                writer.append(" ] ");
+            } else {
+                quote(value.toString(), writer);
             }
-            writer.append(" } }");
+        }
+        writer.append(" } }");
 
-            if (timestamp == 0) {
-                timestamp = System.currentTimeMillis();
-            }
-            if (type != null && storageService != null) {
-                storageService.store(type, timestamp, writer.toString());
-            }
-        } catch (Exception e) {
-            LOGGER.warn("Error appending log to elastic search", e);
+        if (timestamp == 0) {
+            timestamp = received.timestamp;
+        }
+        String type = this.type;
+        StorageService storageService = this.storageService;
+        if (type != null && storageService != null) {
+            storageService.store(type, timestamp, buffer.toBytes());
+        }
+    }
+
+    static class ReceivedEvent {
+        final Event event;
+        final long timestamp;
+
+        ReceivedEvent(Event event, long timestamp) {
+            this.event = event;
+            this.timestamp = timestamp;
         }
     }
 
@@ -19,6 +19,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import io.fabric8.insight.storage.StorageQueue;
 import io.fabric8.insight.storage.StorageService;
 import org.apache.felix.scr.annotations.*;
 import org.ops4j.pax.logging.spi.PaxAppender;
@@ -43,17 +44,30 @@ public class InsightLogAppender implements PaxAppender {
 
     private String name;
 
-    private String type = "log";
+    private volatile String type = "log";
 
     @Reference
     private StorageService storageService;
 
+    private final StorageQueue<PaxLoggingEvent> queue = new StorageQueue<PaxLoggingEvent>("InsightLogAppender") {
+        @Override
+        protected void process(PaxLoggingEvent event) throws Exception {
+            store(event, JsonBuffer.get());
+        }
+    };
+
     @Activate
     public void activate(Map<String, ?> configuration) {
         name = System.getProperty("runtime.id");
         if (configuration.containsKey(LOG_TYPE)) {
             type = (String) configuration.get(LOG_TYPE);
         }
+        queue.start();
+    }
+
+    @Deactivate
+    public void deactivate() {
+        queue.stop();
     }
 
     @Modified
@@ -72,63 +86,75 @@ public class InsightLogAppender implements PaxAppender {
                     !paxLoggingEvent.getProperties().containsKey("trace-id")) {
                 return;
             }
-            StringBuilder writer = new StringBuilder();
-            writer.append("{ \"host\" : ");
-            quote(name, writer);
-            writer.append(",\n  \"@timestamp\" : ");
-            quote(formatDate(paxLoggingEvent.getTimeStamp()), writer);
-            writer.append(",\n  \"level\" : ");
-            quote(paxLoggingEvent.getLevel().toString(), writer);
-            writer.append(",\n  \"logger\" : ");
-            quote(paxLoggingEvent.getLoggerName(), writer);
-            writer.append(",\n  \"thread\" : ");
-            quote(paxLoggingEvent.getThreadName(), writer);
-            writer.append(",\n  \"message\" : ");
-            quote(paxLoggingEvent.getMessage(), writer);
-
-            String[] throwable = paxLoggingEvent.getThrowableStrRep();
-            if (throwable != null) {
-                throwable = addMavenCoord(throwable);
-                writer.append(",\n  \"exception\" : [");
-                for (int i = 0; i < throwable.length; i++) {
-                    if (i != 0)
-                        writer.append(", ");
-                    quote(throwable[i], writer);
-                }
-                writer.append("]");
+            if (type != null && storageService != null) {
+                // The thread name, MDC properties and message are captured lazily
+                // from the calling thread, so make sure they are before handing over
+                paxLoggingEvent.getThreadName();
+                paxLoggingEvent.getProperties();
+                paxLoggingEvent.getMessage();
+                queue.offer(paxLoggingEvent);
             }
+        } catch (Exception e) {
+            LOGGER.warn("Error appending log to storage", e);
+        }
+    }
 
-            writer.append(",\n  \"properties\" : { ");
-            boolean first = true;
-            Map<String, String> properties = new HashMap<String, String>();
-            Set<Map.Entry> set = paxLoggingEvent.getProperties().entrySet();
-            for (Map.Entry entry : set) {
-                Object key = entry.getKey();
-                Object value = entry.getValue();
-                if (key != null && value != null) {
-                    properties.put(key.toString(), value.toString());
-                }
+    protected void store(PaxLoggingEvent paxLoggingEvent, JsonBuffer buffer) throws Exception {
+        StringBuilder writer = buffer.getBuilder();
+        writer.append("{ \"host\" : ");
+        quote(name, writer);
+        writer.append(",\n  \"@timestamp\" : ");
+        quote(formatDate(paxLoggingEvent.getTimeStamp()), writer);
+        writer.append(",\n  \"level\" : ");
+        quote(paxLoggingEvent.getLevel().toString(), writer);
+        writer.append(",\n  \"logger\" : ");
+        quote(paxLoggingEvent.getLoggerName(), writer);
+        writer.append(",\n  \"thread\" : ");
+        quote(paxLoggingEvent.getThreadName(), writer);
+        writer.append(",\n  \"message\" : ");
+        quote(paxLoggingEvent.getMessage(), writer);
+
+        String[] throwable = paxLoggingEvent.getThrowableStrRep();
+        if (throwable != null) {
+            throwable = addMavenCoord(throwable);
+            writer.append(",\n  \"exception\" : [");
+            for (int i = 0; i < throwable.length; i++) {
+                if (i != 0)
+                    writer.append(", ");
+                quote(throwable[i], writer);
             }
-            addMavenCoord(properties);
+            writer.append("]");
+        }
 
-            for (Object key : properties.keySet()) {
-                if (first) {
-                    first = false;
-                } else {
-                    writer.append(", ");
-                }
-                quote(key.toString(), writer);
-                writer.append(": ");
-                quote(properties.get(key).toString(), writer);
+        writer.append(",\n  \"properties\" : { ");
+        boolean first = true;
+        Map<String, String> properties = new HashMap<String, String>();
+        Set<Map.Entry> set = paxLoggingEvent.getProperties().entrySet();
+        for (Map.Entry entry : set) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            if (key != null && value != null) {
+                properties.put(key.toString(), value.toString());
             }
-            writer.append(" }");
-            writer.append("\n}");
+        }
+        addMavenCoord(properties);
 
-            if (type != null && storageService != null) {
-                storageService.store(type, paxLoggingEvent.getTimeStamp(), writer.toString());
+        for (Object key : properties.keySet()) {
+            if (first) {
+                first = false;
+            } else {
+                writer.append(", ");
             }
-        } catch (Exception e) {
-            LOGGER.warn("Error appending log to storage", e);
+            quote(key.toString(), writer);
+            writer.append(": ");
+            quote(properties.get(key).toString(), writer);
+        }
+        writer.append(" }");
+        writer.append("\n}");
+
+        String type = this.type;
+        if (type != null && storageService != null) {
+            storageService.store(type, paxLoggingEvent.getTimeStamp(), buffer.toBytes());
         }
     }
 
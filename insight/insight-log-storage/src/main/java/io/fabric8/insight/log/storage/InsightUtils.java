@@ -20,10 +20,35 @@ import java.util.Date;
 
 public class InsightUtils {
 
-    private static final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+    /**
+     * SimpleDateFormat is not thread safe, so each thread gets its own formatter, which also
+     * remembers the last formatted timestamp as many events share the same millisecond.
+     */
+    private static final ThreadLocal<DateCache> dateCache = new ThreadLocal<DateCache>() {
+        @Override
+        protected DateCache initialValue() {
+            return new DateCache();
+        }
+    };
 
     public static String formatDate(long timestamp) {
-        return simpleDateFormat.format(new Date(timestamp));
+        return dateCache.get().format(timestamp);
+    }
+
+    private static class DateCache {
+        private final SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+        private final Date date = new Date();
+        private long lastTimestamp;
+        private String lastFormatted;
+
+        String format(long timestamp) {
+            if (lastFormatted == null || timestamp != lastTimestamp) {
+                date.setTime(timestamp);
+                lastFormatted = simpleDateFormat.format(date);
+                lastTimestamp = timestamp;
+            }
+            return lastFormatted;
+        }
     }
 
     /**
@@ -0,0 +1,101 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A reusable buffer used to build a JSON document and encode it to UTF-8
+ * without allocating intermediate strings.
+ * <p/>
+ * A buffer is not thread safe, use {@link #get()} to obtain the buffer of the current thread.
+ */
+public class JsonBuffer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_RETAINED = 64 * 1024;
+
+    private static final ThreadLocal<JsonBuffer> BUFFERS = new ThreadLocal<JsonBuffer>() {
+        @Override
+        protected JsonBuffer initialValue() {
+            return new JsonBuffer();
+        }
+    };
+
+    private final CharsetEncoder encoder = UTF8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private StringBuilder builder = new StringBuilder(1024);
+    private ByteBuffer bytes = ByteBuffer.allocate(1024);
+
+    /**
+     * Returns the buffer of the current thread, emptied
+     */
+    public static JsonBuffer get() {
+        JsonBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    public StringBuilder getBuilder() {
+        return builder;
+    }
+
+    /**
+     * Returns the UTF-8 encoding of the document built so far
+     */
+    public byte[] toBytes() throws CharacterCodingException {
+        CharBuffer chars = CharBuffer.wrap(builder);
+        bytes.clear();
+        encoder.reset();
+        while (true) {
+            CoderResult result = chars.hasRemaining() ? encoder.encode(chars, bytes, true) : CoderResult.UNDERFLOW;
+            if (result.isUnderflow()) {
+                result = encoder.flush(bytes);
+            }
+            if (result.isUnderflow()) {
+                break;
+            } else if (result.isOverflow()) {
+                ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+                bytes.flip();
+                larger.put(bytes);
+                bytes = larger;
+            } else {
+                result.throwException();
+            }
+        }
+        return Arrays.copyOf(bytes.array(), bytes.position());
+    }
+
+    private void reset() {
+        // Don't keep huge buffers around after an unusually large document
+        if (builder.capacity() > MAX_RETAINED) {
+            builder = new StringBuilder(1024);
+        } else {
+            builder.setLength(0);
+        }
+        if (bytes.capacity() > MAX_RETAINED) {
+            bytes = ByteBuffer.allocate(1024);
+        }
+    }
+}
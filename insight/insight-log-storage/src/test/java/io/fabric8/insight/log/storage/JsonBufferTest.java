@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.storage;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class JsonBufferTest {
+
+    @Test
+    public void testEncodesUtf8() throws Exception {
+        JsonBuffer buffer = JsonBuffer.get();
+        buffer.getBuilder().append("{\"message\":\"caf\u00e9 \u20ac \ud83d\ude00\"}");
+
+        assertArrayEquals("{\"message\":\"caf\u00e9 \u20ac \ud83d\ude00\"}".getBytes("UTF-8"), buffer.toBytes());
+    }
+
+    @Test
+    public void testEncodesDocumentsLargerThanTheInitialBuffer() throws Exception {
+        char[] chars = new char[5000];
+        Arrays.fill(chars, '\u00e9');
+        String document = new String(chars);
+        JsonBuffer buffer = JsonBuffer.get();
+        buffer.getBuilder().append(document);
+
+        byte[] bytes = buffer.toBytes();
+        assertEquals(10000, bytes.length);
+        assertEquals(document, new String(bytes, "UTF-8"));
+        // encoding again gives the same result
+        assertArrayEquals(bytes, buffer.toBytes());
+    }
+
+    @Test
+    public void testMalformedInputIsReplaced() throws Exception {
+        JsonBuffer buffer = JsonBuffer.get();
+        // a lone high surrogate
+        buffer.getBuilder().append("a\ud83db");
+
+        assertEquals("a?b", new String(buffer.toBytes(), "UTF-8"));
+    }
+
+    @Test
+    public void testBufferIsReusedAndEmptied() throws Exception {
+        JsonBuffer buffer = JsonBuffer.get();
+        buffer.getBuilder().append("{\"first\":true}");
+        buffer.toBytes();
+
+        JsonBuffer next = JsonBuffer.get();
+        assertSame(buffer, next);
+        assertEquals(0, next.getBuilder().length());
+        next.getBuilder().append("{}");
+        assertEquals("{}", new String(next.toBytes(), "UTF-8"));
+    }
+
+    @Test
+    public void testLargeBuilderIsNotRetained() throws Exception {
+        JsonBuffer buffer = JsonBuffer.get();
+        StringBuilder builder = buffer.getBuilder();
+        builder.append(new char[128 * 1024]);
+        buffer.toBytes();
+
+        JsonBuffer next = JsonBuffer.get();
+        assertEquals(0, next.getBuilder().length());
+        assertEquals(1024, next.getBuilder().capacity());
+    }
+}
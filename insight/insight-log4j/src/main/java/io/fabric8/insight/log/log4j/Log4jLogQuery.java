@@ -31,7 +31,7 @@ import io.fabric8.insight.log.LogEvent;
 import io.fabric8.insight.log.LogFilter;
 import io.fabric8.insight.log.LogResults;
 import io.fabric8.insight.log.support.LogQuerySupport;
-import io.fabric8.insight.log.support.LruList;
+import io.fabric8.insight.log.support.LogEventStore;
 import io.fabric8.insight.log.support.Predicate;
 import org.ops4j.util.property.PropertiesPropertyResolver;
 import org.slf4j.ILoggerFactory;
@@ -48,7 +48,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
@@ -66,7 +65,7 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
     private static final transient Logger LOG = LoggerFactory.getLogger(Log4jLogQuery.class);
 
     private int size = 1000;
-    private LruList<LoggingEvent> events;
+    private LogEventStore<LoggingEvent> events;
     private boolean addMavenCoordinates = true;
     private AetherBasedResolver resolver;
     private Properties properties = new Properties();
@@ -83,6 +82,12 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
             return true;
         }
     };
+    private final LogEventStore.Converter<LoggingEvent> converter = new LogEventStore.Converter<LoggingEvent>() {
+        @Override
+        public LogEvent toLogEvent(LoggingEvent element) {
+            return Log4jLogQuery.this.toLogEvent(element);
+        }
+    };
 
 
     @PostConstruct
@@ -118,7 +123,7 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
     }
 
     public LogResults getLogResults(int maxCount) throws IOException {
-        return filterLogResults(null, maxCount);
+        return filterLogResults(null, null, maxCount);
     }
 
     public LogResults queryLogResults(LogFilter filter) {
@@ -127,48 +132,19 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
         if (filter != null) {
             maxCount = filter.getCount();
         }
-        return filterLogResults(predicate, maxCount);
+        return filterLogResults(filter, predicate, maxCount);
     }
 
+    /**
+     * Creates the predicate for the parts of the filter which are not answered
+     * by the indexes of the {@link LogEventStore} (levels and timestamps)
+     */
     private Predicate<LogEvent> createPredicate(LogFilter filter) {
         if (filter == null) {
             return null;
         }
         final List<Predicate<LogEvent>> predicates = new ArrayList<Predicate<LogEvent>>();
 
-        final Set<String> levels = filter.getLevelsSet();
-        if (levels.size() > 0) {
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    String level = event.getLevel();
-                    return level != null && levels.contains(level.toString());
-                }
-            });
-        }
-        final Long before = filter.getBeforeTimestamp();
-        if (before != null) {
-            final Date date = new Date(before);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.before(date);
-                }
-            });
-        }
-        final Long after = filter.getAfterTimestamp();
-        if (after != null) {
-            final Date date = new Date(after);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.after(date);
-                }
-            });
-        }
-
         final String matchesText = filter.getMatchesText();
         if (matchesText != null && matchesText.length() > 0) {
             predicates.add(new Predicate<LogEvent>() {
@@ -214,39 +190,8 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
         }
     }
 
-    protected LogResults filterLogResults(Predicate<LogEvent> predicate, int maxCount) {
-        int matched = 0;
-        long from = Long.MAX_VALUE;
-        long to = Long.MIN_VALUE;
-        List<LogEvent> list = new ArrayList<LogEvent>();
-        Iterable<LoggingEvent> elements = getEvents().getElements();
-        for (LoggingEvent element : elements) {
-            LogEvent logEvent = toLogEvent(element);
-            long timestamp = element.getTimeStamp();
-            if (timestamp > to) {
-                to = timestamp;
-            }
-            if (timestamp < from) {
-                from = timestamp;
-            }
-            if (logEvent != null) {
-                if (predicate == null || predicate.matches(logEvent)) {
-                    list.add(logEvent);
-                    matched += 1;
-                    if (maxCount > 0 && matched >= maxCount) {
-                        break;
-                    }
-                }
-            }
-        }
-        LogResults results = new LogResults();
-        results.setEvents(list);
-        if (from < Long.MAX_VALUE) {
-            results.setFromTimestamp(from);
-        }
-        if (to > Long.MIN_VALUE) {
-            results.setToTimestamp(to);
-        }
+    protected LogResults filterLogResults(LogFilter filter, Predicate<LogEvent> predicate, int maxCount) {
+        LogResults results = getEvents().query(filter, maxCount, predicate, converter);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Requested " + maxCount + " logging items. returning "
                     + results.getEvents().size() + " event(s) from a possible " + getEvents().size());
@@ -358,14 +303,14 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
 
     // Properties
     //-------------------------------------------------------------------------
-    public LruList<LoggingEvent> getEvents() {
+    public LogEventStore<LoggingEvent> getEvents() {
         if (events == null) {
-            events = new LruList<LoggingEvent>(LoggingEvent.class, getSize());
+            events = new LogEventStore<LoggingEvent>(getSize());
         }
         return events;
     }
 
-    public void setEvents(LruList<LoggingEvent> events) {
+    public void setEvents(LogEventStore<LoggingEvent> events) {
         this.events = events;
     }
 
@@ -414,6 +359,8 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
         if (addMavenCoordinates) {
             appendMavenCoordinates(record);
         }
-		getEvents().add(record);
+        Level level = record.getLevel();
+        getEvents().add(record, level != null ? level.toString() : null, record.getTimeStamp(),
+                record.getLoggerName(), record.getThreadName());
 	}
 }
@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.model;
+
+import javax.management.openmbean.CompositeData;
+import java.util.Map;
+
+/**
+ * Extracts the numeric values of a {@link QueryResult}.
+ * <p/>
+ * Composite and map values are flattened one level, each numeric item being
+ * reported as <tt>attribute.key</tt>. Operation results are reported with the
+ * name of their request as attribute.
+ */
+public final class NumericValues {
+
+    public interface Visitor {
+        void visit(String objectName, String attribute, double value);
+    }
+
+    private NumericValues() {
+    }
+
+    public static void visit(QueryResult qrs, Visitor visitor) {
+        if (qrs.getResults() == null) {
+            return;
+        }
+        for (Result<?> result : qrs.getResults().values()) {
+            if (result instanceof MBeanAttrsResult) {
+                for (MBeanAttrResult r : ((MBeanAttrsResult) result).getResults()) {
+                    String objectName = r.getObjectName().toString();
+                    for (Map.Entry<String, Object> attr : r.getAttrs().entrySet()) {
+                        visitValue(objectName, attr.getKey(), attr.getValue(), visitor);
+                    }
+                }
+            } else if (result instanceof MBeanOpersResult) {
+                for (MBeanOperResult r : ((MBeanOpersResult) result).getResults()) {
+                    visitValue(r.getObjectName().toString(), result.getRequest().getName(), r.getValue(), visitor);
+                }
+            }
+        }
+    }
+
+    private static void visitValue(String objectName, String attribute, Object value, Visitor visitor) {
+        if (value instanceof Number) {
+            visitNumber(objectName, attribute, (Number) value, visitor);
+        } else if (value instanceof CompositeData) {
+            CompositeData data = (CompositeData) value;
+            for (String key : data.getCompositeType().keySet()) {
+                Object item = data.get(key);
+                if (item instanceof Number) {
+                    visitNumber(objectName, attribute + "." + key, (Number) item, visitor);
+                }
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    visitNumber(objectName, attribute + "." + entry.getKey(), (Number) entry.getValue(), visitor);
+                }
+            }
+        }
+    }
+
+    private static void visitNumber(String objectName, String attribute, Number value, Visitor visitor) {
+        double d = value.doubleValue();
+        if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+            visitor.visit(objectName, attribute, d);
+        }
+    }
+}
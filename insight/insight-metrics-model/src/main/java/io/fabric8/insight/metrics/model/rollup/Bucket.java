@@ -0,0 +1,137 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.model.rollup;
+
+import io.fabric8.insight.metrics.model.MetricsJSON;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The min, max, sum and count of the values of a series over a period.
+ * <p/>
+ * A bucket is only updated while it is open, by the thread holding the lock on its series.
+ */
+public class Bucket {
+
+    static final List<Bucket> NONE = Collections.emptyList();
+
+    private final String type;
+    private final String host;
+    private final String query;
+    private final String objectName;
+    private final String attribute;
+    private final Resolution resolution;
+    private final long start;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double sum;
+    private long count;
+
+    public Bucket(String type, String host, String query, String objectName, String attribute,
+                  Resolution resolution, long start) {
+        this.type = type;
+        this.host = host;
+        this.query = query;
+        this.objectName = objectName;
+        this.attribute = attribute;
+        this.resolution = resolution;
+        this.start = start;
+    }
+
+    void add(double value) {
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        count++;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public String getObjectName() {
+        return objectName;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return start + resolution.getMillis();
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getAvg() {
+        return count > 0 ? sum / count : 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"type\":").append(MetricsJSON.toJson(type));
+        sb.append(",\"host\":").append(MetricsJSON.toJson(host));
+        sb.append(",\"query\":").append(MetricsJSON.toJson(query));
+        sb.append(",\"objectName\":").append(MetricsJSON.toJson(objectName));
+        sb.append(",\"attribute\":").append(MetricsJSON.toJson(attribute));
+        sb.append(",\"resolution\":").append(MetricsJSON.toJson(resolution.getName()));
+        sb.append(",\"@timestamp\":").append(MetricsJSON.toJson(new Date(start)));
+        sb.append(",\"min\":").append(min);
+        sb.append(",\"max\":").append(max);
+        sb.append(",\"avg\":").append(getAvg());
+        sb.append(",\"count\":").append(count);
+        sb.append("}");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Bucket[" + host + " " + query + " " + objectName + " " + attribute + " "
+                + resolution.getName() + "@" + start + "]";
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.model.rollup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The resolutions metrics are rolled up to.
+ */
+public enum Resolution {
+
+    ONE_MINUTE("1m", TimeUnit.MINUTES.toMillis(1), false),
+    TEN_MINUTES("10m", TimeUnit.MINUTES.toMillis(10), true),
+    ONE_HOUR("1h", TimeUnit.HOURS.toMillis(1), true);
+
+    private final String name;
+    private final long millis;
+    private final boolean monthly;
+
+    Resolution(String name, long millis, boolean monthly) {
+        this.name = name;
+        this.millis = millis;
+        this.monthly = monthly;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Returns true if the rollups of this resolution are stored in monthly indices rather than
+     * daily ones, as they are small and kept for months: daily indices would only multiply the shards
+     */
+    public boolean isMonthly() {
+        return monthly;
+    }
+
+    /**
+     * Returns the start of the bucket containing the given timestamp
+     */
+    public long bucketStart(long timestamp) {
+        long offset = timestamp % millis;
+        return timestamp - (offset < 0 ? offset + millis : offset);
+    }
+
+    public static Resolution fromName(String name) {
+        for (Resolution resolution : values()) {
+            if (resolution.name.equals(name)) {
+                return resolution;
+            }
+        }
+        throw new IllegalArgumentException("Unknown resolution: " + name);
+    }
+}
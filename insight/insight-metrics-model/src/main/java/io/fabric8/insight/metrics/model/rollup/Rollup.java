@@ -0,0 +1,231 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.model.rollup;
+
+import io.fabric8.insight.metrics.model.NumericValues;
+import io.fabric8.insight.metrics.model.QueryResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the numeric values of query results into buckets of increasing sizes, per series.
+ * <p/>
+ * A series is identified by the host, query, object name and attribute of the values. When a value
+ * falls after the current bucket of its series, or when {@link #flush(long)} is called after the
+ * end of a bucket, the bucket is closed and handed over to the {@link Listener}. A value older than
+ * the current bucket of its series would belong to a bucket already closed: it is dropped and counted
+ * by {@link #getLateCount()}.
+ */
+public class Rollup {
+
+    /**
+     * Receives the closed buckets
+     */
+    public interface Listener {
+        void onBucket(Bucket bucket);
+    }
+
+    /**
+     * The time after the end of a bucket during which {@link #flush(long)} keeps it open for late values
+     */
+    public static final long DEFAULT_GRACE_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    private final Listener listener;
+    private final List<Resolution> resolutions;
+    private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<String, Series>();
+    private final AtomicLong late = new AtomicLong();
+    private long gracePeriod = DEFAULT_GRACE_PERIOD;
+
+    public Rollup(Listener listener) {
+        this(listener, Resolution.values());
+    }
+
+    public Rollup(Listener listener, Resolution... resolutions) {
+        this.listener = listener;
+        this.resolutions = Arrays.asList(resolutions);
+    }
+
+    public long getGracePeriod() {
+        return gracePeriod;
+    }
+
+    public void setGracePeriod(long gracePeriod) {
+        this.gracePeriod = gracePeriod;
+    }
+
+    public int getSeriesCount() {
+        return series.size();
+    }
+
+    /**
+     * Returns the number of values dropped because their bucket had already been closed
+     */
+    public long getLateCount() {
+        return late.get();
+    }
+
+    /**
+     * Adds the numeric values of the given result
+     */
+    public void add(final String type, QueryResult qrs) {
+        final long timestamp = qrs.getTimestamp().getTime();
+        final String host = qrs.getServer() != null ? qrs.getServer().getName() : null;
+        final String query = qrs.getQuery().getName();
+        NumericValues.visit(qrs, new NumericValues.Visitor() {
+            @Override
+            public void visit(String objectName, String attribute, double value) {
+                add(type, host, query, objectName, attribute, timestamp, value);
+            }
+        });
+    }
+
+    /**
+     * Adds a value to a series
+     */
+    public void add(String type, String host, String query, String objectName, String attribute,
+                    long timestamp, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        String key = type + '|' + host + '|' + query + '|' + objectName + '|' + attribute;
+        List<Bucket> closed;
+        do {
+            Series s = series.get(key);
+            if (s == null) {
+                s = new Series(type, host, query, objectName, attribute);
+                Series previous = series.putIfAbsent(key, s);
+                if (previous != null) {
+                    s = previous;
+                }
+            }
+            // retry if the series has just been flushed and removed
+            closed = s.add(timestamp, value);
+        } while (closed == null);
+        for (Bucket bucket : closed) {
+            listener.onBucket(bucket);
+        }
+    }
+
+    /**
+     * Closes the buckets which ended more than the grace period before the given time,
+     * and forgets the series without any open bucket left
+     */
+    public void flush(long now) {
+        for (Iterator<Series> it = series.values().iterator(); it.hasNext();) {
+            Series s = it.next();
+            List<Bucket> closed;
+            synchronized (s) {
+                closed = s.close(now - gracePeriod);
+                if (s.isEmpty()) {
+                    s.removed = true;
+                    it.remove();
+                }
+            }
+            for (Bucket bucket : closed) {
+                listener.onBucket(bucket);
+            }
+        }
+    }
+
+    /**
+     * Closes all the buckets
+     */
+    public void flush() {
+        flush(Long.MAX_VALUE - gracePeriod);
+    }
+
+    private final class Series {
+        final String type;
+        final String host;
+        final String query;
+        final String objectName;
+        final String attribute;
+        final Bucket[] current = new Bucket[resolutions.size()];
+        boolean removed;
+
+        Series(String type, String host, String query, String objectName, String attribute) {
+            this.type = type;
+            this.host = host;
+            this.query = query;
+            this.objectName = objectName;
+            this.attribute = attribute;
+        }
+
+        /**
+         * Returns the closed buckets, or null if the series has been removed
+         */
+        synchronized List<Bucket> add(long timestamp, double value) {
+            if (removed) {
+                return null;
+            }
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] != null && resolutions.get(i).bucketStart(timestamp) < current[i].getStart()) {
+                    late.incrementAndGet();
+                    return Bucket.NONE;
+                }
+            }
+            List<Bucket> closed = null;
+            for (int i = 0; i < current.length; i++) {
+                Resolution resolution = resolutions.get(i);
+                long start = resolution.bucketStart(timestamp);
+                Bucket bucket = current[i];
+                if (bucket != null && bucket.getStart() < start) {
+                    if (closed == null) {
+                        closed = new ArrayList<Bucket>();
+                    }
+                    closed.add(bucket);
+                    bucket = null;
+                }
+                if (bucket == null) {
+                    bucket = new Bucket(type, host, query, objectName, attribute, resolution, start);
+                    current[i] = bucket;
+                }
+                bucket.add(value);
+            }
+            return closed != null ? closed : Bucket.NONE;
+        }
+
+        List<Bucket> close(long before) {
+            List<Bucket> closed = null;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] != null && current[i].getEnd() <= before) {
+                    if (closed == null) {
+                        closed = new ArrayList<Bucket>();
+                    }
+                    closed.add(current[i]);
+                    current[i] = null;
+                }
+            }
+            return closed != null ? closed : Bucket.NONE;
+        }
+
+        boolean isEmpty() {
+            for (Bucket bucket : current) {
+                if (bucket != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
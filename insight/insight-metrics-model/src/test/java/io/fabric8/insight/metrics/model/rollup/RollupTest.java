@@ -0,0 +1,102 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.model.rollup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RollupTest {
+
+    private final List<Bucket> buckets = new ArrayList<Bucket>();
+
+    private final Rollup rollup = new Rollup(new Rollup.Listener() {
+        @Override
+        public void onBucket(Bucket bucket) {
+            buckets.add(bucket);
+        }
+    });
+
+    @Test
+    public void testBucketsAreClosedByNewerValues() throws Exception {
+        long start = TimeUnit.HOURS.toMillis(1000);
+        for (int i = 0; i < 12; i++) {
+            add(start + TimeUnit.SECONDS.toMillis(10 * i), i);
+        }
+        // the first minute is closed by the first value of the second one
+        assertEquals(1, buckets.size());
+        Bucket bucket = buckets.get(0);
+        assertEquals(Resolution.ONE_MINUTE, bucket.getResolution());
+        assertEquals(start, bucket.getStart());
+        assertEquals(6, bucket.getCount());
+        assertEquals(0.0, bucket.getMin(), 0.0);
+        assertEquals(5.0, bucket.getMax(), 0.0);
+        assertEquals(2.5, bucket.getAvg(), 0.0);
+
+        add(start + TimeUnit.MINUTES.toMillis(10), 100);
+        assertEquals(3, buckets.size());
+        bucket = buckets.get(2);
+        assertEquals(Resolution.TEN_MINUTES, bucket.getResolution());
+        assertEquals(12, bucket.getCount());
+        assertEquals(11.0, bucket.getMax(), 0.0);
+    }
+
+    @Test
+    public void testFlushClosesIdleSeries() throws Exception {
+        long start = TimeUnit.HOURS.toMillis(1000);
+        add(start, 1);
+        rollup.flush(start + TimeUnit.MINUTES.toMillis(1));
+        assertEquals(0, buckets.size());
+        rollup.flush(start + TimeUnit.MINUTES.toMillis(2));
+        assertEquals(1, buckets.size());
+        assertEquals(1, rollup.getSeriesCount());
+        rollup.flush();
+        assertEquals(3, buckets.size());
+        assertEquals(0, rollup.getSeriesCount());
+    }
+
+    @Test
+    public void testLateValuesAreDropped() throws Exception {
+        long start = TimeUnit.HOURS.toMillis(1000);
+        add(start, 1);
+        add(start + TimeUnit.MINUTES.toMillis(1), 2);
+        assertEquals(1, buckets.size());
+
+        // belongs to the first minute, which has been closed
+        add(start + TimeUnit.SECONDS.toMillis(30), 100);
+        assertEquals(1, rollup.getLateCount());
+        // still in the current minute
+        add(start + TimeUnit.SECONDS.toMillis(90), 3);
+        assertEquals(1, rollup.getLateCount());
+
+        rollup.flush();
+        assertEquals(4, buckets.size());
+        // the late value is in none of the buckets
+        for (Bucket bucket : buckets) {
+            assertTrue(bucket.getMax() < 100);
+        }
+        assertEquals(3, buckets.get(3).getCount());
+    }
+
+    private void add(long timestamp, double value) {
+        rollup.add("sta", "host", "query", "java.lang:type=Memory", "HeapMemoryUsage.used", timestamp, value);
+    }
+}
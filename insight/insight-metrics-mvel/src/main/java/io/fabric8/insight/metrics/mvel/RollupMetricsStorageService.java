@@ -0,0 +1,89 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.mvel;
+
+import io.fabric8.insight.metrics.model.MetricsStorageService;
+import io.fabric8.insight.metrics.model.QueryResult;
+import io.fabric8.insight.metrics.model.rollup.Bucket;
+import io.fabric8.insight.metrics.model.rollup.Rollup;
+import io.fabric8.insight.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MetricsStorageService} storing the raw results through another service and rolling them up
+ * into 1m, 10m and 1h buckets, which are stored with the <tt>rollup-&lt;resolution&gt;</tt> types.
+ * <p/>
+ * Idle series are flushed at most once per {@link #getFlushInterval()}, when results are stored.
+ */
+public class RollupMetricsStorageService implements MetricsStorageService, Rollup.Listener {
+    private static final transient Logger LOG = LoggerFactory.getLogger(RollupMetricsStorageService.class);
+
+    public static final String TYPE_PREFIX = "rollup-";
+
+    private final MetricsStorageService delegate;
+    private final StorageService storageService;
+    private final Rollup rollup = new Rollup(this);
+    private final AtomicLong nextFlush = new AtomicLong();
+    private long flushInterval = TimeUnit.MINUTES.toMillis(1);
+
+    public RollupMetricsStorageService(MetricsStorageService delegate, StorageService storageService) {
+        this.delegate = delegate;
+        this.storageService = storageService;
+    }
+
+    @Override
+    public void store(String type, long timestamp, QueryResult queryResult) {
+        delegate.store(type, timestamp, queryResult);
+        try {
+            rollup.add(type, queryResult);
+        } catch (Exception e) {
+            LOG.warn("Failed to roll up " + queryResult + ": " + e, e);
+        }
+        long now = System.currentTimeMillis();
+        long next = nextFlush.get();
+        if (now >= next && nextFlush.compareAndSet(next, now + flushInterval)) {
+            rollup.flush(now);
+        }
+    }
+
+    @Override
+    public void onBucket(Bucket bucket) {
+        storageService.store(TYPE_PREFIX + bucket.getResolution().getName(), bucket.getStart(), bucket.toJson());
+    }
+
+    /**
+     * Stores all the open buckets, for instance before shutting down
+     */
+    public void flush() {
+        rollup.flush();
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public Rollup getRollup() {
+        return rollup;
+    }
+}
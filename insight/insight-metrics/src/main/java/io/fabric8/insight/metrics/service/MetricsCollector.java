@@ -26,7 +26,9 @@ import io.fabric8.groups.GroupListener;
 import io.fabric8.groups.NodeState;
 import io.fabric8.groups.internal.TrackingZooKeeperGroup;
 import io.fabric8.insight.metrics.model.*;
-import io.fabric8.insight.metrics.service.support.JmxUtils;
+import io.fabric8.insight.metrics.service.support.CollectionPlanner;
+import io.fabric8.insight.metrics.service.support.ObjectNameCache;
+import io.fabric8.insight.metrics.service.support.TimingWheel;
 import org.apache.felix.scr.annotations.*;
 import org.apache.karaf.jaas.boot.principal.RolePrincipal;
 import org.osgi.framework.BundleContext;
@@ -82,6 +84,9 @@ public class MetricsCollector implements MetricsCollectorMBean {
 
     private ScheduledThreadPoolExecutor executor;
     private Map<Query, QueryState> queries = new ConcurrentHashMap<Query, QueryState>();
+    private TimingWheel<QueryState> wheel;
+    private ObjectNameCache objectNameCache;
+    private CollectionPlanner planner;
 
     @Reference
     private MBeanServer mbeanServer;
@@ -91,11 +96,12 @@ public class MetricsCollector implements MetricsCollectorMBean {
 
     private int defaultDelay = 60;
     private int threadPoolSize = 5;
+    private int wheelSize = 60;
     private String type = "sta";
     private BundleContext bundleContext;
 
     static class QueryState {
-        ScheduledFuture<?> future;
+        TimingWheel.Timeout<QueryState> timeout;
         Server server;
         Query query;
         QueryResult lastResult;
@@ -105,7 +111,7 @@ public class MetricsCollector implements MetricsCollectorMBean {
         Group<QueryNodeState> lock;
 
         public void close() {
-            future.cancel(false);
+            timeout.cancel();
             if (lock != null) {
                 try {
                     lock.close();
@@ -123,6 +129,11 @@ public class MetricsCollector implements MetricsCollectorMBean {
         this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
         this.executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
 
+        this.wheel = new TimingWheel<QueryState>(wheelSize);
+        this.objectNameCache = new ObjectNameCache(mbeanServer);
+        this.objectNameCache.start();
+        this.planner = new CollectionPlanner(mbeanServer, objectNameCache);
+
         this.executor.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
@@ -130,6 +141,13 @@ public class MetricsCollector implements MetricsCollectorMBean {
             }
         }, 1, defaultDelay, TimeUnit.SECONDS);
 
+        this.executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
         JMXUtils.registerMBean(this, mbeanServer, new ObjectName("io.fabric8.insight:type=MetricsCollector"));
     }
 
@@ -153,6 +171,7 @@ public class MetricsCollector implements MetricsCollectorMBean {
         for (QueryState q : queries.values()) {
             q.close();
         }
+        objectNameCache.stop();
     }
 
     private void bindStorage(MetricsStorageService storage) {
@@ -185,6 +204,10 @@ public class MetricsCollector implements MetricsCollectorMBean {
         this.threadPoolSize = threadPoolSize;
     }
 
+    public void setWheelSize(int wheelSize) {
+        this.wheelSize = wheelSize;
+    }
+
     public void setType(String type) {
         this.type = type;
     }
@@ -244,12 +267,9 @@ public class MetricsCollector implements MetricsCollectorMBean {
                         state.lock.start();
                     }
 
-                    long delay = q.getPeriod() > 0 ? q.getPeriod() : defaultDelay;
-                    state.future = this.executor.scheduleAtFixedRate(
-                            new Task(state, storage),
-                            Math.round(Math.random() * 1000) + 1,
-                            delay * 1000,
-                            TimeUnit.MILLISECONDS);
+                    // Queries sharing a period are aligned on the wheel so that they are collected together
+                    int delay = q.getPeriod() > 0 ? q.getPeriod() : defaultDelay;
+                    state.timeout = wheel.schedule(state, 1, delay);
                     queries.put(q, state);
                 }
             }
@@ -320,43 +340,88 @@ public class MetricsCollector implements MetricsCollectorMBean {
         }
     }
 
+    /**
+     * Collects all the queries due on this tick as a single batch, so that mbeans
+     * shared between queries are only read once.
+     */
+    protected void tick() {
+        try {
+            final MetricsStorageService svc = storage.getOptional();
+            // Abort if required services aren't available
+            if (mbeanServer == null || svc == null) {
+                wheel.tick();
+                return;
+            }
+            final List<QueryState> due = new ArrayList<QueryState>();
+            for (QueryState state : wheel.tick()) {
+                // If there's a lock, check we are the master
+                if (state.lock == null || state.lock.isMaster()) {
+                    due.add(state);
+                }
+            }
+            if (due.isEmpty()) {
+                return;
+            }
+
+            Subject subject = new Subject();
+            subject.getPrincipals().add(new RolePrincipal("admin"));
+
+            List<QueryResult> results = Subject.doAs(subject, new PrivilegedAction<List<QueryResult>>() {
+                @Override
+                public List<QueryResult> run() {
+                    List<QueryResult> results = new ArrayList<QueryResult>(due.size());
+                    CollectionPlanner.Batch batch;
+                    try {
+                        List<Query> dueQueries = new ArrayList<Query>(due.size());
+                        for (QueryState state : due) {
+                            dueQueries.add(state.query);
+                        }
+                        batch = planner.collect(dueQueries);
+                    } catch (Throwable e) {
+                        LOG.error("Error retrieving metrics", e);
+                        return results;
+                    }
+                    Date timestamp = new Date();
+                    for (QueryState state : due) {
+                        try {
+                            results.add(new QueryResult(state.server, state.query, timestamp, batch.getResults(state.server, state.query)));
+                        } catch (Throwable e) {
+                            LOG.error("Error retrieving metrics for " + state.query.getMetadata(), e);
+                            results.add(null);
+                        }
+                    }
+                    return results;
+                }
+            });
+
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) != null) {
+                    executor.execute(new Task(due.get(i), results.get(i), svc));
+                }
+            }
+        } catch (RejectedExecutionException t) {
+            // Ignore, the thread pool has been shut down
+        } catch (Throwable e) {
+            LOG.error("Error collecting metrics", e);
+        }
+    }
+
     class Task implements Runnable {
 
         private final QueryState query;
+        private final QueryResult qrs;
+        private final MetricsStorageService svc;
 
-        public Task(QueryState query, ValidatingReference<MetricsStorageService> storage) {
+        public Task(QueryState query, QueryResult qrs, MetricsStorageService svc) {
             this.query = query;
+            this.qrs = qrs;
+            this.svc = svc;
         }
 
         @Override
         public void run() {
             try {
-                final MetricsStorageService svc = storage.get();
-                // Abort if required services aren't available
-                if (mbeanServer == null || svc == null) {
-                    return;
-                }
-                // If there's a lock, check we are the master
-                if (query.lock != null && !query.lock.isMaster()) {
-                    return;
-                }
-
-                Subject subject = new Subject();
-                subject.getPrincipals().add(new RolePrincipal("admin"));
-
-                QueryResult qrs = Subject.doAs(subject, new PrivilegedAction<QueryResult>() {
-                    @Override
-                    public QueryResult run() {
-                        try {
-                            return JmxUtils.execute(query.server, query.query, mbeanServer);
-                        } catch (Throwable e) {
-                            LOG.error("Error retrieving metrics for " + query.query.getMetadata(), e);
-                        }
-                        return null;
-                    }
-                });
-
-                if (qrs != null) {
+                synchronized (query) {
                     boolean forceSend = query.query.getMinPeriod() == query.query.getPeriod() ||
                             qrs.getTimestamp().getTime() - query.lastSent >= TimeUnit.SECONDS.toMillis(query.query.getMinPeriod());
                     if (!forceSend && query.lastResult != null) {
@@ -0,0 +1,154 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.service.support;
+
+import io.fabric8.insight.metrics.model.MBeanAttrResult;
+import io.fabric8.insight.metrics.model.MBeanAttrs;
+import io.fabric8.insight.metrics.model.MBeanAttrsResult;
+import io.fabric8.insight.metrics.model.MBeanOpers;
+import io.fabric8.insight.metrics.model.Query;
+import io.fabric8.insight.metrics.model.Request;
+import io.fabric8.insight.metrics.model.Result;
+import io.fabric8.insight.metrics.model.Server;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plans the collection of a batch of queries that are due at the same time.
+ * <p/>
+ * Object name patterns are expanded through an {@link ObjectNameCache} and the attributes
+ * requested by all the queries of the batch are merged so that each mbean is read with a
+ * single {@link MBeanServerConnection#getAttributes(ObjectName, String[])} call.
+ */
+public class CollectionPlanner {
+
+    private final MBeanServerConnection mbs;
+    private final ObjectNameCache cache;
+
+    public CollectionPlanner(MBeanServerConnection mbs, ObjectNameCache cache) {
+        this.mbs = mbs;
+        this.cache = cache;
+    }
+
+    /**
+     * Reads all the attributes needed by the given queries.
+     * Failures are recorded per mbean and only reported for the queries that need it.
+     */
+    public Batch collect(Collection<Query> queries) throws JMException, IOException {
+        Map<ObjectName, Set<String>> plan = new LinkedHashMap<ObjectName, Set<String>>();
+        for (Query query : queries) {
+            for (Request request : query.getRequests()) {
+                if (request instanceof MBeanAttrs) {
+                    MBeanAttrs attrs = (MBeanAttrs) request;
+                    for (ObjectName mbean : cache.queryNames(attrs.getObj())) {
+                        Set<String> names = plan.get(mbean);
+                        if (names == null) {
+                            names = new LinkedHashSet<String>();
+                            plan.put(mbean, names);
+                        }
+                        names.addAll(attrs.getAttrs());
+                    }
+                }
+            }
+        }
+        Batch batch = new Batch();
+        for (Map.Entry<ObjectName, Set<String>> entry : plan.entrySet()) {
+            ObjectName mbean = entry.getKey();
+            Set<String> names = entry.getValue();
+            try {
+                AttributeList al = mbs.getAttributes(mbean, names.toArray(new String[names.size()]));
+                Map<String, Object> values = new HashMap<String, Object>();
+                for (Attribute attribute : al.asList()) {
+                    values.put(attribute.getName(), JmxUtils.getJmxValue(attribute.getValue()));
+                }
+                batch.values.put(mbean, values);
+            } catch (InstanceNotFoundException e) {
+                // The mbean has been unregistered since the pattern was expanded
+            } catch (JMException e) {
+                batch.failures.put(mbean, e);
+            } catch (IOException e) {
+                batch.failures.put(mbean, e);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * The attribute values read for a batch of queries.
+     */
+    public class Batch {
+
+        private final Map<ObjectName, Map<String, Object>> values = new HashMap<ObjectName, Map<String, Object>>();
+        private final Map<ObjectName, Exception> failures = new HashMap<ObjectName, Exception>();
+
+        /**
+         * Builds the results of the given query, which must have been part of the collected batch.
+         * Operations are not merged and are invoked by this method.
+         */
+        public Map<String, Result<?>> getResults(Server server, Query query) throws JMException, IOException {
+            Map<String, Result<?>> queryResults = new HashMap<String, Result<?>>();
+            for (Request request : query.getRequests()) {
+                if (request instanceof MBeanAttrs) {
+                    queryResults.put(request.getName(), getResult((MBeanAttrs) request));
+                } else if (request instanceof MBeanOpers) {
+                    MBeanOpers opers = (MBeanOpers) request;
+                    queryResults.put(request.getName(), JmxUtils.execute(server, opers, cache.queryNames(opers.getObj()), mbs));
+                } else {
+                    throw new IllegalArgumentException("Unsupported request " + request);
+                }
+            }
+            return queryResults;
+        }
+
+        private MBeanAttrsResult getResult(MBeanAttrs request) throws JMException, IOException {
+            List<MBeanAttrResult> results = new ArrayList<MBeanAttrResult>();
+            for (ObjectName mbean : cache.queryNames(request.getObj())) {
+                Exception failure = failures.get(mbean);
+                if (failure instanceof JMException) {
+                    throw (JMException) failure;
+                } else if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                Map<String, Object> all = values.get(mbean);
+                if (all == null) {
+                    continue;
+                }
+                Map<String, Object> attrs = new HashMap<String, Object>();
+                for (String attr : request.getAttrs()) {
+                    if (all.containsKey(attr)) {
+                        attrs.put(attr, all.get(attr));
+                    }
+                }
+                results.add(new MBeanAttrResult(mbean, attrs));
+            }
+            return new MBeanAttrsResult(request, results);
+        }
+    }
+}
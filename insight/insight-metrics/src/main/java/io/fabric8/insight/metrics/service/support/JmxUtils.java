@@ -45,9 +45,13 @@ public class JmxUtils {
     }
 
     public static MBeanOpersResult execute(Server server, MBeanOpers request, MBeanServerConnection mbs) throws JMException, IOException {
-        List<MBeanOperResult> results = new ArrayList<MBeanOperResult>();
         // Get all mbeans
         Set<ObjectName> mbeans = mbs.queryNames(new ObjectName(request.getObj()), null);
+        return execute(server, request, mbeans, mbs);
+    }
+
+    public static MBeanOpersResult execute(Server server, MBeanOpers request, Set<ObjectName> mbeans, MBeanServerConnection mbs) throws JMException, IOException {
+        List<MBeanOperResult> results = new ArrayList<MBeanOperResult>();
         for (ObjectName mbean : mbeans) {
             // Invoke operation
             List<Object> args = request.getArgs();
@@ -76,7 +80,7 @@ public class JmxUtils {
         return new MBeanAttrsResult(request, results);
     }
 
-    private static Object getJmxValue(Object value) {
+    static Object getJmxValue(Object value) {
         if (value instanceof CompositeDataSupport) {
             CompositeDataSupport cds = (CompositeDataSupport) value;
             Map<String, Object> map = new HashMap<String, Object>();
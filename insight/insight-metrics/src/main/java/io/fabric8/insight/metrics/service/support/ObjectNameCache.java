@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.service.support;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the expansion of {@link ObjectName} patterns into the set of registered mbeans.
+ * Cached entries are dropped whenever an mbean matching the pattern is registered or
+ * unregistered, as reported by the {@link MBeanServerDelegate}.
+ */
+public class ObjectNameCache implements NotificationListener {
+
+    private final MBeanServerConnection mbs;
+    private final Map<String, ObjectName> names = new ConcurrentHashMap<String, ObjectName>();
+    private final Map<ObjectName, Set<ObjectName>> expansions = new ConcurrentHashMap<ObjectName, Set<ObjectName>>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile boolean listening;
+
+    public ObjectNameCache(MBeanServerConnection mbs) {
+        this.mbs = mbs;
+    }
+
+    /**
+     * Starts listening to mbean registration events. Until this method is called,
+     * nothing is cached and every lookup goes to the mbean server.
+     */
+    public void start() throws JMException, IOException {
+        NotificationFilterSupport filter = new NotificationFilterSupport();
+        filter.enableType(MBeanServerNotification.REGISTRATION_NOTIFICATION);
+        filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+        mbs.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, filter, null);
+        listening = true;
+    }
+
+    public void stop() throws JMException, IOException {
+        listening = false;
+        expansions.clear();
+        try {
+            mbs.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+        } catch (InstanceNotFoundException e) {
+            // Ignore, the mbean server is going away
+        }
+    }
+
+    /**
+     * Returns the (possibly cached) parsed form of the given object name.
+     */
+    public ObjectName getObjectName(String name) throws JMException {
+        ObjectName objectName = names.get(name);
+        if (objectName == null) {
+            objectName = new ObjectName(name);
+            names.put(name, objectName);
+        }
+        return objectName;
+    }
+
+    /**
+     * Returns the names of the mbeans matching the given object name or pattern.
+     */
+    public Set<ObjectName> queryNames(String name) throws JMException, IOException {
+        return queryNames(getObjectName(name));
+    }
+
+    public Set<ObjectName> queryNames(ObjectName name) throws IOException {
+        Set<ObjectName> result = expansions.get(name);
+        if (result == null) {
+            long gen = generation.get();
+            result = Collections.unmodifiableSet(new LinkedHashSet<ObjectName>(mbs.queryNames(name, null)));
+            // Only cache the expansion if no registration event raced with the query
+            if (listening && gen == generation.get()) {
+                expansions.put(name, result);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return expansions.size();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (notification instanceof MBeanServerNotification) {
+            ObjectName mbean = ((MBeanServerNotification) notification).getMBeanName();
+            generation.incrementAndGet();
+            for (Iterator<ObjectName> iterator = expansions.keySet().iterator(); iterator.hasNext(); ) {
+                if (iterator.next().apply(mbean)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.service.support;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A hashed timing wheel for periodic tasks.
+ * <p/>
+ * The wheel does not own a thread: {@link #tick()} must be called once per tick
+ * (for example every second) and returns the items that are due on that tick.
+ * Items sharing a period and phase are always returned together, so that they
+ * can be processed as a single batch.
+ */
+public class TimingWheel<T> {
+
+    private final List<Timeout<T>>[] wheel;
+    private int cursor;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Wheel size must be positive: " + size);
+        }
+        this.wheel = new List[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new LinkedList<Timeout<T>>();
+        }
+    }
+
+    /**
+     * Schedules the given item to be returned by {@link #tick()} after the given
+     * initial delay and then every <code>period</code> ticks.
+     */
+    public synchronized Timeout<T> schedule(T item, int initialDelay, int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        Timeout<T> timeout = new Timeout<T>(item, period);
+        insert(timeout, Math.max(1, initialDelay));
+        return timeout;
+    }
+
+    /**
+     * Advances the wheel by one tick and returns the due items.
+     */
+    public synchronized List<T> tick() {
+        cursor = (cursor + 1) % wheel.length;
+        List<T> due = new ArrayList<T>();
+        List<Timeout<T>> rescheduled = new ArrayList<Timeout<T>>();
+        for (Iterator<Timeout<T>> iterator = wheel[cursor].iterator(); iterator.hasNext(); ) {
+            Timeout<T> timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                iterator.remove();
+                due.add(timeout.item);
+                rescheduled.add(timeout);
+            }
+        }
+        for (Timeout<T> timeout : rescheduled) {
+            insert(timeout, timeout.period);
+        }
+        return due;
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (List<Timeout<T>> slot : wheel) {
+            for (Timeout<T> timeout : slot) {
+                if (!timeout.cancelled) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    private void insert(Timeout<T> timeout, int delay) {
+        timeout.rounds = (delay - 1) / wheel.length;
+        wheel[(cursor + delay) % wheel.length].add(timeout);
+    }
+
+    public static class Timeout<T> {
+
+        private final T item;
+        private final int period;
+        private int rounds;
+        private volatile boolean cancelled;
+
+        Timeout(T item, int period) {
+            this.item = item;
+            this.period = period;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
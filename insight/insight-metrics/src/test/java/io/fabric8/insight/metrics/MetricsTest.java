@@ -20,19 +20,27 @@ import io.fabric8.insight.metrics.model.MBeanAttrs;
 import io.fabric8.insight.metrics.model.MBeanOpers;
 import io.fabric8.insight.metrics.model.Query;
 import io.fabric8.insight.metrics.model.Request;
+import io.fabric8.insight.metrics.service.support.CollectionPlanner;
 import io.fabric8.insight.metrics.service.support.JmxUtils;
+import io.fabric8.insight.metrics.service.support.ObjectNameCache;
+import io.fabric8.insight.metrics.service.support.TimingWheel;
 import io.fabric8.insight.metrics.mvel.Renderer;
 import io.fabric8.insight.metrics.model.QueryResult;
 import io.fabric8.insight.metrics.model.Server;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class MetricsTest {
 
@@ -55,4 +63,59 @@ public class MetricsTest {
         assertEquals("local", map.get("host"));
         assertNotNull(map.get("@timestamp"));
     }
+
+    @Test
+    public void testBatchedCollection() throws Exception {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        Query q1 = new Query("q1", new HashSet<Request>(Arrays.<Request>asList(
+                new MBeanAttrs("runtime", "java.lang:type=Runtime", Arrays.asList("VmName", "SpecVersion")))),
+                null, null, null, 0, 0);
+        Query q2 = new Query("q2", new HashSet<Request>(Arrays.<Request>asList(
+                new MBeanAttrs("runtime", "java.lang:type=Runtime", Arrays.asList("VmVendor")),
+                new MBeanAttrs("pools", "java.lang:type=MemoryPool,*", Arrays.asList("Name", "Type")))),
+                null, null, null, 0, 0);
+
+        ObjectNameCache cache = new ObjectNameCache(mbs);
+        cache.start();
+        try {
+            CollectionPlanner.Batch batch = new CollectionPlanner(mbs, cache).collect(Arrays.asList(q1, q2));
+            Server server = new Server("local");
+            assertEquals(JmxUtils.execute(server, q1, mbs).getResults(), batch.getResults(server, q1));
+            assertEquals(JmxUtils.execute(server, q2, mbs).getResults(), batch.getResults(server, q2));
+
+            // Patterns are cached until an mbean matching them is registered
+            assertEquals(2, cache.size());
+            ObjectName name = new ObjectName("java.lang:type=MemoryPool,name=MetricsTest");
+            mbs.registerMBean(new javax.management.StandardMBean(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, Runnable.class), name);
+            mbs.unregisterMBean(name);
+            assertEquals(1, cache.size());
+        } finally {
+            cache.stop();
+        }
+    }
+
+    @Test
+    public void testTimingWheel() throws Exception {
+        TimingWheel<String> wheel = new TimingWheel<String>(4);
+        wheel.schedule("a", 1, 2);
+        wheel.schedule("b", 1, 2);
+        TimingWheel.Timeout<String> c = wheel.schedule("c", 1, 5);
+
+        assertEquals(Arrays.asList("a", "b", "c"), wheel.tick());
+        assertEquals(Collections.emptyList(), wheel.tick());
+        assertEquals(Arrays.asList("a", "b"), wheel.tick());
+        assertEquals(Collections.emptyList(), wheel.tick());
+        assertEquals(Arrays.asList("a", "b"), wheel.tick());
+        List<String> due = wheel.tick();
+        assertTrue(due.contains("c"));
+        c.cancel();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(!wheel.tick().contains("c"));
+        }
+        assertEquals(2, wheel.size());
+    }
 }
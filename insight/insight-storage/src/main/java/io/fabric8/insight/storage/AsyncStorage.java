@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * A {@link StorageService} handing the events over to a {@link StorageQueue}, so that the
+ * threads producing the events never wait for the storage.
+ * <p/>
+ * A batch is sent in a single request to a {@link BatchStorageService}, and one event at a time
+ * to any other storage.
+ */
+public abstract class AsyncStorage extends StorageQueue<StorageEvent> implements StorageService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncStorage.class);
+
+    protected AsyncStorage(String name) {
+        super(name);
+    }
+
+    protected AsyncStorage(String name, int capacity) {
+        super(name, capacity);
+    }
+
+    /**
+     * Returns the storage the events are sent to, or null if there is none currently
+     */
+    protected abstract StorageService getStorage();
+
+    @Override
+    public void store(String type, long timestamp, String jsonData) {
+        offer(new StorageEvent(type, timestamp, jsonData));
+    }
+
+    @Override
+    public void store(String type, long timestamp, byte[] jsonData) {
+        offer(new StorageEvent(type, timestamp, jsonData));
+    }
+
+    @Override
+    protected int process(List<StorageEvent> events) {
+        StorageService storage = getStorage();
+        if (storage == null) {
+            // don't hold the events until a storage comes back, they would only fill the queue
+            if (getDropped() == 0) {
+                LOGGER.warn("{} has no storage, dropping events", getName());
+            }
+            return 0;
+        } else if (storage instanceof BatchStorageService) {
+            try {
+                ((BatchStorageService) storage).store(events);
+                return events.size();
+            } catch (Exception e) {
+                LOGGER.warn("Error storing " + events.size() + " events", e);
+                return 0;
+            }
+        }
+        int count = 0;
+        for (StorageEvent event : events) {
+            try {
+                event.storeIn(storage);
+                count++;
+            } catch (Exception e) {
+                LOGGER.warn("Error storing event", e);
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.storage;
+
+/**
+ * An event to store, with its data either as a JSON string or already encoded as UTF-8 JSON.
+ */
+public final class StorageEvent {
+
+    private final String type;
+    private final long timestamp;
+    private final String json;
+    private final byte[] bytes;
+
+    public StorageEvent(String type, long timestamp, String json) {
+        this(type, timestamp, json, null);
+    }
+
+    public StorageEvent(String type, long timestamp, byte[] bytes) {
+        this(type, timestamp, null, bytes);
+    }
+
+    private StorageEvent(String type, long timestamp, String json, byte[] bytes) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.json = json;
+        this.bytes = bytes;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the data as a JSON string, or null if it is only available as bytes
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Returns the data as UTF-8 JSON, or null if it is only available as a string
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Stores this event in the given storage, one event at a time
+     */
+    public void storeIn(StorageService storage) {
+        if (bytes != null) {
+            storage.store(type, timestamp, bytes);
+        } else {
+            storage.store(type, timestamp, json);
+        }
+    }
+}
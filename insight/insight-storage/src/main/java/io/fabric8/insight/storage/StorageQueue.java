@@ -0,0 +1,322 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded handoff between the threads producing events and a single thread which
+ * processes them in batches, so that the producers never wait for the storage.
+ * <p/>
+ * The queue is bounded: when it is full, events are dropped. With the {@link OverflowPolicy#SAMPLE}
+ * policy, only one event out of {@link #getSampleRate()} is kept once the queue is half full, so
+ * that the storage still receives a sample of the events instead of only the oldest ones.
+ * Producers should call {@link #accept()} before building an event, so that no time is spent
+ * on events which would be dropped.
+ * <p/>
+ * Subclasses either store a whole batch at once with {@link #process(List)}, or one event
+ * at a time with {@link #process(Object)}.
+ */
+public abstract class StorageQueue<E> implements Runnable {
+
+    public enum OverflowPolicy {
+        DROP, SAMPLE
+    }
+
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+    public static final long DEFAULT_DELAY_THRESHOLD = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageQueue.class);
+
+    private final String name;
+    private final int capacity;
+    private final BlockingQueue<Queued<E>> queue;
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong maxDelay = new AtomicLong();
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile long delayThreshold = DEFAULT_DELAY_THRESHOLD;
+    private volatile Thread thread;
+
+    protected StorageQueue(String name) {
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    protected StorageQueue(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<Queued<E>>(capacity);
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        queue.clear();
+    }
+
+    /**
+     * Returns false if an event offered now would be dropped, in which case it is counted as dropped
+     */
+    public boolean accept() {
+        int size = queue.size();
+        if (size >= capacity) {
+            drop();
+            return false;
+        }
+        if (overflowPolicy == OverflowPolicy.SAMPLE && size >= capacity / 2
+                && sampleCounter.getAndIncrement() % sampleRate != 0) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hands the event over to the storage thread
+     *
+     * @return false if the queue is full and the event has been dropped
+     */
+    public boolean offer(E event) {
+        if (queue.offer(new Queued<E>(event))) {
+            return true;
+        }
+        drop();
+        return false;
+    }
+
+    private void drop() {
+        if (dropped.getAndIncrement() == 0) {
+            LOGGER.warn("{} queue is full, dropping events", name);
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Queued<E>> batch = new ArrayList<Queued<E>>();
+        while (thread == Thread.currentThread()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    Queued<E> poll() {
+        return queue.poll();
+    }
+
+    void flush(List<Queued<E>> batch) {
+        long now = System.currentTimeMillis();
+        List<E> events = new ArrayList<E>(batch.size());
+        for (Queued<E> queued : batch) {
+            long delay = now - queued.time;
+            if (delay > delayThreshold) {
+                delayed.incrementAndGet();
+            }
+            if (delay > maxDelay.get()) {
+                maxDelay.set(delay);
+            }
+            events.add(queued.event);
+        }
+        int count = process(events);
+        stored.addAndGet(count);
+        dropped.addAndGet(events.size() - count);
+    }
+
+    /**
+     * Stores the given batch of events, one at a time unless overridden
+     *
+     * @return the number of events which have been stored, the others are counted as dropped
+     */
+    protected int process(List<E> events) {
+        int count = 0;
+        for (E event : events) {
+            try {
+                process(event);
+                count++;
+            } catch (Exception e) {
+                LOGGER.warn("Error storing event", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stores a single event
+     */
+    protected void process(E event) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of events dropped because the queue was full, which were not sampled,
+     * or which could not be stored
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of events which have been stored more than {@link #getDelayThreshold()} ms
+     * after they were queued
+     */
+    public long getDelayed() {
+        return delayed.get();
+    }
+
+    /**
+     * Returns the maximum time in ms an event has been waiting in the queue
+     */
+    public long getMaxDelay() {
+        return maxDelay.get();
+    }
+
+    public long getStored() {
+        return stored.get();
+    }
+
+    public void resetStatistics() {
+        dropped.set(0);
+        delayed.set(0);
+        stored.set(0);
+        maxDelay.set(0);
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("The sample rate must be a positive number, was: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be a positive number, was: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public long getDelayThreshold() {
+        return delayThreshold;
+    }
+
+    public void setDelayThreshold(long delayThreshold) {
+        this.delayThreshold = delayThreshold;
+    }
+
+    /**
+     * Applies the settings found in the given properties: <tt>overflowPolicy</tt>,
+     * <tt>sampleRate</tt>, <tt>batchSize</tt> and <tt>delayThreshold</tt>
+     */
+    public void configure(Map<String, String> properties) {
+        String policy = properties.get("overflowPolicy");
+        try {
+            setOverflowPolicy(policy != null ? OverflowPolicy.valueOf(policy.trim().toUpperCase()) : OverflowPolicy.DROP);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid overflowPolicy {} for {}, keeping {}", policy, name, overflowPolicy);
+        }
+        String rate = properties.get("sampleRate");
+        try {
+            setSampleRate(rate != null ? Integer.parseInt(rate.trim()) : DEFAULT_SAMPLE_RATE);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid sampleRate {} for {}, keeping {}", rate, name, sampleRate);
+        }
+        String size = properties.get("batchSize");
+        try {
+            setBatchSize(size != null ? Integer.parseInt(size.trim()) : DEFAULT_BATCH_SIZE);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid batchSize {} for {}, keeping {}", size, name, batchSize);
+        }
+        String threshold = properties.get("delayThreshold");
+        try {
+            setDelayThreshold(threshold != null ? Long.parseLong(threshold.trim()) : DEFAULT_DELAY_THRESHOLD);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid delayThreshold {} for {}, keeping {}", threshold, name, delayThreshold);
+        }
+    }
+
+    static final class Queued<E> {
+        final E event;
+        final long time = System.currentTimeMillis();
+
+        Queued(E event) {
+            this.event = event;
+        }
+    }
+}
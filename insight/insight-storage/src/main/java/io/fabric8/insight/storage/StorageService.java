@@ -26,4 +26,13 @@ public interface StorageService {
      */
     void store(String type, long timestamp, String jsonData);
 
+    /**
+     * Store an event already encoded as UTF-8 JSON, which avoids going through a String.
+     *
+     * @param type the type of document to store
+     * @param timestamp the date of the event
+     * @param jsonData the UTF-8 encoded data to store
+     */
+    void store(String type, long timestamp, byte[] jsonData);
+
 }
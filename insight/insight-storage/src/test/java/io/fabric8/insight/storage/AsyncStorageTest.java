@@ -0,0 +1,127 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.storage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AsyncStorageTest {
+
+    private final List<String> stored = new ArrayList<String>();
+    private final List<Integer> batches = new ArrayList<Integer>();
+    private StorageService storage;
+
+    private final AsyncStorage queue = new AsyncStorage("test-storage", 4) {
+        @Override
+        protected StorageService getStorage() {
+            return storage;
+        }
+    };
+
+    private final StorageService single = new StorageService() {
+        @Override
+        public void store(String type, long timestamp, String jsonData) {
+            stored.add(jsonData);
+        }
+
+        @Override
+        public void store(String type, long timestamp, byte[] jsonData) {
+            stored.add(new String(jsonData));
+        }
+    };
+
+    private final BatchStorageService batch = new BatchStorageService() {
+        @Override
+        public void store(List<StorageEvent> events) {
+            batches.add(events.size());
+            for (StorageEvent event : events) {
+                event.storeIn(single);
+            }
+        }
+
+        @Override
+        public void store(String type, long timestamp, String jsonData) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void store(String type, long timestamp, byte[] jsonData) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    @Test
+    public void testBatchIsSentInOneRequest() {
+        storage = batch;
+        queue.store("test", 0, "a");
+        queue.store("test", 0, "b".getBytes());
+        queue.flush(drain());
+
+        assertEquals(Arrays.asList(2), batches);
+        assertEquals(Arrays.asList("a", "b"), stored);
+        assertEquals(2, queue.getStored());
+    }
+
+    @Test
+    public void testEventsAreSentOneByOne() {
+        storage = single;
+        queue.store("test", 0, "a");
+        queue.store("test", 0, "b");
+        queue.flush(drain());
+
+        assertEquals(Arrays.asList("a", "b"), stored);
+        assertEquals(2, queue.getStored());
+    }
+
+    @Test
+    public void testEventsWithoutStorageAreDropped() {
+        queue.store("test", 0, "a");
+        queue.store("test", 0, "b");
+        queue.flush(drain());
+
+        assertEquals(2, queue.getDropped());
+        assertEquals(0, queue.getStored());
+    }
+
+    @Test
+    public void testStorageThread() throws Exception {
+        storage = batch;
+        queue.start();
+        try {
+            queue.store("test", 0, "a");
+            for (int i = 0; i < 100 && queue.getStored() == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, queue.getStored());
+            assertEquals(Arrays.asList("a"), stored);
+        } finally {
+            queue.stop();
+        }
+    }
+
+    private List<StorageQueue.Queued<StorageEvent>> drain() {
+        List<StorageQueue.Queued<StorageEvent>> events = new ArrayList<StorageQueue.Queued<StorageEvent>>();
+        while (queue.getQueueSize() > 0) {
+            events.add(queue.poll());
+        }
+        return events;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.storage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StorageQueueTest {
+
+    private final List<String> stored = new CopyOnWriteArrayList<String>();
+    private final CountDownLatch processed = new CountDownLatch(3);
+
+    private final StorageQueue<String> queue = new StorageQueue<String>("test-storage", 4) {
+        @Override
+        protected void process(String event) throws Exception {
+            if ("fail".equals(event)) {
+                throw new IllegalStateException("Storage unavailable");
+            }
+            stored.add(event);
+            processed.countDown();
+        }
+    };
+
+    @After
+    public void tearDown() {
+        queue.stop();
+    }
+
+    @Test
+    public void testFullQueueDropsEvents() {
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i < 4, queue.offer("e" + i));
+        }
+        assertEquals(4, queue.getQueueSize());
+        assertEquals(2, queue.getDropped());
+        assertFalse(queue.accept());
+        assertEquals(3, queue.getDropped());
+    }
+
+    @Test
+    public void testSampleOnceHalfFull() {
+        queue.setOverflowPolicy(StorageQueue.OverflowPolicy.SAMPLE);
+        queue.setSampleRate(2);
+        queue.offer("a");
+        queue.offer("b");
+
+        assertTrue(queue.accept());
+        assertFalse(queue.accept());
+        assertTrue(queue.accept());
+        assertEquals(1, queue.getDropped());
+    }
+
+    @Test
+    public void testEventsAreProcessedInOrder() throws Exception {
+        queue.offer("a");
+        queue.offer("fail");
+        queue.start();
+        // a failed event doesn't stop the storage thread
+        offer("b");
+        offer("c");
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+
+        assertEquals("[a, b, c]", stored.toString());
+        assertEquals(3, queue.getStored());
+        assertEquals(1, queue.getDropped());
+    }
+
+    @Test
+    public void testDelayStatistics() throws Exception {
+        queue.setDelayThreshold(10);
+        queue.offer("a");
+        Thread.sleep(50);
+        queue.offer("b");
+        queue.flush(drain());
+
+        assertEquals(1, queue.getDelayed());
+        assertTrue(queue.getMaxDelay() >= 50);
+        assertEquals(2, queue.getStored());
+
+        queue.resetStatistics();
+        assertEquals(0, queue.getDelayed());
+        assertEquals(0, queue.getMaxDelay());
+        assertEquals(0, queue.getStored());
+    }
+
+    @Test
+    public void testInvalidSettingsAreIgnored() {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("overflowPolicy", "sample");
+        properties.put("sampleRate", "5");
+        properties.put("batchSize", "50");
+        properties.put("delayThreshold", "200");
+        queue.configure(properties);
+
+        properties.put("overflowPolicy", "block");
+        properties.put("sampleRate", "five");
+        properties.put("batchSize", "0");
+        properties.put("delayThreshold", "");
+        queue.configure(properties);
+
+        assertEquals(StorageQueue.OverflowPolicy.SAMPLE, queue.getOverflowPolicy());
+        assertEquals(5, queue.getSampleRate());
+        assertEquals(50, queue.getBatchSize());
+        assertEquals(200, queue.getDelayThreshold());
+    }
+
+    private void offer(String event) throws InterruptedException {
+        while (!queue.offer(event)) {
+            Thread.sleep(10);
+        }
+    }
+
+    private List<StorageQueue.Queued<String>> drain() {
+        List<StorageQueue.Queued<String>> events = new ArrayList<StorageQueue.Queued<String>>();
+        while (queue.getQueueSize() > 0) {
+            events.add(queue.poll());
+        }
+        return events;
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The segments of all the series over one period of time, stored in one directory
+ * so that expired data is removed by deleting the whole directory.
+ * <p/>
+ * Appends and reads hold the read lock, so that {@link #close()} waits for the ones in flight
+ * instead of closing a segment under them. Only the segments appended to are kept open, and
+ * the number of them is tracked in a counter shared by the partitions of a store, which closes
+ * the least recently used ones when there are too many.
+ */
+class Partition implements Closeable {
+
+    private final File directory;
+    private final long start;
+    private final AtomicInteger openSegments;
+    private final ConcurrentMap<Integer, Segment> segments = new ConcurrentHashMap<Integer, Segment>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    Partition(File directory, long start, AtomicInteger openSegments) {
+        this.directory = directory;
+        this.start = start;
+        this.openSegments = openSegments;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    void append(int series, long timestamp, double value) throws IOException {
+        lock.readLock().lock();
+        try {
+            getSegment(series).append(timestamp, value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void read(int series, long from, long to, Segment.Visitor visitor) throws IOException {
+        lock.readLock().lock();
+        try {
+            Segment segment = segments.get(series);
+            if (segment != null) {
+                segment.read(from, to, visitor);
+                return;
+            }
+            File file = getFile(series);
+            if (file.length() < Segment.HEADER_SIZE) {
+                // not there yet, or still being created
+                return;
+            }
+            // a segment which isn't appended to is only open for the time of the query
+            segment = new Segment(file, start);
+            try {
+                segment.read(from, to, visitor);
+            } finally {
+                segment.close();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Segment getSegment(int series) throws IOException {
+        Segment segment = segments.get(series);
+        if (segment == null) {
+            synchronized (this) {
+                segment = segments.get(series);
+                if (segment == null) {
+                    if (!directory.isDirectory() && !directory.mkdirs()) {
+                        throw new IOException("Unable to create directory " + directory);
+                    }
+                    segment = new Segment(getFile(series), start);
+                    segments.put(series, segment);
+                    openSegments.incrementAndGet();
+                }
+            }
+        }
+        return segment;
+    }
+
+    private File getFile(int series) {
+        return new File(directory, series + ".seg");
+    }
+
+    /**
+     * Adds the last use of the open segments to the given list
+     */
+    void collectLastUsed(List<Long> lastUsed) {
+        for (Segment segment : segments.values()) {
+            lastUsed.add(segment.getLastUsed());
+        }
+    }
+
+    /**
+     * Closes the open segments which have not been used after the given {@link System#nanoTime()}
+     */
+    void closeUnusedSince(long time) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Iterator<Segment> iterator = segments.values().iterator(); iterator.hasNext(); ) {
+                Segment segment = iterator.next();
+                if (segment.getLastUsed() - time <= 0) {
+                    iterator.remove();
+                    openSegments.decrementAndGet();
+                    segment.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void force() {
+        lock.readLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.force();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the open segments, which are reopened when needed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            openSegments.addAndGet(-segments.size());
+            segments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
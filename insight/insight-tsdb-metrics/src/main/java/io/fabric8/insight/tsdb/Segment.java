@@ -0,0 +1,214 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An append-only, memory-mapped file holding the points of one series over one partition.
+ * <p/>
+ * Timestamps are stored as the zig-zag varint of their delta-of-delta and values as the varint of
+ * the bit-reversed XOR with the previous value, so that regularly collected and slowly changing
+ * metrics take a couple of bytes per point. The encoder state is kept in the header, which is
+ * written after the data, so that a segment can be appended to after a restart.
+ */
+class Segment implements Closeable {
+
+    interface Visitor {
+        void visit(long timestamp, double value);
+    }
+
+    static final int MAGIC = 0x54534442;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int INITIAL_SIZE = 4096;
+    // a point takes at most two 10 bytes varints
+    static final int MAX_POINT_SIZE = 20;
+
+    private static final int COUNT = 8;
+    private static final int POSITION = 12;
+    private static final int LAST_TIMESTAMP = 16;
+    private static final int LAST_DELTA = 24;
+    private static final int LAST_VALUE = 32;
+    private static final int BASE = 40;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int count;
+    private int position;
+    private long lastTimestamp;
+    private long lastDelta;
+    private long lastValue;
+    private volatile long lastUsed = System.nanoTime();
+
+    /**
+     * Opens the segment, creating it if needed
+     *
+     * @param base the timestamp the first delta is computed from
+     */
+    Segment(File file, long base) throws IOException {
+        this.file = file;
+        boolean exists = file.exists() && file.length() >= HEADER_SIZE;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        try {
+            if (exists) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new IOException("Invalid segment " + file);
+                }
+                count = buffer.getInt(COUNT);
+                position = buffer.getInt(POSITION);
+                lastTimestamp = buffer.getLong(LAST_TIMESTAMP);
+                lastDelta = buffer.getLong(LAST_DELTA);
+                lastValue = buffer.getLong(LAST_VALUE);
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_SIZE);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(BASE, base);
+                position = HEADER_SIZE;
+                lastTimestamp = base;
+                writeHeader();
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    synchronized int getSize() {
+        return position;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} of the last append or read
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    synchronized void append(long timestamp, double value) throws IOException {
+        if (position + MAX_POINT_SIZE > buffer.capacity()) {
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) buffer.capacity() * 2);
+        }
+        long delta = timestamp - lastTimestamp;
+        long bits = Double.doubleToRawLongBits(value);
+        buffer.position(position);
+        writeVarLong(zigZag(delta - lastDelta));
+        writeVarLong(Long.reverse(bits ^ lastValue));
+        position = buffer.position();
+        lastTimestamp = timestamp;
+        lastDelta = delta;
+        lastValue = bits;
+        count++;
+        writeHeader();
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Visits the points of the segment whose timestamp is in [from, to)
+     */
+    void read(long from, long to, Visitor visitor) {
+        MappedByteBuffer buf;
+        int end;
+        int n;
+        synchronized (this) {
+            buf = buffer;
+            end = position;
+            n = count;
+        }
+        lastUsed = System.nanoTime();
+        // decode from a private view so that appends can go on
+        ByteBuffer view = buf.duplicate();
+        view.position(HEADER_SIZE);
+        long timestamp = view.getLong(BASE);
+        long delta = 0;
+        long value = 0;
+        for (int i = 0; i < n && view.position() < end; i++) {
+            delta += unZigZag(readVarLong(view));
+            timestamp += delta;
+            value ^= Long.reverse(readVarLong(view));
+            if (timestamp >= from && timestamp < to) {
+                visitor.visit(timestamp, Double.longBitsToDouble(value));
+            }
+        }
+    }
+
+    synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        raf.close();
+    }
+
+    private void writeHeader() {
+        buffer.putInt(COUNT, count);
+        buffer.putLong(LAST_TIMESTAMP, lastTimestamp);
+        buffer.putLong(LAST_DELTA, lastDelta);
+        buffer.putLong(LAST_VALUE, lastValue);
+        // the position is written last, making the new point visible
+        buffer.putInt(POSITION, position);
+    }
+
+    private void writeVarLong(long v) {
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    private static long readVarLong(ByteBuffer buf) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,425 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An embedded, file-backed store of time series.
+ * <p/>
+ * The store is split in daily partitions, one directory each, holding one {@link Segment} per series.
+ * The series are given an id on their first point, recorded in the <tt>series.idx</tt> file.
+ * Partitions older than the retention period are deleted when a new partition is started, and the
+ * points older than it are dropped.
+ * <p/>
+ * Each open segment holds a file descriptor and a memory mapping, so at most <tt>maxOpenSegments</tt>
+ * are kept open: past that, the least recently used ones are closed, to be reopened when needed.
+ */
+public class TimeSeriesStore implements Closeable {
+
+    public static final long PARTITION_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final int DEFAULT_MAX_OPEN_SEGMENTS = 1000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String INDEX = "series.idx";
+
+    public static class Point {
+        private final long timestamp;
+        private final double value;
+
+        Point(long timestamp, double value) {
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public double getValue() {
+            return value;
+        }
+    }
+
+    public static class Aggregate {
+        private final long start;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+        private long count;
+
+        Aggregate(long start) {
+            this.start = start;
+        }
+
+        void add(double value) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getAvg() {
+            return count > 0 ? sum / count : 0;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private final File directory;
+    private final int retentionDays;
+    private final int maxOpenSegments;
+    private final AtomicInteger openSegments = new AtomicInteger();
+    private final Lock evictionLock = new ReentrantLock();
+    private final ConcurrentMap<String, Integer> seriesIds = new ConcurrentHashMap<String, Integer>();
+    private final TreeMap<Long, Partition> partitions = new TreeMap<Long, Partition>();
+    private final Writer index;
+    // the points of the partitions which ended before this time are dropped, guarded by partitions
+    private long retentionLimit = Long.MIN_VALUE;
+
+    /**
+     * @param directory     the directory of the store, created if needed
+     * @param retentionDays the number of days to keep, or 0 to keep everything
+     */
+    public TimeSeriesStore(File directory, int retentionDays) throws IOException {
+        this(directory, retentionDays, DEFAULT_MAX_OPEN_SEGMENTS);
+    }
+
+    /**
+     * @param directory       the directory of the store, created if needed
+     * @param retentionDays   the number of days to keep, or 0 to keep everything
+     * @param maxOpenSegments the number of segments kept open
+     */
+    public TimeSeriesStore(File directory, int retentionDays, int maxOpenSegments) throws IOException {
+        if (maxOpenSegments <= 0) {
+            throw new IllegalArgumentException("The maximum number of open segments must be a positive number, was: " + maxOpenSegments);
+        }
+        this.directory = directory;
+        this.retentionDays = retentionDays;
+        this.maxOpenSegments = maxOpenSegments;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        File indexFile = new File(directory, INDEX);
+        if (indexFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), UTF8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        seriesIds.put(line.substring(tab + 1), Integer.parseInt(line.substring(0, tab)));
+                    }
+                }
+            }
+        }
+        index = new OutputStreamWriter(new FileOutputStream(indexFile, true), UTF8);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Long start = parsePartition(file.getName());
+                if (start != null && file.isDirectory()) {
+                    partitions.put(start, new Partition(file, start, openSegments));
+                }
+            }
+        }
+        applyRetention(System.currentTimeMillis());
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public int getMaxOpenSegments() {
+        return maxOpenSegments;
+    }
+
+    public int getOpenSegments() {
+        return openSegments.get();
+    }
+
+    /**
+     * Returns the known series, sorted
+     */
+    public List<String> getSeries() {
+        List<String> answer = new ArrayList<String>(seriesIds.keySet());
+        Collections.sort(answer);
+        return answer;
+    }
+
+    /**
+     * Appends a point to the given series
+     *
+     * @return false if the point is older than the retention period, in which case it is dropped
+     */
+    public boolean append(String series, long timestamp, double value) throws IOException {
+        Partition partition = getPartition(timestamp);
+        if (partition == null) {
+            return false;
+        }
+        partition.append(getSeriesId(series), timestamp, value);
+        if (openSegments.get() > maxOpenSegments) {
+            closeLeastRecentlyUsed();
+        }
+        return true;
+    }
+
+    /**
+     * Closes the least recently used segments, down to 3/4 of the maximum so that it isn't done on every append
+     */
+    private void closeLeastRecentlyUsed() throws IOException {
+        if (!evictionLock.tryLock()) {
+            // another thread is at it
+            return;
+        }
+        try {
+            List<Partition> all;
+            synchronized (partitions) {
+                all = new ArrayList<Partition>(partitions.values());
+            }
+            List<Long> lastUsed = new ArrayList<Long>();
+            for (Partition partition : all) {
+                partition.collectLastUsed(lastUsed);
+            }
+            int excess = lastUsed.size() - maxOpenSegments * 3 / 4;
+            if (excess <= 0) {
+                return;
+            }
+            Collections.sort(lastUsed);
+            long time = lastUsed.get(excess - 1);
+            for (Partition partition : all) {
+                partition.closeUnusedSince(time);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Visits the points of the given series whose timestamp is in [from, to), in chronological order.
+     * There are none if <tt>from</tt> is not before <tt>to</tt>.
+     */
+    private void read(String series, long from, long to, Segment.Visitor visitor) throws IOException {
+        Integer id = seriesIds.get(series);
+        if (id == null || from >= to) {
+            return;
+        }
+        List<Partition> selected;
+        synchronized (partitions) {
+            Long first = partitions.floorKey(from);
+            selected = new ArrayList<Partition>(partitions.subMap(first != null ? first : from, to).values());
+        }
+        for (Partition partition : selected) {
+            partition.read(id, from, to, visitor);
+        }
+    }
+
+    public List<Point> query(String series, long from, long to) throws IOException {
+        final List<Point> points = new ArrayList<Point>();
+        read(series, from, to, new Segment.Visitor() {
+            @Override
+            public void visit(long timestamp, double value) {
+                points.add(new Point(timestamp, value));
+            }
+        });
+        return points;
+    }
+
+    /**
+     * Returns the min, max, average and count of the values of the given series per bucket of the given size
+     */
+    public List<Aggregate> aggregate(String series, long from, long to, final long bucket) throws IOException {
+        if (bucket <= 0) {
+            throw new IllegalArgumentException("The bucket size must be a positive number, was: " + bucket);
+        }
+        final Map<Long, Aggregate> aggregates = new TreeMap<Long, Aggregate>();
+        read(series, from, to, new Segment.Visitor() {
+            @Override
+            public void visit(long timestamp, double value) {
+                long start = timestamp - (timestamp % bucket);
+                Aggregate aggregate = aggregates.get(start);
+                if (aggregate == null) {
+                    aggregate = new Aggregate(start);
+                    aggregates.put(start, aggregate);
+                }
+                aggregate.add(value);
+            }
+        });
+        return new ArrayList<Aggregate>(aggregates.values());
+    }
+
+    /**
+     * Deletes the partitions which ended more than the retention period before the given time
+     */
+    public void applyRetention(long now) throws IOException {
+        if (retentionDays <= 0) {
+            return;
+        }
+        List<Partition> expired = new ArrayList<Partition>();
+        synchronized (partitions) {
+            long limit = now - retentionDays * PARTITION_MILLIS;
+            retentionLimit = Math.max(retentionLimit, limit);
+            while (!partitions.isEmpty() && partitions.firstKey() + PARTITION_MILLIS <= limit) {
+                expired.add(partitions.pollFirstEntry().getValue());
+            }
+        }
+        for (Partition partition : expired) {
+            partition.close();
+            delete(partition.getDirectory());
+        }
+    }
+
+    public void force() {
+        List<Partition> all;
+        synchronized (partitions) {
+            all = new ArrayList<Partition>(partitions.values());
+        }
+        for (Partition partition : all) {
+            partition.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (partitions) {
+            for (Partition partition : partitions.values()) {
+                partition.close();
+            }
+        }
+        synchronized (index) {
+            index.close();
+        }
+    }
+
+    private int getSeriesId(String series) throws IOException {
+        Integer id = seriesIds.get(series);
+        if (id == null) {
+            synchronized (index) {
+                id = seriesIds.get(series);
+                if (id == null) {
+                    id = seriesIds.size();
+                    index.write(id + "\t" + series + "\n");
+                    index.flush();
+                    seriesIds.put(series, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Returns the partition of the given time, or null if it is older than the retention period
+     */
+    private Partition getPartition(long timestamp) throws IOException {
+        long start = timestamp - (timestamp % PARTITION_MILLIS);
+        List<Partition> previous = null;
+        Partition partition;
+        synchronized (partitions) {
+            partition = partitions.get(start);
+            if (partition == null) {
+                if (start + PARTITION_MILLIS <= retentionLimit) {
+                    // it would be deleted on the next new partition, don't recreate its directory
+                    return null;
+                }
+                partition = new Partition(new File(directory, formatPartition(start)), start, openSegments);
+                if (partitions.isEmpty() || start > partitions.lastKey()) {
+                    // the previous partitions only receive late points from now on
+                    previous = new ArrayList<Partition>(partitions.values());
+                }
+                partitions.put(start, partition);
+            }
+        }
+        if (previous != null) {
+            for (Partition p : previous) {
+                p.close();
+            }
+            applyRetention(timestamp);
+        }
+        return partition;
+    }
+
+    private static String formatPartition(long start) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(start));
+    }
+
+    private static Long parsePartition(String name) {
+        if (!name.matches("[0-9]{4}-[0-9]{2}-[0-9]{2}")) {
+            return null;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(name).getTime();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import io.fabric8.api.jcip.ThreadSafe;
+import io.fabric8.api.scr.AbstractComponent;
+import io.fabric8.api.scr.Configurer;
+import io.fabric8.api.scr.ValidatingReference;
+import io.fabric8.common.util.JMXUtils;
+import io.fabric8.insight.metrics.model.Metrics;
+import io.fabric8.insight.metrics.model.MetricsStorageService;
+import io.fabric8.insight.metrics.model.NumericValues;
+import io.fabric8.insight.metrics.model.QueryResult;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.osgi.framework.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An implementation of {@link MetricsStorageService} keeping the metrics in an embedded {@link TimeSeriesStore},
+ * so that recent metrics can be queried over JMX without any external storage.
+ * <p/>
+ * The store is used under the read lock, so that a reconfiguration doesn't close it under a store or a query.
+ */
+@ThreadSafe
+@Component(name = "io.fabric8.insight.tsdb.metrics", label = "Fabric8 Embedded TSDB Metrics Storage", policy = ConfigurationPolicy.REQUIRE, immediate = true, metatype = true)
+@Service(MetricsStorageService.class)
+@Properties(
+        @Property(name = Constants.SERVICE_RANKING, intValue = 2)
+)
+public class TsdbMetricsStorage extends AbstractComponent implements MetricsStorageService, TsdbMetricsStorageMBean {
+    private static final transient Logger LOG = LoggerFactory.getLogger(TsdbMetricsStorage.class);
+
+    private static final String OBJECT_NAME = "io.fabric8.insight:type=TsdbMetricsStorage";
+
+    @Reference(referenceInterface = Configurer.class)
+    private final ValidatingReference<Configurer> configurer = new ValidatingReference<>();
+
+    @Reference(referenceInterface = MBeanServer.class, bind = "bindMBeanServer", unbind = "unbindMBeanServer")
+    private final ValidatingReference<MBeanServer> mbeanServer = new ValidatingReference<>();
+
+    @Property(name = "dataDir", label = "Data Directory", description = "The directory the metrics are stored in", value = "${karaf.data}/insight/tsdb")
+    private String dataDir;
+
+    @Property(name = "retentionDays", label = "Retention Days", description = "The number of days the metrics are kept for", intValue = 7)
+    private int retentionDays = 7;
+
+    @Property(name = "maxOpenSegments", label = "Maximum Open Segments", description = "The number of segment files kept open, the least recently used ones are closed past it", intValue = TimeSeriesStore.DEFAULT_MAX_OPEN_SEGMENTS)
+    private int maxOpenSegments = TimeSeriesStore.DEFAULT_MAX_OPEN_SEGMENTS;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private TimeSeriesStore store;
+
+    @Activate
+    void activate(Map<String, ?> configuration) throws Exception {
+        updateConfiguration(configuration);
+        JMXUtils.registerMBean(this, mbeanServer.get(), new ObjectName(OBJECT_NAME));
+        activateComponent();
+    }
+
+    @Modified
+    void modified(Map<String, ?> configuration) throws Exception {
+        updateConfiguration(configuration);
+    }
+
+    @Deactivate
+    void deactivate() throws Exception {
+        deactivateComponent();
+        JMXUtils.unregisterMBean(mbeanServer.get(), new ObjectName(OBJECT_NAME));
+        closeStore();
+    }
+
+    protected void updateConfiguration(Map<String, ?> configuration) throws Exception {
+        lock.writeLock().lock();
+        try {
+            configurer.get().configure(configuration, this);
+            closeStore();
+            store = new TimeSeriesStore(new File(dataDir), retentionDays, maxOpenSegments);
+            LOG.info("Storing metrics in " + store.getDirectory() + " for " + retentionDays + " days");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    protected void closeStore() {
+        lock.writeLock().lock();
+        try {
+            TimeSeriesStore s = store;
+            store = null;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    LOG.warn("Error closing " + s.getDirectory(), e);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void store(String type, final long timestamp, QueryResult queryResult) {
+        final String prefix = Metrics.metricId(type, queryResult) + "|";
+        final int[] count = new int[1];
+        lock.readLock().lock();
+        try {
+            final TimeSeriesStore s = getStore();
+            NumericValues.visit(queryResult, new NumericValues.Visitor() {
+                @Override
+                public void visit(String objectName, String attribute, double value) {
+                    try {
+                        if (s.append(prefix + objectName + "|" + attribute, timestamp, value)) {
+                            count[0]++;
+                        }
+                    } catch (IOException e) {
+                        LOG.warn("Error storing metric " + prefix + objectName + "|" + attribute, e);
+                    }
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("added " + count[0] + " metrics");
+        }
+    }
+
+    @Override
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    @Override
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    @Override
+    public int getMaxOpenSegments() {
+        return maxOpenSegments;
+    }
+
+    @Override
+    public int getOpenSegments() {
+        lock.readLock().lock();
+        try {
+            return getStore().getOpenSegments();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> listSeries(String filter) {
+        List<String> answer = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String series : getStore().getSeries()) {
+                if (filter == null || filter.isEmpty() || series.contains(filter)) {
+                    answer.add(series);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return answer;
+    }
+
+    @Override
+    public List<Map<String, Object>> query(String series, long from, long to) throws Exception {
+        List<TimeSeriesStore.Point> points;
+        lock.readLock().lock();
+        try {
+            points = getStore().query(series, from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Map<String, Object>> answer = new ArrayList<>();
+        for (TimeSeriesStore.Point point : points) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("timestamp", point.getTimestamp());
+            map.put("value", point.getValue());
+            answer.add(map);
+        }
+        return answer;
+    }
+
+    @Override
+    public List<Map<String, Object>> aggregate(String series, long from, long to, long bucket) throws Exception {
+        List<TimeSeriesStore.Aggregate> aggregates;
+        lock.readLock().lock();
+        try {
+            aggregates = getStore().aggregate(series, from, to, bucket);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Map<String, Object>> answer = new ArrayList<>();
+        for (TimeSeriesStore.Aggregate aggregate : aggregates) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("timestamp", aggregate.getStart());
+            map.put("min", aggregate.getMin());
+            map.put("max", aggregate.getMax());
+            map.put("avg", aggregate.getAvg());
+            map.put("count", aggregate.getCount());
+            answer.add(map);
+        }
+        return answer;
+    }
+
+    void bindConfigurer(Configurer configurer) {
+        this.configurer.bind(configurer);
+    }
+
+    void unbindConfigurer(Configurer configurer) {
+        this.configurer.unbind(configurer);
+    }
+
+    void bindMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer.bind(mbeanServer);
+    }
+
+    void unbindMBeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer.unbind(mbeanServer);
+    }
+
+    /**
+     * Returns the current store, the read lock must be held
+     */
+    private TimeSeriesStore getStore() {
+        assertValid();
+        TimeSeriesStore s = store;
+        if (s == null) {
+            throw new IllegalStateException("No store available!");
+        }
+        return s;
+    }
+}
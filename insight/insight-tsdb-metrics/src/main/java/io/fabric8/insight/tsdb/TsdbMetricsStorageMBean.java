@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import java.util.List;
+import java.util.Map;
+
+public interface TsdbMetricsStorageMBean {
+
+    String getDataDir();
+
+    int getRetentionDays();
+
+    int getMaxOpenSegments();
+
+    /**
+     * Returns the number of segment files currently open
+     */
+    int getOpenSegments();
+
+    /**
+     * Returns the stored series whose name contains the given filter, or all of them if the filter is empty
+     */
+    List<String> listSeries(String filter);
+
+    /**
+     * Returns the raw points of a series between two timestamps
+     */
+    List<Map<String, Object>> query(String series, long from, long to) throws Exception;
+
+    /**
+     * Returns the min, max, average and count of the points of a series, per bucket of the given number of milliseconds
+     */
+    List<Map<String, Object>> aggregate(String series, long from, long to, long bucket) throws Exception;
+
+}
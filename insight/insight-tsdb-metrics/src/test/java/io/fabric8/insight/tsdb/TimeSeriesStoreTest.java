@@ -0,0 +1,267 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeSeriesStoreTest {
+
+    private static final long DAY = TimeSeriesStore.PARTITION_MILLIS;
+
+    private File directory;
+    private long now;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File("target/tsdb-" + System.nanoTime());
+        now = System.currentTimeMillis();
+        now -= now % DAY;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    @Test
+    public void testAppendAndQuery() throws Exception {
+        TimeSeriesStore store = new TimeSeriesStore(directory, 0);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                store.append("a", now + i * 1000, i % 7 == 0 ? i * 0.5 : 42.0);
+                store.append("b", now + i * 1000 + (i % 3), -i);
+            }
+            assertEquals(Arrays.asList("a", "b"), store.getSeries());
+
+            List<TimeSeriesStore.Point> points = store.query("a", now + 7000, now + 21000);
+            assertEquals(14, points.size());
+            assertEquals(now + 7000, points.get(0).getTimestamp());
+            assertEquals(3.5, points.get(0).getValue(), 0);
+            assertEquals(42.0, points.get(1).getValue(), 0);
+
+            points = store.query("b", now, now + DAY);
+            assertEquals(10000, points.size());
+            assertEquals(now + 9999 * 1000, points.get(9999).getTimestamp());
+            assertEquals(-9999, points.get(9999).getValue(), 0);
+
+            assertTrue(store.query("c", now, now + DAY).isEmpty());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        TimeSeriesStore store = new TimeSeriesStore(directory, 0);
+        store.append("a", now + 1000, 1);
+        store.append("a", now + 2000, 2);
+        store.close();
+
+        store = new TimeSeriesStore(directory, 0);
+        try {
+            store.append("b", now + 2500, 5);
+            store.append("a", now + 3000, 3);
+            List<TimeSeriesStore.Point> points = store.query("a", now, now + DAY);
+            assertEquals(3, points.size());
+            assertEquals(now + 3000, points.get(2).getTimestamp());
+            assertEquals(3, points.get(2).getValue(), 0);
+            assertEquals(1, store.query("b", now, now + DAY).size());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        TimeSeriesStore store = new TimeSeriesStore(directory, 0);
+        try {
+            for (int i = 0; i < 120; i++) {
+                store.append("a", now + i * 1000, i);
+            }
+            List<TimeSeriesStore.Aggregate> aggregates = store.aggregate("a", now, now + DAY, 60000);
+            assertEquals(2, aggregates.size());
+            assertEquals(now, aggregates.get(0).getStart());
+            assertEquals(0, aggregates.get(0).getMin(), 0);
+            assertEquals(59, aggregates.get(0).getMax(), 0);
+            assertEquals(29.5, aggregates.get(0).getAvg(), 0.0001);
+            assertEquals(60, aggregates.get(1).getCount());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testPartitionsAndRetention() throws Exception {
+        TimeSeriesStore store = new TimeSeriesStore(directory, 2);
+        try {
+            long start = now - 5 * DAY;
+            for (int day = 0; day < 6; day++) {
+                store.append("a", start + day * DAY + 1000, day);
+            }
+            // a late point goes to its own partition
+            store.append("a", start + 4 * DAY + 2000, 10);
+
+            List<TimeSeriesStore.Point> points = store.query("a", start, now + DAY);
+            // only the last 2 days and the current one are kept
+            assertEquals(4, points.size());
+            assertEquals(3, points.get(0).getValue(), 0);
+            assertEquals(4, points.get(1).getValue(), 0);
+            assertEquals(10, points.get(2).getValue(), 0);
+            assertEquals(5, points.get(3).getValue(), 0);
+            // the index and 3 partitions
+            assertEquals(4, directory.list().length);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testExpiredPointsAreDropped() throws Exception {
+        TimeSeriesStore store = new TimeSeriesStore(directory, 2);
+        try {
+            assertTrue(store.append("a", now + 1000, 1));
+            assertFalse(store.append("a", now - 3 * DAY + 1000, 2));
+            assertTrue(store.append("a", now - DAY + 1000, 3));
+
+            assertEquals(2, store.query("a", now - 5 * DAY, now + DAY).size());
+            // the expired partition isn't created again
+            assertEquals(3, directory.list().length);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSegmentsAreClosed() throws Exception {
+        TimeSeriesStore store = new TimeSeriesStore(directory, 0, 8);
+        try {
+            for (int i = 0; i < 20; i++) {
+                store.append("s" + i, now + 1000, i);
+                assertTrue(store.getOpenSegments() <= 8);
+            }
+            store.append("s0", now + 2000, 100);
+            store.append("s19", now + 2000, 119);
+
+            // the closed segments are still readable, and reopened on append
+            for (int i = 0; i < 20; i++) {
+                List<TimeSeriesStore.Point> points = store.query("s" + i, now, now + DAY);
+                assertEquals(i == 0 || i == 19 ? 2 : 1, points.size());
+                assertEquals(i, points.get(0).getValue(), 0);
+            }
+            assertTrue(store.getOpenSegments() <= 8);
+        } finally {
+            store.close();
+        }
+        assertEquals(0, store.getOpenSegments());
+    }
+
+    @Test
+    public void testQueriesDontKeepSegmentsOpen() throws Exception {
+        TimeSeriesStore store = new TimeSeriesStore(directory, 0);
+        store.append("a", now + 1000, 1);
+        store.append("b", now + 1000, 2);
+        store.close();
+
+        store = new TimeSeriesStore(directory, 0);
+        try {
+            assertEquals(1, store.query("a", now, now + DAY).size());
+            assertEquals(1, store.query("b", now, now + DAY).size());
+            assertEquals(0, store.getOpenSegments());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testEmptyAndReversedRanges() throws Exception {
+        TimeSeriesStore store = new TimeSeriesStore(directory, 0);
+        try {
+            store.append("a", now + 1000, 1);
+            store.append("a", now + DAY + 1000, 2);
+            assertTrue(store.query("a", now + 2 * DAY, now).isEmpty());
+            assertTrue(store.query("a", now + 1000, now + 1000).isEmpty());
+            assertTrue(store.aggregate("a", now + DAY, now, 60000).isEmpty());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testAppendsWhileRollingOver() throws Exception {
+        final TimeSeriesStore store = new TimeSeriesStore(directory, 0);
+        try {
+            final int threads = 4;
+            final int points = 2000;
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            List<Thread> writers = new ArrayList<Thread>();
+            for (int t = 0; t < threads; t++) {
+                final String series = "s" + t;
+                Thread writer = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int i = 0; i < points; i++) {
+                                // every 100 points go to the next day, closing the previous partitions
+                                store.append(series, now + (i / 100) * DAY + i, i);
+                            }
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                };
+                writer.start();
+                writers.add(writer);
+            }
+            start.countDown();
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+            for (int t = 0; t < threads; t++) {
+                assertEquals(points, store.query("s" + t, now, now + 30 * DAY).size());
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.tsdb;
+
+import io.fabric8.api.InvalidComponentException;
+import io.fabric8.api.scr.Configurer;
+import io.fabric8.insight.metrics.model.MBeanAttrResult;
+import io.fabric8.insight.metrics.model.MBeanAttrs;
+import io.fabric8.insight.metrics.model.MBeanAttrsResult;
+import io.fabric8.insight.metrics.model.Query;
+import io.fabric8.insight.metrics.model.QueryResult;
+import io.fabric8.insight.metrics.model.Request;
+import io.fabric8.insight.metrics.model.Result;
+import io.fabric8.insight.metrics.model.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TsdbMetricsStorageTest {
+
+    private static final long DAY = TimeSeriesStore.PARTITION_MILLIS;
+
+    private File directory;
+    private MBeanServer mbeanServer;
+    private TsdbMetricsStorage storage;
+    private long now;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File("target/tsdb-storage-" + System.nanoTime());
+        now = System.currentTimeMillis();
+        now -= now % DAY;
+        mbeanServer = MBeanServerFactory.newMBeanServer();
+
+        storage = new TsdbMetricsStorage();
+        storage.bindConfigurer(new FieldConfigurer());
+        storage.bindMBeanServer(mbeanServer);
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put("dataDir", directory.getPath());
+        configuration.put("retentionDays", 3);
+        storage.activate(configuration);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (storage.isValid()) {
+            storage.deactivate();
+        }
+        delete(directory);
+    }
+
+    @Test
+    public void testStoreAndQuery() throws Exception {
+        assertTrue(mbeanServer.isRegistered(new ObjectName("io.fabric8.insight:type=TsdbMetricsStorage")));
+        assertEquals(directory.getPath(), storage.getDataDir());
+        assertEquals(3, storage.getRetentionDays());
+
+        for (int i = 0; i < 3; i++) {
+            storage.store("sta", now + i * 60000, heapUsage(now + i * 60000, 100 + i));
+        }
+
+        List<String> series = storage.listSeries("HeapMemoryUsage");
+        assertEquals(Arrays.asList("sta-jvm|java.lang:type=Memory|HeapMemoryUsage.used"), series);
+        assertTrue(storage.listSeries("missing").isEmpty());
+        assertEquals(1, storage.listSeries(null).size());
+
+        List<Map<String, Object>> points = storage.query(series.get(0), now, now + DAY);
+        assertEquals(3, points.size());
+        assertEquals(now + 60000, points.get(1).get("timestamp"));
+        assertEquals(101.0, points.get(1).get("value"));
+
+        List<Map<String, Object>> aggregates = storage.aggregate(series.get(0), now, now + DAY, DAY);
+        assertEquals(1, aggregates.size());
+        assertEquals(3L, aggregates.get(0).get("count"));
+        assertEquals(100.0, aggregates.get(0).get("min"));
+        assertEquals(102.0, aggregates.get(0).get("max"));
+        assertEquals(101.0, aggregates.get(0).get("avg"));
+
+        // a reversed range is empty rather than an error
+        assertTrue(storage.query(series.get(0), now + DAY, now).isEmpty());
+    }
+
+    @Test
+    public void testDataSurvivesReconfiguration() throws Exception {
+        storage.store("sta", now, heapUsage(now, 42));
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put("dataDir", directory.getPath());
+        configuration.put("retentionDays", 5);
+        storage.modified(configuration);
+
+        assertEquals(5, storage.getRetentionDays());
+        assertEquals(1, storage.query("sta-jvm|java.lang:type=Memory|HeapMemoryUsage.used", now, now + DAY).size());
+    }
+
+    @Test
+    public void testDeactivate() throws Exception {
+        storage.deactivate();
+        assertFalse(mbeanServer.isRegistered(new ObjectName("io.fabric8.insight:type=TsdbMetricsStorage")));
+        try {
+            storage.store("sta", now, heapUsage(now, 42));
+            fail("InvalidComponentException expected");
+        } catch (InvalidComponentException e) {
+            // expected, the component is no longer valid
+        }
+    }
+
+    private static QueryResult heapUsage(long timestamp, long used) throws Exception {
+        MBeanAttrs request = new MBeanAttrs("heap", "java.lang:type=Memory", Arrays.asList("HeapMemoryUsage"));
+        Map<String, Object> usage = new HashMap<String, Object>();
+        usage.put("used", used);
+        MBeanAttrResult attrs = new MBeanAttrResult(new ObjectName("java.lang:type=Memory"),
+                Collections.<String, Object>singletonMap("HeapMemoryUsage", usage));
+        Map<String, Result<?>> results = new HashMap<String, Result<?>>();
+        results.put("heap", new MBeanAttrsResult(request, Collections.singletonList(attrs)));
+        Query query = new Query("jvm", Collections.<Request>singleton(request), null, null, null, 60, 0);
+        return new QueryResult(new Server("root"), query, new Date(timestamp), results);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Sets the fields of the component named after the configuration keys, as the component configurer does
+     */
+    private static class FieldConfigurer implements Configurer {
+
+        @Override
+        public <T> Map<String, ?> configure(Map<String, ?> configuration, T target, String... ignorePrefix) throws Exception {
+            for (Map.Entry<String, ?> entry : configuration.entrySet()) {
+                Field field = target.getClass().getDeclaredField(entry.getKey());
+                field.setAccessible(true);
+                field.set(target, entry.getValue());
+            }
+            return configuration;
+        }
+
+        @Override
+        public <T> Map<String, ?> configure(Dictionary<String, ?> configuration, T target, String... ignorePrefix) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -20,7 +20,7 @@ import io.fabric8.api.PortService;
 import io.fabric8.common.util.Strings;
 import io.fabric8.internal.ImmutableContainerBuilder;
 import io.fabric8.zookeeper.bootstrap.BootstrapConfiguration;
-import io.fabric8.zookeeper.utils.ZooKeeperUtils;
+import io.fabric8.zookeeper.utils.ZooKeeperBatch;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.state.ConnectionState;
@@ -77,7 +77,6 @@ import static io.fabric8.zookeeper.ZkPath.CONTAINER_PORT_MIN;
 import static io.fabric8.zookeeper.ZkPath.CONTAINER_RESOLVER;
 import static io.fabric8.zookeeper.ZkPath.CONTAINER_SSH;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.create;
-import static io.fabric8.zookeeper.utils.ZooKeeperUtils.createDefault;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.delete;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.deleteSafe;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
@@ -145,45 +144,45 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
         String version = sysprops.getProperty("fabric.version", ZkDefs.DEFAULT_VERSION);
         String profiles = sysprops.getProperty("fabric.profiles");
         try {
+            // The registry entries are written in two transactions, the addresses first as the container ip is resolved from them
+            ZooKeeperBatch addresses = new ZooKeeperBatch();
             if (profiles != null) {
                 String versionNode = CONFIG_CONTAINER.getPath(runtimeIdentity);
                 String profileNode = CONFIG_VERSIONS_CONTAINER.getPath(version, runtimeIdentity);
-                createDefault(curator.get(), versionNode, version);
-                createDefault(curator.get(), profileNode, profiles);
+                addresses.createDefault(versionNode, version);
+                addresses.createDefault(profileNode, profiles);
             }
 
             checkAlive();
 
-            String domainsNode = CONTAINER_DOMAINS.getPath(runtimeIdentity);
-            Stat stat = exists(curator.get(), domainsNode);
-            if (stat != null) {
-                deleteSafe(curator.get(), domainsNode);
-            }
+            deleteSafe(curator.get(), CONTAINER_DOMAINS.getPath(runtimeIdentity));
 
             boolean openshiftEnv = Strings.notEmpty(System.getenv("OPENSHIFT_FUSE_DIR"));
 
-            ZooKeeperUtils.createDefault(curator.get(), CONTAINER_BINDADDRESS.getPath(runtimeIdentity), bootstrapConfiguration.get().getBindAddress());
-            ZooKeeperUtils.createDefault(curator.get(), CONTAINER_RESOLVER.getPath(runtimeIdentity), getContainerResolutionPolicy(curator.get(), runtimeIdentity));
-            setData(curator.get(), CONTAINER_LOCAL_HOSTNAME.getPath(runtimeIdentity), HostUtils.getLocalHostName());
+            addresses.createDefault(CONTAINER_BINDADDRESS.getPath(runtimeIdentity), bootstrapConfiguration.get().getBindAddress());
+            addresses.createDefault(CONTAINER_RESOLVER.getPath(runtimeIdentity), getContainerResolutionPolicy(curator.get(), runtimeIdentity));
+            addresses.setData(CONTAINER_LOCAL_HOSTNAME.getPath(runtimeIdentity), HostUtils.getLocalHostName());
             if (openshiftEnv) {
-                setData(curator.get(), CONTAINER_LOCAL_IP.getPath(runtimeIdentity), System.getenv("OPENSHIFT_FUSE_IP"));
-                setData(curator.get(), CONTAINER_PUBLIC_IP.getPath(runtimeIdentity), HostUtils.getLocalIp());
+                addresses.setData(CONTAINER_LOCAL_IP.getPath(runtimeIdentity), System.getenv("OPENSHIFT_FUSE_IP"));
+                addresses.setData(CONTAINER_PUBLIC_IP.getPath(runtimeIdentity), HostUtils.getLocalIp());
             } else {
-                setData(curator.get(), CONTAINER_LOCAL_IP.getPath(runtimeIdentity), HostUtils.getLocalIp());
+                addresses.setData(CONTAINER_LOCAL_IP.getPath(runtimeIdentity), HostUtils.getLocalIp());
             }
             //Check if there are addresses specified as system properties and use them if there is not an existing value in the registry.
             //Mostly usable for adding values when creating containers without an existing ensemble.
             for (String resolver : ZkDefs.VALID_RESOLVERS) {
                 String address = (String) bootstrapConfiguration.get().getConfiguration().get(resolver);
-                if (address != null && !address.isEmpty() && exists(curator.get(), CONTAINER_ADDRESS.getPath(runtimeIdentity, resolver)) == null) {
-                    setData(curator.get(), CONTAINER_ADDRESS.getPath(runtimeIdentity, resolver), address);
+                if (address != null && !address.isEmpty()) {
+                    addresses.createDefault(CONTAINER_ADDRESS.getPath(runtimeIdentity, resolver), address);
                 }
             }
+            addresses.commit(curator.get());
 
             ip =  getSubstitutedData(curator.get(), getContainerPointer(curator.get(), runtimeIdentity));
-            setData(curator.get(), CONTAINER_IP.getPath(runtimeIdentity), ip);
+            ZooKeeperBatch registration = new ZooKeeperBatch();
+            registration.setData(CONTAINER_IP.getPath(runtimeIdentity), ip);
             if (Boolean.parseBoolean(runtimeProperties.get().getProperty("service.geoip.enabled", "false"))) {
-                createDefault(curator.get(), CONTAINER_GEOLOCATION.getPath(runtimeIdentity), geoLocationService.get().getGeoLocation());
+                registration.createDefault(CONTAINER_GEOLOCATION.getPath(runtimeIdentity), geoLocationService.get().getGeoLocation());
             }
 
             //We are creating a dummy container object, since this might be called before the actual container is ready.
@@ -193,9 +192,37 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
                 System.setProperty(SystemProperties.JAVA_RMI_SERVER_HOSTNAME, current.getIp());
             }
 
-            registerJmx(current);
-            registerSsh(current);
-            registerHttp(current);
+            // All the ports are allocated in one scope of the port lock, against one lookup of the ports used on the host
+            boolean httpEnabled = isHttpEnabled();
+            boolean httpsEnabled = isHttpsEnabled();
+            int rmiRegistryPort, rmiServerPort, sshPort;
+            int httpPort = 0;
+            int httpsPort = 0;
+            PortService.Lock lock = null;
+            try {
+                lock = portService.get().acquirePortLock();
+                Set<Integer> unavailable = portService.get().findUsedPortByHost(current, lock);
+                rmiRegistryPort = getRmiRegistryPort(current, unavailable);
+                rmiServerPort = getRmiServerPort(current, unavailable);
+                sshPort = getSshPort(current, unavailable);
+                portService.get().registerPort(current, MANAGEMENT_PID, RMI_REGISTRY_BINDING_PORT_KEY, rmiRegistryPort, lock);
+                portService.get().registerPort(current, MANAGEMENT_PID, RMI_SERVER_BINDING_PORT_KEY, rmiServerPort, lock);
+                portService.get().registerPort(current, SSH_PID, SSH_BINDING_PORT_KEY, sshPort, lock);
+                if (httpEnabled) {
+                    httpPort = getHttpPort(current, unavailable);
+                    portService.get().registerPort(current, HTTP_PID, HTTP_BINDING_PORT_KEY, httpPort, lock);
+                }
+                if (httpsEnabled) {
+                    httpsPort = getHttpsPort(current, unavailable);
+                    portService.get().registerPort(current, HTTP_PID, HTTPS_BINDING_PORT_KEY, httpsPort, lock);
+                }
+            } finally {
+                portService.get().releasePortLock(lock);
+            }
+
+            registerJmx(current, registration, rmiRegistryPort, rmiServerPort);
+            registerSsh(current, registration, sshPort);
+            registerHttp(current, registration, httpEnabled, httpPort, httpsEnabled, httpsPort);
 
             //Set the port range values
             String minimumPort = sysprops.getProperty(ZkDefs.MINIMUM_PORT);
@@ -208,8 +235,9 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
                 String maxPort = (String) bootstrapConfiguration.get().getConfiguration().get("maximum.port");
                 maximumPort = maxPort;
             }
-            createDefault(curator.get(), CONTAINER_PORT_MIN.getPath(runtimeIdentity), minimumPort);
-            createDefault(curator.get(), CONTAINER_PORT_MAX.getPath(runtimeIdentity), maximumPort);
+            registration.createDefault(CONTAINER_PORT_MIN.getPath(runtimeIdentity), minimumPort);
+            registration.createDefault(CONTAINER_PORT_MAX.getPath(runtimeIdentity), maximumPort);
+            registration.commit(curator.get());
         } catch (Exception e) {
             LOGGER.warn("Error updating Fabric Container information. This exception will be ignored.", e);
         }
@@ -246,30 +274,11 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
         }
     }
 
-    private void registerJmx(Container container) throws Exception {
-        // first atomic scope = finding rmiRegistryPort
-        PortService.Lock lock = null;
-        int rmiRegistryPort, rmiRegistryConnectionPort;
-        int rmiServerPort, rmiServerConenctionPort;
-        try {
-            lock = portService.get().acquirePortLock();
-            rmiRegistryPort = getRmiRegistryPort(container, lock);
-            rmiRegistryConnectionPort = getRmiRegistryConnectionPort(container, rmiRegistryPort);
-            portService.get().registerPort(container, MANAGEMENT_PID, RMI_REGISTRY_BINDING_PORT_KEY, rmiRegistryPort, lock);
-        } finally {
-            portService.get().releasePortLock(lock);
-        }
-        try {
-            lock = portService.get().acquirePortLock();
-            rmiServerPort = getRmiServerPort(container, lock);
-            rmiServerConenctionPort = getRmiServerConnectionPort(container, rmiServerPort);
-            portService.get().registerPort(container, MANAGEMENT_PID, RMI_SERVER_BINDING_PORT_KEY, rmiServerPort, lock);
-        } finally {
-            portService.get().releasePortLock(lock);
-        }
-        // second atomic scope = finding rmiServerPort
+    private void registerJmx(Container container, ZooKeeperBatch registration, int rmiRegistryPort, int rmiServerPort) throws Exception {
+        int rmiRegistryConnectionPort = getRmiRegistryConnectionPort(container, rmiRegistryPort);
+        int rmiServerConenctionPort = getRmiServerConnectionPort(container, rmiServerPort);
         String jmxUrl = getJmxUrl(container.getId(), rmiServerConenctionPort, rmiRegistryConnectionPort);
-        setData(curator.get(), CONTAINER_JMX.getPath(container.getId()), jmxUrl);
+        registration.setData(CONTAINER_JMX.getPath(container.getId()), jmxUrl);
         Configuration configuration = configAdmin.get().getConfiguration(MANAGEMENT_PID, null);
         Dictionary<String, Object> dictionary = configuration == null ? null : configuration.getProperties();
         String rmiServerHost = "${rmiServerHost}";
@@ -290,16 +299,16 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
         }
     }
 
-    private int getRmiRegistryPort(Container container, PortService.Lock lock) throws IOException, KeeperException, InterruptedException {
-        return getOrAllocatePortForKey(container, MANAGEMENT_PID, RMI_REGISTRY_BINDING_PORT_KEY, Ports.DEFAULT_RMI_REGISTRY_PORT, lock);
+    private int getRmiRegistryPort(Container container, Set<Integer> unavailable) throws IOException, KeeperException, InterruptedException {
+        return getOrAllocatePortForKey(container, MANAGEMENT_PID, RMI_REGISTRY_BINDING_PORT_KEY, Ports.DEFAULT_RMI_REGISTRY_PORT, unavailable);
     }
 
     private int getRmiRegistryConnectionPort(Container container, int defaultValue) throws IOException, KeeperException, InterruptedException {
         return getPortForKey(container, MANAGEMENT_PID, RMI_REGISTRY_CONNECTION_PORT_KEY, defaultValue);
     }
 
-    private int getRmiServerPort(Container container, PortService.Lock lock) throws IOException, KeeperException, InterruptedException {
-        return getOrAllocatePortForKey(container, MANAGEMENT_PID, RMI_SERVER_BINDING_PORT_KEY, Ports.DEFAULT_RMI_SERVER_PORT, lock);
+    private int getRmiServerPort(Container container, Set<Integer> unavailable) throws IOException, KeeperException, InterruptedException {
+        return getOrAllocatePortForKey(container, MANAGEMENT_PID, RMI_SERVER_BINDING_PORT_KEY, Ports.DEFAULT_RMI_SERVER_PORT, unavailable);
     }
 
     private int getRmiServerConnectionPort(Container container, int defaultValue) throws IOException, KeeperException, InterruptedException {
@@ -310,20 +319,10 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
         return "service:jmx:rmi://${zk:" + name + "/ip}:" + serverConnectionPort + "/jndi/rmi://${zk:" + name + "/ip}:" + registryConnectionPort + "/karaf-" + name;
     }
 
-    private void registerSsh(Container container) throws Exception {
-        PortService.Lock lock = null;
-        int sshPort, sshConnectionPort;
-        try {
-            lock = portService.get().acquirePortLock();
-            sshPort = getSshPort(container, lock);
-            sshConnectionPort = getSshConnectionPort(container, sshPort);
-            portService.get().registerPort(container, SSH_PID, SSH_BINDING_PORT_KEY, sshPort, lock);
-        } finally {
-            portService.get().releasePortLock(lock);
-        }
-
+    private void registerSsh(Container container, ZooKeeperBatch registration, int sshPort) throws Exception {
+        int sshConnectionPort = getSshConnectionPort(container, sshPort);
         String sshUrl = getSshUrl(container.getId(), sshConnectionPort);
-        setData(curator.get(), CONTAINER_SSH.getPath(container.getId()), sshUrl);
+        registration.setData(CONTAINER_SSH.getPath(container.getId()), sshUrl);
         Configuration configuration = configAdmin.get().getConfiguration(SSH_PID, null);
         if (configuration != null) {
             Dictionary<String, Object> dictionary = configuration.getProperties();
@@ -332,8 +331,8 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
         }
     }
 
-    private int getSshPort(Container container, PortService.Lock lock) throws IOException, KeeperException, InterruptedException {
-        return getOrAllocatePortForKey(container, SSH_PID, SSH_BINDING_PORT_KEY, Ports.DEFAULT_KARAF_SSH_PORT, lock);
+    private int getSshPort(Container container, Set<Integer> unavailable) throws IOException, KeeperException, InterruptedException {
+        return getOrAllocatePortForKey(container, SSH_PID, SSH_BINDING_PORT_KEY, Ports.DEFAULT_KARAF_SSH_PORT, unavailable);
     }
 
     private int getSshConnectionPort(Container container, int defaultValue) throws IOException, KeeperException, InterruptedException {
@@ -344,46 +343,22 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
         return "${zk:" + name + "/ip}:" + sshPort;
     }
 
-    private void registerHttp(Container container) throws Exception {
-        boolean httpEnabled = isHttpEnabled();
-        boolean httpsEnabled = isHttpsEnabled();
-
+    private void registerHttp(Container container, ZooKeeperBatch registration, boolean httpEnabled, int httpPort, boolean httpsEnabled, int httpsPort) throws Exception {
         Configuration configuration = configAdmin.get().getConfiguration(HTTP_PID, null);
         Dictionary<String, Object> dictionary = configuration == null ? null : configuration.getProperties();
         boolean changed = false;
 
-        PortService.Lock lock = null;
-        int httpPort = 0;
-        int httpsPort = 0;
-
-        if (httpEnabled) {
-            try {
-                lock = portService.get().acquirePortLock();
-                httpPort = getHttpPort(container, lock);
-                portService.get().registerPort(container, HTTP_PID, HTTP_BINDING_PORT_KEY, httpPort, lock);
-            } finally {
-                portService.get().releasePortLock(lock);
-            }
-            if (configuration != null) {
-                changed = updateIfNeeded(dictionary, HTTP_BINDING_PORT_KEY, httpPort);
-            }
-
+        if (httpEnabled && configuration != null) {
+            changed = updateIfNeeded(dictionary, HTTP_BINDING_PORT_KEY, httpPort);
         }
         if (httpsEnabled) {
-            try {
-                lock = portService.get().acquirePortLock();
-                httpsPort = getHttpsPort(container, lock);
-                portService.get().registerPort(container, HTTP_PID, HTTPS_BINDING_PORT_KEY, httpsPort, lock);
-            } finally {
-                portService.get().releasePortLock(lock);
-            }
             changed |= updateIfNeeded(dictionary, HTTPS_BINDING_PORT_KEY, httpsPort);
         }
 
         String protocol = httpsEnabled && !httpEnabled ? "https" : "http";
         int httpConnectionPort = httpsEnabled && !httpEnabled ? getHttpsConnectionPort(container, httpsPort) : getHttpConnectionPort(container, httpPort);
         String httpUrl = getHttpUrl(protocol, container.getId(), httpConnectionPort);
-        setData(curator.get(), CONTAINER_HTTP.getPath(container.getId()), httpUrl);
+        registration.setData(CONTAINER_HTTP.getPath(container.getId()), httpUrl);
 
         if (configuration != null && changed) {
             configuration.update(dictionary);
@@ -410,20 +385,20 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
         }
     }
 
-    private int getHttpPort(Container container, PortService.Lock lock) throws KeeperException, InterruptedException, IOException {
+    private int getHttpPort(Container container, Set<Integer> unavailable) throws KeeperException, InterruptedException, IOException {
         String portProperty = runtimeProperties.get().getProperty(HTTP_BINDING_PORT_KEY);
         int defaultPort = portProperty != null ? Integer.parseInt(portProperty) : Ports.DEFAULT_HTTP_PORT;
-        return getOrAllocatePortForKey(container, HTTP_PID, HTTP_BINDING_PORT_KEY, defaultPort, lock);
+        return getOrAllocatePortForKey(container, HTTP_PID, HTTP_BINDING_PORT_KEY, defaultPort, unavailable);
     }
 
     private int getHttpConnectionPort(Container container, int defaultValue) throws KeeperException, InterruptedException, IOException {
         return getPortForKey(container, HTTP_PID, HTTP_CONNECTION_PORT_KEY, defaultValue);
     }
 
-    private int getHttpsPort(Container container, PortService.Lock lock) throws KeeperException, InterruptedException, IOException {
+    private int getHttpsPort(Container container, Set<Integer> unavailable) throws KeeperException, InterruptedException, IOException {
         String portProperty = runtimeProperties.get().getProperty(HTTPS_BINDING_PORT_KEY);
         int defaultPort = portProperty != null ? Integer.parseInt(portProperty) : Ports.DEFAULT_HTTPS_PORT;
-        return getOrAllocatePortForKey(container, HTTP_PID, HTTPS_BINDING_PORT_KEY, defaultPort, lock);
+        return getOrAllocatePortForKey(container, HTTP_PID, HTTPS_BINDING_PORT_KEY, defaultPort, unavailable);
     }
 
     private int getHttpsConnectionPort(Container container, int defaultValue) throws KeeperException, InterruptedException, IOException {
@@ -438,12 +413,13 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
      * Returns a port number for the use in the specified pid and key.
      * If the port is already registered it is directly returned. Else the {@link ConfigurationAdmin} or a default value is used.
      * In the later case, the port will be checked against the already registered ports and will be increased, till it doesn't match the used ports.
+     * The returned port is added to the unavailable ports, for the next allocation within the same port lock scope.
      */
-    private int getOrAllocatePortForKey(Container container, String pid, String key, int defaultValue, PortService.Lock lock) throws IOException, KeeperException, InterruptedException {
+    private int getOrAllocatePortForKey(Container container, String pid, String key, int defaultValue, Set<Integer> unavailable) throws IOException, KeeperException, InterruptedException {
         Configuration config = configAdmin.get().getConfiguration(pid, null);
-        Set<Integer> unavailable = portService.get().findUsedPortByHost(container, lock);
         int port = portService.get().lookupPort(container, pid, key);
         if (port > 0) {
+            unavailable.add(port);
             return port;
         } else if (config.getProperties() != null && config.getProperties().get(key) != null) {
             try {
@@ -457,6 +433,7 @@ public final class KarafContainerRegistration extends AbstractComponent implemen
         while (unavailable.contains(port)) {
             port++;
         }
+        unavailable.add(port);
         return port;
     }
 